@@ -0,0 +1,51 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+/**
+ * Throughput of building the {@link WalletResponse} of a Wallet and writing it as JSON, the work
+ * done for every GET of a Wallet that is not in the cache and for every top-up. The ObjectMapper
+ * is built like the one of Spring MVC.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class WalletResponseBenchmark {
+
+    private Wallet wallet;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() {
+        wallet = new Wallet(UUID.randomUUID(), 3L, UUID.randomUUID(), 123456L);
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+    }
+
+    @Benchmark
+    public WalletResponse from() {
+        return WalletResponse.from(wallet);
+    }
+
+    @Benchmark
+    public byte[] fromAndSerialize() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(WalletResponse.from(wallet));
+    }
+}
@@ -0,0 +1,66 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The arithmetic of the update of a Wallet in a top-up (check the amount, add it to the balance
+ * and compare the result) with the BigDecimal amounts the Wallets had before and with the
+ * {@link Money} minor units. Run with the gc profiler of the jmh profile, gc.alloc.rate.norm is
+ * the bytes allocated by every update.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Thread)
+public class MoneyBenchmark {
+
+    private static final BigDecimal DECIMAL_MIN_AMOUNT = new BigDecimal("5.00");
+    private static final long MIN_AMOUNT = 500L;
+
+    private BigDecimal decimalBalance;
+    private BigDecimal decimalAmount;
+    private Wallet wallet;
+    private long amount;
+
+    @Setup
+    public void setUp() {
+        decimalBalance = new BigDecimal("1234.56");
+        decimalAmount = new BigDecimal("10.50");
+        wallet = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 123456L);
+        amount = 1050L;
+    }
+
+    @Benchmark
+    public boolean decimalUpdate() {
+        if (decimalAmount.compareTo(DECIMAL_MIN_AMOUNT) <= 0) {
+            return false;
+        }
+        BigDecimal previous = decimalBalance;
+        decimalBalance = decimalBalance.add(decimalAmount);
+        return decimalBalance.compareTo(previous) > 0;
+    }
+
+    @Benchmark
+    public boolean minorUnitsUpdate() {
+        if (amount <= MIN_AMOUNT) {
+            return false;
+        }
+        long previous = wallet.getAmount();
+        wallet.setAmount(previous + amount);
+        return wallet.getAmount() > previous;
+    }
+}
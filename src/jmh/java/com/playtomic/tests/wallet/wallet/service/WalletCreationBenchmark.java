@@ -0,0 +1,93 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.WalletApplication;
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchItemResult;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Wallets created per second (rows/s) against the in-memory H2 of the "test" profile.
+ *
+ * <ul>
+ *     <li>create: one Wallet at a time, with {@link WalletService#create}.</li>
+ *     <li>createBatch: {@value #BATCH_SIZE} Wallets at a time, with
+ *     {@link BatchCreateWalletService#create}, inserted in JDBC batches.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WalletCreationBenchmark {
+
+    static final int BATCH_SIZE = 1000;
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        ConfigurableApplicationContext context;
+        WalletService walletService;
+        BatchCreateWalletService batchCreateWalletService;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties("logging.level.root=WARN")
+                .run();
+            walletService = context.getBean(WalletService.class);
+            batchCreateWalletService = context.getBean(BatchCreateWalletService.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Users {
+
+        List<UUID> userIds;
+
+        @Setup(Level.Invocation)
+        public void generate() {
+            userIds = new ArrayList<>(BATCH_SIZE);
+            for (int i = 0; i < BATCH_SIZE; i++) {
+                userIds.add(UUID.randomUUID());
+            }
+        }
+    }
+
+    @Benchmark
+    public WalletResponse create(Application application) {
+        return application.walletService.create(UUID.randomUUID());
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH_SIZE)
+    public List<CreateWalletBatchItemResult> createBatch(Application application, Users users) {
+        return application.batchCreateWalletService.create(users.userIds);
+    }
+}
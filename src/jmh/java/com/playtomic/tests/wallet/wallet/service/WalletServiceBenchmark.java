@@ -0,0 +1,112 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.WalletApplication;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Throughput of the {@link WalletService} against the in-memory H2 of the "test" profile, where
+ * the charges are answered by the FakeStripeService without any network call. So the numbers are
+ * the cost of the service and the database, not of Stripe.
+ *
+ * <ul>
+ *     <li>topUp: every thread tops up its own Wallet.</li>
+ *     <li>contendedTopUp: all the threads top up the same Wallet, measuring the optimistic
+ *     locking retries of the Wallet update. The top-ups that run out of retries are counted as
+ *     "rejected".</li>
+ *     <li>get: reads a Wallet, answered by the {@link WalletCache}.</li>
+ * </ul>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WalletServiceBenchmark {
+
+    private static final String CARD_NUMBER = "4242 4242 4242 4242";
+    private static final long AMOUNT = 1000L;
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        ConfigurableApplicationContext context;
+        WalletService walletService;
+        UUID sharedWalletId;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties("logging.level.root=WARN")
+                .run();
+            walletService = context.getBean(WalletService.class);
+            sharedWalletId = walletService.create(UUID.randomUUID()).getId();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class OwnWallet {
+
+        UUID walletId;
+
+        @Setup(Level.Trial)
+        public void create(Application application) {
+            walletId = application.walletService.create(UUID.randomUUID()).getId();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Rejections {
+
+        public long rejected;
+    }
+
+    @Benchmark
+    public WalletResponse topUp(Application application, OwnWallet wallet) {
+        return application.walletService.topUp(wallet.walletId, CARD_NUMBER, AMOUNT);
+    }
+
+    @Benchmark
+    @Threads(4)
+    public WalletResponse contendedTopUp(Application application, Rejections rejections) {
+        try {
+            return application.walletService.topUp(application.sharedWalletId, CARD_NUMBER,
+                AMOUNT);
+        } catch (ProcessingChargeError e) {
+            rejections.rejected++;
+            return null;
+        }
+    }
+
+    @Benchmark
+    public WalletResponse get(Application application, OwnWallet wallet) {
+        return application.walletService.get(wallet.walletId);
+    }
+}
@@ -0,0 +1,93 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.WalletApplication;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+/**
+ * Throughput of the top-ups of a single Wallet by 8 threads with the {@link WalletUpdateStrategy}s
+ * that update the Wallet row: OPTIMISTIC (read, then update checking the version, retrying),
+ * PESSIMISTIC ({@code SELECT ... FOR UPDATE}, then update) and ATOMIC (a single
+ * {@code UPDATE ... SET amount = amount + ?}). The top-ups that run out of retries are counted as
+ * "rejected".
+ *
+ * As in {@link WalletServiceBenchmark}, it runs against the in-memory H2 and the FakeStripeService
+ * of the "test" profile.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+public class WalletUpdateBenchmark {
+
+    private static final String CARD_NUMBER = "4242 4242 4242 4242";
+    private static final long AMOUNT = 1000L;
+
+    @State(Scope.Benchmark)
+    public static class Application {
+
+        @Param({"OPTIMISTIC", "PESSIMISTIC", "ATOMIC"})
+        String strategy;
+
+        ConfigurableApplicationContext context;
+        WalletService walletService;
+        UUID sharedWalletId;
+
+        @Setup(Level.Trial)
+        public void start() {
+            context = new SpringApplicationBuilder(WalletApplication.class)
+                .web(WebApplicationType.NONE)
+                .profiles("test")
+                .properties("logging.level.root=WARN")
+                // As an argument, the default properties don't override the application.yml
+                .run("--wallet.update-strategy=" + strategy);
+            walletService = context.getBean(WalletService.class);
+            sharedWalletId = walletService.create(UUID.randomUUID()).getId();
+        }
+
+        @TearDown(Level.Trial)
+        public void stop() {
+            context.close();
+        }
+    }
+
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Rejections {
+
+        public long rejected;
+    }
+
+    @Benchmark
+    @Threads(8)
+    public WalletResponse contendedTopUp(Application application, Rejections rejections) {
+        try {
+            return application.walletService.topUp(application.sharedWalletId, CARD_NUMBER,
+                AMOUNT);
+        } catch (ProcessingChargeError e) {
+            rejections.rejected++;
+            return null;
+        }
+    }
+}
@@ -0,0 +1,119 @@
+package com.playtomic.tests.wallet.infrastructure;
+
+import com.zaxxer.hikari.HikariDataSource;
+import io.r2dbc.h2.H2ConnectionConfiguration;
+import io.r2dbc.h2.H2ConnectionFactory;
+import io.r2dbc.pool.ConnectionPool;
+import io.r2dbc.pool.ConnectionPoolConfiguration;
+import io.r2dbc.spi.ConnectionFactory;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.EnableConfigurationProperties;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.boot.web.embedded.netty.NettyReactiveWebServerFactory;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.r2dbc.connection.R2dbcTransactionManager;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import org.springframework.web.server.WebFilter;
+
+/**
+ * Reactive runtime mode, selected with {@code spring.main.web-application-type=reactive}: the
+ * wallet endpoints are served by Netty and read and write the database with R2DBC.
+ *
+ * <ul>
+ *     <li>Netty is declared explicitly, otherwise Boot serves the reactive endpoints with Tomcat
+ *     because it is in the classpath for the servlet mode.</li>
+ *     <li>The R2DBC pool connects to the same H2 database as the JDBC DataSource, which is still
+ *     used by JPA in the scheduled jobs (reconciliation, refunds, outbox, holds). Its
+ *     connections are published as the "r2dbc.pool.*" metrics.</li>
+ *     <li>The DataSource is declared as Boot does, because Boot doesn't configure it when there
+ *     is an R2DBC ConnectionFactory.</li>
+ *     <li>The R2DBC transaction manager is not a bean: Boot would skip the JPA one, which is
+ *     only created when there is no other transaction manager. The reactive code uses it through
+ *     the {@link TransactionalOperator}.</li>
+ *     <li>RestTemplateBuilder is only auto-configured for the servlet mode, and the
+ *     StripeService still needs it for the blocking calls of the scheduled jobs.</li>
+ * </ul>
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+@EnableConfigurationProperties(DataSourceProperties.class)
+public class ReactiveConfiguration {
+
+    private static final String H2_JDBC_PREFIX = "jdbc:h2:";
+
+    @Bean
+    public NettyReactiveWebServerFactory nettyReactiveWebServerFactory() {
+        return new NettyReactiveWebServerFactory();
+    }
+
+    /**
+     * The paths with a trailing slash are served as without it, as the TrailingSlashFilter does
+     * in the servlet mode.
+     */
+    @Bean
+    public WebFilter trailingSlashWebFilter() {
+        return (exchange, chain) -> {
+            String path = exchange.getRequest().getPath().value();
+            if (path.length() > 1 && path.endsWith("/")) {
+                return chain.filter(exchange.mutate()
+                    .request(request -> request.path(path.substring(0, path.length() - 1)))
+                    .build());
+            }
+            return chain.filter(exchange);
+        };
+    }
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+        return dataSourceProperties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+    }
+
+    @Bean(destroyMethod = "dispose")
+    public ConnectionPool connectionFactory(DataSourceProperties dataSourceProperties,
+        @Value("${wallet.reactive.pool.max-size:20}") int maxSize,
+        @Value("${wallet.reactive.pool.max-acquire-time:5s}") Duration maxAcquireTime) {
+        String url = dataSourceProperties.determineUrl();
+        if (url == null || !url.startsWith(H2_JDBC_PREFIX)) {
+            throw new IllegalStateException("The reactive mode supports only H2, not " + url);
+        }
+        String password = dataSourceProperties.determinePassword();
+        H2ConnectionFactory h2 = new H2ConnectionFactory(H2ConnectionConfiguration.builder()
+            // The same URL as JDBC without its prefix, so both open the same in-memory database
+            .url(url.substring(H2_JDBC_PREFIX.length()))
+            .username(dataSourceProperties.determineUsername())
+            .password(password == null ? "" : password)
+            .build());
+        return new ConnectionPool(ConnectionPoolConfiguration.builder(h2)
+            .name("wallet")
+            .initialSize(1)
+            .maxSize(maxSize)
+            .maxAcquireTime(maxAcquireTime)
+            .build());
+    }
+
+    @Bean
+    public DatabaseClient databaseClient(ConnectionFactory connectionFactory) {
+        return DatabaseClient.create(connectionFactory);
+    }
+
+    @Bean
+    public TransactionalOperator reactiveTransactionalOperator(
+        ConnectionFactory connectionFactory) {
+        return TransactionalOperator.create(new R2dbcTransactionManager(connectionFactory));
+    }
+
+    @Bean
+    public RestTemplateBuilder restTemplateBuilder() {
+        return new RestTemplateBuilder();
+    }
+}
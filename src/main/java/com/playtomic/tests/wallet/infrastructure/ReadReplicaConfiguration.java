@@ -0,0 +1,72 @@
+package com.playtomic.tests.wallet.infrastructure;
+
+import com.zaxxer.hikari.HikariDataSource;
+import javax.sql.DataSource;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+/**
+ * Read replica of the database, enabled with wallet.datasource.replica.url. The DataSource used by
+ * JPA and JDBC routes the read-only transactions of the ReplicaReads to the replica pool, and the
+ * rest to the primary pool, the one of spring.datasource (see {@link ReplicaRoutingDataSource}).
+ *
+ * <ul>
+ *     <li>The pools are published as the "hikaricp.*" metrics with the tags pool=primary and
+ *     pool=replica.</li>
+ *     <li>The replica connections are read-only, so a write sent there by mistake fails instead of
+ *     diverging from the primary.</li>
+ *     <li>Only in the servlet mode: the reactive mode declares its own DataSource and serves its
+ *     reads with R2DBC.</li>
+ * </ul>
+ */
+@Configuration
+@ConditionalOnWebApplication(type = Type.SERVLET)
+@ConditionalOnProperty(prefix = "wallet.datasource.replica", name = "url")
+public class ReadReplicaConfiguration {
+
+    @Bean
+    @ConfigurationProperties("spring.datasource.hikari")
+    public HikariDataSource primaryDataSource(DataSourceProperties dataSourceProperties) {
+        HikariDataSource primary = dataSourceProperties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .build();
+        primary.setPoolName("primary");
+        return primary;
+    }
+
+    @Bean
+    @ConfigurationProperties("wallet.datasource.replica.hikari")
+    public HikariDataSource replicaDataSource(
+        @Value("${wallet.datasource.replica.url}") String url,
+        @Value("${wallet.datasource.replica.username:${spring.datasource.username:sa}}")
+        String username,
+        @Value("${wallet.datasource.replica.password:${spring.datasource.password:}}")
+        String password) {
+        HikariDataSource replica = DataSourceBuilder.create()
+            .type(HikariDataSource.class)
+            .url(url)
+            .username(username)
+            .password(password)
+            .build();
+        replica.setPoolName("replica");
+        replica.setReadOnly(true);
+        return replica;
+    }
+
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("primaryDataSource") DataSource primary,
+        @Qualifier("replicaDataSource") DataSource replica) {
+        return new LazyConnectionDataSourceProxy(new ReplicaRoutingDataSource(primary, replica));
+    }
+}
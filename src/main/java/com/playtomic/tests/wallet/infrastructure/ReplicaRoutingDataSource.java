@@ -0,0 +1,43 @@
+package com.playtomic.tests.wallet.infrastructure;
+
+import java.util.Map;
+import javax.sql.DataSource;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * Sends the connections of the read-only transactions named {@link #REPLICA_READS} to the
+ * replica, and everything else to the primary.
+ *
+ * The other read-only transactions, like the default ones of the Spring Data repositories, stay
+ * in the primary: they are also the reads of the write paths (idempotency keys, holds, refunds),
+ * which can't miss what has just been written.
+ *
+ * The transaction is only known once it has begun, after the transaction manager asked for the
+ * connection, so this must be wrapped in a LazyConnectionDataSourceProxy.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+
+    /**
+     * Name of the read-only transactions served by the replica.
+     */
+    public static final String REPLICA_READS = "replica-reads";
+
+    private enum Target {
+        PRIMARY,
+        REPLICA
+    }
+
+    public ReplicaRoutingDataSource(DataSource primary, DataSource replica) {
+        setTargetDataSources(Map.of(Target.PRIMARY, primary, Target.REPLICA, replica));
+        setDefaultTargetDataSource(primary);
+        afterPropertiesSet();
+    }
+
+    @Override
+    protected Object determineCurrentLookupKey() {
+        return TransactionSynchronizationManager.isCurrentTransactionReadOnly()
+            && REPLICA_READS.equals(TransactionSynchronizationManager.getCurrentTransactionName())
+            ? Target.REPLICA : Target.PRIMARY;
+    }
+}
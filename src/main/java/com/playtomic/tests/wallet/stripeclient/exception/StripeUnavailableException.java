@@ -0,0 +1,13 @@
+package com.playtomic.tests.wallet.stripeclient.exception;
+
+/**
+ * The call to Stripe has not been done because Stripe is failing (circuit breaker open) or too many
+ * calls are already in progress (bulkhead full).
+ */
+public class StripeUnavailableException extends StripeServiceException {
+
+    public StripeUnavailableException() {
+        super("Stripe is not available");
+    }
+
+}
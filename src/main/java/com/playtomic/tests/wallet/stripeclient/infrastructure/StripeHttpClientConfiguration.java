@@ -0,0 +1,72 @@
+package com.playtomic.tests.wallet.stripeclient.infrastructure;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.Timeout;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+
+/**
+ * HTTP clients used to call Stripe.
+ *
+ * Both keep the connections alive and reuse them between calls, so the charges don't pay a new
+ * TCP/TLS handshake each time:
+ * <ul>
+ *     <li>The blocking calls use a pool of Apache HttpClient connections, the request is done in
+ *     the calling thread.</li>
+ *     <li>The non-blocking calls use the JDK HttpClient, which completes the calls from its own
+ *     threads.</li>
+ * </ul>
+ * To use another client (a proxy, another library, ...) declare another bean with the same name.
+ */
+@Configuration
+public class StripeHttpClientConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient stripeHttpClient(
+        @Value("${stripe.client.connect-timeout:2s}") Duration connectTimeout,
+        @Value("${stripe.client.read-timeout:5s}") Duration readTimeout,
+        @Value("${stripe.client.max-connections:50}") int maxConnections) {
+        PoolingHttpClientConnectionManager connectionManager =
+            PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                // All the calls go to the same host
+                .setMaxConnPerRoute(maxConnections)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                    .setConnectTimeout(Timeout.of(connectTimeout))
+                    .setSocketTimeout(Timeout.of(readTimeout))
+                    .build())
+                .build();
+        return HttpClients.custom()
+            .setConnectionManager(connectionManager)
+            .setDefaultRequestConfig(RequestConfig.custom()
+                .setConnectionRequestTimeout(Timeout.of(connectTimeout))
+                .setResponseTimeout(Timeout.of(readTimeout))
+                .build())
+            .build();
+    }
+
+    @Bean
+    public ClientHttpRequestFactory stripeRequestFactory(CloseableHttpClient stripeHttpClient) {
+        return new HttpComponentsClientHttpRequestFactory(stripeHttpClient);
+    }
+
+    @Bean
+    public HttpClient stripeAsyncHttpClient(
+        @Value("${stripe.client.connect-timeout:2s}") Duration connectTimeout) {
+        return HttpClient.newBuilder()
+            // The simulator is HTTP/1.1, this avoids the h2c upgrade headers in every request
+            .version(HttpClient.Version.HTTP_1_1)
+            .connectTimeout(connectTimeout)
+            .build();
+    }
+}
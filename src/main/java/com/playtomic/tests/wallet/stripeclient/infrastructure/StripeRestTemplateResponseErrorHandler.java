@@ -1,6 +1,7 @@
 package com.playtomic.tests.wallet.stripeclient.infrastructure;
 
 import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.client.ClientHttpResponse;
 
@@ -21,5 +22,7 @@ public class StripeRestTemplateResponseErrorHandler implements ResponseErrorHand
         if (response.getStatusCode() == HttpStatus.UNPROCESSABLE_ENTITY) {
             throw new StripeAmountTooSmallException();
         }
+        // Otherwise the error body would be read as a Payment
+        throw new StripeServiceException("Stripe answered " + response.getStatusCode().value());
     }
 }
@@ -0,0 +1,119 @@
+package com.playtomic.tests.wallet.stripeclient.service;
+
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeUnavailableException;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.micrometer.tagged.TaggedBulkheadMetrics;
+import io.github.resilience4j.micrometer.tagged.TaggedCircuitBreakerMetrics;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Protects the service when Stripe is slow or failing.
+ *
+ * <ul>
+ *     <li>Bulkhead: limits the Stripe calls in progress, so a slow Stripe can't take all the
+ *     request threads and the rest of the endpoints keep responding.</li>
+ *     <li>Circuit breaker: when too many of the last calls failed or were slow, the calls are
+ *     rejected without calling Stripe for a while, and then a few calls are let through to check
+ *     if Stripe has recovered.</li>
+ * </ul>
+ * The rejected calls throw a {@link StripeUnavailableException}. An amount too small is an answer
+ * of Stripe, not a failure, so it doesn't open the circuit.
+ *
+ * The state is published as the "resilience4j.circuitbreaker.*" and "resilience4j.bulkhead.*"
+ * metrics with the tag name=stripe.
+ */
+@Component
+public class StripeCircuitBreaker {
+
+    private static final String NAME = "stripe";
+
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+
+    public StripeCircuitBreaker(
+        @Value("${stripe.circuit-breaker.failure-rate-threshold:50}") float failureRateThreshold,
+        @Value("${stripe.circuit-breaker.slow-call-rate-threshold:50}") float slowCallRateThreshold,
+        @Value("${stripe.circuit-breaker.slow-call-duration:2s}") Duration slowCallDuration,
+        @Value("${stripe.circuit-breaker.sliding-window-size:20}") int slidingWindowSize,
+        @Value("${stripe.circuit-breaker.wait-in-open:10s}") Duration waitInOpen,
+        @Value("${stripe.circuit-breaker.half-open-calls:3}") int halfOpenCalls,
+        @Value("${stripe.bulkhead.max-concurrent-calls:32}") int maxConcurrentCalls,
+        MeterRegistry meterRegistry) {
+        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(
+            CircuitBreakerConfig.custom()
+                .failureRateThreshold(failureRateThreshold)
+                .slowCallRateThreshold(slowCallRateThreshold)
+                .slowCallDurationThreshold(slowCallDuration)
+                .slidingWindowSize(slidingWindowSize)
+                .minimumNumberOfCalls(slidingWindowSize)
+                .waitDurationInOpenState(waitInOpen)
+                .permittedNumberOfCallsInHalfOpenState(halfOpenCalls)
+                .ignoreExceptions(StripeAmountTooSmallException.class)
+                .build());
+        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.of(BulkheadConfig.custom()
+            .maxConcurrentCalls(maxConcurrentCalls)
+            .maxWaitDuration(Duration.ZERO)
+            .build());
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker(NAME);
+        this.bulkhead = bulkheadRegistry.bulkhead(NAME);
+        TaggedCircuitBreakerMetrics.ofCircuitBreakerRegistry(circuitBreakerRegistry)
+            .bindTo(meterRegistry);
+        TaggedBulkheadMetrics.ofBulkheadRegistry(bulkheadRegistry).bindTo(meterRegistry);
+    }
+
+    /**
+     * @throws StripeUnavailableException when the call is rejected
+     */
+    public <T> T execute(Supplier<T> stripeCall) {
+        try {
+            return Bulkhead.decorateSupplier(bulkhead,
+                CircuitBreaker.decorateSupplier(circuitBreaker, stripeCall)).get();
+        } catch (CallNotPermittedException | BulkheadFullException e) {
+            throw new StripeUnavailableException();
+        }
+    }
+
+    /**
+     * Same as {@link #execute} for a call that doesn't block: the call holds its place in the
+     * bulkhead and is measured by the circuit breaker until its stage completes.
+     *
+     * @return completed exceptionally with a {@link StripeUnavailableException} when the call is
+     * rejected
+     */
+    public <T> CompletableFuture<T> executeAsync(Supplier<CompletionStage<T>> stripeCall) {
+        return Bulkhead.decorateCompletionStage(bulkhead,
+                CircuitBreaker.decorateCompletionStage(circuitBreaker, stripeCall)).get()
+            .toCompletableFuture()
+            .handle((result, error) -> {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof CallNotPermittedException
+                    || cause instanceof BulkheadFullException) {
+                    throw new StripeUnavailableException();
+                }
+                if (error != null) {
+                    throw error instanceof CompletionException completionException
+                        ? completionException : new CompletionException(error);
+                }
+                return result;
+            });
+    }
+
+    public CircuitBreaker.State getState() {
+        return circuitBreaker.getState();
+    }
+}
@@ -1,14 +1,26 @@
 package com.playtomic.tests.wallet.stripeclient.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.playtomic.tests.wallet.stripeclient.dto.ChargeRequest;
 import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
 import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
 import com.playtomic.tests.wallet.stripeclient.infrastructure.StripeRestTemplateResponseErrorHandler;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import lombok.NonNull;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
@@ -18,6 +30,9 @@ import org.springframework.web.client.RestTemplate;
  *
  * A real implementation would call to String using their API/SDK.
  * This dummy implementation throws an error when trying to charge less than 10€.
+ *
+ * The blocking calls go through the stripeRequestFactory bean and the non-blocking ones through the
+ * stripeAsyncHttpClient bean, both with pooled keep-alive connections.
  */
 @Service
 public class StripeService {
@@ -25,19 +40,39 @@ public class StripeService {
     @NonNull
     private URI chargesUri;
 
+    /**
+     * URI template with the {payment_id} variable, which a URI can't hold unencoded.
+     */
     @NonNull
-    private URI refundsUri;
+    private String refundsUri;
 
     @NonNull
     private RestTemplate restTemplate;
 
+    @NonNull
+    private HttpClient httpClient;
+
+    @NonNull
+    private Duration readTimeout;
+
+    @NonNull
+    private ObjectMapper objectMapper;
+
     public StripeService(@Value("${stripe.simulator.charges-uri}") @NonNull URI chargesUri,
-                         @Value("${stripe.simulator.refunds-uri}") @NonNull URI refundsUri,
-                         @NonNull RestTemplateBuilder restTemplateBuilder) {
+                         @Value("${stripe.simulator.refunds-uri}") @NonNull String refundsUri,
+                         @NonNull RestTemplateBuilder restTemplateBuilder,
+                         @NonNull ClientHttpRequestFactory stripeRequestFactory,
+                         @NonNull HttpClient stripeAsyncHttpClient,
+                         @Value("${stripe.client.read-timeout:5s}") @NonNull Duration readTimeout,
+                         @NonNull ObjectMapper objectMapper) {
         this.chargesUri = chargesUri;
         this.refundsUri = refundsUri;
+        this.httpClient = stripeAsyncHttpClient;
+        this.readTimeout = readTimeout;
+        this.objectMapper = objectMapper;
         this.restTemplate =
                 restTemplateBuilder
+                .requestFactory(() -> stripeRequestFactory)
                 .errorHandler(new StripeRestTemplateResponseErrorHandler())
                 .build();
     }
@@ -57,11 +92,64 @@ public class StripeService {
         return restTemplate.postForObject(chargesUri, body, Payment.class);
     }
 
+    /**
+     * Same as {@link #charge(String, BigDecimal)} without blocking the calling thread while
+     * waiting for Stripe.
+     *
+     * @return the payment, or completed exceptionally with the {@link StripeServiceException}
+     *     itself, not wrapped in a {@link java.util.concurrent.CompletionException}, so the
+     *     stages and {@code Mono.fromFuture} receive it as is ({@code join()} still wraps it)
+     */
+    public CompletableFuture<Payment> chargeAsync(@NonNull String creditCardNumber,
+        @NonNull BigDecimal amount) {
+        HttpRequest request;
+        try {
+            request = HttpRequest.newBuilder(chargesUri)
+                .timeout(readTimeout)
+                .header(HttpHeaders.CONTENT_TYPE, MediaType.APPLICATION_JSON_VALUE)
+                .POST(HttpRequest.BodyPublishers.ofByteArray(
+                    objectMapper.writeValueAsBytes(new ChargeRequest(creditCardNumber, amount))))
+                .build();
+        } catch (JsonProcessingException e) {
+            return CompletableFuture.failedFuture(
+                new StripeServiceException("Invalid charge request"));
+        }
+        CompletableFuture<Payment> payment = new CompletableFuture<>();
+        httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+            .whenComplete((response, error) -> {
+                if (error != null) {
+                    payment.completeExceptionally(
+                        new StripeServiceException("Failed to call Stripe: " + error.getMessage()));
+                    return;
+                }
+                try {
+                    payment.complete(toPayment(response));
+                } catch (StripeServiceException e) {
+                    payment.completeExceptionally(e);
+                }
+            });
+        return payment;
+    }
+
     /**
      * Refunds the specified payment.
      */
     public void refund(@NonNull String paymentId) throws StripeServiceException {
         // Object.class because we don't read the body here.
-        restTemplate.postForEntity(chargesUri.toString(), null, Object.class, paymentId);
+        restTemplate.postForEntity(refundsUri, null, Object.class, paymentId);
+    }
+
+    private Payment toPayment(HttpResponse<byte[]> response) {
+        if (response.statusCode() == HttpStatus.UNPROCESSABLE_ENTITY.value()) {
+            throw new StripeAmountTooSmallException();
+        }
+        if (response.statusCode() >= 400) {
+            throw new StripeServiceException("Stripe responded " + response.statusCode());
+        }
+        try {
+            return objectMapper.readValue(response.body(), Payment.class);
+        } catch (Exception e) {
+            throw new StripeServiceException("Invalid response from Stripe");
+        }
     }
 }
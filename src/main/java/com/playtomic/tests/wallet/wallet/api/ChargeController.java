@@ -0,0 +1,74 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import com.playtomic.tests.wallet.wallet.dto.ChargeRequest;
+import com.playtomic.tests.wallet.wallet.dto.HoldRequest;
+import com.playtomic.tests.wallet.wallet.dto.HoldResponse;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.service.ChargeService;
+import jakarta.validation.Valid;
+import java.time.Duration;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Validated
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class ChargeController {
+
+    private final Logger log = LoggerFactory.getLogger(ChargeController.class);
+    private final ChargeService chargeService;
+
+    @PostMapping("/v1/wallets/{walletId}/actions/charge")
+    public ResponseEntity<WalletResponse> charge(@PathVariable UUID walletId,
+        @Valid @RequestBody ChargeRequest chargeRequest) {
+        log.info("Charge wallet {} with amount {}", walletId, chargeRequest.getAmount());
+
+        return new ResponseEntity<>(chargeService.charge(walletId, chargeRequest.getAmount()),
+            HttpStatus.OK);
+    }
+
+    /**
+     * Reserves the amount of the wallet, to be captured or released later. It expires after
+     * ttlSeconds.
+     */
+    @PostMapping("/v1/wallets/{walletId}/holds")
+    public ResponseEntity<HoldResponse> reserve(@PathVariable UUID walletId,
+        @Valid @RequestBody HoldRequest holdRequest) {
+        log.info("Hold amount {} of wallet {}", holdRequest.getAmount(), walletId);
+        Duration ttl = holdRequest.getTtlSeconds() == null ? null
+            : Duration.ofSeconds(holdRequest.getTtlSeconds());
+
+        return new ResponseEntity<>(chargeService.reserve(walletId, holdRequest.getAmount(), ttl),
+            HttpStatus.CREATED);
+    }
+
+    @PostMapping("/v1/wallets/{walletId}/holds/{holdId}/actions/capture")
+    public ResponseEntity<HoldResponse> capture(@PathVariable UUID walletId,
+        @PathVariable UUID holdId) {
+        log.info("Capture hold {} of wallet {}", holdId, walletId);
+
+        return new ResponseEntity<>(chargeService.capture(walletId, holdId), HttpStatus.OK);
+    }
+
+    @PostMapping("/v1/wallets/{walletId}/holds/{holdId}/actions/release")
+    public ResponseEntity<HoldResponse> release(@PathVariable UUID walletId,
+        @PathVariable UUID holdId) {
+        log.info("Release hold {} of wallet {}", holdId, walletId);
+
+        return new ResponseEntity<>(chargeService.release(walletId, holdId), HttpStatus.OK);
+    }
+
+    public ChargeController(ChargeService chargeService) {
+        this.chargeService = chargeService;
+    }
+}
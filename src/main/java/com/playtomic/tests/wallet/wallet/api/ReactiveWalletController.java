@@ -0,0 +1,63 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletRequest;
+import com.playtomic.tests.wallet.wallet.dto.TopUpRequest;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.service.ReactiveWalletService;
+import jakarta.validation.Valid;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+import reactor.core.publisher.Mono;
+
+/**
+ * The create, top-up and get of {@link WalletController} in the reactive mode, with the same
+ * requests and responses. The rest of the endpoints, the asynchronous top-up and the
+ * Idempotency-Key are only served in the servlet mode.
+ */
+@RestController
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveWalletController {
+
+    private final Logger log = LoggerFactory.getLogger(ReactiveWalletController.class);
+    private final ReactiveWalletService walletService;
+
+    @PostMapping("/v1/wallets")
+    public Mono<ResponseEntity<WalletResponse>> create(
+        @Valid @RequestBody CreateWalletRequest request) {
+        log.info("Creating wallet for user {}", request.getUserId());
+
+        return walletService.create(request.getUserId())
+            .map(walletResponse -> new ResponseEntity<>(walletResponse, HttpStatus.CREATED));
+    }
+
+    @PostMapping("/v1/wallets/{walletId}/actions/topup")
+    public Mono<ResponseEntity<WalletResponse>> topUp(@PathVariable UUID walletId,
+        @Valid @RequestBody TopUpRequest topUpRequest) {
+        log.info("Top-up wallet {} with card number {} and amount {}", walletId,
+            topUpRequest.getCardNumber(), topUpRequest.getAmount());
+
+        return walletService.topUp(walletId, topUpRequest.getCardNumber(),
+                topUpRequest.getAmount())
+            .map(walletResponse -> new ResponseEntity<>(walletResponse, HttpStatus.ACCEPTED));
+    }
+
+    @GetMapping("/v1/wallets/{walletId}")
+    public Mono<ResponseEntity<WalletResponse>> get(@PathVariable UUID walletId) {
+        return walletService.get(walletId)
+            .map(walletResponse -> new ResponseEntity<>(walletResponse, HttpStatus.OK));
+    }
+
+    public ReactiveWalletController(ReactiveWalletService walletService) {
+        this.walletService = walletService;
+    }
+}
@@ -0,0 +1,30 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
+import com.playtomic.tests.wallet.wallet.service.WalletService;
+import java.util.UUID;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Validated
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class TransactionController {
+
+    private final WalletService walletService;
+
+    @GetMapping("/v1/transactions/{transactionId}")
+    public ResponseEntity<TransactionResponse> get(@PathVariable UUID transactionId) {
+        return new ResponseEntity<>(walletService.getTransaction(transactionId), HttpStatus.OK);
+    }
+
+    public TransactionController(WalletService walletService) {
+        this.walletService = walletService;
+    }
+}
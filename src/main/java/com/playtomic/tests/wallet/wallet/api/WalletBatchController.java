@@ -0,0 +1,59 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchRequest;
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchResponse;
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletRequest;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchRequest;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchResponse;
+import com.playtomic.tests.wallet.wallet.service.BatchCreateWalletService;
+import com.playtomic.tests.wallet.wallet.service.BatchTopUpService;
+import jakarta.validation.Valid;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.validation.annotation.Validated;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RestController;
+
+@RestController
+@Validated
+@ConditionalOnWebApplication(type = Type.SERVLET)
+public class WalletBatchController {
+
+    private final Logger log = LoggerFactory.getLogger(WalletBatchController.class);
+    private final BatchTopUpService batchTopUpService;
+    private final BatchCreateWalletService batchCreateWalletService;
+
+    @PostMapping("/v1/wallets/actions/create-batch")
+    public ResponseEntity<CreateWalletBatchResponse> create(
+        @Valid @RequestBody CreateWalletBatchRequest createWalletBatchRequest) {
+        log.info("Create batch of {} wallets", createWalletBatchRequest.getItems().size());
+
+        CreateWalletBatchResponse response = new CreateWalletBatchResponse(
+            batchCreateWalletService.create(createWalletBatchRequest.getItems().stream()
+                .map(CreateWalletRequest::getUserId).toList()));
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    @PostMapping("/v1/wallets/actions/topup-batch")
+    public ResponseEntity<TopUpBatchResponse> topUp(
+        @Valid @RequestBody TopUpBatchRequest topUpBatchRequest) {
+        log.info("Top-up batch of {} wallets", topUpBatchRequest.getItems().size());
+
+        TopUpBatchResponse response = new TopUpBatchResponse(
+            batchTopUpService.topUp(topUpBatchRequest.getItems()));
+
+        return new ResponseEntity<>(response, HttpStatus.OK);
+    }
+
+    public WalletBatchController(BatchTopUpService batchTopUpService,
+        BatchCreateWalletService batchCreateWalletService) {
+        this.batchTopUpService = batchTopUpService;
+        this.batchCreateWalletService = batchCreateWalletService;
+    }
+}
@@ -2,12 +2,22 @@ package com.playtomic.tests.wallet.wallet.api;
 
 import com.playtomic.tests.wallet.wallet.dto.CreateWalletRequest;
 import com.playtomic.tests.wallet.wallet.dto.TopUpRequest;
+import com.playtomic.tests.wallet.wallet.dto.TransactionPageResponse;
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
 import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.service.IdempotencyService;
 import com.playtomic.tests.wallet.wallet.service.WalletService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
+import jakarta.validation.constraints.Size;
+import java.net.URI;
 import java.util.UUID;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.validation.annotation.Validated;
@@ -15,14 +25,20 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 @RestController
 @Validated
+@ConditionalOnWebApplication(type = Type.SERVLET)
 public class WalletController {
 
+    private static final String IDEMPOTENCY_KEY = "Idempotency-Key";
+
     private final Logger log = LoggerFactory.getLogger(WalletController.class);
     private final WalletService walletService;
+    private final IdempotencyService idempotencyService;
 
     @PostMapping("/v1/wallets")
     public ResponseEntity<WalletResponse> create(@Valid @RequestBody CreateWalletRequest request) {
@@ -35,22 +51,84 @@ public class WalletController {
 
     @PostMapping("/v1/wallets/{walletId}/actions/topup")
     public ResponseEntity<WalletResponse> topUp(@PathVariable UUID walletId,
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) @Size(max = 200)
+        String idempotencyKey,
         @Valid @RequestBody TopUpRequest topUpRequest) {
         log.info("Top-up wallet {} with card number {} and amount {}", walletId,
             topUpRequest.getCardNumber(), topUpRequest.getAmount());
 
-        WalletResponse walletResponse = walletService.topUp(walletId, topUpRequest.getCardNumber(),
-            topUpRequest.getAmount());
+        WalletResponse walletResponse = idempotently(walletId, idempotencyKey, "sync",
+            topUpRequest, WalletResponse.class, () -> walletService.topUp(walletId,
+                topUpRequest.getCardNumber(), topUpRequest.getAmount()));
 
         return new ResponseEntity<>(walletResponse, HttpStatus.ACCEPTED);
     }
 
+    /**
+     * Asynchronous version of the top-up, selected with the header "Prefer: respond-async". It
+     * answers as soon as the transaction is registered, the status of the top-up can be checked
+     * at the returned location.
+     */
+    @PostMapping(value = "/v1/wallets/{walletId}/actions/topup", headers = "Prefer=respond-async")
+    public ResponseEntity<TransactionResponse> topUpAsync(@PathVariable UUID walletId,
+        @RequestHeader(value = IDEMPOTENCY_KEY, required = false) @Size(max = 200)
+        String idempotencyKey,
+        @Valid @RequestBody TopUpRequest topUpRequest) {
+        log.info("Asynchronous top-up wallet {} with card number {} and amount {}", walletId,
+            topUpRequest.getCardNumber(), topUpRequest.getAmount());
+
+        TransactionResponse transactionResponse = idempotently(walletId, idempotencyKey, "async",
+            topUpRequest, TransactionResponse.class, () -> walletService.topUpAsync(walletId,
+                topUpRequest.getCardNumber(), topUpRequest.getAmount()));
+
+        return ResponseEntity.accepted()
+            .location(URI.create("/v1/transactions/" + transactionResponse.getId()))
+            .header("Preference-Applied", "respond-async")
+            .body(transactionResponse);
+    }
+
     @GetMapping("/v1/wallets/{walletId}")
     public ResponseEntity<WalletResponse> get(@PathVariable UUID walletId) {
         return new ResponseEntity<>(walletService.get(walletId), HttpStatus.OK);
     }
 
-    public WalletController(WalletService walletService) {
+    /**
+     * The wallet of the user, for the clients that know the user id and not the wallet id.
+     */
+    @GetMapping("/v1/users/{userId}/wallet")
+    public ResponseEntity<WalletResponse> getByUserId(@PathVariable UUID userId) {
+        return new ResponseEntity<>(walletService.getByUserId(userId), HttpStatus.OK);
+    }
+
+    /**
+     * History of the transactions of the wallet, the newest first, paginated with the nextCursor
+     * of the previous page.
+     */
+    @GetMapping("/v1/wallets/{walletId}/transactions")
+    public ResponseEntity<TransactionPageResponse> getTransactions(@PathVariable UUID walletId,
+        @RequestParam(required = false) String cursor,
+        @RequestParam(defaultValue = "50") @Min(1) @Max(500) int limit) {
+        return new ResponseEntity<>(walletService.getTransactions(walletId, cursor, limit),
+            HttpStatus.OK);
+    }
+
+    /**
+     * Runs the top-up only once per Idempotency-Key and wallet. A retry with the same key gets
+     * the response of the first request instead of charging the card again.
+     */
+    private <T> T idempotently(UUID walletId, String idempotencyKey, String mode,
+        TopUpRequest topUpRequest, Class<T> responseType, Supplier<T> topUp) {
+        if (idempotencyKey == null) {
+            return topUp.get();
+        }
+        String request = String.join("/", walletId.toString(), mode,
+            topUpRequest.getCardNumber(), Long.toString(topUpRequest.getAmount()));
+        return idempotencyService.execute(walletId + "/" + idempotencyKey, request, responseType,
+            topUp);
+    }
+
+    public WalletController(WalletService walletService, IdempotencyService idempotencyService) {
         this.walletService = walletService;
+        this.idempotencyService = idempotencyService;
     }
 }
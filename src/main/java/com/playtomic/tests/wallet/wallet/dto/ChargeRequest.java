@@ -0,0 +1,19 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Positive;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class ChargeRequest {
+
+    @JsonProperty("amount")
+    @MinorUnits
+    @Positive(message = "amount must be a positive number")
+    public long amount;
+
+    public ChargeRequest() {
+    }
+}
@@ -0,0 +1,19 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * The Wallet created for the user, or the error if it was not created.
+ */
+@AllArgsConstructor
+@Getter
+@JsonInclude(Include.NON_NULL)
+public class CreateWalletBatchItemResult {
+    private UUID userId;
+    private UUID walletId;
+    private String error;
+}
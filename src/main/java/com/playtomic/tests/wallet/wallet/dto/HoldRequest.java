@@ -0,0 +1,27 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Positive;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class HoldRequest {
+
+    @JsonProperty("amount")
+    @MinorUnits
+    @Positive(message = "amount must be a positive number")
+    public long amount;
+    /**
+     * Seconds until the hold expires, wallet.holds.default-ttl if not given.
+     */
+    @JsonProperty("ttlSeconds")
+    @Positive(message = "ttlSeconds must be a positive number")
+    @Max(value = 86400, message = "ttlSeconds must be at most 86400")
+    public Integer ttlSeconds;
+
+    public HoldRequest() {
+    }
+}
@@ -0,0 +1,26 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.playtomic.tests.wallet.wallet.model.Hold;
+import com.playtomic.tests.wallet.wallet.model.HoldStatus;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class HoldResponse {
+    private UUID id;
+    private UUID walletId;
+    @MinorUnits
+    private long amount;
+    private HoldStatus status;
+    private Instant expiresAt;
+
+    public static HoldResponse from(Hold hold) {
+        return new HoldResponse(hold.getId(), hold.getWalletId(), hold.getAmount(),
+            hold.getStatus(), hold.getExpiresAt());
+    }
+}
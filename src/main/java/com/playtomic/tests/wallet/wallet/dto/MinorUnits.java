@@ -0,0 +1,67 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JacksonAnnotationsInside;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.DeserializationContext;
+import com.fasterxml.jackson.databind.JsonDeserializer;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.annotation.JsonDeserialize;
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.playtomic.tests.wallet.wallet.model.Money;
+import java.io.IOException;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.math.BigDecimal;
+
+/**
+ * An amount in {@link Money} minor units written and read as a decimal in the JSON, so the API
+ * answers {@code "amount": 10.50} for 1050 cents, always with the decimals of the currency.
+ */
+@Target(ElementType.FIELD)
+@Retention(RetentionPolicy.RUNTIME)
+@JacksonAnnotationsInside
+@JsonSerialize(using = MinorUnits.Serializer.class)
+@JsonDeserialize(using = MinorUnits.Deserializer.class)
+public @interface MinorUnits {
+
+    class Serializer extends JsonSerializer<Long> {
+
+        @Override
+        public void serialize(Long minorUnits, JsonGenerator generator,
+            SerializerProvider serializers) throws IOException {
+            generator.writeNumber(Money.toDecimal(minorUnits));
+        }
+    }
+
+    class Deserializer extends JsonDeserializer<Long> {
+
+        @Override
+        public Long deserialize(JsonParser parser, DeserializationContext context)
+            throws IOException {
+            BigDecimal amount;
+            if (parser.currentToken() == JsonToken.VALUE_STRING) {
+                try {
+                    amount = new BigDecimal(parser.getText().trim());
+                } catch (NumberFormatException e) {
+                    return (Long) context.handleWeirdStringValue(Long.class, parser.getText(),
+                        "not a decimal amount");
+                }
+            } else if (parser.currentToken().isNumeric()) {
+                amount = parser.getDecimalValue();
+            } else {
+                return (Long) context.handleUnexpectedToken(Long.class, parser);
+            }
+            try {
+                return Money.toMinorUnits(amount);
+            } catch (ArithmeticException e) {
+                return (Long) context.handleWeirdNumberValue(Long.class, amount,
+                    "more than %d decimals or too large", Money.SCALE);
+            }
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.constraints.NotBlank;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Positive;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class TopUpBatchItem {
+
+    @JsonProperty("walletId")
+    @NotNull(message = "walletId should be a valid UUID")
+    public UUID walletId;
+    @JsonProperty("cardNumber")
+    @NotBlank(message = "cardNumber must not be blank")
+    public String cardNumber;
+    @JsonProperty("amount")
+    @MinorUnits
+    @Positive(message = "amount must be a positive number")
+    public long amount;
+
+    public TopUpBatchItem() {
+    }
+
+    public TopUpBatchItem(UUID walletId, String cardNumber, long amount) {
+        this.walletId = walletId;
+        this.cardNumber = cardNumber;
+        this.amount = amount;
+    }
+}
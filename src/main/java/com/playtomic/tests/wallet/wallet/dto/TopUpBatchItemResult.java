@@ -0,0 +1,18 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+@JsonInclude(Include.NON_NULL)
+public class TopUpBatchItemResult {
+    private UUID walletId;
+    private UUID transactionId;
+    private TransactionStatus status;
+    private String error;
+}
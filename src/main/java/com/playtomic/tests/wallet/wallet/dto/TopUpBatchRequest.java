@@ -0,0 +1,24 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import java.util.List;
+import lombok.Getter;
+import lombok.Setter;
+
+@Getter
+@Setter
+public class TopUpBatchRequest {
+
+    public static final int MAX_ITEMS = 10000;
+
+    @JsonProperty("items")
+    @NotEmpty(message = "items must not be empty")
+    @Size(max = MAX_ITEMS, message = "items must have at most " + MAX_ITEMS + " top-ups")
+    public List<@Valid TopUpBatchItem> items;
+
+    public TopUpBatchRequest() {
+    }
+}
@@ -0,0 +1,11 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+@AllArgsConstructor
+@Getter
+public class TopUpBatchResponse {
+    private List<TopUpBatchItemResult> results;
+}
@@ -3,7 +3,6 @@ package com.playtomic.tests.wallet.wallet.dto;
 import com.fasterxml.jackson.annotation.JsonProperty;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.Positive;
-import java.math.BigDecimal;
 import lombok.Getter;
 import lombok.Setter;
 
@@ -15,8 +14,9 @@ public class TopUpRequest {
     @NotBlank(message = "cardNumber must not be blank")
     public String cardNumber;
     @JsonProperty("amount")
+    @MinorUnits
     @Positive(message = "amount must be a positive number")
-    public BigDecimal amount;
+    public long amount;
 
     public TopUpRequest() {
     }
@@ -0,0 +1,38 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.playtomic.tests.wallet.wallet.exception.InvalidCursorError;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+import java.util.UUID;
+
+/**
+ * Position of the last transaction of a page, (createdAt, id), so the next page starts right after
+ * it. It is opaque for the clients: an URL-safe Base64 of "createdAt/id".
+ */
+public record TransactionCursor(Instant createdAt, UUID id) {
+
+    public static TransactionCursor after(TransactionResponse transaction) {
+        return new TransactionCursor(transaction.getCreatedAt(), transaction.getId());
+    }
+
+    public String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+            .encodeToString((createdAt + "/" + id).getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static TransactionCursor decode(String cursor) {
+        try {
+            String[] createdAtAndId = new String(Base64.getUrlDecoder().decode(cursor),
+                StandardCharsets.UTF_8).split("/");
+            if (createdAtAndId.length != 2) {
+                throw new InvalidCursorError("Invalid cursor");
+            }
+            return new TransactionCursor(Instant.parse(createdAtAndId[0]),
+                UUID.fromString(createdAtAndId[1]));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new InvalidCursorError("Invalid cursor");
+        }
+    }
+}
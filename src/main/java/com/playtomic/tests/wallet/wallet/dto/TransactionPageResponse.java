@@ -0,0 +1,16 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import java.util.List;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * A page of the transactions of a wallet, the newest first. The next page is requested with the
+ * nextCursor, which is null on the last page.
+ */
+@AllArgsConstructor
+@Getter
+public class TransactionPageResponse {
+    private List<TransactionResponse> transactions;
+    private String nextCursor;
+}
@@ -0,0 +1,26 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class TransactionResponse {
+    private UUID id;
+    private UUID walletId;
+    @MinorUnits
+    private long amount;
+    private TransactionStatus status;
+    private Instant createdAt;
+
+    public static TransactionResponse from(Transaction transaction) {
+        return new TransactionResponse(transaction.getId(), transaction.getWallet().getId(),
+            transaction.getAmount(), transaction.getStatus(), transaction.getCreatedAt());
+    }
+}
@@ -0,0 +1,34 @@
+package com.playtomic.tests.wallet.wallet.dto;
+
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.WalletEventType;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+
+/**
+ * A change of a Wallet, as published to the downstream systems. The id is unique, so the consumers
+ * can discard the events received twice by it, but it is not an ordering: every instance takes its
+ * ids from the sequence in blocks and commits them in any order.
+ *
+ * @see com.playtomic.tests.wallet.wallet.service.OutboxRelay
+ */
+@AllArgsConstructor
+@NoArgsConstructor
+@Getter
+public class WalletEvent {
+    private long id;
+    private WalletEventType type;
+    private UUID walletId;
+    private UUID transactionId;
+    @MinorUnits
+    private long amount;
+    private Instant occurredAt;
+
+    public static WalletEvent from(OutboxEvent event) {
+        return new WalletEvent(event.getId(), event.getType(), event.getWalletId(),
+            event.getTransactionId(), event.getAmount(), event.getCreatedAt());
+    }
+}
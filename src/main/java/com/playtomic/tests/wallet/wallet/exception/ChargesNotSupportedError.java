@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class ChargesNotSupportedError extends RuntimeException {
+
+    public ChargesNotSupportedError(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class GetTransactionError extends RuntimeException {
+
+    public GetTransactionError(String message) {
+        super(message);
+    }
+
+}
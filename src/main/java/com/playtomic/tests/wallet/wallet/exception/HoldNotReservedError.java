@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class HoldNotReservedError extends RuntimeException {
+
+    public HoldNotReservedError(String message) {
+        super(message);
+    }
+
+}
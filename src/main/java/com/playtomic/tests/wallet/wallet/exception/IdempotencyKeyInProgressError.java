@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class IdempotencyKeyInProgressError extends RuntimeException {
+
+    public IdempotencyKeyInProgressError(String message) {
+        super(message);
+    }
+
+}
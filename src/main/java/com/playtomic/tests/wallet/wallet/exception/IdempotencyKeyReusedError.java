@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class IdempotencyKeyReusedError extends RuntimeException {
+
+    public IdempotencyKeyReusedError(String message) {
+        super(message);
+    }
+
+}
@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class InsufficientFundsError extends RuntimeException {
+
+    public InsufficientFundsError(String message) {
+        super(message);
+    }
+
+}
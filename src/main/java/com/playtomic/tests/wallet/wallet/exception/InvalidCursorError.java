@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class InvalidCursorError extends RuntimeException {
+
+    public InvalidCursorError(String message) {
+        super(message);
+    }
+
+}
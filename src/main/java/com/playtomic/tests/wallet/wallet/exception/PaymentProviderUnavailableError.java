@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class PaymentProviderUnavailableError extends RuntimeException {
+
+    public PaymentProviderUnavailableError(String message) {
+        super(message);
+    }
+
+}
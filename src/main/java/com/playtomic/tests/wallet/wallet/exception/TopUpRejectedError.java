@@ -0,0 +1,9 @@
+package com.playtomic.tests.wallet.wallet.exception;
+
+public class TopUpRejectedError extends RuntimeException {
+
+    public TopUpRejectedError(String message) {
+        super(message);
+    }
+
+}
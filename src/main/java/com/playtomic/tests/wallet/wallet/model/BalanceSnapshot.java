@@ -0,0 +1,43 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Version;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * Sum of the ledger entries of a Wallet created before coveredUntil. The balance is the snapshot
+ * plus the entries created from coveredUntil on.
+ */
+@Entity
+@Getter
+@Setter
+public class BalanceSnapshot {
+
+    @Id
+    private UUID walletId;
+    // Null until inserted, so two compactions creating the first snapshot of a wallet conflict
+    @Version
+    private Long version;
+    @Column(nullable = false)
+    private long amount;
+    /**
+     * Number of entries summed, so the number of entries of the balance grows with every entry.
+     */
+    @Column(nullable = false)
+    private long entries;
+    @Column(nullable = false)
+    private Instant coveredUntil;
+
+    public BalanceSnapshot() {
+    }
+
+    public BalanceSnapshot(UUID walletId) {
+        this.walletId = walletId;
+        this.coveredUntil = Instant.EPOCH;
+    }
+}
@@ -0,0 +1,52 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * An amount reserved from a Wallet. It is subtracted from the Wallet when reserved, so it can't be
+ * spent twice, and then it is either captured (a charge of the Wallet) or given back to the Wallet
+ * when released or expired.
+ */
+@Entity
+// The reserved holds are scheduled to expire at start up, read from the index
+@Table(indexes = @Index(name = "idx_hold_status_expires_at", columnList = "status, expires_at"))
+@Getter
+@Setter
+public class Hold {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    @Column(name = "wallet_id", nullable = false, updatable = false)
+    private UUID walletId;
+    @Column(nullable = false, updatable = false)
+    private long amount;
+    @Column(nullable = false)
+    private HoldStatus status;
+    @Column(name = "expires_at", nullable = false, updatable = false)
+    private Instant expiresAt;
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public Hold() {
+    }
+
+    public Hold(UUID walletId, long amount, Instant expiresAt) {
+        this.walletId = walletId;
+        this.amount = amount;
+        this.status = HoldStatus.RESERVED;
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,8 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+public enum HoldStatus {
+    RESERVED,
+    CAPTURED,
+    RELEASED,
+    EXPIRED
+}
@@ -0,0 +1,41 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Version;
+import java.time.Instant;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A request sent with an Idempotency-Key, and its response once completed.
+ */
+@Entity
+@Getter
+@Setter
+public class IdempotentRequest {
+
+    /**
+     * The Idempotency-Key, prefixed with the scope of the request (the wallet).
+     */
+    @Id
+    private String id;
+    // Null until inserted, so saving a new request always inserts it (and fails if the key exists)
+    @Version
+    private Long version;
+    /**
+     * Hash of the request, to detect a key reused with another request.
+     */
+    @Column(nullable = false)
+    private String requestHash;
+    @Column(nullable = false)
+    private IdempotentRequestStatus status;
+    @Column(length = 4000)
+    private String response;
+    @Column(nullable = false)
+    private Instant createdAt;
+
+    public IdempotentRequest() {
+    }
+}
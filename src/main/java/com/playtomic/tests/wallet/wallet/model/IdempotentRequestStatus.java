@@ -0,0 +1,6 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+public enum IdempotentRequestStatus {
+    IN_PROGRESS,
+    COMPLETED
+}
@@ -0,0 +1,44 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * An amount credited to a Wallet by a successful transaction. The entries are only inserted, never
+ * updated nor deleted, so they are the history of how the balance was reached.
+ */
+@Entity
+// The balance sums the entries of a wallet created after its snapshot, read from the index
+@Table(indexes = @Index(name = "idx_ledger_entry_wallet_created_at",
+    columnList = "wallet_id, created_at, amount"))
+@Getter
+@Setter
+public class LedgerEntry {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    @Column(name = "wallet_id", nullable = false, updatable = false)
+    private UUID walletId;
+    // A transaction is credited only once
+    @Column(nullable = false, updatable = false, unique = true)
+    private UUID transactionId;
+    @Column(nullable = false, updatable = false)
+    private long amount;
+    @CreationTimestamp
+    @Column(name = "created_at", nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public LedgerEntry() {
+    }
+}
@@ -0,0 +1,31 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import java.math.BigDecimal;
+
+/**
+ * The amounts are kept as a {@code long} of minor units (cents of euro), in the entities, in the
+ * database and in the arithmetic of the services, so adding an amount to a balance allocates
+ * nothing. They are decimals only in the JSON of the API and of Stripe.
+ */
+public final class Money {
+
+    /**
+     * Decimal digits of the minor unit of the currency.
+     */
+    public static final int SCALE = 2;
+
+    private Money() {
+    }
+
+    /**
+     * @throws ArithmeticException if the amount has more decimals than the currency or does not
+     * fit in a long
+     */
+    public static long toMinorUnits(BigDecimal amount) {
+        return amount.movePointRight(SCALE).longValueExact();
+    }
+
+    public static BigDecimal toDecimal(long minorUnits) {
+        return BigDecimal.valueOf(minorUnits, SCALE);
+    }
+}
@@ -0,0 +1,52 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.SequenceGenerator;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * A change of a Wallet waiting to be published. It is written in the database transaction of the
+ * change and deleted once published.
+ */
+@Entity
+@Getter
+@Setter
+public class OutboxEvent {
+
+    // Hibernate takes the ids in blocks of allocationSize, so the inserts of many events are
+    // batched without a query per id. Each instance has its own block, so the ids are unique but
+    // don't follow the order of the events.
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "outbox_event_seq")
+    @SequenceGenerator(name = "outbox_event_seq", allocationSize = 50)
+    private Long id;
+    @Column(nullable = false, updatable = false)
+    private WalletEventType type;
+    @Column(nullable = false, updatable = false)
+    private UUID walletId;
+    @Column(updatable = false)
+    private UUID transactionId;
+    @Column(nullable = false, updatable = false)
+    private long amount;
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public OutboxEvent() {
+    }
+
+    public OutboxEvent(WalletEventType type, UUID walletId, UUID transactionId, long amount) {
+        this.type = type;
+        this.walletId = walletId;
+        this.transactionId = transactionId;
+        this.amount = amount;
+    }
+}
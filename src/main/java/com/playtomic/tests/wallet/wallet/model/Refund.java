@@ -0,0 +1,63 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
+import java.time.Instant;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
+
+/**
+ * The refund of the payment of a top-up that charged the card but could not credit the Wallet. It
+ * is PENDING until the payment is refunded, or FAILED when it runs out of attempts and has to be
+ * reviewed.
+ */
+@Entity
+@Table(indexes = {
+    // The queue is drained reading the pending refunds in order of their next attempt
+    @Index(name = "idx_refund_status_next_attempt_at", columnList = "status, next_attempt_at"),
+    // A transaction is refunded only once
+    @Index(name = "idx_refund_transaction_id", columnList = "transaction_id", unique = true)})
+@Getter
+@Setter
+public class Refund {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    @Column(name = "transaction_id", nullable = false, updatable = false)
+    private UUID transactionId;
+    @Column(name = "wallet_id", nullable = false, updatable = false)
+    private UUID walletId;
+    @Column(nullable = false, updatable = false)
+    private String paymentId;
+    @Column(nullable = false, updatable = false)
+    private long amount;
+    @Column(nullable = false)
+    private RefundStatus status;
+    @Column(nullable = false)
+    private int attempts;
+    @Column(name = "next_attempt_at", nullable = false)
+    private Instant nextAttemptAt;
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
+
+    public Refund() {
+    }
+
+    public Refund(Transaction transaction, Instant nextAttemptAt) {
+        this.transactionId = transaction.getId();
+        this.walletId = transaction.getWallet().getId();
+        this.paymentId = transaction.getPaymentId();
+        this.amount = transaction.getAmount();
+        this.status = RefundStatus.PENDING;
+        this.nextAttemptAt = nextAttemptAt;
+    }
+}
@@ -0,0 +1,7 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+public enum RefundStatus {
+    PENDING,
+    REFUNDED,
+    FAILED
+}
@@ -5,15 +5,25 @@ import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
 import jakarta.persistence.JoinColumn;
 import jakarta.persistence.ManyToOne;
-import java.math.BigDecimal;
+import jakarta.persistence.Table;
+import java.time.Instant;
 import java.util.Objects;
 import java.util.UUID;
 import lombok.Getter;
 import lombok.Setter;
+import org.hibernate.annotations.CreationTimestamp;
 
 @Entity
+@Table(indexes = {
+    // The reconciliation reads the stuck transactions of a status in order of creation
+    @Index(name = "idx_transaction_status_created_at", columnList = "status, created_at, id"),
+    // The history of a wallet in order of creation. It also has the columns of the history
+    // response, so a page is read from the index without visiting the table.
+    @Index(name = "idx_transaction_wallet_created_at",
+        columnList = "wallet_id, created_at, id, status, amount")})
 @Getter
 @Setter
 public class Transaction {
@@ -25,10 +35,13 @@ public class Transaction {
     @JoinColumn(name = "wallet_id")
     private Wallet wallet;
     @Column(nullable = false)
-    private BigDecimal amount;
+    private long amount;
     private String paymentId;
     @Column(nullable = false)
     private TransactionStatus status;
+    @CreationTimestamp
+    @Column(nullable = false, updatable = false)
+    private Instant createdAt;
 
     public Transaction() {
     }
@@ -43,7 +56,7 @@ public class Transaction {
         }
         Transaction that = (Transaction) o;
         return Objects.equals(getId(), that.getId()) && Objects.equals(getWallet(),
-            that.getWallet()) && Objects.equals(getAmount(), that.getAmount())
+            that.getWallet()) && getAmount() == that.getAmount()
             && Objects.equals(getPaymentId(), that.getPaymentId())
             && getStatus() == that.getStatus();
     }
@@ -6,7 +6,6 @@ import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
 import jakarta.persistence.Version;
-import java.math.BigDecimal;
 import java.util.Objects;
 import java.util.UUID;
 import lombok.AllArgsConstructor;
@@ -29,7 +28,7 @@ public class Wallet {
     @Column(nullable = false, unique = true)
     private UUID userId;
     @Column(nullable = false)
-    private BigDecimal amount;
+    private long amount;
 
     @Override
     public boolean equals(Object o) {
@@ -40,7 +39,7 @@ public class Wallet {
             return false;
         }
         Wallet wallet = (Wallet) o;
-        return amount.equals(wallet.amount) && Objects.equals(userId, wallet.userId)
+        return amount == wallet.amount && Objects.equals(userId, wallet.userId)
             && Objects.equals(id, wallet.id);
     }
 
@@ -0,0 +1,7 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+public enum WalletEventType {
+    CREATED,
+    TOPPED_UP,
+    TOP_UP_FAILED
+}
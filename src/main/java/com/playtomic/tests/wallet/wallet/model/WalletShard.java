@@ -0,0 +1,47 @@
+package com.playtomic.tests.wallet.wallet.model;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.GeneratedValue;
+import jakarta.persistence.GenerationType;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import jakarta.persistence.UniqueConstraint;
+import java.util.UUID;
+import lombok.Getter;
+import lombok.Setter;
+
+/**
+ * A part of the balance of a hot Wallet, updated independently of the Wallet row and of the other
+ * shards. The Wallet row is the shard 0, so a Wallet without contention has no shards.
+ */
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_wallet_shard_wallet_shard",
+    columnNames = {"wallet_id", "shard"}))
+@Getter
+@Setter
+public class WalletShard {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.UUID)
+    private UUID id;
+    @Column(name = "wallet_id", nullable = false, updatable = false)
+    private UUID walletId;
+    @Column(nullable = false, updatable = false)
+    private int shard;
+    @Column(nullable = false)
+    private long amount;
+    /**
+     * Number of additions, so the version of the balance grows with every top-up of any shard.
+     */
+    @Column(nullable = false)
+    private long version;
+
+    public WalletShard() {
+    }
+
+    public WalletShard(UUID walletId, int shard) {
+        this.walletId = walletId;
+        this.shard = shard;
+    }
+}
@@ -0,0 +1,8 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.BalanceSnapshot;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+public interface BalanceSnapshotRepository extends JpaRepository<BalanceSnapshot, UUID> {
+}
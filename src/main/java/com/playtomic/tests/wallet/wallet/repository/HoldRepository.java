@@ -0,0 +1,47 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.Hold;
+import com.playtomic.tests.wallet.wallet.model.HoldStatus;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Every change of the status of a Hold is conditional on it being still RESERVED, so concurrent
+ * captures, releases and expirations of the same Hold apply only once.
+ */
+public interface HoldRepository extends JpaRepository<Hold, UUID> {
+
+    List<Hold> findAllByStatus(HoldStatus status);
+
+    /**
+     * @return 0 if the Hold of the Wallet is not RESERVED or it has expired
+     */
+    @Transactional
+    @Modifying
+    @Query("update Hold h set h.status = CAPTURED where h.id = :id and h.walletId = :walletId"
+        + " and h.status = RESERVED and h.expiresAt > :now")
+    int capture(UUID id, UUID walletId, Instant now);
+
+    /**
+     * @return 0 if the Hold of the Wallet is not RESERVED
+     */
+    @Transactional
+    @Modifying
+    @Query("update Hold h set h.status = RELEASED where h.id = :id and h.walletId = :walletId"
+        + " and h.status = RESERVED")
+    int release(UUID id, UUID walletId);
+
+    /**
+     * @return 0 if the Hold is not RESERVED or it has not expired yet
+     */
+    @Transactional
+    @Modifying
+    @Query("update Hold h set h.status = EXPIRED where h.id = :id and h.status = RESERVED"
+        + " and h.expiresAt <= :now")
+    int expire(UUID id, Instant now);
+}
@@ -0,0 +1,45 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequest;
+import java.time.Instant;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface IdempotentRequestRepository extends JpaRepository<IdempotentRequest, String> {
+
+    @Transactional
+    @Modifying
+    @Query("update IdempotentRequest r set r.status ="
+        + " com.playtomic.tests.wallet.wallet.model.IdempotentRequestStatus.COMPLETED,"
+        + " r.response = :response where r.id = :id")
+    int complete(String id, String response);
+
+    /**
+     * Takes over a request left in progress (by an instance that stopped), if no other instance
+     * has taken it over since it was read, restarting its lease.
+     *
+     * @return 1 if taken over, 0 otherwise
+     */
+    @Transactional
+    @Modifying
+    @Query("update IdempotentRequest r set r.version = r.version + 1, r.createdAt = :now"
+        + " where r.id = :id and r.version = :version and r.status ="
+        + " com.playtomic.tests.wallet.wallet.model.IdempotentRequestStatus.IN_PROGRESS")
+    int takeOver(String id, long version, Instant now);
+
+    /**
+     * Deletes the request in progress, unless another instance has taken it over.
+     */
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotentRequest r where r.id = :id and r.version = :version"
+        + " and r.status = com.playtomic.tests.wallet.wallet.model.IdempotentRequestStatus.IN_PROGRESS")
+    int release(String id, long version);
+
+    @Transactional
+    @Modifying
+    @Query("delete from IdempotentRequest r where r.createdAt < :createdBefore")
+    int deleteCreatedBefore(Instant createdBefore);
+}
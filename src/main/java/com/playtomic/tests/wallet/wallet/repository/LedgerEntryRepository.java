@@ -0,0 +1,44 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.LedgerEntry;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+
+public interface LedgerEntryRepository extends JpaRepository<LedgerEntry, UUID> {
+
+    /**
+     * Sum and number of some ledger entries of a wallet.
+     */
+    interface Sum {
+
+        long getAmount();
+
+        long getEntries();
+    }
+
+    /**
+     * Entries of the wallet created from the given instant on, the tail after its snapshot.
+     */
+    @Query("select coalesce(sum(e.amount), 0) as amount, count(e) as entries from LedgerEntry e"
+        + " where e.walletId = :walletId and e.createdAt >= :from")
+    Sum sumFrom(UUID walletId, Instant from);
+
+    @Query("select coalesce(sum(e.amount), 0) as amount, count(e) as entries from LedgerEntry e"
+        + " where e.walletId = :walletId and e.createdAt >= :from and e.createdAt < :to")
+    Sum sumBetween(UUID walletId, Instant from, Instant to);
+
+    /**
+     * Wallets with at least minEntries entries created after their snapshot and before the given
+     * instant.
+     */
+    @Query("select e.walletId from LedgerEntry e"
+        + " left join BalanceSnapshot s on s.walletId = e.walletId"
+        + " where e.createdAt < :coveredUntil"
+        + " and (s.walletId is null or e.createdAt >= s.coveredUntil)"
+        + " group by e.walletId having count(e) >= :minEntries")
+    List<UUID> findWalletsToCompact(Instant coveredUntil, long minEntries, Limit limit);
+}
@@ -0,0 +1,20 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import jakarta.persistence.LockModeType;
+import java.util.List;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+
+public interface OutboxEventRepository extends JpaRepository<OutboxEvent, Long> {
+
+    /**
+     * The oldest events, locked until the end of the database transaction, so the relays of other
+     * instances wait instead of publishing them again.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select e from OutboxEvent e order by e.id")
+    List<OutboxEvent> findOldestForUpdate(Limit limit);
+}
@@ -0,0 +1,180 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.RefundStatus;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import java.util.UUID;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.lang.Nullable;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.r2dbc.core.DatabaseClient.GenericExecuteSpec;
+import org.springframework.stereotype.Repository;
+import reactor.core.publisher.Mono;
+
+/**
+ * The rows read and written by the endpoints of the reactive mode (wallet, transaction, refund
+ * and outbox_event), with R2DBC. The statements are the ones Hibernate runs for the entities, so
+ * the rows are the same whichever mode wrote them: the enums are stored by ordinal and the
+ * creation timestamps are taken from the database clock.
+ *
+ * It doesn't join the JPA transactions: the writes that must be atomic are grouped with the
+ * reactive TransactionalOperator.
+ */
+@Repository
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveWalletRepository {
+
+    private final DatabaseClient databaseClient;
+
+    public Mono<Wallet> findById(UUID id) {
+        return databaseClient.sql("select id, version, user_id, amount from wallet where id = :id")
+            .bind("id", id)
+            .map((row, metadata) -> new Wallet(row.get("id", UUID.class),
+                row.get("version", Long.class), row.get("user_id", UUID.class),
+                row.get("amount", Long.class)))
+            .one();
+    }
+
+    public Mono<Void> insert(Wallet wallet) {
+        return databaseClient.sql("insert into wallet (id, version, user_id, amount)"
+                + " values (:id, :version, :userId, :amount)")
+            .bind("id", wallet.getId())
+            .bind("version", wallet.getVersion())
+            .bind("userId", wallet.getUserId())
+            .bind("amount", wallet.getAmount())
+            .then();
+    }
+
+    /**
+     * Sets the amount of the Wallet if it is still in the given version, as
+     * {@link WalletRepository#updateAmount}.
+     *
+     * @return 0 if the Wallet has been updated by someone else
+     */
+    public Mono<Long> updateAmount(UUID id, long amount, long version) {
+        return databaseClient.sql("update wallet set amount = :amount, version = version + 1"
+                + " where id = :id and version = :version")
+            .bind("amount", amount)
+            .bind("id", id)
+            .bind("version", version)
+            .fetch()
+            .rowsUpdated();
+    }
+
+    public Mono<Void> insertTransaction(Transaction transaction) {
+        return databaseClient.sql("insert into transaction (id, wallet_id, amount, status,"
+                + " created_at) values (:id, :walletId, :amount, :status, current_timestamp)")
+            .bind("id", transaction.getId())
+            .bind("walletId", transaction.getWallet().getId())
+            .bind("amount", transaction.getAmount())
+            .bind("status", transaction.getStatus().ordinal())
+            .then();
+    }
+
+    public Mono<Long> updateTransactionStatus(UUID id, TransactionStatus status,
+        @Nullable String paymentId) {
+        return bindNullable(databaseClient.sql("update transaction set status = :status,"
+                + " payment_id = :paymentId where id = :id")
+                .bind("status", status.ordinal())
+                .bind("id", id), "paymentId", paymentId, String.class)
+            .fetch()
+            .rowsUpdated();
+    }
+
+    /**
+     * Changes the status only if the transaction still has the expected one, as
+     * {@link TransactionRepository#updateStatusIf}.
+     *
+     * @return 0 if the transaction no longer has the expected status
+     */
+    public Mono<Long> updateTransactionStatusIf(UUID id, TransactionStatus expected,
+        TransactionStatus status) {
+        return databaseClient.sql("update transaction set status = :status"
+                + " where id = :id and status = :expected")
+            .bind("status", status.ordinal())
+            .bind("id", id)
+            .bind("expected", expected.ordinal())
+            .fetch()
+            .rowsUpdated();
+    }
+
+    /**
+     * Writes the payment of the charged transaction (PROCESSED) only if it is still INITIATED, as
+     * {@link TransactionRepository#markProcessed}.
+     *
+     * @return 0 if the transaction is no longer INITIATED
+     */
+    public Mono<Long> markProcessed(UUID id, String paymentId) {
+        return databaseClient.sql("update transaction set status = :processed,"
+                + " payment_id = :paymentId where id = :id and status = :initiated")
+            .bind("processed", TransactionStatus.PROCESSED.ordinal())
+            .bind("paymentId", paymentId)
+            .bind("id", id)
+            .bind("initiated", TransactionStatus.INITIATED.ordinal())
+            .fetch()
+            .rowsUpdated();
+    }
+
+    /**
+     * Marks the charged transaction as FAILED only if it is still INITIATED or PROCESSED, as
+     * {@link TransactionRepository#failCharged}.
+     *
+     * @return 0 if the transaction is no longer INITIATED nor PROCESSED
+     */
+    public Mono<Long> failCharged(UUID id, String paymentId) {
+        return databaseClient.sql("update transaction set status = :failed,"
+                + " payment_id = :paymentId where id = :id"
+                + " and status in (:initiated, :processed)")
+            .bind("failed", TransactionStatus.FAILED.ordinal())
+            .bind("paymentId", paymentId)
+            .bind("id", id)
+            .bind("initiated", TransactionStatus.INITIATED.ordinal())
+            .bind("processed", TransactionStatus.PROCESSED.ordinal())
+            .fetch()
+            .rowsUpdated();
+    }
+
+    /**
+     * Queues the refund of the payment of the transaction, due now, for the RefundQueue.
+     */
+    public Mono<Void> insertRefund(Transaction transaction) {
+        return databaseClient.sql("insert into refund (id, transaction_id, wallet_id, payment_id,"
+                + " amount, status, attempts, next_attempt_at, created_at) values (:id,"
+                + " :transactionId, :walletId, :paymentId, :amount, :status, 0,"
+                + " current_timestamp, current_timestamp)")
+            .bind("id", UUID.randomUUID())
+            .bind("transactionId", transaction.getId())
+            .bind("walletId", transaction.getWallet().getId())
+            .bind("paymentId", transaction.getPaymentId())
+            .bind("amount", transaction.getAmount())
+            .bind("status", RefundStatus.PENDING.ordinal())
+            .then();
+    }
+
+    /**
+     * Every event takes its id from the sequence, instead of a block of ids as Hibernate. The
+     * blocks Hibernate takes end at the values it reads, so they don't include these ids.
+     */
+    public Mono<Void> insertEvent(OutboxEvent event) {
+        return bindNullable(databaseClient.sql("insert into outbox_event (id, type, wallet_id,"
+                + " transaction_id, amount, created_at) values (next value for outbox_event_seq,"
+                + " :type, :walletId, :transactionId, :amount, current_timestamp)")
+                .bind("type", event.getType().ordinal())
+                .bind("walletId", event.getWalletId())
+                .bind("amount", event.getAmount()), "transactionId", event.getTransactionId(),
+            UUID.class)
+            .then();
+    }
+
+    private static <T> GenericExecuteSpec bindNullable(GenericExecuteSpec spec, String name,
+        @Nullable T value, Class<T> type) {
+        return value == null ? spec.bindNull(name, type) : spec.bind(name, value);
+    }
+
+    public ReactiveWalletRepository(DatabaseClient databaseClient) {
+        this.databaseClient = databaseClient;
+    }
+}
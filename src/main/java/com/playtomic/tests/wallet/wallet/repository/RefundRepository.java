@@ -0,0 +1,62 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.Refund;
+import com.playtomic.tests.wallet.wallet.model.RefundStatus;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+/**
+ * Every change of a Refund is conditional on it being still PENDING, so a refund already
+ * completed by another worker or instance is not touched.
+ */
+public interface RefundRepository extends JpaRepository<Refund, UUID> {
+
+    List<Refund> findAllByStatus(RefundStatus status);
+
+    long countByStatus(RefundStatus status);
+
+    /**
+     * The pending refunds with their next attempt due, the oldest first. Served by the index on
+     * (status, next_attempt_at).
+     */
+    @Query("select r from Refund r where r.status = PENDING and r.nextAttemptAt <= :now"
+        + " order by r.nextAttemptAt")
+    List<Refund> findDue(Instant now, Limit limit);
+
+    /**
+     * Takes the refund for a worker, moving its next attempt to the end of the lease, so no other
+     * drain attempts it meanwhile. If the worker dies, the refund is attempted again after the
+     * lease.
+     *
+     * @return 0 if another drain took it since it was read
+     */
+    @Transactional
+    @Modifying
+    @Query("update Refund r set r.nextAttemptAt = :leaseUntil where r.id = :id"
+        + " and r.status = PENDING and r.nextAttemptAt = :nextAttemptAt")
+    int claim(UUID id, Instant nextAttemptAt, Instant leaseUntil);
+
+    @Transactional
+    @Modifying
+    @Query("update Refund r set r.status = REFUNDED, r.attempts = :attempts where r.id = :id"
+        + " and r.status = PENDING")
+    int markRefunded(UUID id, int attempts);
+
+    @Transactional
+    @Modifying
+    @Query("update Refund r set r.attempts = :attempts, r.nextAttemptAt = :nextAttemptAt"
+        + " where r.id = :id and r.status = PENDING")
+    int retryAt(UUID id, int attempts, Instant nextAttemptAt);
+
+    @Transactional
+    @Modifying
+    @Query("update Refund r set r.status = FAILED, r.attempts = :attempts where r.id = :id"
+        + " and r.status = PENDING")
+    int markFailed(UUID id, int attempts);
+}
@@ -1,14 +1,106 @@
 package com.playtomic.tests.wallet.wallet.repository;
 
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
 import com.playtomic.tests.wallet.wallet.model.Transaction;
 import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import java.time.Instant;
 import java.util.List;
 import java.util.UUID;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.lang.Nullable;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface TransactionRepository extends JpaRepository<Transaction, UUID> {
 
     <S extends Transaction> S save(S transaction);
 
     List<Transaction> findAllByStatus(TransactionStatus transactionStatus);
+
+    /**
+     * Page of the transactions with the status created before the given instant, in order of
+     * creation, starting after the (createdAt, id) of the last transaction of the previous page.
+     * Served by the index on (status, createdAt, id), so every page costs the same no matter how
+     * many transactions have been read before.
+     */
+    @Query("select t from Transaction t join fetch t.wallet"
+        + " where t.status = :status and t.createdAt < :createdBefore"
+        + " and (t.createdAt > :afterCreatedAt"
+        + " or (t.createdAt = :afterCreatedAt and t.id > :afterId))"
+        + " order by t.createdAt, t.id")
+    List<Transaction> findPageByStatusCreatedBefore(TransactionStatus status, Instant createdBefore,
+        Instant afterCreatedAt, UUID afterId, Limit limit);
+
+    /**
+     * First page of the history of the wallet, the newest first. Reads only the columns of the
+     * response, which are all in the index on (wallet_id, created_at, id, status, amount).
+     */
+    @Query("select new com.playtomic.tests.wallet.wallet.dto.TransactionResponse("
+        + "t.id, t.wallet.id, t.amount, t.status, t.createdAt)"
+        + " from Transaction t where t.wallet.id = :walletId"
+        + " order by t.createdAt desc, t.id desc")
+    List<TransactionResponse> findPageByWalletId(UUID walletId, Limit limit);
+
+    /**
+     * Next page of the history of the wallet, starting before the (createdAt, id) of the last
+     * transaction of the previous page. The redundant createdAt <= :beforeCreatedAt makes the
+     * index scan start at the cursor, so every page costs the same however deep it is.
+     */
+    @Query("select new com.playtomic.tests.wallet.wallet.dto.TransactionResponse("
+        + "t.id, t.wallet.id, t.amount, t.status, t.createdAt)"
+        + " from Transaction t where t.wallet.id = :walletId"
+        + " and t.createdAt <= :beforeCreatedAt"
+        + " and (t.createdAt < :beforeCreatedAt"
+        + " or (t.createdAt = :beforeCreatedAt and t.id < :beforeId))"
+        + " order by t.createdAt desc, t.id desc")
+    List<TransactionResponse> findPageByWalletIdBefore(UUID walletId, Instant beforeCreatedAt,
+        UUID beforeId, Limit limit);
+
+    /**
+     * Sets the status and the payment (if already charged) of the transaction without reading it
+     * first.
+     */
+    @Transactional
+    @Modifying
+    @Query("update Transaction t set t.status = :status, t.paymentId = :paymentId"
+        + " where t.id = :id")
+    int updateStatus(UUID id, TransactionStatus status, @Nullable String paymentId);
+
+    /**
+     * Changes the status only if the transaction still has the expected one, so a transaction
+     * completed by someone else meanwhile is not overwritten.
+     *
+     * @return 0 if the transaction no longer has the expected status
+     */
+    @Transactional
+    @Modifying
+    @Query("update Transaction t set t.status = :status where t.id = :id and t.status = :expected")
+    int updateStatusIf(UUID id, TransactionStatus expected, TransactionStatus status);
+
+    /**
+     * Marks as PROCESSED, with its payment, a transaction that has just charged the card, before
+     * crediting it, so the charge is known even if the credit never happens.
+     *
+     * @return 0 if the transaction is no longer INITIATED
+     */
+    @Transactional
+    @Modifying
+    @Query("update Transaction t set t.status = PROCESSED, t.paymentId = :paymentId"
+        + " where t.id = :id and t.status = INITIATED")
+    int markProcessed(UUID id, String paymentId);
+
+    /**
+     * Marks as FAILED, with its payment, a transaction that charged the card but could not be
+     * credited, only if it is still INITIATED or PROCESSED, so a top-up credited meanwhile is not
+     * refunded.
+     *
+     * @return 0 if the transaction is no longer INITIATED nor PROCESSED
+     */
+    @Transactional
+    @Modifying
+    @Query("update Transaction t set t.status = FAILED, t.paymentId = :paymentId"
+        + " where t.id = :id and t.status in (INITIATED, PROCESSED)")
+    int failCharged(UUID id, String paymentId);
 }
@@ -1,11 +1,83 @@
 package com.playtomic.tests.wallet.wallet.repository;
 
 import com.playtomic.tests.wallet.wallet.model.Wallet;
+import jakarta.persistence.LockModeType;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.Set;
 import java.util.UUID;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
 
 public interface WalletRepository extends JpaRepository<Wallet, UUID> {
 
     <S extends Wallet> S save(S wallet);
 
+    /**
+     * Reads the Wallet of the user from the unique index of userId.
+     */
+    Optional<Wallet> findByUserId(UUID userId);
+
+    /**
+     * @return the given users that have already a Wallet, read from the unique index of userId
+     */
+    @Query("select w.userId from Wallet w where w.userId in :userIds")
+    Set<UUID> findUserIdsIn(Collection<UUID> userIds);
+
+    /**
+     * Reads the Wallet locking its row until the end of the database transaction.
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select w from Wallet w where w.id = :id")
+    Optional<Wallet> findByIdForUpdate(UUID id);
+
+    /**
+     * Sets the amount of the Wallet if it is still in the given version, without reading it first.
+     *
+     * @return 0 if the Wallet has been updated by someone else
+     */
+    @Transactional
+    @Modifying
+    @Query("update Wallet w set w.amount = :amount, w.version = w.version + 1"
+        + " where w.id = :id and w.version = :version")
+    int updateAmount(UUID id, long amount, Long version);
+
+    /**
+     * Adds the amount to the Wallet in the database, whatever its version, so concurrent additions
+     * never conflict. Native because Hibernate renders the parameter of the sum with a cast that H2
+     * does not accept.
+     *
+     * @return 0 if the Wallet does not exist
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update wallet set amount = amount + :amount, version = version + 1"
+        + " where id = :id", nativeQuery = true)
+    int addAmount(UUID id, long amount);
+
+    /**
+     * Subtracts the amount from the Wallet only if it has at least that amount, checked and updated
+     * in a single statement, so concurrent debits can't take the amount below zero.
+     *
+     * @return 0 if the Wallet has not enough amount or it does not exist
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update wallet set amount = amount - :amount, version = version + 1"
+        + " where id = :id and amount >= :amount", nativeQuery = true)
+    int debit(UUID id, long amount);
+
+    /**
+     * Adds the amount of merged shards to the Wallet, and their additions to its version, so the
+     * version of the balance keeps growing.
+     */
+    @Transactional
+    @Modifying
+    @Query(value = "update wallet set amount = amount + :amount, version = version + :additions"
+        + " where id = :id", nativeQuery = true)
+    int addMerged(UUID id, long amount, long additions);
+
 }
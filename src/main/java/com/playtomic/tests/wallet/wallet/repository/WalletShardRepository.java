@@ -0,0 +1,53 @@
+package com.playtomic.tests.wallet.wallet.repository;
+
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletShard;
+import jakarta.persistence.LockModeType;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.transaction.annotation.Transactional;
+
+public interface WalletShardRepository extends JpaRepository<WalletShard, UUID> {
+
+    /**
+     * The Wallet with the amounts and versions of its shards added, read in a single statement so
+     * a merge of the shards in between can not count an amount twice or miss it.
+     */
+    @Query("select new com.playtomic.tests.wallet.wallet.model.Wallet(w.id,"
+        + " w.version + coalesce(sum(s.version), 0), w.userId,"
+        + " w.amount + coalesce(sum(s.amount), 0))"
+        + " from Wallet w left join WalletShard s on s.walletId = w.id"
+        + " where w.id = :walletId group by w.id, w.version, w.userId, w.amount")
+    Optional<Wallet> findWithShardsById(UUID walletId);
+
+    long countByWalletId(UUID walletId);
+
+    /**
+     * Adds the amount to the shard whatever its version, so concurrent additions never conflict.
+     *
+     * @return 0 if the shard does not exist, it has been merged
+     */
+    @Transactional
+    @Modifying
+    @Query("update WalletShard s set s.amount = s.amount + :amount, s.version = s.version + 1"
+        + " where s.walletId = :walletId and s.shard = :shard")
+    int addAmount(UUID walletId, int shard, long amount);
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select s from WalletShard s where s.walletId = :walletId")
+    List<WalletShard> findAllByWalletIdForUpdate(UUID walletId);
+
+    /**
+     * Page of the ids of the Wallets with shards, in order, starting after the last id of the
+     * previous page.
+     */
+    @Query("select distinct s.walletId from WalletShard s where s.walletId > :afterWalletId"
+        + " order by s.walletId")
+    List<UUID> findShardedWalletIdsAfter(UUID afterWalletId, Limit limit);
+}
@@ -0,0 +1,140 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchItemResult;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Creation of the Wallets of many users at once (the users of a new club).
+ *
+ * The users are created in chunks of {@code wallet.create.batch.chunk-size}, every chunk in its
+ * own database transaction: the users of the chunk that have already a Wallet are read with a
+ * single query, and the Wallets of the rest are inserted together, with their CREATED events. The
+ * ids of the Wallets are generated by Hibernate, not by the database, so with JDBC batching the
+ * inserts are sent in batches instead of one statement per Wallet.
+ *
+ * A user that gets a Wallet between the query and the insert (created concurrently by
+ * {@link WalletService#create}) makes the insert of its chunk fail. Then the Wallets of that chunk
+ * are inserted one at a time, so only that user is reported as a duplicate.
+ *
+ * The Wallets created are not put in the {@link WalletCache}, so an import doesn't evict the
+ * Wallets being used.
+ */
+@Service
+public class BatchCreateWalletService {
+
+    static final String REPEATED_USER = "User repeated in the batch";
+    static final String DUPLICATED_USER = "User has already a Wallet";
+
+    private final Logger log = LoggerFactory.getLogger(BatchCreateWalletService.class);
+
+    private final WalletRepository walletRepository;
+    private final WalletEvents walletEvents;
+    private final TransactionTemplate transactionTemplate;
+    private final int chunkSize;
+
+    /**
+     * @return the result of every user, in the same order
+     */
+    public List<CreateWalletBatchItemResult> create(List<UUID> userIds) {
+        Set<UUID> unique = new LinkedHashSet<>(userIds);
+        Map<UUID, UUID> created = new HashMap<>();
+        List<UUID> chunk = new ArrayList<>(chunkSize);
+        for (UUID userId : unique) {
+            chunk.add(userId);
+            if (chunk.size() == chunkSize) {
+                createChunk(chunk, created);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            createChunk(chunk, created);
+        }
+
+        log.info("Created {} wallets of {} users", created.size(), userIds.size());
+        return results(userIds, created);
+    }
+
+    private void createChunk(List<UUID> userIds, Map<UUID, UUID> created) {
+        Set<UUID> existing = walletRepository.findUserIdsIn(userIds);
+        List<Wallet> wallets = userIds.stream()
+            .filter(userId -> !existing.contains(userId))
+            .map(BatchCreateWalletService::aNewWallet)
+            .toList();
+        if (wallets.isEmpty()) {
+            return;
+        }
+
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(wallets));
+            wallets.forEach(wallet -> created.put(wallet.getUserId(), wallet.getId()));
+        } catch (DataIntegrityViolationException e) {
+            log.warn("Wallets created concurrently for the users of the batch, creating {} wallets"
+                + " one at a time", wallets.size());
+            for (Wallet wallet : wallets) {
+                createOne(wallet.getUserId(), created);
+            }
+        }
+    }
+
+    private void createOne(UUID userId, Map<UUID, UUID> created) {
+        Wallet wallet = aNewWallet(userId);
+        try {
+            transactionTemplate.executeWithoutResult(status -> insert(List.of(wallet)));
+            created.put(userId, wallet.getId());
+        } catch (DataIntegrityViolationException e) {
+            log.info("User {} has already a Wallet", userId);
+        }
+    }
+
+    private void insert(List<Wallet> wallets) {
+        walletRepository.saveAll(wallets);
+        wallets.forEach(walletEvents::created);
+    }
+
+    private static List<CreateWalletBatchItemResult> results(List<UUID> userIds,
+        Map<UUID, UUID> created) {
+        Set<UUID> reported = new LinkedHashSet<>();
+        List<CreateWalletBatchItemResult> results = new ArrayList<>(userIds.size());
+        for (UUID userId : userIds) {
+            if (!reported.add(userId)) {
+                results.add(new CreateWalletBatchItemResult(userId, null, REPEATED_USER));
+            } else if (created.containsKey(userId)) {
+                results.add(new CreateWalletBatchItemResult(userId, created.get(userId), null));
+            } else {
+                results.add(new CreateWalletBatchItemResult(userId, null, DUPLICATED_USER));
+            }
+        }
+        return results;
+    }
+
+    private static Wallet aNewWallet(UUID userId) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(0);
+        return wallet;
+    }
+
+    public BatchCreateWalletService(WalletRepository walletRepository, WalletEvents walletEvents,
+        PlatformTransactionManager transactionManager,
+        @Value("${wallet.create.batch.chunk-size:1000}") int chunkSize) {
+        this.walletRepository = walletRepository;
+        this.walletEvents = walletEvents;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.chunkSize = chunkSize;
+    }
+}
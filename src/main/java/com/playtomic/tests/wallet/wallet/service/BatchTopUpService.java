@@ -0,0 +1,361 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeUnavailableException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeCircuitBreaker;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItem;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItemResult;
+import com.playtomic.tests.wallet.wallet.model.Money;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import jakarta.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Top-ups of many Wallets at once (campaign credits).
+ *
+ * The flow is the same as {@link WalletService#topUp}, but every step is done for a chunk of
+ * {@code wallet.topup.batch.chunk-size} top-ups, one chunk after the other: the INITIATED
+ * transactions of the chunk are inserted together, its charges are executed in parallel with a
+ * bounded concurrency, and its payments are written (PROCESSED) before its Wallets are credited
+ * and its transactions confirmed, a database transaction per step. So a top-up is never left
+ * INITIATED for longer than its chunk takes, and if the service stops only the chunk in progress
+ * is left to the {@link TransactionReconciler}. With JDBC batching enabled, the inserts are sent in
+ * batches instead of one statement per top-up.
+ *
+ * As in the single top-ups, every status is changed only from the expected one, so a transaction
+ * the reconciler failed or completed meanwhile is refunded or not credited again. The amounts are
+ * added in the database (one statement per Wallet and chunk, with the sum of its top-ups), without
+ * checking the version of the Wallets, so the batch never conflicts with the top-ups of its
+ * Wallets, whatever wallet.update-strategy, and never has to be retried. If a chunk can't be
+ * credited, only its top-ups fail and their payments are refunded.
+ */
+@Service
+public class BatchTopUpService {
+
+    private final Logger log = LoggerFactory.getLogger(BatchTopUpService.class);
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final StripeService stripeService;
+    private final TransactionTemplate transactionTemplate;
+    private final ExecutorService chargeExecutor;
+    private final int chunkSize;
+    private final WalletCache walletCache;
+    private final StripeCircuitBreaker stripeCircuitBreaker;
+    private final Ledger ledger;
+    private final WalletShards walletShards;
+    private final RefundQueue refundQueue;
+    private final WalletEvents walletEvents;
+    private final ReplicaReads replicaReads;
+
+    public List<TopUpBatchItemResult> topUp(List<TopUpBatchItem> items) {
+        List<BatchTopUp> topUps = items.stream().map(BatchTopUp::new).toList();
+
+        Map<UUID, Wallet> wallets = findWallets(topUps);
+        List<BatchTopUp> pending = new ArrayList<>();
+        for (BatchTopUp topUp : topUps) {
+            Wallet wallet = wallets.get(topUp.item.getWalletId());
+            if (wallet == null) {
+                topUp.error = "Wallet not found";
+            } else {
+                topUp.transaction = anInitiatedTransaction(wallet, topUp.item.getAmount());
+                pending.add(topUp);
+            }
+        }
+
+        for (List<BatchTopUp> chunk : chunks(pending)) {
+            transactionTemplate.executeWithoutResult(status -> transactionRepository.saveAll(
+                chunk.stream().map(topUp -> topUp.transaction).toList()));
+            charge(chunk);
+            writeCharges(chunk);
+            credit(chunk);
+        }
+
+        return results(topUps);
+    }
+
+    private Map<UUID, Wallet> findWallets(List<BatchTopUp> topUps) {
+        Set<UUID> walletIds = topUps.stream().map(topUp -> topUp.item.getWalletId())
+            .collect(Collectors.toSet());
+        return walletRepository.findAllById(walletIds).stream()
+            .collect(Collectors.toMap(Wallet::getId, Function.identity()));
+    }
+
+    private void charge(List<BatchTopUp> chunk) {
+        CompletableFuture.allOf(chunk.stream()
+            .map(topUp -> CompletableFuture.runAsync(() -> charge(topUp), chargeExecutor))
+            .toArray(CompletableFuture[]::new)).join();
+    }
+
+    private void charge(BatchTopUp topUp) {
+        try {
+            Payment payment = stripeCircuitBreaker.execute(
+                () -> stripeService.charge(topUp.item.getCardNumber(),
+                    Money.toDecimal(topUp.item.getAmount())));
+            topUp.paymentId = payment.getId();
+        } catch (StripeAmountTooSmallException e) {
+            topUp.error = "Amount too small";
+        } catch (StripeUnavailableException e) {
+            topUp.error = "Payment provider not available";
+        } catch (Exception e) {
+            log.error("Failed to charge card {} with amount {} for wallet {}",
+                topUp.item.getCardNumber(), topUp.item.getAmount(), topUp.item.getWalletId(), e);
+            topUp.error = "Failed to charge card";
+        }
+    }
+
+    /**
+     * Writes the payments of the charged top-ups of the chunk (PROCESSED) and the failure of the
+     * rest, before any Wallet is credited, only if their transactions are still INITIATED. The
+     * charged ones that the reconciler failed meanwhile are refunded. If the chunk can't be
+     * written, its charged top-ups are refunded.
+     */
+    private void writeCharges(List<BatchTopUp> chunk) {
+        List<BatchTopUp> failedMeanwhile;
+        try {
+            failedMeanwhile = transactionTemplate.execute(status -> {
+                List<BatchTopUp> failed = new ArrayList<>();
+                for (BatchTopUp topUp : chunk) {
+                    Transaction transaction = topUp.transaction;
+                    if (topUp.error != null) {
+                        if (transactionRepository.updateStatusIf(transaction.getId(),
+                            TransactionStatus.INITIATED, TransactionStatus.FAILED) == 1) {
+                            walletEvents.topUpFailed(transaction);
+                        }
+                    } else if (transactionRepository.markProcessed(transaction.getId(),
+                        topUp.paymentId) == 0) {
+                        transaction.setPaymentId(topUp.paymentId);
+                        refundQueue.enqueue(transaction);
+                        failed.add(topUp);
+                    }
+                }
+                return failed;
+            });
+            chunk.forEach(topUp -> replicaReads.transactionWritten(topUp.item.getWalletId()));
+        } catch (Exception e) {
+            log.error("Failed to write the payments of {} top-ups of the batch", chunk.size(), e);
+            refund(charged(chunk), "Failed to update transaction");
+            return;
+        }
+        for (BatchTopUp topUp : chunk) {
+            Transaction transaction = topUp.transaction;
+            if (topUp.error != null || failedMeanwhile.contains(topUp)) {
+                transaction.setStatus(TransactionStatus.FAILED);
+            } else {
+                transaction.setPaymentId(topUp.paymentId);
+                transaction.setStatus(TransactionStatus.PROCESSED);
+            }
+        }
+        if (!failedMeanwhile.isEmpty()) {
+            log.warn("{} top-ups of the batch failed while charging the cards, refunding them",
+                failedMeanwhile.size());
+            failedMeanwhile.forEach(
+                topUp -> topUp.error = "Transaction failed while charging the card");
+        }
+    }
+
+    /**
+     * Confirms the charged top-ups of the chunk that are still PROCESSED, and adds their amounts to
+     * the Wallets (one update per Wallet, even if it has many top-ups in the chunk), in a database
+     * transaction. The ones the reconciler completed or refunded meanwhile are not credited. With
+     * the {@link Ledger}, the Wallets are not updated and every top-up appends an entry. With the
+     * {@link WalletShards}, the amount of every Wallet is added to one of its shards. If anything
+     * fails, the top-ups of the chunk are refunded.
+     */
+    private void credit(List<BatchTopUp> chunk) {
+        List<BatchTopUp> charged = charged(chunk);
+        if (charged.isEmpty()) {
+            return;
+        }
+        Map<UUID, Long> amountsByWallet = new HashMap<>();
+        List<BatchTopUp> confirmed;
+        try {
+            confirmed = transactionTemplate.execute(status -> {
+                List<BatchTopUp> updated = new ArrayList<>();
+                for (BatchTopUp topUp : charged) {
+                    if (transactionRepository.updateStatusIf(topUp.transaction.getId(),
+                        TransactionStatus.PROCESSED, TransactionStatus.SUCCESS) == 1) {
+                        updated.add(topUp);
+                        amountsByWallet.merge(topUp.item.getWalletId(), topUp.item.getAmount(),
+                            Long::sum);
+                    }
+                }
+                if (walletShards.isEnabled()) {
+                    amountsByWallet.forEach(walletShards::add);
+                } else if (!ledger.isEnabled()) {
+                    amountsByWallet.forEach(walletRepository::addAmount);
+                }
+                for (BatchTopUp topUp : updated) {
+                    if (ledger.isEnabled()) {
+                        ledger.append(topUp.transaction);
+                    }
+                    walletEvents.toppedUp(topUp.transaction);
+                }
+                return updated;
+            });
+        } catch (Exception e) {
+            log.error("Failed to credit {} top-ups of the batch", charged.size(), e);
+            refund(charged, "Error updating the Wallet");
+            return;
+        }
+        for (BatchTopUp topUp : charged) {
+            if (confirmed.contains(topUp)) {
+                topUp.transaction.setStatus(TransactionStatus.SUCCESS);
+            } else {
+                topUp.error = "Transaction completed by the reconciliation";
+            }
+        }
+        if (confirmed.size() < charged.size()) {
+            log.warn("{} top-ups of the batch were completed by the reconciliation meanwhile, not"
+                + " credited", charged.size() - confirmed.size());
+        }
+        try {
+            findCreditedWallets(amountsByWallet.keySet()).forEach(walletCache::putWritten);
+        } catch (Exception e) {
+            log.warn("Failed to read the wallets credited by the batch", e);
+        }
+    }
+
+    /**
+     * Marks the charged top-ups as FAILED and queues the refunds of their payments, in a database
+     * transaction, only if they are still INITIATED or PROCESSED. A PROCESSED one that is not was
+     * completed or refunded by the reconciler. An INITIATED one that is not was failed by the
+     * reconciler without knowing about its payment, so its refund is queued anyway. If this fails
+     * too, they are left to the {@link TransactionReconciler}.
+     */
+    private void refund(List<BatchTopUp> charged, String error) {
+        try {
+            List<Transaction> failed = transactionTemplate.execute(status -> {
+                List<Transaction> updated = new ArrayList<>();
+                for (BatchTopUp topUp : charged) {
+                    Transaction transaction = topUp.transaction;
+                    transaction.setPaymentId(topUp.paymentId);
+                    if (transactionRepository.failCharged(transaction.getId(),
+                        topUp.paymentId) == 1) {
+                        refundQueue.enqueue(transaction);
+                        walletEvents.topUpFailed(transaction);
+                        updated.add(transaction);
+                    } else if (transaction.getStatus() == TransactionStatus.INITIATED) {
+                        refundQueue.enqueue(transaction);
+                        updated.add(transaction);
+                    }
+                }
+                return updated;
+            });
+            charged.forEach(topUp -> replicaReads.transactionWritten(topUp.item.getWalletId()));
+            failed.forEach(transaction -> transaction.setStatus(TransactionStatus.FAILED));
+        } catch (Exception e) {
+            log.error("Failed to queue the refunds of {} top-ups of the batch", charged.size(), e);
+        }
+        for (BatchTopUp topUp : charged) {
+            topUp.error = error;
+        }
+    }
+
+    private List<Wallet> findCreditedWallets(Set<UUID> walletIds) {
+        List<Wallet> wallets = walletRepository.findAllById(walletIds);
+        if (ledger.isEnabled()) {
+            return wallets.stream().map(ledger::withBalance).toList();
+        }
+        if (walletShards.isEnabled()) {
+            return wallets.stream()
+                .map(wallet -> walletShards.findById(wallet.getId()).orElseThrow()).toList();
+        }
+        return wallets;
+    }
+
+    private List<List<BatchTopUp>> chunks(List<BatchTopUp> pending) {
+        List<List<BatchTopUp>> chunks = new ArrayList<>();
+        for (int from = 0; from < pending.size(); from += chunkSize) {
+            chunks.add(pending.subList(from, Math.min(from + chunkSize, pending.size())));
+        }
+        return chunks;
+    }
+
+    private static List<BatchTopUp> charged(List<BatchTopUp> topUps) {
+        return topUps.stream().filter(topUp -> topUp.error == null).toList();
+    }
+
+    private static Transaction anInitiatedTransaction(Wallet wallet, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setAmount(amount);
+        transaction.setWallet(wallet);
+        transaction.setStatus(TransactionStatus.INITIATED);
+        return transaction;
+    }
+
+    private static List<TopUpBatchItemResult> results(List<BatchTopUp> topUps) {
+        return topUps.stream().map(topUp -> new TopUpBatchItemResult(topUp.item.getWalletId(),
+            topUp.transaction == null ? null : topUp.transaction.getId(),
+            topUp.error == null ? TransactionStatus.SUCCESS : TransactionStatus.FAILED,
+            topUp.error)).toList();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        chargeExecutor.shutdown();
+        chargeExecutor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public BatchTopUpService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService,
+        PlatformTransactionManager transactionManager,
+        @Value("${wallet.topup.batch.charge-concurrency:16}") int chargeConcurrency,
+        @Value("${wallet.topup.batch.chunk-size:500}") int chunkSize,
+        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads,
+        WalletCache walletCache, StripeCircuitBreaker stripeCircuitBreaker, Ledger ledger,
+        WalletShards walletShards, RefundQueue refundQueue, WalletEvents walletEvents,
+        ReplicaReads replicaReads) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.stripeService = stripeService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        ThreadFactory threadFactory = virtualThreads
+            ? Thread.ofVirtual().name("batch-charge-", 1).factory()
+            : Thread.ofPlatform().name("batch-charge-", 1).daemon().factory();
+        this.chargeExecutor = Executors.newFixedThreadPool(chargeConcurrency, threadFactory);
+        this.chunkSize = chunkSize;
+        this.walletCache = walletCache;
+        this.stripeCircuitBreaker = stripeCircuitBreaker;
+        this.ledger = ledger;
+        this.walletShards = walletShards;
+        this.refundQueue = refundQueue;
+        this.walletEvents = walletEvents;
+        this.replicaReads = replicaReads;
+    }
+
+    private static class BatchTopUp {
+        private final TopUpBatchItem item;
+        private Transaction transaction;
+        private String paymentId;
+        private String error;
+
+        private BatchTopUp(TopUpBatchItem item) {
+            this.item = item;
+        }
+    }
+}
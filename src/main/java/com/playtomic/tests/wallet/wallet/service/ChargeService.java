@@ -0,0 +1,250 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.dto.HoldResponse;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.ChargesNotSupportedError;
+import com.playtomic.tests.wallet.wallet.exception.HoldNotReservedError;
+import com.playtomic.tests.wallet.wallet.exception.InsufficientFundsError;
+import com.playtomic.tests.wallet.wallet.model.Hold;
+import com.playtomic.tests.wallet.wallet.model.HoldStatus;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.HoldRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Spends the amount of the Wallets, directly with a charge or in two steps with a {@link Hold}.
+ *
+ * The amount is subtracted from the Wallet with a single conditional update (amount >= the
+ * amount), so concurrent charges can't spend more than the balance and don't wait for each other
+ * to read it. A charge and a captured hold are recorded as a SUCCESS transaction with the negative
+ * amount.
+ *
+ * The holds expire in a {@link TimerWheel} of this instance, which is advanced every
+ * {@code wallet.holds.tick}. The holds still reserved are scheduled again at start up, so the
+ * holds of a stopped instance expire when it is started again.
+ */
+@Service
+public class ChargeService {
+
+    private final Logger log = LoggerFactory.getLogger(ChargeService.class);
+
+    private final WalletRepository walletRepository;
+    private final TransactionRepository transactionRepository;
+    private final HoldRepository holdRepository;
+    private final WalletCache walletCache;
+    private final Ledger ledger;
+    private final WalletShards walletShards;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration tick;
+    private final Duration defaultHoldTtl;
+    private final TimerWheel<UUID> expirations;
+
+    public WalletResponse charge(UUID walletId, long amount) {
+        checkSupported();
+
+        transactionTemplate.executeWithoutResult(status -> {
+            debit(walletId, amount);
+            transactionRepository.save(aChargeTransaction(walletId, amount));
+        });
+
+        return WalletResponse.from(cacheBalance(walletId));
+    }
+
+    /**
+     * Subtracts the amount from the Wallet until the hold is captured, released or expired.
+     *
+     * @param ttl null for wallet.holds.default-ttl
+     */
+    public HoldResponse reserve(UUID walletId, long amount, Duration ttl) {
+        checkSupported();
+
+        Instant expiresAt = Instant.now().plus(ttl == null ? defaultHoldTtl : ttl);
+        Hold hold = transactionTemplate.execute(status -> {
+            debit(walletId, amount);
+            return holdRepository.save(new Hold(walletId, amount, expiresAt));
+        });
+        expirations.schedule(hold.getId(), hold.getExpiresAt());
+        cacheBalance(walletId);
+
+        return HoldResponse.from(hold);
+    }
+
+    /**
+     * Charges the reserved amount to the Wallet. It fails if the hold has expired, even if it has
+     * not been released yet.
+     */
+    public HoldResponse capture(UUID walletId, UUID holdId) {
+        Hold hold = transactionTemplate.execute(status -> {
+            if (holdRepository.capture(holdId, walletId, Instant.now()) == 0) {
+                throw notReserved(walletId, holdId);
+            }
+            Hold captured = holdRepository.findById(holdId).orElseThrow();
+            transactionRepository.save(aChargeTransaction(walletId, captured.getAmount()));
+            return captured;
+        });
+
+        return HoldResponse.from(hold);
+    }
+
+    /**
+     * Gives the reserved amount back to the Wallet.
+     */
+    public HoldResponse release(UUID walletId, UUID holdId) {
+        Hold hold = transactionTemplate.execute(status -> {
+            if (holdRepository.release(holdId, walletId) == 0) {
+                throw notReserved(walletId, holdId);
+            }
+            Hold released = holdRepository.findById(holdId).orElseThrow();
+            walletRepository.addAmount(walletId, released.getAmount());
+            return released;
+        });
+        cacheBalance(walletId);
+
+        return HoldResponse.from(hold);
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.holds.tick:PT1S}")
+    public void expireHolds() {
+        expireHolds(Instant.now());
+    }
+
+    /**
+     * Gives back to their Wallets the amounts of the holds expired up to the given instant. The
+     * holds captured or released meanwhile are left as they are.
+     *
+     * @return the number of holds expired
+     */
+    public int expireHolds(Instant now) {
+        int expired = 0;
+        for (UUID holdId : expirations.advance(now)) {
+            try {
+                UUID walletId = transactionTemplate.execute(status -> expire(holdId, now));
+                if (walletId != null) {
+                    cacheBalance(walletId);
+                    expired++;
+                }
+            } catch (Exception e) {
+                log.error("Failed to expire hold {}, retrying in the next tick", holdId, e);
+                expirations.schedule(holdId, now.plus(tick));
+            }
+        }
+
+        if (expired > 0) {
+            log.info("Expired {} holds", expired);
+        }
+        return expired;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void scheduleReservedHolds() {
+        List<Hold> reserved = holdRepository.findAllByStatus(HoldStatus.RESERVED);
+        reserved.forEach(hold -> expirations.schedule(hold.getId(), hold.getExpiresAt()));
+        if (!reserved.isEmpty()) {
+            log.info("Scheduled the expiration of {} reserved holds", reserved.size());
+        }
+    }
+
+    /**
+     * @return the Wallet of the hold if it has expired now, null if it was not reserved anymore
+     */
+    private UUID expire(UUID holdId, Instant now) {
+        if (holdRepository.expire(holdId, now) == 0) {
+            return null;
+        }
+        Hold hold = holdRepository.findById(holdId).orElseThrow();
+        walletRepository.addAmount(hold.getWalletId(), hold.getAmount());
+        return hold.getWalletId();
+    }
+
+    /**
+     * Subtracts the amount from the Wallet row, in the current database transaction. With the
+     * SHARDED strategy part of the balance can be in the shards, which are merged into the row
+     * when it has not enough.
+     */
+    private void debit(UUID walletId, long amount) {
+        if (walletRepository.debit(walletId, amount) == 1) {
+            return;
+        }
+        if (walletShards.isEnabled() && walletShards.merge(walletId)
+            && walletRepository.debit(walletId, amount) == 1) {
+            return;
+        }
+        if (!walletRepository.existsById(walletId)) {
+            throw new ResourceNotFoundException("Wallet not found");
+        }
+        throw new InsufficientFundsError("Insufficient funds");
+    }
+
+    private RuntimeException notReserved(UUID walletId, UUID holdId) {
+        Hold hold = holdRepository.findById(holdId)
+            .filter(found -> found.getWalletId().equals(walletId))
+            .orElseThrow(() -> new ResourceNotFoundException("Hold not found"));
+        if (hold.getStatus() == HoldStatus.RESERVED) {
+            return new HoldNotReservedError("Hold has expired");
+        }
+        return new HoldNotReservedError("Hold is already " + hold.getStatus());
+    }
+
+    private Transaction aChargeTransaction(UUID walletId, long amount) {
+        Transaction transaction = new Transaction();
+        transaction.setWallet(walletRepository.getReferenceById(walletId));
+        transaction.setAmount(-amount);
+        transaction.setStatus(TransactionStatus.SUCCESS);
+        return transaction;
+    }
+
+    private Wallet cacheBalance(UUID walletId) {
+        Wallet wallet = (walletShards.isEnabled() ? walletShards.findById(walletId)
+            : walletRepository.findById(walletId))
+            .orElseThrow(() -> new ResourceNotFoundException("Wallet not found"));
+        walletCache.putWritten(wallet);
+        return wallet;
+    }
+
+    /**
+     * With the LEDGER strategy the balance is not in the Wallet row, and the sum of the ledger
+     * can't be checked and updated in a single statement.
+     */
+    private void checkSupported() {
+        if (ledger.isEnabled()) {
+            throw new ChargesNotSupportedError(
+                "Charges are not supported with the LEDGER update strategy");
+        }
+    }
+
+    public ChargeService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, HoldRepository holdRepository,
+        WalletCache walletCache, Ledger ledger, WalletShards walletShards,
+        PlatformTransactionManager transactionManager,
+        @Value("${wallet.holds.tick:PT1S}") Duration tick,
+        @Value("${wallet.holds.ticks-per-wheel:512}") int ticksPerWheel,
+        @Value("${wallet.holds.default-ttl:PT15M}") Duration defaultHoldTtl) {
+        this.walletRepository = walletRepository;
+        this.transactionRepository = transactionRepository;
+        this.holdRepository = holdRepository;
+        this.walletCache = walletCache;
+        this.ledger = ledger;
+        this.walletShards = walletShards;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.tick = tick;
+        this.defaultHoldTtl = defaultHoldTtl;
+        this.expirations = new TimerWheel<>(tick, ticksPerWheel);
+    }
+}
@@ -0,0 +1,53 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.playtomic.tests.wallet.wallet.dto.WalletEvent;
+import jakarta.annotation.PreDestroy;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Appends the events to a file, a JSON per line, for the local environments and the consumers
+ * that tail a file. Every batch is written with a single flush.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.outbox.sink", havingValue = "file")
+public class FileWalletEventSink implements WalletEventSink {
+
+    private final ObjectMapper objectMapper;
+    private final BufferedWriter writer;
+
+    @Override
+    public synchronized void publish(List<WalletEvent> events) {
+        try {
+            for (WalletEvent event : events) {
+                writer.write(objectMapper.writeValueAsString(event));
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to write the wallet events", e);
+        }
+    }
+
+    @PreDestroy
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+
+    public FileWalletEventSink(ObjectMapper objectMapper,
+        @Value("${wallet.outbox.file:wallet-events.jsonl}") Path file) throws IOException {
+        this.objectMapper = objectMapper;
+        this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+            StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+    }
+}
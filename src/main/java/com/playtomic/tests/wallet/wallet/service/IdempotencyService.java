@@ -0,0 +1,271 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.playtomic.tests.wallet.wallet.exception.IdempotencyKeyInProgressError;
+import com.playtomic.tests.wallet.wallet.exception.IdempotencyKeyReusedError;
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequest;
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequestStatus;
+import com.playtomic.tests.wallet.wallet.repository.IdempotentRequestRepository;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HexFormat;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+/**
+ * Runs a request only once per Idempotency-Key, so a client retrying a top-up after a timeout
+ * doesn't charge the card again.
+ *
+ * <ul>
+ *     <li>The last completed responses are kept in memory (LRU), a replay is answered without
+ *     going to the database.</li>
+ *     <li>The keys are also stored in the database: the key is inserted before running the request
+ *     (so only one instance can run it) and the response is stored when it completes.</li>
+ *     <li>A duplicate arriving while the request is running in this instance waits for it and gets
+ *     the same response. If it is running in another instance, it is rejected.</li>
+ * </ul>
+ * A request that fails is not stored, the key is released so the client can retry it. A key left
+ * in progress for longer than {@code wallet.idempotency.in-progress-timeout} belongs to an
+ * instance that stopped while running it, and is taken over by the next retry. The keys older
+ * than {@code wallet.idempotency.ttl} are deleted periodically.
+ *
+ * A response that can't be stored doesn't fail its request, which has already charged the card:
+ * it is stored again every {@code wallet.idempotency.complete-retry-interval} until it is, so the
+ * key is not left in progress to be taken over by a retry that would charge the card again.
+ */
+@Service
+public class IdempotencyService {
+
+    // Version of a request inserted by this instance
+    private static final long INSERTED_VERSION = 0;
+
+    private final Logger log = LoggerFactory.getLogger(IdempotencyService.class);
+
+    private final IdempotentRequestRepository idempotentRequestRepository;
+    private final ObjectMapper objectMapper;
+    private final Duration inProgressTimeout;
+    private final Duration ttl;
+    private final Cache<String, CompletedRequest> completed;
+    private final ConcurrentMap<String, InFlightRequest> inFlight = new ConcurrentHashMap<>();
+    // Responses that failed to be stored, by key
+    private final ConcurrentMap<String, String> pendingCompletions = new ConcurrentHashMap<>();
+
+    /**
+     * @param key the Idempotency-Key, already prefixed with the scope of the request
+     * @param request the values of the request, a reused key with other values is rejected
+     */
+    public <T> T execute(String key, String request, Class<T> responseType, Supplier<T> action) {
+        String requestHash = hash(request);
+
+        CompletedRequest replay = completed.getIfPresent(key);
+        if (replay != null) {
+            checkSameRequest(replay.requestHash(), requestHash);
+            return responseType.cast(replay.response());
+        }
+
+        InFlightRequest current = new InFlightRequest(requestHash, new CompletableFuture<>());
+        InFlightRequest running = inFlight.putIfAbsent(key, current);
+        if (running != null) {
+            checkSameRequest(running.requestHash(), requestHash);
+            return responseType.cast(waitFor(running.response()));
+        }
+
+        try {
+            T response = executeOnce(key, requestHash, responseType, action);
+            completed.put(key, new CompletedRequest(requestHash, response));
+            current.response().complete(response);
+            return response;
+        } catch (RuntimeException e) {
+            current.response().completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key);
+        }
+    }
+
+    private <T> T executeOnce(String key, String requestHash, Class<T> responseType,
+        Supplier<T> action) {
+        IdempotentRequest stored = idempotentRequestRepository.findById(key).orElse(null);
+        if (stored == null) {
+            stored = insert(key, requestHash);
+        }
+        long version = INSERTED_VERSION;
+        if (stored != null) {
+            checkSameRequest(stored.getRequestHash(), requestHash);
+            if (stored.getStatus() == IdempotentRequestStatus.COMPLETED) {
+                return fromJson(stored.getResponse(), responseType);
+            }
+            takeOverIfAbandoned(stored);
+            version = stored.getVersion() + 1;
+        }
+
+        T response;
+        try {
+            response = action.get();
+        } catch (RuntimeException e) {
+            idempotentRequestRepository.release(key, version);
+            throw e;
+        }
+        complete(key, toJson(response));
+        return response;
+    }
+
+    private void complete(String key, String response) {
+        try {
+            idempotentRequestRepository.complete(key, response);
+        } catch (RuntimeException e) {
+            log.error("Failed to store the response of Idempotency-Key {}, stored again later",
+                key, e);
+            pendingCompletions.put(key, response);
+        }
+    }
+
+    /**
+     * Stores again the responses that failed to be stored, before the in-progress timeout lets
+     * another instance take their keys over.
+     */
+    @Scheduled(fixedDelayString = "${wallet.idempotency.complete-retry-interval:PT5S}",
+        initialDelayString = "${wallet.idempotency.complete-retry-interval:PT5S}")
+    public void completePendingKeys() {
+        pendingCompletions.forEach((key, response) -> {
+            try {
+                idempotentRequestRepository.complete(key, response);
+                pendingCompletions.remove(key, response);
+                log.info("Stored the response of Idempotency-Key {}", key);
+            } catch (RuntimeException e) {
+                log.warn("Failed to store the response of Idempotency-Key {} again: {}", key,
+                    e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Takes over the request in progress if its lease has expired, so a key whose instance stopped
+     * while running it is not rejected forever.
+     */
+    private void takeOverIfAbandoned(IdempotentRequest stored) {
+        Instant now = Instant.now();
+        if (stored.getCreatedAt().isAfter(now.minus(inProgressTimeout))
+            || idempotentRequestRepository.takeOver(stored.getId(), stored.getVersion(),
+                now) == 0) {
+            throw new IdempotencyKeyInProgressError(
+                "A request with this Idempotency-Key is in progress");
+        }
+        log.warn("Idempotency-Key {} in progress since {}, taken over", stored.getId(),
+            stored.getCreatedAt());
+    }
+
+    /**
+     * Deletes the keys older than the TTL, the retries of the clients can't arrive after it.
+     */
+    @Scheduled(fixedDelayString = "${wallet.idempotency.purge-interval:PT1H}",
+        initialDelayString = "${wallet.idempotency.purge-interval:PT1H}")
+    public void purgeExpiredKeys() {
+        int deleted = idempotentRequestRepository.deleteCreatedBefore(Instant.now().minus(ttl));
+        if (deleted > 0) {
+            log.info("Deleted {} expired Idempotency-Keys", deleted);
+        }
+    }
+
+    /**
+     * @return null if the key has been inserted, or the request already stored with this key
+     */
+    private IdempotentRequest insert(String key, String requestHash) {
+        IdempotentRequest idempotentRequest = new IdempotentRequest();
+        idempotentRequest.setId(key);
+        idempotentRequest.setRequestHash(requestHash);
+        idempotentRequest.setStatus(IdempotentRequestStatus.IN_PROGRESS);
+        idempotentRequest.setCreatedAt(Instant.now());
+        try {
+            idempotentRequestRepository.saveAndFlush(idempotentRequest);
+            return null;
+        } catch (DataIntegrityViolationException e) {
+            // Inserted by another instance after our read
+            return idempotentRequestRepository.findById(key).orElseThrow(() ->
+                new IdempotencyKeyInProgressError(
+                    "A request with this Idempotency-Key is in progress"));
+        }
+    }
+
+    private static Object waitFor(CompletableFuture<Object> response) {
+        try {
+            return response.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException cause) {
+                throw cause;
+            }
+            throw e;
+        }
+    }
+
+    private static void checkSameRequest(String storedHash, String requestHash) {
+        if (!storedHash.equals(requestHash)) {
+            throw new IdempotencyKeyReusedError(
+                "Idempotency-Key already used with a different request");
+        }
+    }
+
+    /**
+     * The request contains the card number, only its hash is stored.
+     */
+    static String hash(String request) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256")
+                .digest(request.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private String toJson(Object response) {
+        try {
+            return objectMapper.writeValueAsString(response);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to serialize the response {}", response, e);
+            throw new IllegalStateException("Failed to serialize the response");
+        }
+    }
+
+    private <T> T fromJson(String response, Class<T> responseType) {
+        try {
+            return objectMapper.readValue(response, responseType);
+        } catch (JsonProcessingException e) {
+            log.error("Failed to deserialize the stored response {}", response, e);
+            throw new IllegalStateException("Failed to deserialize the stored response");
+        }
+    }
+
+    public IdempotencyService(IdempotentRequestRepository idempotentRequestRepository,
+        ObjectMapper objectMapper,
+        @Value("${wallet.idempotency.cache-size:10000}") long cacheSize,
+        @Value("${wallet.idempotency.in-progress-timeout:PT1M}") Duration inProgressTimeout,
+        @Value("${wallet.idempotency.ttl:P1D}") Duration ttl) {
+        this.idempotentRequestRepository = idempotentRequestRepository;
+        this.objectMapper = objectMapper;
+        this.inProgressTimeout = inProgressTimeout;
+        this.ttl = ttl;
+        this.completed = Caffeine.newBuilder().maximumSize(cacheSize).expireAfterWrite(ttl)
+            .build();
+    }
+
+    private record CompletedRequest(String requestHash, Object response) {
+    }
+
+    private record InFlightRequest(String requestHash, CompletableFuture<Object> response) {
+    }
+}
@@ -0,0 +1,153 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.model.BalanceSnapshot;
+import com.playtomic.tests.wallet.wallet.model.LedgerEntry;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.BalanceSnapshotRepository;
+import com.playtomic.tests.wallet.wallet.repository.LedgerEntryRepository;
+import com.playtomic.tests.wallet.wallet.repository.LedgerEntryRepository.Sum;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Balances of the {@link WalletUpdateStrategy#LEDGER} strategy.
+ *
+ * Every successful top-up appends a {@link LedgerEntry} instead of updating the Wallet, so the
+ * top-ups of the same Wallet never conflict. The amount of the Wallet row is the opening balance,
+ * and the balance is the opening balance plus the {@link BalanceSnapshot} plus the entries created
+ * after the snapshot.
+ *
+ * The compaction folds the entries older than {@code wallet.ledger.compaction.settle-after} into
+ * the snapshots in the background, so the tail summed by every read stays short. The entries are
+ * kept. An entry committed more than settle-after after its creation time could be left out of the
+ * snapshots, so settle-after must be longer than any database transaction appending entries (and
+ * than the clock skew between instances).
+ */
+@Component
+public class Ledger {
+
+    private final Logger log = LoggerFactory.getLogger(Ledger.class);
+
+    private final LedgerEntryRepository ledgerEntryRepository;
+    private final BalanceSnapshotRepository balanceSnapshotRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Duration settleAfter;
+    private final long minEntries;
+    private final int pageSize;
+
+    /**
+     * @return true when the balances are kept in the ledger instead of in the Wallets
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Credits the amount of the transaction to its Wallet. It must be called in the database
+     * transaction that marks the transaction as SUCCESS.
+     */
+    public void append(Transaction transaction) {
+        LedgerEntry entry = new LedgerEntry();
+        entry.setWalletId(transaction.getWallet().getId());
+        entry.setTransactionId(transaction.getId());
+        entry.setAmount(transaction.getAmount());
+        ledgerEntryRepository.save(entry);
+    }
+
+    /**
+     * A copy of the Wallet with the balance of the ledger. Its version is the number of entries
+     * of the balance, which only grows, so the {@link WalletCache} keeps the newest balance.
+     */
+    public Wallet withBalance(Wallet wallet) {
+        BalanceSnapshot snapshot = balanceSnapshotRepository.findById(wallet.getId())
+            .orElseGet(() -> new BalanceSnapshot(wallet.getId()));
+        Sum tail = ledgerEntryRepository.sumFrom(wallet.getId(), snapshot.getCoveredUntil());
+        long amount = wallet.getAmount() + snapshot.getAmount() + tail.getAmount();
+        return new Wallet(wallet.getId(), snapshot.getEntries() + tail.getEntries(),
+            wallet.getUserId(), amount);
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.ledger.compaction.interval:PT1M}",
+        initialDelayString = "${wallet.ledger.compaction.interval:PT1M}")
+    public void compactSnapshots() {
+        if (enabled) {
+            compact(Instant.now().minus(settleAfter));
+        }
+    }
+
+    /**
+     * Moves the snapshots of the Wallets with at least min-entries entries after them up to the
+     * given instant.
+     *
+     * @return the number of snapshots moved
+     */
+    public int compact(Instant coveredUntil) {
+        int compacted = 0;
+        List<UUID> walletIds;
+        int compactedInPage;
+        do {
+            walletIds = ledgerEntryRepository.findWalletsToCompact(coveredUntil, minEntries,
+                Limit.of(pageSize));
+            compactedInPage = 0;
+            for (UUID walletId : walletIds) {
+                try {
+                    transactionTemplate.executeWithoutResult(
+                        status -> compact(walletId, coveredUntil));
+                    compactedInPage++;
+                } catch (OptimisticLockingFailureException | DataIntegrityViolationException e) {
+                    log.warn("Snapshot of wallet {} moved by someone else, skipped", walletId);
+                }
+            }
+            compacted += compactedInPage;
+        } while (walletIds.size() == pageSize && compactedInPage > 0);
+
+        if (compacted > 0) {
+            log.info("Compacted the ledger of {} wallets up to {}", compacted, coveredUntil);
+        }
+        return compacted;
+    }
+
+    private void compact(UUID walletId, Instant coveredUntil) {
+        BalanceSnapshot snapshot = balanceSnapshotRepository.findById(walletId)
+            .orElseGet(() -> new BalanceSnapshot(walletId));
+        if (!coveredUntil.isAfter(snapshot.getCoveredUntil())) {
+            return;
+        }
+        Sum entries = ledgerEntryRepository.sumBetween(walletId, snapshot.getCoveredUntil(),
+            coveredUntil);
+        snapshot.setAmount(snapshot.getAmount() + entries.getAmount());
+        snapshot.setEntries(snapshot.getEntries() + entries.getEntries());
+        snapshot.setCoveredUntil(coveredUntil);
+        balanceSnapshotRepository.save(snapshot);
+    }
+
+    public Ledger(LedgerEntryRepository ledgerEntryRepository,
+        BalanceSnapshotRepository balanceSnapshotRepository,
+        PlatformTransactionManager transactionManager,
+        @Value("${wallet.update-strategy:OPTIMISTIC}") WalletUpdateStrategy updateStrategy,
+        @Value("${wallet.ledger.compaction.settle-after:1m}") Duration settleAfter,
+        @Value("${wallet.ledger.compaction.min-entries:100}") long minEntries,
+        @Value("${wallet.ledger.compaction.page-size:500}") int pageSize) {
+        this.ledgerEntryRepository = ledgerEntryRepository;
+        this.balanceSnapshotRepository = balanceSnapshotRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = updateStrategy == WalletUpdateStrategy.LEDGER;
+        this.settleAfter = settleAfter;
+        this.minEntries = minEntries;
+        this.pageSize = pageSize;
+    }
+}
@@ -0,0 +1,26 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.dto.WalletEvent;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes every event to the "wallet.events" log, until there is a broker to publish them.
+ */
+@Component
+@ConditionalOnProperty(name = "wallet.outbox.sink", havingValue = "log", matchIfMissing = true)
+public class LogWalletEventSink implements WalletEventSink {
+
+    private final Logger log = LoggerFactory.getLogger("wallet.events");
+
+    @Override
+    public void publish(List<WalletEvent> events) {
+        for (WalletEvent event : events) {
+            log.info("{} {} wallet={} transaction={} amount={}", event.getId(), event.getType(),
+                event.getWalletId(), event.getTransactionId(), event.getAmount());
+        }
+    }
+}
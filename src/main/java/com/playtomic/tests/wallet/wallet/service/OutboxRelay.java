@@ -0,0 +1,118 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.dto.WalletEvent;
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.List;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Publishes the events written to the outbox by {@link WalletEvents} to the
+ * {@link WalletEventSink}.
+ *
+ * Every {@code wallet.outbox.poll-interval} the outbox is read in batches of
+ * {@code wallet.outbox.batch-size}, the oldest first. Every batch is published with a single call
+ * to the sink and deleted with a single statement, in a database transaction that locks its
+ * events, so the relays of several instances don't publish the same events. The events are
+ * published at least once: if the delete fails after publishing, they are published again.
+ *
+ * The published events are counted in "wallet.outbox.published" and the time of every batch in
+ * "wallet.outbox.batch".
+ */
+@Component
+public class OutboxRelay {
+
+    private final Logger log = LoggerFactory.getLogger(OutboxRelay.class);
+
+    private final OutboxEventRepository outboxEventRepository;
+    private final WalletEventSink sink;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int batchSize;
+    private final Counter published;
+    private final Timer batchDuration;
+
+    @Scheduled(fixedDelayString = "${wallet.outbox.poll-interval:PT1S}",
+        initialDelayString = "${wallet.outbox.poll-interval:PT1S}")
+    public void relayEvents() {
+        if (enabled) {
+            try {
+                relay();
+            } catch (Exception e) {
+                log.error("Failed to publish the wallet events, retrying in the next poll", e);
+            }
+        }
+    }
+
+    /**
+     * Publishes the events in the outbox until it is empty.
+     */
+    public Report relay() {
+        long start = System.nanoTime();
+        int total = 0;
+        int relayed;
+        do {
+            relayed = batchDuration.record(() -> transactionTemplate.execute(
+                status -> relayBatch()));
+            total += relayed;
+        } while (relayed == batchSize);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        Report report = new Report(total, elapsed);
+        if (total > 0) {
+            log.debug("Published {} wallet events in {} ms ({}/s)", total, elapsed.toMillis(),
+                Math.round(report.throughput()));
+        }
+        return report;
+    }
+
+    private int relayBatch() {
+        List<OutboxEvent> batch = outboxEventRepository.findOldestForUpdate(Limit.of(batchSize));
+        if (batch.isEmpty()) {
+            return 0;
+        }
+        sink.publish(batch.stream().map(WalletEvent::from).toList());
+        outboxEventRepository.deleteAllByIdInBatch(
+            batch.stream().map(OutboxEvent::getId).toList());
+        published.increment(batch.size());
+        return batch.size();
+    }
+
+    public OutboxRelay(OutboxEventRepository outboxEventRepository, WalletEventSink sink,
+        PlatformTransactionManager transactionManager,
+        @Value("${wallet.outbox.enabled:true}") boolean enabled,
+        @Value("${wallet.outbox.batch-size:500}") int batchSize,
+        MeterRegistry meterRegistry) {
+        this.outboxEventRepository = outboxEventRepository;
+        this.sink = sink;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.published = Counter.builder("wallet.outbox.published").register(meterRegistry);
+        this.batchDuration = Timer.builder("wallet.outbox.batch").register(meterRegistry);
+    }
+
+    /**
+     * Result of a relay run.
+     */
+    public record Report(int published, Duration elapsed) {
+
+        /**
+         * @return published events per second
+         */
+        public double throughput() {
+            return elapsed.isZero() ? 0 : published * 1_000_000_000.0 / elapsed.toNanos();
+        }
+    }
+}
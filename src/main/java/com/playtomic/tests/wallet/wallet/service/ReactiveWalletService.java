@@ -0,0 +1,368 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeUnavailableException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeCircuitBreaker;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.CreateWalletError;
+import com.playtomic.tests.wallet.wallet.exception.GetWalletError;
+import com.playtomic.tests.wallet.wallet.exception.PaymentProviderUnavailableError;
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.model.Money;
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletEventType;
+import com.playtomic.tests.wallet.wallet.repository.ReactiveWalletRepository;
+import com.playtomic.tests.wallet.wallet.service.TopUpMetrics.Phase;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicBoolean;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnWebApplication.Type;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * The create, top-up and get of {@link WalletService} for the reactive mode. No thread waits for
+ * Stripe: the charge is a non-blocking call, so the top-ups waiting for it only take the memory of
+ * their state. The database is read and written with R2DBC, but r2dbc-h2 runs every statement
+ * synchronously on the subscribing thread (the event loop), so the statements do block it while
+ * they run. Only a non-blocking driver (r2dbc-postgresql, for example) would release it.
+ *
+ * The top-up follows the same steps and leaves the same rows and events: an INITIATED
+ * transaction, the charge through the {@link StripeCircuitBreaker}, its payment written
+ * (PROCESSED), and the credit of the Wallet with optimistic locking, retried with the retry
+ * operator up to {@link WalletService#MAX_WALLET_RETRIES} attempts, reading the Wallet again
+ * before each retry. If the card is charged and the credit fails, the refund is queued for the
+ * {@link RefundQueue}. The charge and the credit go on if the client disconnects.
+ * The credit always checks the version of the Wallet, whatever wallet.update-strategy, so the
+ * strategies that keep the balance out of the Wallet row (LEDGER and SHARDED) are not supported.
+ */
+@Service
+@ConditionalOnWebApplication(type = Type.REACTIVE)
+public class ReactiveWalletService {
+
+    private final Logger log = LoggerFactory.getLogger(ReactiveWalletService.class);
+
+    private final ReactiveWalletRepository walletRepository;
+    private final TransactionalOperator transactionalOperator;
+    private final StripeService stripeService;
+    private final StripeCircuitBreaker stripeCircuitBreaker;
+    private final WalletCache walletCache;
+    private final WalletIdCache walletIdCache;
+    private final TopUpMetrics topUpMetrics;
+    private final RefundQueue refundQueue;
+
+    public Mono<WalletResponse> create(UUID userId) {
+        Wallet wallet = new Wallet(UUID.randomUUID(), 0L, userId, 0);
+
+        return walletRepository.insert(wallet)
+            .then(walletRepository.insertEvent(
+                new OutboxEvent(WalletEventType.CREATED, wallet.getId(), null, 0)))
+            .as(transactionalOperator::transactional)
+            .onErrorMap(DataIntegrityViolationException.class, e -> {
+                log.error("Failed to create wallet for user {}", userId, e);
+                return new CreateWalletError(
+                    "Failed to create wallet, maybe the user has already a Wallet");
+            })
+            .then(Mono.fromSupplier(() -> {
+                walletCache.putWritten(wallet);
+                walletIdCache.put(userId, wallet.getId());
+                return WalletResponse.from(wallet);
+            }));
+    }
+
+    public Mono<WalletResponse> topUp(UUID walletId, String cardNumber, long amount) {
+        return timed(Phase.GET_WALLET, getWalletById(walletId))
+            .flatMap(wallet -> timed(Phase.CREATE_TRANSACTION, createTransaction(amount, wallet))
+                .flatMap(transaction -> detached(
+                    chargeAndCredit(transaction, wallet, cardNumber, amount)
+                        .doFinally(signal -> topUpMetrics.outcome(transaction.getStatus())))))
+            .map(WalletResponse::from);
+    }
+
+    public Mono<WalletResponse> get(UUID walletId) {
+        return Mono.justOrEmpty(walletCache.getIfPresent(walletId))
+            .switchIfEmpty(Mono.defer(() -> getWalletById(walletId)
+                .map(wallet -> {
+                    walletCache.put(wallet);
+                    return WalletResponse.from(wallet);
+                })));
+    }
+
+    private Mono<Wallet> chargeAndCredit(Transaction transaction, Wallet wallet,
+        String cardNumber, long amount) {
+        return timed(Phase.CHARGE, charge(transaction, wallet, cardNumber, amount))
+            .then(timed(Phase.UPDATE_WALLET,
+                creditChargedTransaction(transaction, wallet, amount)));
+    }
+
+    /**
+     * Runs the charge and the credit in their own subscription, so a client that disconnects
+     * (cancelling the response) doesn't stop them halfway: a charged card is always credited or
+     * refunded. The response waits for them.
+     */
+    private static <T> Mono<T> detached(Mono<T> chargeAndCredit) {
+        return Mono.fromFuture(chargeAndCredit.toFuture(), true);
+    }
+
+    private Mono<Wallet> getWalletById(UUID walletId) {
+        return walletRepository.findById(walletId)
+            .onErrorMap(e -> {
+                log.error("Failed to get wallet {}", walletId, e);
+                return new GetWalletError("Failed to get wallet");
+            })
+            .switchIfEmpty(Mono.error(() -> new ResourceNotFoundException("Wallet not found")));
+    }
+
+    private Mono<Transaction> createTransaction(long amount, Wallet wallet) {
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.randomUUID());
+        transaction.setAmount(amount);
+        transaction.setWallet(wallet);
+        transaction.setStatus(TransactionStatus.INITIATED);
+
+        return walletRepository.insertTransaction(transaction)
+            .onErrorMap(e -> {
+                log.error("Failed to update transaction {}", transaction, e);
+                return new ProcessingChargeError("Failed to update transaction");
+            })
+            .thenReturn(transaction);
+    }
+
+    /**
+     * The payment is written (PROCESSED) before crediting the Wallet, as in {@link WalletService},
+     * so it is not lost if the service stops in between. If it can't be written, or the
+     * {@link TransactionReconciler} failed the transaction while charging the card, it is refunded.
+     */
+    private Mono<Void> charge(Transaction transaction, Wallet wallet, String cardNumber,
+        long amount) {
+        return Mono.fromFuture(() -> stripeCircuitBreaker.executeAsync(
+                () -> stripeService.chargeAsync(cardNumber, Money.toDecimal(amount))))
+            .map(Payment::getId)
+            .onErrorResume(e -> failTransaction(transaction)
+                .then(Mono.error(chargeError(e, wallet, cardNumber, amount))))
+            .flatMap(paymentId -> {
+                transaction.setPaymentId(paymentId);
+                return writePayment(transaction);
+            });
+    }
+
+    private Mono<Void> writePayment(Transaction transaction) {
+        return walletRepository.markProcessed(transaction.getId(), transaction.getPaymentId())
+            .onErrorResume(e -> {
+                log.error("Failed to write the payment of transaction {}", transaction, e);
+                return refundChargedTransaction(transaction)
+                    .then(Mono.error(new ProcessingChargeError("Failed to update transaction")));
+            })
+            .flatMap(processed -> {
+                if (processed == 0) {
+                    log.warn("Transaction {} of wallet {} failed while charging the card,"
+                        + " refunding it", transaction.getId(), transaction.getWallet().getId());
+                    return refundFailedTransaction(transaction).then(Mono.error(
+                        new ProcessingChargeError("Transaction failed while charging the card")));
+                }
+                transaction.setStatus(TransactionStatus.PROCESSED);
+                return Mono.empty();
+            });
+    }
+
+    private RuntimeException chargeError(Throwable error, Wallet wallet, String cardNumber,
+        long amount) {
+        if (error instanceof StripeAmountTooSmallException) {
+            return new ProcessingChargeError("Amount too small");
+        }
+        if (error instanceof StripeUnavailableException) {
+            log.warn("Stripe not available, top-up of wallet {} rejected", wallet.getId());
+            return new PaymentProviderUnavailableError(
+                "Payment provider not available, try again later");
+        }
+        log.error("Failed to charge card {} with amount {} for wallet {}", cardNumber, amount,
+            wallet, error);
+        return new ProcessingChargeError("Failed to charge card");
+    }
+
+    /**
+     * The card has been charged: if the amount can't be credited to the Wallet, the payment is
+     * refunded.
+     */
+    private Mono<Wallet> creditChargedTransaction(Transaction transaction, Wallet wallet,
+        long amount) {
+        return addAmountRetryingOnOptimisticLocking(transaction, wallet, amount)
+            .onErrorResume(e -> refundChargedTransaction(transaction).then(Mono.error(e)));
+    }
+
+    /**
+     * The first attempt credits the Wallet read by the top-up, and every retry reads it again to
+     * credit its last version.
+     */
+    private Mono<Wallet> addAmountRetryingOnOptimisticLocking(Transaction transaction,
+        Wallet wallet, long amount) {
+        AtomicBoolean retrying = new AtomicBoolean();
+        return Mono.defer(() -> (retrying.getAndSet(true)
+                ? getWalletById(wallet.getId()) : Mono.just(wallet))
+                .flatMap(current -> updateWalletAndTransactionTransactionally(current,
+                    transaction, amount)))
+            .doOnError(OptimisticLockingFailureException.class,
+                e -> topUpMetrics.optimisticLockFailure())
+            .retryWhen(Retry.max(WalletService.MAX_WALLET_RETRIES - 1)
+                .filter(OptimisticLockingFailureException.class::isInstance)
+                .doBeforeRetry(signal -> topUpMetrics.retry())
+                // Refunded by creditChargedTransaction
+                .onRetryExhaustedThrow((spec, signal) ->
+                    new ProcessingChargeError("Error updating the Wallet")));
+    }
+
+    /**
+     * Updates the amount of the Wallet checking its version, the SUCCESS of the transaction and
+     * its event in a single database transaction. The SUCCESS is written only if the transaction
+     * is still PROCESSED, otherwise the reconciler completed or refunded it and the credit is
+     * rolled back.
+     */
+    private Mono<Wallet> updateWalletAndTransactionTransactionally(Wallet wallet,
+        Transaction transaction, long amount) {
+        Wallet credited = new Wallet(wallet.getId(), wallet.getVersion() + 1,
+            wallet.getUserId(), wallet.getAmount() + amount);
+
+        return timed(Phase.COMMIT, walletRepository.updateAmount(wallet.getId(),
+                credited.getAmount(), wallet.getVersion())
+            .flatMap(updated -> updated == 0
+                ? Mono.error(new ObjectOptimisticLockingFailureException(Wallet.class,
+                    wallet.getId()))
+                : confirmTransaction(transaction))
+            .then(walletRepository.insertEvent(new OutboxEvent(WalletEventType.TOPPED_UP,
+                wallet.getId(), transaction.getId(), transaction.getAmount())))
+            .as(transactionalOperator::transactional))
+            .onErrorMap(e -> !(e instanceof OptimisticLockingFailureException
+                || e instanceof ProcessingChargeError), e -> {
+                log.error("Failed to credit transaction {} to its wallet", transaction, e);
+                return new ProcessingChargeError("Failed to save wallet");
+            })
+            .then(Mono.fromSupplier(() -> {
+                transaction.setStatus(TransactionStatus.SUCCESS);
+                walletCache.putWritten(credited);
+                return credited;
+            }));
+    }
+
+    private Mono<Long> confirmTransaction(Transaction transaction) {
+        return walletRepository.updateTransactionStatusIf(transaction.getId(),
+                TransactionStatus.PROCESSED, TransactionStatus.SUCCESS)
+            .flatMap(confirmed -> {
+                if (confirmed == 0) {
+                    log.warn("Transaction {} was completed by the reconciliation meanwhile, not"
+                        + " credited", transaction.getId());
+                    return Mono.error(new ProcessingChargeError(
+                        "Transaction completed by the reconciliation"));
+                }
+                return Mono.just(confirmed);
+            });
+    }
+
+    /**
+     * Queues the refund of the payment of a transaction already FAILED by someone else, which
+     * doesn't know about the payment. If this fails, the payment has to be reviewed.
+     */
+    private Mono<Void> refundFailedTransaction(Transaction transaction) {
+        return walletRepository.insertRefund(transaction)
+            .as(transactionalOperator::transactional)
+            .doOnSuccess(done -> {
+                transaction.setStatus(TransactionStatus.FAILED);
+                refundQueue.enqueued(transaction);
+            })
+            .onErrorResume(e -> {
+                log.error("Failed to queue the refund of payment {} of transaction {}, review it",
+                    transaction.getPaymentId(), transaction, e);
+                return Mono.empty();
+            });
+    }
+
+    /**
+     * Marks the transaction as FAILED and queues the refund of its payment in the same database
+     * transaction, only if it is still INITIATED or PROCESSED. If this fails too, the transaction
+     * is left to the {@link TransactionReconciler}.
+     */
+    private Mono<Void> refundChargedTransaction(Transaction transaction) {
+        return walletRepository.failCharged(transaction.getId(), transaction.getPaymentId())
+            .flatMap(failed -> failed == 0 ? Mono.just(false)
+                : walletRepository.insertRefund(transaction)
+                    .then(walletRepository.insertEvent(topUpFailed(transaction)))
+                    .thenReturn(true))
+            .as(transactionalOperator::transactional)
+            .doOnNext(failed -> {
+                if (failed) {
+                    transaction.setStatus(TransactionStatus.FAILED);
+                    refundQueue.enqueued(transaction);
+                }
+            })
+            .onErrorResume(e -> {
+                log.error("Failed to queue the refund of transaction {}", transaction, e);
+                return Mono.empty();
+            })
+            .then();
+    }
+
+    /**
+     * Marks the transaction as FAILED with its event, in the same database transaction.
+     */
+    private Mono<Void> failTransaction(Transaction transaction) {
+        return walletRepository.updateTransactionStatus(transaction.getId(),
+                TransactionStatus.FAILED, transaction.getPaymentId())
+            .then(walletRepository.insertEvent(topUpFailed(transaction)))
+            .as(transactionalOperator::transactional)
+            .onErrorMap(e -> {
+                log.error("Failed to update transaction {}", transaction, e);
+                return new ProcessingChargeError("Failed to update transaction");
+            })
+            .doOnSuccess(done -> transaction.setStatus(TransactionStatus.FAILED));
+    }
+
+    private static OutboxEvent topUpFailed(Transaction transaction) {
+        return new OutboxEvent(WalletEventType.TOP_UP_FAILED, transaction.getWallet().getId(),
+            transaction.getId(), transaction.getAmount());
+    }
+
+    /**
+     * Records the time from the subscription to the end of the phase.
+     */
+    private <T> Mono<T> timed(Phase phase, Mono<T> action) {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return action.doFinally(signal -> topUpMetrics.record(phase,
+                Duration.ofNanos(System.nanoTime() - start)));
+        });
+    }
+
+    public ReactiveWalletService(ReactiveWalletRepository walletRepository,
+        TransactionalOperator transactionalOperator, StripeService stripeService,
+        StripeCircuitBreaker stripeCircuitBreaker, WalletCache walletCache,
+        WalletIdCache walletIdCache, TopUpMetrics topUpMetrics, RefundQueue refundQueue,
+        @Value("${wallet.update-strategy:OPTIMISTIC}") WalletUpdateStrategy updateStrategy) {
+        if (updateStrategy == WalletUpdateStrategy.LEDGER
+            || updateStrategy == WalletUpdateStrategy.SHARDED) {
+            throw new IllegalStateException(
+                "The reactive mode doesn't support the update strategy " + updateStrategy);
+        }
+        this.walletRepository = walletRepository;
+        this.transactionalOperator = transactionalOperator;
+        this.stripeService = stripeService;
+        this.stripeCircuitBreaker = stripeCircuitBreaker;
+        this.walletCache = walletCache;
+        this.walletIdCache = walletIdCache;
+        this.topUpMetrics = topUpMetrics;
+        this.refundQueue = refundQueue;
+    }
+}
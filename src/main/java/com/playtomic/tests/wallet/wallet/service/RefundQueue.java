@@ -0,0 +1,224 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.stripeclient.service.StripeCircuitBreaker;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.model.Refund;
+import com.playtomic.tests.wallet.wallet.model.RefundStatus;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.repository.RefundRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+/**
+ * Refunds the payments of the top-ups that charged the card but could not credit the Wallet.
+ *
+ * The refunds are queued in the database, in the same database transaction that marks the
+ * top-up as FAILED, so they survive a restart and the request thread doesn't wait for Stripe.
+ * Every {@code wallet.refunds.poll-interval} the due refunds are read in batches and refunded in
+ * parallel by a pool of {@code wallet.refunds.concurrency} workers, through the
+ * {@link StripeCircuitBreaker}. A refund that fails is attempted again after an exponential
+ * backoff with jitter, and after {@code wallet.refunds.max-attempts} it is marked FAILED and
+ * logged to be reviewed.
+ *
+ * A refund is claimed for a lease before calling Stripe, so the drains of several instances don't
+ * refund the same payment at the same time. If its result can't be saved, it is attempted again
+ * after the lease, and Stripe rejects the refund of a payment already refunded.
+ *
+ * The depth of the queue is published as the "wallet.refunds.pending" gauge and the drain rate as
+ * the "wallet.refunds.processed" counter, tagged by outcome.
+ */
+@Component
+public class RefundQueue {
+
+    private final Logger log = LoggerFactory.getLogger(RefundQueue.class);
+
+    private final RefundRepository refundRepository;
+    private final StripeService stripeService;
+    private final StripeCircuitBreaker stripeCircuitBreaker;
+    private final boolean enabled;
+    private final int batchSize;
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final Duration lease;
+    private final ExecutorService executor;
+    private final AtomicLong pending = new AtomicLong();
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+
+    /**
+     * Queues the refund of the payment of the transaction. It must be called in the database
+     * transaction that marks it as FAILED.
+     */
+    public void enqueue(Transaction transaction) {
+        refundRepository.save(new Refund(transaction, Instant.now()));
+        enqueued(transaction);
+    }
+
+    /**
+     * Counts and logs a refund queued without {@link #enqueue}, like the ones of the reactive
+     * top-ups, which are written with R2DBC.
+     */
+    public void enqueued(Transaction transaction) {
+        pending.incrementAndGet();
+        log.warn("Transaction {} of wallet {} charged with payment {} but not credited, refund"
+                + " queued", transaction.getId(), transaction.getWallet().getId(),
+            transaction.getPaymentId());
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.refunds.poll-interval:PT5S}",
+        initialDelayString = "${wallet.refunds.poll-interval:PT5S}")
+    public void drainDueRefunds() {
+        if (enabled) {
+            drain(Instant.now());
+        }
+    }
+
+    /**
+     * Attempts the refunds due at the given instant, in batches until no more are due.
+     *
+     * @return the number of refunds attempted
+     */
+    public int drain(Instant now) {
+        int attempted = 0;
+        List<Refund> batch = refundRepository.findDue(now, Limit.of(batchSize));
+        while (!batch.isEmpty()) {
+            List<CompletableFuture<Outcome>> refunds = new ArrayList<>(batch.size());
+            for (Refund refund : batch) {
+                if (refundRepository.claim(refund.getId(), refund.getNextAttemptAt(),
+                    now.plus(lease)) == 1) {
+                    refunds.add(CompletableFuture.supplyAsync(() -> refund(refund, now),
+                        executor));
+                }
+            }
+            for (CompletableFuture<Outcome> outcome : refunds) {
+                outcomes.get(outcome.join()).increment();
+            }
+            attempted += refunds.size();
+            batch = batch.size() < batchSize ? List.of()
+                : refundRepository.findDue(now, Limit.of(batchSize));
+        }
+        pending.set(refundRepository.countByStatus(RefundStatus.PENDING));
+
+        if (attempted > 0) {
+            log.info("Attempted {} refunds, {} pending", attempted, pending.get());
+        }
+        return attempted;
+    }
+
+    private Outcome refund(Refund refund, Instant now) {
+        try {
+            return attempt(refund, now);
+        } catch (Exception e) {
+            log.error("Failed to update refund {}, attempted again after the lease",
+                refund.getId(), e);
+            return Outcome.ERROR;
+        }
+    }
+
+    private Outcome attempt(Refund refund, Instant now) {
+        int attempts = refund.getAttempts() + 1;
+        try {
+            stripeCircuitBreaker.execute(() -> {
+                stripeService.refund(refund.getPaymentId());
+                return null;
+            });
+        } catch (Exception e) {
+            return retryOrFail(refund, attempts, now, e);
+        }
+        refundRepository.markRefunded(refund.getId(), attempts);
+        log.info("Refunded payment {} of transaction {}", refund.getPaymentId(),
+            refund.getTransactionId());
+        return Outcome.REFUNDED;
+    }
+
+    private Outcome retryOrFail(Refund refund, int attempts, Instant now, Exception error) {
+        if (attempts >= maxAttempts) {
+            refundRepository.markFailed(refund.getId(), attempts);
+            log.error("Failed to refund payment {} of transaction {} of wallet {} with amount {}"
+                    + " after {} attempts, review it", refund.getPaymentId(),
+                refund.getTransactionId(), refund.getWalletId(), refund.getAmount(), attempts,
+                error);
+            return Outcome.FAILED;
+        }
+        Duration backoff = backoff(attempts);
+        refundRepository.retryAt(refund.getId(), attempts, now.plus(backoff));
+        log.warn("Failed to refund payment {} of transaction {}, attempt {}, retrying in {}: {}",
+            refund.getPaymentId(), refund.getTransactionId(), attempts, backoff,
+            error.getMessage());
+        return Outcome.RETRIED;
+    }
+
+    /**
+     * Exponential and capped, with a random jitter between the half and the whole of it, so the
+     * refunds that failed together (Stripe down) are not retried together.
+     */
+    Duration backoff(int attempts) {
+        long exponential = initialBackoff.toMillis() << Math.min(attempts - 1, 20);
+        long capped = Math.min(exponential, maxBackoff.toMillis());
+        return Duration.ofMillis(
+            capped / 2 + ThreadLocalRandom.current().nextLong(capped / 2 + 1));
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public RefundQueue(RefundRepository refundRepository, StripeService stripeService,
+        StripeCircuitBreaker stripeCircuitBreaker,
+        @Value("${wallet.refunds.enabled:true}") boolean enabled,
+        @Value("${wallet.refunds.batch-size:100}") int batchSize,
+        @Value("${wallet.refunds.concurrency:4}") int concurrency,
+        @Value("${wallet.refunds.max-attempts:10}") int maxAttempts,
+        @Value("${wallet.refunds.initial-backoff:PT10S}") Duration initialBackoff,
+        @Value("${wallet.refunds.max-backoff:PT1H}") Duration maxBackoff,
+        @Value("${wallet.refunds.lease:PT5M}") Duration lease,
+        MeterRegistry meterRegistry) {
+        this.refundRepository = refundRepository;
+        this.stripeService = stripeService;
+        this.stripeCircuitBreaker = stripeCircuitBreaker;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.maxAttempts = maxAttempts;
+        this.initialBackoff = initialBackoff;
+        this.maxBackoff = maxBackoff;
+        this.lease = lease;
+        this.executor = Executors.newFixedThreadPool(concurrency,
+            Thread.ofPlatform().name("refund-", 1).daemon().factory());
+        Gauge.builder("wallet.refunds.pending", pending, AtomicLong::get)
+            .register(meterRegistry);
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("wallet.refunds.processed")
+                .tag("outcome", outcome.name().toLowerCase())
+                .register(meterRegistry));
+        }
+    }
+
+    private enum Outcome {
+        REFUNDED,
+        RETRIED,
+        FAILED,
+        ERROR
+    }
+}
@@ -0,0 +1,143 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.playtomic.tests.wallet.infrastructure.ReplicaRoutingDataSource;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Reads of the query endpoints (get, lookups and history) that can be served by the read replica,
+ * when there is one (wallet.datasource.replica.url). They run in a read-only transaction that the
+ * {@link ReplicaRoutingDataSource} sends to the replica, the equivalent of a
+ * {@code @Transactional(readOnly = true)} method.
+ *
+ * The replica is behind the primary by up to wallet.datasource.replica.max-lag, so it can return
+ * a Wallet older than the one just written, or nothing just after the creation. To read the own
+ * writes, the last version of every Wallet written (every update and creation, put in the
+ * {@link WalletCache}) is kept for max-lag, as are the Wallets whose transactions are written
+ * without updating them (a failed top-up), and a read is repeated in the primary when:
+ *
+ * <ul>
+ *     <li>The replica returns a Wallet older than its last version, or nothing.</li>
+ *     <li>It reads the transactions of a Wallet written in the last max-lag, which have no
+ *     version to compare.</li>
+ * </ul>
+ *
+ * The reads are counted in "wallet.replica.reads" with the tag outcome: replica (answered by the
+ * replica), fallback (read again in the primary) and primary (sent to the primary directly).
+ */
+@Component
+public class ReplicaReads {
+
+    // Any version of the Wallet is up to date
+    private static final long NO_VERSION = Long.MIN_VALUE;
+
+    private final boolean enabled;
+    private final TransactionTemplate replicaTransaction;
+    private final Cache<UUID, Long> lastVersions;
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+
+    public enum Outcome {
+        REPLICA,
+        FALLBACK,
+        PRIMARY
+    }
+
+    /**
+     * Reads in the replica, and again in the primary if the result is not up to date.
+     */
+    public <T> T read(Supplier<T> query, Predicate<T> upToDate) {
+        if (!enabled) {
+            return query.get();
+        }
+        T result = replicaTransaction.execute(status -> query.get());
+        if (upToDate.test(result)) {
+            outcomes.get(Outcome.REPLICA).increment();
+            return result;
+        }
+        outcomes.get(Outcome.FALLBACK).increment();
+        return query.get();
+    }
+
+    /**
+     * Reads data of the Wallet without version in the replica, or in the primary if the Wallet
+     * was written in the last max-lag.
+     */
+    public <T> T read(UUID walletId, Supplier<T> query) {
+        if (!enabled) {
+            return query.get();
+        }
+        if (isRecentlyWritten(walletId)) {
+            outcomes.get(Outcome.PRIMARY).increment();
+            return query.get();
+        }
+        outcomes.get(Outcome.REPLICA).increment();
+        return replicaTransaction.execute(status -> query.get());
+    }
+
+    /**
+     * @return false if the Wallet is older than the last version written in the last max-lag
+     */
+    public boolean isUpToDate(Wallet wallet) {
+        Long lastVersion = lastVersions.getIfPresent(wallet.getId());
+        return lastVersion == null || wallet.getVersion() >= lastVersion;
+    }
+
+    /**
+     * @return true if the Wallet was written in the last max-lag, so the replica may not have it
+     */
+    public boolean isRecentlyWritten(UUID walletId) {
+        return lastVersions.getIfPresent(walletId) != null;
+    }
+
+    /**
+     * Keeps the version of the Wallet for max-lag, unless a newer one is kept.
+     */
+    public void written(Wallet wallet) {
+        if (enabled) {
+            lastVersions.asMap().merge(wallet.getId(), wallet.getVersion(), Math::max);
+        }
+    }
+
+    /**
+     * Keeps the Wallet as written for max-lag when one of its transactions is written without
+     * updating it, so its transactions are read in the primary.
+     */
+    public void transactionWritten(UUID walletId) {
+        if (enabled) {
+            lastVersions.asMap().merge(walletId, NO_VERSION, Math::max);
+        }
+    }
+
+    public ReplicaReads(PlatformTransactionManager transactionManager,
+        @Value("${wallet.datasource.replica.url:}") String replicaUrl,
+        @Value("${wallet.datasource.replica.max-lag:5s}") Duration maxLag,
+        @Value("${wallet.datasource.replica.tracked-wallets:100000}") long trackedWallets,
+        MeterRegistry meterRegistry) {
+        this.enabled = !replicaUrl.isBlank();
+        this.replicaTransaction = new TransactionTemplate(transactionManager);
+        replicaTransaction.setReadOnly(true);
+        replicaTransaction.setName(ReplicaRoutingDataSource.REPLICA_READS);
+        this.lastVersions = Caffeine.newBuilder()
+            .maximumSize(trackedWallets)
+            .expireAfterWrite(maxLag)
+            .build();
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("wallet.replica.reads")
+                .tag("outcome", outcome.name().toLowerCase())
+                .register(meterRegistry));
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Hashed timer wheel: a ring of buckets, one per tick, where every timeout is kept in the bucket of
+ * the tick of its deadline. Scheduling a timeout and expiring it are O(1) whatever the number of
+ * timeouts, and advancing the wheel only visits the buckets of the elapsed ticks. A timeout due
+ * after more than a turn of the wheel stays in its bucket until the turn of its deadline.
+ *
+ * Any thread can schedule a timeout. The timeouts are moved to their buckets by the thread that
+ * advances the wheel, so the buckets are only used by one thread at a time. The deadlines are
+ * rounded up to the next tick.
+ */
+public class TimerWheel<T> {
+
+    private static final long NOT_STARTED = Long.MIN_VALUE;
+
+    private final long tickMillis;
+    private final int mask;
+    private final List<List<Timeout<T>>> buckets;
+    private final Queue<Timeout<T>> scheduled = new ConcurrentLinkedQueue<>();
+    // The next tick to expire, only used by the thread advancing the wheel
+    private long nextTick = NOT_STARTED;
+
+    /**
+     * @param ticksPerWheel rounded up to a power of 2
+     */
+    public TimerWheel(Duration tick, int ticksPerWheel) {
+        this.tickMillis = tick.toMillis();
+        int size = Integer.highestOneBit(Math.max(1, ticksPerWheel - 1)) << 1;
+        this.mask = size - 1;
+        this.buckets = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    public void schedule(T value, Instant deadline) {
+        long deadlineMillis = deadline.toEpochMilli();
+        scheduled.add(new Timeout<>(value, Math.ceilDiv(deadlineMillis, tickMillis)));
+    }
+
+    /**
+     * Moves the wheel to the given instant.
+     *
+     * @return the values of the timeouts with the deadline up to the instant
+     */
+    public synchronized List<T> advance(Instant now) {
+        long lastTick = Math.floorDiv(now.toEpochMilli(), tickMillis);
+        if (nextTick == NOT_STARTED) {
+            nextTick = lastTick;
+        }
+        List<T> expired = new ArrayList<>();
+        Timeout<T> timeout;
+        while ((timeout = scheduled.poll()) != null) {
+            if (timeout.tick < nextTick) {
+                // Its bucket has already been expired
+                expired.add(timeout.value);
+            } else {
+                buckets.get((int) (timeout.tick & mask)).add(timeout);
+            }
+        }
+
+        // After a full turn every bucket has been visited
+        long ticks = Math.min(lastTick - nextTick + 1, buckets.size());
+        for (long tick = nextTick; tick < nextTick + ticks; tick++) {
+            buckets.get((int) (tick & mask)).removeIf(bucketTimeout -> {
+                if (bucketTimeout.tick > lastTick) {
+                    return false;
+                }
+                expired.add(bucketTimeout.value);
+                return true;
+            });
+        }
+        nextTick = Math.max(nextTick, lastTick + 1);
+        return expired;
+    }
+
+    private record Timeout<T>(T value, long tick) {
+    }
+}
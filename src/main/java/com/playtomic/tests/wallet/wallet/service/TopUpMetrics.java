@@ -0,0 +1,94 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.function.Supplier;
+import org.springframework.stereotype.Component;
+
+/**
+ * Latency of every phase of a top-up, to know where the time goes when the top-ups are slow.
+ *
+ * <ul>
+ *     <li>wallet.topup.phase (tag phase): get_wallet, create_transaction, charge (Stripe, with the
+ *     circuit breaker), update_wallet (the optimistic locking retries, or the wait for the
+ *     single-writer lane, included) and commit (every transaction updating the Wallet).</li>
+ *     <li>wallet.topup.retries: attempts to update the Wallet after the first one.</li>
+ *     <li>wallet.topup.optimistic.lock.failures: updates of the Wallet that found a newer
+ *     version.</li>
+ *     <li>wallet.topup.outcome (tag status): the status the transaction of every top-up ended
+ *     with, once committed. INITIATED or PROCESSED when its failure couldn't be written, and the
+ *     transaction is left to the reconciliation.</li>
+ * </ul>
+ *
+ * The meters are registered once, so recording is a clock read and a few atomic increments. The
+ * timers publish a histogram with fixed buckets between 1 ms and 30 s, so the percentiles can be
+ * aggregated by the metrics backend.
+ */
+@Component
+public class TopUpMetrics {
+
+    private final Map<Phase, Timer> phases = new EnumMap<>(Phase.class);
+    private final Map<TransactionStatus, Counter> outcomes = new EnumMap<>(TransactionStatus.class);
+    private final Counter retries;
+    private final Counter optimisticLockFailures;
+
+    public enum Phase {
+        GET_WALLET,
+        CREATE_TRANSACTION,
+        CHARGE,
+        UPDATE_WALLET,
+        COMMIT
+    }
+
+    public TopUpMetrics(MeterRegistry meterRegistry) {
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, Timer.builder("wallet.topup.phase")
+                .tag("phase", phase.name().toLowerCase())
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(30))
+                .register(meterRegistry));
+        }
+        for (TransactionStatus status : TransactionStatus.values()) {
+            outcomes.put(status, Counter.builder("wallet.topup.outcome")
+                .tag("status", status.name())
+                .register(meterRegistry));
+        }
+        this.retries = Counter.builder("wallet.topup.retries").register(meterRegistry);
+        this.optimisticLockFailures = Counter.builder("wallet.topup.optimistic.lock.failures")
+            .register(meterRegistry);
+    }
+
+    public <T> T record(Phase phase, Supplier<T> action) {
+        return phases.get(phase).record(action);
+    }
+
+    public void record(Phase phase, Runnable action) {
+        phases.get(phase).record(action);
+    }
+
+    /**
+     * Records a phase measured by the caller, like the phases of the reactive top-ups, which
+     * don't run in a single call.
+     */
+    public void record(Phase phase, Duration duration) {
+        phases.get(phase).record(duration);
+    }
+
+    public void retry() {
+        retries.increment();
+    }
+
+    public void optimisticLockFailure() {
+        optimisticLockFailures.increment();
+    }
+
+    public void outcome(TransactionStatus status) {
+        outcomes.get(status).increment();
+    }
+}
@@ -0,0 +1,79 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Bounded pool of workers that completes the asynchronous top-ups (Stripe charge and Wallet
+ * update) outside the request thread. When all the workers are busy and the queue is full, new
+ * top-ups are rejected instead of piling up.
+ *
+ * With virtual threads enabled every top-up runs in its own virtual thread, so they don't wait in
+ * a queue for a free worker. The limit of top-ups in progress is kept (workers + queue capacity).
+ */
+@Component
+public class TopUpWorkers {
+
+    private final ExecutorService executor;
+    private final Semaphore inProgress;
+
+    public TopUpWorkers(@Value("${wallet.topup.async.workers:8}") int workers,
+        @Value("${wallet.topup.async.queue-capacity:1000}") int queueCapacity,
+        @Value("${spring.threads.virtual.enabled:false}") boolean virtualThreads) {
+        if (virtualThreads) {
+            this.executor = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("topup-worker-", 1).factory());
+            this.inProgress = new Semaphore(workers + queueCapacity);
+        } else {
+            AtomicInteger threadNumber = new AtomicInteger();
+            this.executor = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), runnable -> {
+                Thread thread = new Thread(runnable,
+                    "topup-worker-" + threadNumber.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+            this.inProgress = null;
+        }
+    }
+
+    /**
+     * @throws RejectedExecutionException when the queue of pending top-ups is full
+     */
+    public void submit(Runnable topUp) throws RejectedExecutionException {
+        if (inProgress == null) {
+            executor.execute(topUp);
+            return;
+        }
+        if (!inProgress.tryAcquire()) {
+            throw new RejectedExecutionException("Too many top-ups in progress");
+        }
+        try {
+            executor.execute(() -> {
+                try {
+                    topUp.run();
+                } finally {
+                    inProgress.release();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            inProgress.release();
+            throw e;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+}
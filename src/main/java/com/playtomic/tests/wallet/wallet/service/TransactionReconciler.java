@@ -0,0 +1,293 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Finishes the top-ups that were interrupted (the service stopped, the database failed...) and left
+ * their transaction INITIATED or PROCESSED.
+ *
+ * <ul>
+ *     <li>With a payment: the card was charged, the amount is added to the Wallet and the
+ *     transaction is marked SUCCESS. If the amount can't be added, the transaction is marked
+ *     FAILED and its payment is queued to the {@link RefundQueue}.</li>
+ *     <li>Without a payment: there is no way to know from the simulator if the card was charged,
+ *     the transaction is marked FAILED and logged to be reviewed.</li>
+ * </ul>
+ *
+ * Only the transactions older than {@code wallet.reconciliation.stuck-after} are reconciled, so
+ * the top-ups in progress are not touched. They are read in pages with keyset pagination, only
+ * the current page and the next one are in memory, and the transactions of a page are reconciled
+ * in parallel. Every status change checks the previous status, so a top-up that finishes meanwhile
+ * is not overwritten.
+ */
+@Component
+public class TransactionReconciler {
+
+    private static final List<TransactionStatus> STUCK_STATUSES = List.of(
+        TransactionStatus.PROCESSED, TransactionStatus.INITIATED);
+    private static final Instant FIRST_CREATED_AT = Instant.EPOCH;
+    private static final UUID FIRST_ID = new UUID(0, 0);
+
+    private final Logger log = LoggerFactory.getLogger(TransactionReconciler.class);
+
+    private final TransactionRepository transactionRepository;
+    private final WalletRepository walletRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final WalletCache walletCache;
+    private final Ledger ledger;
+    private final WalletShards walletShards;
+    private final WalletEvents walletEvents;
+    private final RefundQueue refundQueue;
+    private final boolean enabled;
+    private final Duration stuckAfter;
+    private final int pageSize;
+    private final ExecutorService executor;
+    private final Map<Outcome, Counter> outcomes = new EnumMap<>(Outcome.class);
+    private final Timer duration;
+
+    @Scheduled(fixedDelayString = "${wallet.reconciliation.interval:PT1M}",
+        initialDelayString = "${wallet.reconciliation.interval:PT1M}")
+    public void reconcileStuckTransactions() {
+        if (enabled) {
+            reconcile(Instant.now().minus(stuckAfter));
+        }
+    }
+
+    /**
+     * Reconciles the stuck transactions created before the given instant.
+     */
+    public Report reconcile(Instant createdBefore) {
+        long start = System.nanoTime();
+        Map<Outcome, Integer> counts = new EnumMap<>(Outcome.class);
+        for (TransactionStatus status : STUCK_STATUSES) {
+            reconcile(status, createdBefore, counts);
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        duration.record(elapsed);
+
+        Report report = new Report(counts.getOrDefault(Outcome.COMPLETED, 0),
+            counts.getOrDefault(Outcome.REFUNDED, 0), counts.getOrDefault(Outcome.FAILED, 0),
+            counts.getOrDefault(Outcome.SKIPPED, 0), counts.getOrDefault(Outcome.ERROR, 0),
+            elapsed);
+        if (report.total() > 0) {
+            log.info("Reconciled {} transactions in {} ms ({}/s): {} completed, {} refunded,"
+                    + " {} failed, {} skipped, {} errors", report.total(), elapsed.toMillis(),
+                Math.round(report.throughput()), report.completed(), report.refunded(),
+                report.failed(), report.skipped(), report.errors());
+        }
+        return report;
+    }
+
+    /**
+     * The next page is read while the current one is being reconciled.
+     */
+    private void reconcile(TransactionStatus status, Instant createdBefore,
+        Map<Outcome, Integer> counts) {
+        List<Transaction> page = findPage(status, createdBefore, FIRST_CREATED_AT, FIRST_ID);
+        while (!page.isEmpty()) {
+            List<CompletableFuture<Outcome>> reconciled = new ArrayList<>(page.size());
+            for (Transaction transaction : page) {
+                reconciled.add(CompletableFuture.supplyAsync(
+                    () -> reconcile(transaction, status), executor));
+            }
+
+            Transaction last = page.get(page.size() - 1);
+            List<Transaction> next = page.size() < pageSize ? List.of()
+                : findPage(status, createdBefore, last.getCreatedAt(), last.getId());
+
+            for (CompletableFuture<Outcome> outcome : reconciled) {
+                counts.merge(outcome.join(), 1, Integer::sum);
+            }
+            page = next;
+        }
+    }
+
+    private List<Transaction> findPage(TransactionStatus status, Instant createdBefore,
+        Instant afterCreatedAt, UUID afterId) {
+        return transactionRepository.findPageByStatusCreatedBefore(status, createdBefore,
+            afterCreatedAt, afterId, Limit.of(pageSize));
+    }
+
+    private Outcome reconcile(Transaction transaction, TransactionStatus status) {
+        Outcome outcome;
+        try {
+            outcome = transaction.getPaymentId() == null ? fail(transaction, status)
+                : completeOrRefund(transaction, status);
+        } catch (Exception e) {
+            log.error("Failed to reconcile transaction {}", transaction.getId(), e);
+            outcome = Outcome.ERROR;
+        }
+        outcomes.get(outcome).increment();
+        return outcome;
+    }
+
+    /**
+     * The card was charged: the amount is added to the Wallet, or the payment is refunded if it
+     * can't be, as the top-up does.
+     */
+    private Outcome completeOrRefund(Transaction transaction, TransactionStatus status) {
+        try {
+            return complete(transaction, status);
+        } catch (Exception e) {
+            log.error("Failed to credit transaction {} to its wallet, refunding it",
+                transaction.getId(), e);
+            return fail(transaction, status);
+        }
+    }
+
+    /**
+     * Marks the transaction as FAILED and, if it has a payment, queues its refund in the same
+     * database transaction.
+     */
+    private Outcome fail(Transaction transaction, TransactionStatus status) {
+        boolean charged = transaction.getPaymentId() != null;
+        Boolean failed = transactionTemplate.execute(springStatus -> {
+            if (transactionRepository.updateStatusIf(transaction.getId(), status,
+                TransactionStatus.FAILED) == 0) {
+                return false;
+            }
+            if (charged) {
+                refundQueue.enqueue(transaction);
+            }
+            walletEvents.topUpFailed(transaction);
+            return true;
+        });
+        if (!Boolean.TRUE.equals(failed)) {
+            return Outcome.SKIPPED;
+        }
+        if (charged) {
+            return Outcome.REFUNDED;
+        }
+        log.warn("Transaction {} of wallet {} with amount {} left {} without payment, marked as"
+                + " FAILED, review if the card was charged", transaction.getId(),
+            transaction.getWallet().getId(), transaction.getAmount(), status);
+        return Outcome.FAILED;
+    }
+
+    private Outcome complete(Transaction transaction, TransactionStatus status) {
+        Wallet wallet = transactionTemplate.execute(
+            springStatus -> addAmountAndConfirm(transaction, status));
+        if (wallet == null) {
+            return Outcome.SKIPPED;
+        }
+        walletCache.putWritten(wallet);
+        return Outcome.COMPLETED;
+    }
+
+    /**
+     * The amount is added in the database instead of checking the version of the Wallet: the
+     * transactions of the same Wallet are reconciled in parallel and would conflict.
+     *
+     * @return the updated Wallet, or null if the transaction no longer has the expected status
+     */
+    private Wallet addAmountAndConfirm(Transaction transaction, TransactionStatus status) {
+        if (transactionRepository.updateStatusIf(transaction.getId(), status,
+            TransactionStatus.SUCCESS) == 0) {
+            return null;
+        }
+        walletEvents.toppedUp(transaction);
+        UUID walletId = transaction.getWallet().getId();
+        if (ledger.isEnabled()) {
+            ledger.append(transaction);
+            return ledger.withBalance(walletRepository.findById(walletId).orElseThrow());
+        }
+        if (walletShards.isEnabled()) {
+            walletShards.add(walletId, transaction.getAmount());
+            return walletShards.findById(walletId).orElseThrow();
+        }
+        walletRepository.addAmount(walletId, transaction.getAmount());
+        return walletRepository.findById(walletId).orElseThrow();
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+    }
+
+    public TransactionReconciler(TransactionRepository transactionRepository,
+        WalletRepository walletRepository, PlatformTransactionManager transactionManager,
+        WalletCache walletCache, Ledger ledger, WalletShards walletShards,
+        WalletEvents walletEvents, RefundQueue refundQueue,
+        @Value("${wallet.reconciliation.enabled:true}") boolean enabled,
+        @Value("${wallet.reconciliation.stuck-after:10m}") Duration stuckAfter,
+        @Value("${wallet.reconciliation.page-size:500}") int pageSize,
+        @Value("${wallet.reconciliation.concurrency:4}") int concurrency,
+        MeterRegistry meterRegistry) {
+        this.transactionRepository = transactionRepository;
+        this.walletRepository = walletRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.walletCache = walletCache;
+        this.ledger = ledger;
+        this.walletShards = walletShards;
+        this.walletEvents = walletEvents;
+        this.refundQueue = refundQueue;
+        this.enabled = enabled;
+        this.stuckAfter = stuckAfter;
+        this.pageSize = pageSize;
+        this.executor = Executors.newFixedThreadPool(concurrency,
+            Thread.ofPlatform().name("reconciliation-", 1).daemon().factory());
+        for (Outcome outcome : Outcome.values()) {
+            outcomes.put(outcome, Counter.builder("wallet.reconciliation.transactions")
+                .tag("outcome", outcome.name().toLowerCase())
+                .register(meterRegistry));
+        }
+        this.duration = Timer.builder("wallet.reconciliation.duration").register(meterRegistry);
+    }
+
+    private enum Outcome {
+        COMPLETED,
+        REFUNDED,
+        FAILED,
+        SKIPPED,
+        ERROR
+    }
+
+    /**
+     * Result of a reconciliation run.
+     *
+     * @param refunded transactions charged that could not be credited, with their refund queued
+     * @param skipped transactions completed by someone else while being reconciled
+     */
+    public record Report(int completed, int refunded, int failed, int skipped, int errors,
+        Duration elapsed) {
+
+        public int total() {
+            return completed + refunded + failed + skipped + errors;
+        }
+
+        /**
+         * @return reconciled transactions per second
+         */
+        public double throughput() {
+            return elapsed.isZero() ? 0 : total() * 1_000_000_000.0 / elapsed.toNanos();
+        }
+    }
+}
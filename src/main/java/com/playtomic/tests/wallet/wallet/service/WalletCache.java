@@ -0,0 +1,92 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of the {@link WalletResponse} by wallet id, bounded by size and by the time
+ * since the entry was written.
+ *
+ * Every entry keeps the version of the Wallet it was built from, and an entry is only replaced by
+ * one with a newer version. So a reader that loaded the Wallet before a top-up was committed can
+ * not overwrite the entry put by that top-up.
+ *
+ * Every Wallet written (and put with {@link #putWritten}) is also given to the
+ * {@link ReplicaReads}, so the reads of the replica don't return an older version of it. The
+ * Wallets only read are not, they are not newer than the replica.
+ *
+ * The hits, misses and evictions are published as the "cache.*" metrics with the tag
+ * cache=wallets.
+ */
+@Component
+public class WalletCache {
+
+    private final Cache<UUID, CachedWallet> cache;
+    private final ReplicaReads replicaReads;
+
+    public WalletCache(@Value("${wallet.cache.max-size:100000}") long maxSize,
+        @Value("${wallet.cache.ttl:60s}") Duration ttl, MeterRegistry meterRegistry,
+        ReplicaReads replicaReads) {
+        this.replicaReads = replicaReads;
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .expireAfterWrite(ttl)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "wallets");
+    }
+
+    public WalletResponse get(UUID walletId, Function<UUID, Wallet> loader) {
+        CachedWallet cached = cache.getIfPresent(walletId);
+        if (cached != null) {
+            return cached.response();
+        }
+        Wallet wallet = loader.apply(walletId);
+        put(wallet);
+        return WalletResponse.from(wallet);
+    }
+
+    /**
+     * @return the cached Wallet, or null if it is not cached
+     */
+    public WalletResponse getIfPresent(UUID walletId) {
+        CachedWallet cached = cache.getIfPresent(walletId);
+        return cached == null ? null : cached.response();
+    }
+
+    /**
+     * Caches the Wallet just written, and keeps its version for the reads of the replica.
+     */
+    public void putWritten(Wallet wallet) {
+        replicaReads.written(wallet);
+        put(wallet);
+    }
+
+    /**
+     * Caches the Wallet unless there is already an entry of the same or a newer version.
+     */
+    public void put(Wallet wallet) {
+        CachedWallet candidate = new CachedWallet(wallet.getVersion(), WalletResponse.from(wallet));
+        cache.asMap().merge(wallet.getId(), candidate,
+            (current, updated) -> updated.version() > current.version() ? updated : current);
+    }
+
+    /**
+     * Runs the pending maintenance (evictions) now, used by the tests.
+     */
+    void cleanUp() {
+        cache.cleanUp();
+    }
+
+    private record CachedWallet(long version, WalletResponse response) {
+    }
+}
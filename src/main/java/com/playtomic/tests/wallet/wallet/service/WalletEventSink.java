@@ -0,0 +1,17 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.dto.WalletEvent;
+import java.util.List;
+
+/**
+ * Where the {@link OutboxRelay} publishes the events of the Wallets: a broker, a log...
+ * Selected with {@code wallet.outbox.sink}.
+ */
+public interface WalletEventSink {
+
+    /**
+     * Publishes the events, in order. When it returns, the events are deleted from the outbox: it
+     * must throw if any of them could not be published, and then they are all published again.
+     */
+    void publish(List<WalletEvent> events);
+}
@@ -0,0 +1,41 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletEventType;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import org.springframework.stereotype.Component;
+
+/**
+ * Writes the changes of the Wallets to the outbox, to be published by the {@link OutboxRelay}.
+ * Every method must be called in the database transaction of the change, so an event is
+ * published if and only if its change is committed.
+ */
+@Component
+public class WalletEvents {
+
+    private final OutboxEventRepository outboxEventRepository;
+
+    public void created(Wallet wallet) {
+        outboxEventRepository.save(
+            new OutboxEvent(WalletEventType.CREATED, wallet.getId(), null, 0));
+    }
+
+    public void toppedUp(Transaction transaction) {
+        save(WalletEventType.TOPPED_UP, transaction);
+    }
+
+    public void topUpFailed(Transaction transaction) {
+        save(WalletEventType.TOP_UP_FAILED, transaction);
+    }
+
+    private void save(WalletEventType type, Transaction transaction) {
+        outboxEventRepository.save(new OutboxEvent(type, transaction.getWallet().getId(),
+            transaction.getId(), transaction.getAmount()));
+    }
+
+    public WalletEvents(OutboxEventRepository outboxEventRepository) {
+        this.outboxEventRepository = outboxEventRepository;
+    }
+}
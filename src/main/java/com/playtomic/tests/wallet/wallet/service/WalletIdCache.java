@@ -0,0 +1,46 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.util.UUID;
+import java.util.function.Function;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Read-through cache of the wallet id by user id, bounded by size.
+ *
+ * A user has at most one Wallet and it is never replaced, so an entry is never stale and it is
+ * only evicted to keep the size. The users without a Wallet are not cached, so the Wallet can be
+ * created afterwards.
+ *
+ * The hits, misses and evictions are published as the "cache.*" metrics with the tag
+ * cache=wallet-ids.
+ */
+@Component
+public class WalletIdCache {
+
+    private final Cache<UUID, UUID> cache;
+
+    public WalletIdCache(@Value("${wallet.cache.wallet-ids.max-size:100000}") long maxSize,
+        MeterRegistry meterRegistry) {
+        this.cache = Caffeine.newBuilder()
+            .maximumSize(maxSize)
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "wallet-ids");
+    }
+
+    /**
+     * @param loader the wallet id of the user, it throws if the user has no Wallet
+     */
+    public UUID get(UUID userId, Function<UUID, UUID> loader) {
+        return cache.get(userId, loader);
+    }
+
+    public void put(UUID userId, UUID walletId) {
+        cache.put(userId, walletId);
+    }
+}
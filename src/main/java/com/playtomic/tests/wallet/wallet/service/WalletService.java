@@ -2,24 +2,41 @@ package com.playtomic.tests.wallet.wallet.service;
 
 import com.playtomic.tests.wallet.stripeclient.dto.Payment;
 import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeUnavailableException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeCircuitBreaker;
 import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.dto.TransactionCursor;
+import com.playtomic.tests.wallet.wallet.dto.TransactionPageResponse;
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
 import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
 import com.playtomic.tests.wallet.wallet.exception.CreateWalletError;
+import com.playtomic.tests.wallet.wallet.exception.GetTransactionError;
 import com.playtomic.tests.wallet.wallet.exception.GetWalletError;
+import com.playtomic.tests.wallet.wallet.exception.PaymentProviderUnavailableError;
 import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.exception.TopUpRejectedError;
+import com.playtomic.tests.wallet.wallet.model.Money;
 import com.playtomic.tests.wallet.wallet.model.Transaction;
 import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
 import com.playtomic.tests.wallet.wallet.model.Wallet;
 import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
 import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
-import java.math.BigDecimal;
+import com.playtomic.tests.wallet.wallet.service.TopUpMetrics.Phase;
+import java.util.List;
 import java.util.NoSuchElementException;
+import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.support.TransactionCallbackWithoutResult;
@@ -35,43 +52,195 @@ public class WalletService {
     public TransactionRepository transactionRepository;
     public StripeService stripeService;
     private PlatformTransactionManager transactionManager;
+    private WalletWriteLanes walletWriteLanes;
+    private WalletUpdateStrategy updateStrategy;
+    private TopUpWorkers topUpWorkers;
+    private WalletCache walletCache;
+    private StripeCircuitBreaker stripeCircuitBreaker;
+    private TopUpMetrics topUpMetrics;
+    private Ledger ledger;
+    private WalletShards walletShards;
+    private RefundQueue refundQueue;
+    private WalletEvents walletEvents;
+    private WalletIdCache walletIdCache;
+    private ReplicaReads replicaReads;
 
     public WalletResponse create(UUID userID) {
-        Wallet wallet = new Wallet();
-        wallet.setUserId(userID);
-        wallet.setAmount(BigDecimal.ZERO);
+        Wallet newWallet = new Wallet();
+        newWallet.setUserId(userID);
+        newWallet.setAmount(0);
 
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Wallet wallet;
         try {
-            wallet = walletRepository.save(wallet);
+            wallet = transactionTemplate.execute(springTransactionStatus -> {
+                Wallet saved = walletRepository.save(newWallet);
+                walletEvents.created(saved);
+                return saved;
+            });
         } catch (DataIntegrityViolationException e) {
             log.error("Failed to create wallet for user {}", userID, e);
             throw new CreateWalletError(
                 "Failed to create wallet, maybe the user has already a Wallet");
         }
+        walletCache.putWritten(wallet);
+        walletIdCache.put(userID, wallet.getId());
 
         return WalletResponse.from(wallet);
     }
 
-    public WalletResponse topUp(UUID walletId, String cardNumber, BigDecimal amount) {
-        Wallet wallet = getWalletById(walletId);
+    public WalletResponse topUp(UUID walletId, String cardNumber, long amount) {
+        Wallet wallet = topUpMetrics.record(Phase.GET_WALLET, () -> getWalletById(walletId));
 
-        Transaction transaction = createTransaction(amount, wallet);
+        Transaction transaction = topUpMetrics.record(Phase.CREATE_TRANSACTION,
+            () -> createTransaction(amount, wallet));
 
-        transaction = charge(transaction, wallet, cardNumber, amount);
+        try {
+            topUpMetrics.record(Phase.CHARGE,
+                () -> charge(transaction, wallet, cardNumber, amount));
 
-        wallet = addAmountToWalletAndConfirmTransaction(transaction, wallet, amount);
+            Wallet updated = topUpMetrics.record(Phase.UPDATE_WALLET,
+                () -> creditChargedTransaction(transaction, wallet, amount));
 
-        return WalletResponse.from(wallet);
+            return WalletResponse.from(updated);
+        } finally {
+            topUpMetrics.outcome(transaction.getStatus());
+        }
+    }
+
+    /**
+     * Registers the top-up as INITIATED and returns it without waiting for the charge. The charge
+     * and the Wallet update are completed by the {@link TopUpWorkers}, the progress can be
+     * followed with {@link #getTransaction(UUID)}.
+     */
+    public TransactionResponse topUpAsync(UUID walletId, String cardNumber, long amount) {
+        Wallet wallet = topUpMetrics.record(Phase.GET_WALLET, () -> getWalletById(walletId));
+
+        Transaction transaction = topUpMetrics.record(Phase.CREATE_TRANSACTION,
+            () -> createTransaction(amount, wallet));
+        // Built before submitting because the worker changes the status of the transaction
+        TransactionResponse initiated = TransactionResponse.from(transaction);
+
+        try {
+            topUpWorkers.submit(() -> completeTopUp(transaction, wallet, cardNumber, amount));
+        } catch (RejectedExecutionException e) {
+            log.warn("Top-up queue is full, rejecting top-up of wallet {}", walletId);
+            topUpMetrics.outcome(TransactionStatus.FAILED);
+            failTransaction(transaction, wallet);
+            throw new TopUpRejectedError("Too many top-ups in progress, try again later");
+        }
+
+        return initiated;
     }
 
+    /**
+     * The Wallet from the {@link WalletCache}, read in the replica when it is not cached and there
+     * is one (see {@link ReplicaReads}). With LEDGER and SHARDED it is read in the primary, with
+     * the entries or the shards that have its balance.
+     */
     public WalletResponse get(UUID walletId) {
-        return WalletResponse.from(getWalletById(walletId));
+        if (updateStrategy == WalletUpdateStrategy.LEDGER) {
+            return walletCache.get(walletId, id -> ledger.withBalance(getWalletById(id)));
+        }
+        if (updateStrategy == WalletUpdateStrategy.SHARDED) {
+            return walletCache.get(walletId, id -> getWallet(id, walletShards::findById));
+        }
+        return walletCache.get(walletId, this::readWalletById);
+    }
+
+    /**
+     * The Wallet of the user. Its id is read from the {@link WalletIdCache}, and the Wallet as in
+     * {@link #get}. When the id is not cached the Wallet is read by userId, and also cached in the
+     * {@link WalletCache} if its row has the balance, so it is read once.
+     */
+    public WalletResponse getByUserId(UUID userId) {
+        UUID walletId = walletIdCache.get(userId, this::findWalletIdByUserId);
+        return get(walletId);
+    }
+
+    public TransactionResponse getTransaction(UUID transactionId) {
+        Transaction transaction;
+        try {
+            transaction = replicaReads.read(() -> transactionRepository.findById(transactionId),
+                found -> found.isPresent()
+                    && !replicaReads.isRecentlyWritten(found.get().getWallet().getId()))
+                .orElseThrow();
+        } catch (NoSuchElementException e) {
+            throw new ResourceNotFoundException("Transaction not found");
+        } catch (Exception e) {
+            log.error("Failed to get transaction {}", transactionId, e);
+            throw new GetTransactionError("Failed to get transaction");
+        }
+        return TransactionResponse.from(transaction);
+    }
+
+    /**
+     * Page of the transactions of the wallet, the newest first. Without cursor it returns the
+     * first page, otherwise the page after the one that returned the cursor.
+     */
+    public TransactionPageResponse getTransactions(UUID walletId, String cursor, int limit) {
+        TransactionCursor after = cursor == null ? null : TransactionCursor.decode(cursor);
+        // One more than the page, to know if there is a next one
+        Limit pageLimit = Limit.of(limit + 1);
+        List<TransactionResponse> transactions;
+        try {
+            transactions = replicaReads.read(walletId, () -> after == null
+                ? transactionRepository.findPageByWalletId(walletId, pageLimit)
+                : transactionRepository.findPageByWalletIdBefore(walletId, after.createdAt(),
+                    after.id(), pageLimit));
+        } catch (Exception e) {
+            log.error("Failed to get transactions of wallet {}", walletId, e);
+            throw new GetTransactionError("Failed to get transactions");
+        }
+        if (transactions.isEmpty() && after == null && !replicaReads.read(
+            () -> walletRepository.existsById(walletId), exists -> exists)) {
+            throw new ResourceNotFoundException("Wallet not found");
+        }
+
+        if (transactions.size() <= limit) {
+            return new TransactionPageResponse(transactions, null);
+        }
+        List<TransactionResponse> page = transactions.subList(0, limit);
+        return new TransactionPageResponse(page,
+            TransactionCursor.after(page.get(limit - 1)).encode());
+    }
+
+    private void completeTopUp(Transaction transaction, Wallet wallet, String cardNumber,
+        long amount) {
+        try {
+            topUpMetrics.record(Phase.CHARGE,
+                () -> charge(transaction, wallet, cardNumber, amount));
+            topUpMetrics.record(Phase.UPDATE_WALLET,
+                () -> creditChargedTransaction(transaction, wallet, amount));
+        } catch (Exception e) {
+            // The failure is already registered in the transaction status
+            log.warn("Asynchronous top-up {} of wallet {} failed: {}", transaction.getId(),
+                wallet.getId(), e.getMessage());
+        } finally {
+            topUpMetrics.outcome(transaction.getStatus());
+        }
     }
 
     private Wallet getWalletById(UUID walletId) {
+        return getWallet(walletId, walletRepository::findById);
+    }
+
+    /**
+     * The Wallet for the queries, read from the replica if it has the last version written.
+     */
+    private Wallet readWalletById(UUID walletId) {
+        return getWallet(walletId, id -> replicaReads.read(() -> walletRepository.findById(id),
+            this::isUpToDate));
+    }
+
+    private boolean isUpToDate(Optional<Wallet> wallet) {
+        return wallet.isPresent() && replicaReads.isUpToDate(wallet.get());
+    }
+
+    private Wallet getWallet(UUID walletId, Function<UUID, Optional<Wallet>> finder) {
         Wallet waller;
         try {
-            waller = walletRepository.findById(walletId).orElseThrow();
+            waller = finder.apply(walletId).orElseThrow();
         } catch (NoSuchElementException e) {
             throw new ResourceNotFoundException("Wallet not found");
         } catch (Exception e) {
@@ -81,26 +250,40 @@ public class WalletService {
         return waller;
     }
 
+    private UUID findWalletIdByUserId(UUID userId) {
+        Wallet wallet = getWallet(userId, id -> replicaReads.read(
+            () -> walletRepository.findByUserId(id), this::isUpToDate));
+        if (updateStrategy != WalletUpdateStrategy.LEDGER
+            && updateStrategy != WalletUpdateStrategy.SHARDED) {
+            walletCache.put(wallet);
+        }
+        return wallet.getId();
+    }
+
     private Payment getStripePaymentId(Transaction transaction, Wallet wallet, String cardNumber,
-        BigDecimal amount) {
+        long amount) {
         Payment payment;
         try {
-            payment = stripeService.charge(cardNumber, amount);
+            payment = stripeCircuitBreaker.execute(() -> stripeService.charge(cardNumber,
+                Money.toDecimal(amount)));
         } catch (StripeAmountTooSmallException e) {
-            transaction.setStatus(TransactionStatus.FAILED);
-            saveTransaction(transaction);
+            failTransaction(transaction, wallet);
             throw new ProcessingChargeError("Amount too small");
+        } catch (StripeUnavailableException e) {
+            log.warn("Stripe not available, top-up of wallet {} rejected", wallet.getId());
+            failTransaction(transaction, wallet);
+            throw new PaymentProviderUnavailableError(
+                "Payment provider not available, try again later");
         } catch (Exception e) {
             log.error("Failed to charge card {} with amount {} for wallet {}", cardNumber, amount,
                 wallet, e);
-            transaction.setStatus(TransactionStatus.FAILED);
-            saveTransaction(transaction);
+            failTransaction(transaction, wallet);
             throw new ProcessingChargeError("Failed to charge card");
         }
         return payment;
     }
 
-    private Transaction createTransaction(BigDecimal amount, Wallet savedWallet) {
+    private Transaction createTransaction(long amount, Wallet savedWallet) {
         Transaction transaction = new Transaction();
         transaction.setAmount(amount);
         transaction.setWallet(savedWallet);
@@ -109,34 +292,201 @@ public class WalletService {
         return saveTransaction(transaction);
     }
 
-    private Transaction charge(Transaction transaction, Wallet wallet,
-        String cardNumber, BigDecimal amount) {
+    /**
+     * Writes the payment with the PROCESSED status before crediting the Wallet, so if the service
+     * stops in between the {@link TransactionReconciler} knows the card was charged. If the
+     * payment can't be written, it is refunded. If the transaction is no longer INITIATED, the
+     * reconciler failed it while the card was being charged, so it is refunded and not credited.
+     */
+    private void charge(Transaction transaction, Wallet wallet,
+        String cardNumber, long amount) {
         Payment payment = getStripePaymentId(transaction, wallet, cardNumber, amount);
 
         transaction.setPaymentId(payment.getId());
+        int processed;
+        try {
+            processed = transactionRepository.markProcessed(transaction.getId(), payment.getId());
+        } catch (Exception e) {
+            log.error("Failed to write the payment of transaction {}", transaction, e);
+            refundChargedTransaction(transaction);
+            throw new ProcessingChargeError("Failed to update transaction");
+        }
+        if (processed == 0) {
+            log.warn("Transaction {} of wallet {} failed while charging the card, refunding it",
+                transaction.getId(), wallet.getId());
+            refundFailedTransaction(transaction);
+            throw new ProcessingChargeError("Transaction failed while charging the card");
+        }
         transaction.setStatus(TransactionStatus.PROCESSED);
-        return saveTransaction(transaction);
+        replicaReads.transactionWritten(wallet.getId());
+    }
+
+    /**
+     * The card has been charged: if the amount can't be credited to the Wallet, the payment is
+     * refunded.
+     */
+    private Wallet creditChargedTransaction(Transaction transaction, Wallet wallet, long amount) {
+        try {
+            return addAmountToWalletAndConfirmTransaction(transaction, wallet, amount);
+        } catch (RuntimeException e) {
+            refundChargedTransaction(transaction);
+            throw e;
+        }
+    }
+
+    /**
+     * Marks the transaction as FAILED and queues the refund of its payment in the same database
+     * transaction, so neither can happen without the other. Only an INITIATED or PROCESSED
+     * transaction is failed: if the credit was committed before the error, there is nothing to
+     * refund. If this fails too, the transaction is left to the {@link TransactionReconciler}.
+     */
+    private void refundChargedTransaction(Transaction transaction) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            Boolean failed = transactionTemplate.execute(springTransactionStatus -> {
+                if (transactionRepository.failCharged(transaction.getId(),
+                    transaction.getPaymentId()) == 0) {
+                    return false;
+                }
+                refundQueue.enqueue(transaction);
+                walletEvents.topUpFailed(transaction);
+                return true;
+            });
+            if (Boolean.TRUE.equals(failed)) {
+                transaction.setStatus(TransactionStatus.FAILED);
+                replicaReads.transactionWritten(transaction.getWallet().getId());
+            }
+        } catch (Exception e) {
+            log.error("Failed to queue the refund of transaction {}", transaction, e);
+        }
+    }
+
+    /**
+     * Queues the refund of the payment of a transaction already FAILED by someone else, which
+     * doesn't know about the payment. If this fails, the payment has to be reviewed.
+     */
+    private void refundFailedTransaction(Transaction transaction) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            transactionTemplate.executeWithoutResult(
+                springTransactionStatus -> refundQueue.enqueue(transaction));
+            transaction.setStatus(TransactionStatus.FAILED);
+        } catch (Exception e) {
+            log.error("Failed to queue the refund of payment {} of transaction {}, review it",
+                transaction.getPaymentId(), transaction, e);
+        }
     }
 
     private Wallet addAmountToWalletAndConfirmTransaction(Transaction transaction, Wallet wallet,
-        BigDecimal amount) {
+        long amount) {
+        if (updateStrategy == WalletUpdateStrategy.LEDGER) {
+            return creditAndConfirmTransaction(transaction, () -> ledger.append(transaction),
+                () -> ledger.withBalance(wallet));
+        }
+        if (updateStrategy == WalletUpdateStrategy.SHARDED) {
+            UUID walletId = wallet.getId();
+            return creditAndConfirmTransaction(transaction,
+                () -> walletShards.add(walletId, amount),
+                () -> getWallet(walletId, walletShards::findById));
+        }
+        if (updateStrategy == WalletUpdateStrategy.ATOMIC) {
+            UUID walletId = wallet.getId();
+            return creditAndConfirmTransaction(transaction,
+                () -> walletRepository.addAmount(walletId, amount),
+                () -> getWalletById(walletId));
+        }
+        if (updateStrategy == WalletUpdateStrategy.PESSIMISTIC) {
+            return addAmountLockingWallet(transaction, wallet.getId(), amount);
+        }
+        if (updateStrategy == WalletUpdateStrategy.SINGLE_WRITER) {
+            // Inside the lane no other top-up of this wallet is running, so reading the last
+            // version of the wallet makes the first attempt succeed.
+            UUID walletId = wallet.getId();
+            return walletWriteLanes.execute(walletId,
+                () -> addAmountRetryingOnOptimisticLocking(transaction, getWalletById(walletId),
+                    amount));
+        }
+        return addAmountRetryingOnOptimisticLocking(transaction, wallet, amount);
+    }
+
+    /**
+     * Credits the amount (to the ledger, to a shard or to the Wallet row) with the SUCCESS of the
+     * transaction. The version of the Wallet is not checked, so there is nothing to retry.
+     *
+     * @param balance reads the Wallet with its balance once credited
+     */
+    private Wallet creditAndConfirmTransaction(Transaction transaction, Runnable credit,
+        Supplier<Wallet> balance) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            topUpMetrics.record(Phase.COMMIT, () -> transactionTemplate.executeWithoutResult(
+                springTransactionStatus -> {
+                    confirmTransaction(transaction);
+                    credit.run();
+                    walletEvents.toppedUp(transaction);
+                }));
+        } catch (ProcessingChargeError e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to credit transaction {} to its wallet", transaction, e);
+            throw new ProcessingChargeError("Failed to save wallet");
+        }
+        transaction.setStatus(TransactionStatus.SUCCESS);
+        Wallet updated = balance.get();
+        walletCache.putWritten(updated);
+        return updated;
+    }
+
+    /**
+     * Reads the Wallet locking its row, so the concurrent top-ups of the Wallet wait for this one
+     * to commit, and updates it with the SUCCESS of the transaction. The locked Wallet is written
+     * by Hibernate when the transaction is flushed, incrementing its version, and no other top-up
+     * can have changed it in between.
+     */
+    private Wallet addAmountLockingWallet(Transaction transaction, UUID walletId, long amount) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        Wallet updated;
+        try {
+            updated = topUpMetrics.record(Phase.COMMIT, () -> transactionTemplate.execute(
+                springTransactionStatus -> {
+                    Wallet wallet = getWallet(walletId, walletRepository::findByIdForUpdate);
+                    wallet.setAmount(wallet.getAmount() + amount);
+                    confirmTransaction(transaction);
+                    walletEvents.toppedUp(transaction);
+                    return wallet;
+                }));
+        } catch (ProcessingChargeError e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to credit transaction {} to its wallet", transaction, e);
+            throw new ProcessingChargeError("Failed to save wallet");
+        }
+        transaction.setStatus(TransactionStatus.SUCCESS);
+        walletCache.putWritten(updated);
+        return updated;
+    }
+
+    private Wallet addAmountRetryingOnOptimisticLocking(Transaction transaction, Wallet wallet,
+        long amount) {
         int retries = 1;
         boolean updated = false;
         while (retries <= MAX_WALLET_RETRIES && !updated) {
+            if (retries > 1) {
+                topUpMetrics.retry();
+            }
             try {
-                wallet.setAmount(wallet.getAmount().add(amount));
-                transaction.setStatus(TransactionStatus.SUCCESS);
+                wallet.setAmount(wallet.getAmount() + amount);
                 updateWalletAndTransactionTransactionally(wallet, transaction);
                 updated = true;
             } catch (OptimisticLockingFailureException e) {
+                topUpMetrics.optimisticLockFailure();
                 wallet = getWalletById(wallet.getId());
             }
             retries++;
         }
 
         if (!updated && (retries > MAX_WALLET_RETRIES)) {
-            transaction.setStatus(TransactionStatus.FAILED);
-            saveTransaction(transaction);
+            // Refunded by creditChargedTransaction
             throw new ProcessingChargeError("Error updating the Wallet");
         }
 
@@ -147,26 +497,58 @@ public class WalletService {
         Transaction transaction) {
         TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
 
-        transactionTemplate.execute(new TransactionCallbackWithoutResult() {
-            @Override
-            protected void doInTransactionWithoutResult(
-                org.springframework.transaction.TransactionStatus springTransactionStatus) {
-                saveWalletAllowingOptimisticLocking(wallet);
-                saveTransaction(transaction);
-            }
+        topUpMetrics.record(Phase.COMMIT, () -> {
+            transactionTemplate.execute(new TransactionCallbackWithoutResult() {
+                @Override
+                protected void doInTransactionWithoutResult(
+                    org.springframework.transaction.TransactionStatus springTransactionStatus) {
+                    updateWalletAllowingOptimisticLocking(wallet);
+                    confirmTransaction(transaction);
+                    walletEvents.toppedUp(transaction);
+                }
+            });
         });
+        transaction.setStatus(TransactionStatus.SUCCESS);
+        wallet.setVersion(wallet.getVersion() + 1);
+        walletCache.putWritten(wallet);
     }
 
-    private Wallet saveWalletAllowingOptimisticLocking(Wallet wallet) {
+    /**
+     * Updates the amount of the Wallet with a single statement that checks the version, instead
+     * of merging it (a select and an update).
+     */
+    private void updateWalletAllowingOptimisticLocking(Wallet wallet) {
+        int updated;
         try {
-            wallet = walletRepository.save(wallet);
-        } catch (OptimisticLockingFailureException e) {
-            throw e;
+            updated = walletRepository.updateAmount(wallet.getId(), wallet.getAmount(),
+                wallet.getVersion());
         } catch (Exception e) {
             log.error("Failed to save wallet {}", wallet, e);
             throw new ProcessingChargeError("Failed to save wallet");
         }
-        return wallet;
+        if (updated == 0) {
+            throw new ObjectOptimisticLockingFailureException(Wallet.class, wallet.getId());
+        }
+    }
+
+    /**
+     * Marks the transaction as FAILED with its event, in the same database transaction.
+     */
+    private void failTransaction(Transaction transaction, Wallet wallet) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        try {
+            transactionTemplate.executeWithoutResult(springTransactionStatus -> {
+                updateTransaction(transaction, TransactionStatus.FAILED);
+                walletEvents.topUpFailed(transaction);
+            });
+            transaction.setStatus(TransactionStatus.FAILED);
+            replicaReads.transactionWritten(wallet.getId());
+        } catch (ProcessingChargeError e) {
+            throw e;
+        } catch (Exception e) {
+            log.error("Failed to update transaction {}", transaction, e);
+            throw new ProcessingChargeError("Failed to update transaction");
+        }
     }
 
     private Transaction saveTransaction(Transaction transaction) {
@@ -179,12 +561,60 @@ public class WalletService {
         return transaction;
     }
 
+    /**
+     * Marks the transaction as SUCCESS only if it is still PROCESSED. If the
+     * {@link TransactionReconciler} completed or refunded it meanwhile, the exception rolls back
+     * the credit written in the same database transaction, so it is not credited twice.
+     */
+    private void confirmTransaction(Transaction transaction) {
+        int confirmed;
+        try {
+            confirmed = transactionRepository.updateStatusIf(transaction.getId(),
+                TransactionStatus.PROCESSED, TransactionStatus.SUCCESS);
+        } catch (Exception e) {
+            log.error("Failed to update transaction {}", transaction, e);
+            throw new ProcessingChargeError("Failed to update transaction");
+        }
+        if (confirmed == 0) {
+            log.warn("Transaction {} was completed by the reconciliation meanwhile, not credited",
+                transaction.getId());
+            throw new ProcessingChargeError("Transaction completed by the reconciliation");
+        }
+    }
+
+    private void updateTransaction(Transaction transaction, TransactionStatus status) {
+        try {
+            transactionRepository.updateStatus(transaction.getId(), status,
+                transaction.getPaymentId());
+        } catch (Exception e) {
+            log.error("Failed to update transaction {}", transaction, e);
+            throw new ProcessingChargeError("Failed to update transaction");
+        }
+    }
+
     public WalletService(WalletRepository walletRepository,
         TransactionRepository transactionRepository, StripeService stripeService,
-        PlatformTransactionManager transactionManager) {
+        PlatformTransactionManager transactionManager, WalletWriteLanes walletWriteLanes,
+        @Value("${wallet.update-strategy:OPTIMISTIC}") WalletUpdateStrategy updateStrategy,
+        TopUpWorkers topUpWorkers, WalletCache walletCache,
+        StripeCircuitBreaker stripeCircuitBreaker, TopUpMetrics topUpMetrics, Ledger ledger,
+        WalletShards walletShards, RefundQueue refundQueue, WalletEvents walletEvents,
+        WalletIdCache walletIdCache, ReplicaReads replicaReads) {
         this.walletRepository = walletRepository;
         this.transactionRepository = transactionRepository;
         this.stripeService = stripeService;
         this.transactionManager = transactionManager;
+        this.walletWriteLanes = walletWriteLanes;
+        this.updateStrategy = updateStrategy;
+        this.topUpWorkers = topUpWorkers;
+        this.walletCache = walletCache;
+        this.stripeCircuitBreaker = stripeCircuitBreaker;
+        this.topUpMetrics = topUpMetrics;
+        this.ledger = ledger;
+        this.walletShards = walletShards;
+        this.refundQueue = refundQueue;
+        this.walletEvents = walletEvents;
+        this.walletIdCache = walletIdCache;
+        this.replicaReads = replicaReads;
     }
 }
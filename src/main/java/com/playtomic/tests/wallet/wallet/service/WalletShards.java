@@ -0,0 +1,254 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletShard;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletShardRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.domain.Limit;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+/**
+ * Balances of the {@link WalletUpdateStrategy#SHARDED} strategy.
+ *
+ * The balance of a Wallet is the amount of its row plus the amounts of its {@link WalletShard}s.
+ * Every top-up adds its amount in the database to a random one of them, so the top-ups of the same
+ * Wallet only wait for each other when they pick the same row.
+ *
+ * The shards follow the contention observed in this instance: when a top-up finds more top-ups of
+ * the same Wallet in progress than {@code wallet.shards.grow-at} per shard, a shard is added (up to
+ * {@code wallet.shards.max}). The shards of the Wallets without contention for
+ * {@code wallet.shards.merge-after} are merged back into the Wallet row in the background.
+ */
+@Component
+public class WalletShards {
+
+    private static final UUID FIRST_WALLET_ID = new UUID(0L, 0L);
+
+    private final Logger log = LoggerFactory.getLogger(WalletShards.class);
+
+    private final WalletShardRepository walletShardRepository;
+    private final WalletRepository walletRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final TransactionTemplate newTransactionTemplate;
+    private final boolean enabled;
+    private final int maxShards;
+    private final int growAt;
+    private final Duration mergeAfter;
+    private final int pageSize;
+    private final Cache<UUID, Contention> contentions;
+
+    /**
+     * @return true when the balances are split in shards
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Adds the amount to a shard of the Wallet. It must be called in the database transaction that
+     * marks the transaction as SUCCESS. The shard stays locked until that transaction ends, which
+     * is the wait the other shards avoid, so the top-up is in progress until then.
+     */
+    public void add(UUID walletId, long amount) {
+        Contention contention = contentions.get(walletId, this::contention);
+        int inProgress = contention.inProgress.incrementAndGet();
+        boolean completesWithTransaction = false;
+        try {
+            if (inProgress > 1) {
+                contention.contendedAt = Instant.now();
+            }
+            if (inProgress > contention.shards * growAt) {
+                grow(walletId, contention);
+            }
+            int shard = ThreadLocalRandom.current().nextInt(contention.shards);
+            // The Wallet row is the shard 0, and it also takes the amount of a merged shard
+            if (shard == 0 || walletShardRepository.addAmount(walletId, shard, amount) == 0) {
+                walletRepository.addAmount(walletId, amount);
+            }
+            completesWithTransaction = completeWithTransaction(contention);
+        } finally {
+            if (!completesWithTransaction) {
+                contention.inProgress.decrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * The Wallet with its balance, the amount of its row plus the amounts of its shards. Its
+     * version is the number of additions, which only grows, so the {@link WalletCache} keeps the
+     * newest balance.
+     */
+    public Optional<Wallet> findById(UUID walletId) {
+        return walletShardRepository.findWithShardsById(walletId);
+    }
+
+    @Scheduled(fixedDelayString = "${wallet.shards.merge-interval:PT1M}",
+        initialDelayString = "${wallet.shards.merge-interval:PT1M}")
+    public void mergeQuietShards() {
+        if (enabled) {
+            merge(Instant.now().minus(mergeAfter));
+        }
+    }
+
+    /**
+     * Merges into the Wallet rows the shards of the Wallets that have not been contended since the
+     * given instant. The sharded Wallets are read in pages of page-size, every page starting after
+     * the last Wallet of the previous one, so the contended Wallets left with their shards don't
+     * hide the rest.
+     *
+     * @return the number of Wallets merged
+     */
+    public int merge(Instant quietSince) {
+        int merged = 0;
+        UUID afterWalletId = FIRST_WALLET_ID;
+        List<UUID> page;
+        do {
+            page = walletShardRepository.findShardedWalletIdsAfter(afterWalletId,
+                Limit.of(pageSize));
+            for (UUID walletId : page) {
+                Contention contention = contentions.getIfPresent(walletId);
+                if (contention != null && (contention.inProgress.get() > 0
+                    || contention.contendedAt.isAfter(quietSince))) {
+                    continue;
+                }
+                transactionTemplate.executeWithoutResult(status -> merge(walletId));
+                merged++;
+            }
+            if (!page.isEmpty()) {
+                afterWalletId = page.get(page.size() - 1);
+            }
+        } while (page.size() == pageSize);
+
+        if (merged > 0) {
+            log.info("Merged the shards of {} wallets without contention", merged);
+        }
+        return merged;
+    }
+
+    /**
+     * Moves the amounts and the additions of the shards to the Wallet row, in the current database
+     * transaction, so all the balance is in the row (to be debited). The shards are locked, so a
+     * top-up adding to one of them waits and then adds to the Wallet row.
+     *
+     * @return false if the Wallet has no shards
+     */
+    public boolean merge(UUID walletId) {
+        List<WalletShard> shards = walletShardRepository.findAllByWalletIdForUpdate(walletId);
+        if (shards.isEmpty()) {
+            return false;
+        }
+        long amount = shards.stream().mapToLong(WalletShard::getAmount).sum();
+        long additions = shards.stream().mapToLong(WalletShard::getVersion).sum();
+        walletRepository.addMerged(walletId, amount, additions);
+        walletShardRepository.deleteAllInBatch(shards);
+        Contention contention = contentions.getIfPresent(walletId);
+        if (contention != null) {
+            contention.shards = 1;
+        }
+        return true;
+    }
+
+    /**
+     * Adds the next shard in its own database transaction, so the other top-ups can use it before
+     * this one commits. Only one top-up of this instance adds a shard of a Wallet at a time.
+     */
+    private void grow(UUID walletId, Contention contention) {
+        if (contention.shards >= maxShards || !contention.growing.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int shard = contention.shards;
+            newTransactionTemplate.executeWithoutResult(
+                status -> walletShardRepository.saveAndFlush(new WalletShard(walletId, shard)));
+            contention.shards = shard + 1;
+            log.info("Wallet {} contended by {} top-ups, split in {} shards", walletId,
+                contention.inProgress.get(), shard + 1);
+        } catch (DataIntegrityViolationException e) {
+            // Added by another instance
+            contention.shards = shardsOf(walletId);
+        } finally {
+            contention.growing.set(false);
+        }
+    }
+
+    private static boolean completeWithTransaction(Contention contention) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            return false;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCompletion(int status) {
+                contention.inProgress.decrementAndGet();
+            }
+        });
+        return true;
+    }
+
+    private Contention contention(UUID walletId) {
+        return new Contention(shardsOf(walletId));
+    }
+
+    private int shardsOf(UUID walletId) {
+        return (int) Math.min(maxShards, 1 + walletShardRepository.countByWalletId(walletId));
+    }
+
+    public WalletShards(WalletShardRepository walletShardRepository,
+        WalletRepository walletRepository, PlatformTransactionManager transactionManager,
+        @Value("${wallet.update-strategy:OPTIMISTIC}") WalletUpdateStrategy updateStrategy,
+        @Value("${wallet.shards.max:8}") int maxShards,
+        @Value("${wallet.shards.grow-at:2}") int growAt,
+        @Value("${wallet.shards.merge-after:5m}") Duration mergeAfter,
+        @Value("${wallet.shards.page-size:1000}") int pageSize,
+        @Value("${wallet.shards.tracked-wallets:100000}") long trackedWallets) {
+        this.walletShardRepository = walletShardRepository;
+        this.walletRepository = walletRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate = new TransactionTemplate(transactionManager);
+        this.newTransactionTemplate.setPropagationBehavior(
+            TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+        this.enabled = updateStrategy == WalletUpdateStrategy.SHARDED;
+        this.maxShards = maxShards;
+        this.growAt = growAt;
+        this.mergeAfter = mergeAfter;
+        this.pageSize = pageSize;
+        this.contentions = Caffeine.newBuilder()
+            .maximumSize(trackedWallets)
+            .expireAfterAccess(mergeAfter)
+            .build();
+    }
+
+    /**
+     * Top-ups of a Wallet in progress in this instance, and the shards they spread over.
+     */
+    private static final class Contention {
+
+        final AtomicInteger inProgress = new AtomicInteger();
+        final AtomicBoolean growing = new AtomicBoolean();
+        volatile int shards;
+        volatile Instant contendedAt = Instant.EPOCH;
+
+        Contention(int shards) {
+            this.shards = shards;
+        }
+    }
+}
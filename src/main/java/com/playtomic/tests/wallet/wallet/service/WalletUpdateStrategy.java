@@ -0,0 +1,38 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+/**
+ * How the balance of a Wallet is updated once the charge has been processed.
+ */
+public enum WalletUpdateStrategy {
+    /**
+     * Read-modify-write guarded by the Wallet version, retrying up to
+     * {@link WalletService#MAX_WALLET_RETRIES} times on conflict.
+     */
+    OPTIMISTIC,
+    /**
+     * The Wallet is read with {@code SELECT ... FOR UPDATE}, so the top-ups of the same Wallet wait
+     * for each other in the database instead of failing on the version.
+     */
+    PESSIMISTIC,
+    /**
+     * The amount is added in the database with a single {@code UPDATE}, whatever the version of
+     * the Wallet, in the database transaction that marks the transaction as SUCCESS. Nothing is
+     * read before, so there is nothing to retry.
+     */
+    ATOMIC,
+    /**
+     * Updates of the same Wallet are serialized through an in-process lane before reaching the
+     * database, so concurrent top-ups of the same Wallet don't conflict on the version.
+     */
+    SINGLE_WRITER,
+    /**
+     * The Wallet is not updated: every top-up appends an entry to the {@link Ledger}, and the
+     * balance is its snapshot plus the entries appended after it. The inserts never conflict.
+     */
+    LEDGER,
+    /**
+     * Every top-up adds its amount in the database to one of the {@link WalletShards} of the
+     * Wallet, which are split and merged following the contention of the Wallet.
+     */
+    SHARDED
+}
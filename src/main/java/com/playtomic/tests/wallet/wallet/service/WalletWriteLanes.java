@@ -0,0 +1,86 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import jakarta.annotation.PreDestroy;
+import java.util.UUID;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Fixed set of single-threaded lanes. Every Wallet is mapped to one lane by the hash of its id, so
+ * all the tasks of the same Wallet are executed one after the other, while different Wallets are
+ * spread between the lanes and executed in parallel.
+ */
+@Component
+public class WalletWriteLanes {
+
+    private final ExecutorService[] lanes;
+
+    public WalletWriteLanes(@Value("${wallet.single-writer.lanes:16}") int numberOfLanes) {
+        if (numberOfLanes < 1) {
+            throw new IllegalArgumentException("At least one lane is needed");
+        }
+        this.lanes = new ExecutorService[numberOfLanes];
+        for (int i = 0; i < numberOfLanes; i++) {
+            String threadName = "wallet-lane-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, threadName);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Executes the task in the lane of the Wallet and waits for its result. Exceptions thrown by
+     * the task are propagated to the caller.
+     */
+    public <T> T execute(UUID walletId, Supplier<T> task) {
+        Future<T> future = lanes[laneOf(walletId)].submit(task::get);
+
+        // Once queued the task will be executed anyway, so we wait for it even if interrupted to
+        // not lose the result of a Wallet update that is going to be applied.
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return future.get();
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof RuntimeException runtimeException) {
+                        throw runtimeException;
+                    }
+                    if (cause instanceof Error error) {
+                        throw error;
+                    }
+                    throw new IllegalStateException(cause);
+                }
+            }
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    int laneOf(UUID walletId) {
+        return Math.floorMod(walletId.hashCode(), lanes.length);
+    }
+
+    @PreDestroy
+    public void shutdown() throws InterruptedException {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        for (ExecutorService lane : lanes) {
+            lane.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+}
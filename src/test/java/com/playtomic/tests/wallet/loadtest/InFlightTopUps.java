@@ -0,0 +1,278 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Sends {@code in-flight} top-ups at once to a running wallet service and samples its
+ * /actuator/metrics while they wait for Stripe, to compare what every top-up in progress costs in
+ * the servlet and in the reactive mode: the threads, the heap and the database connections. The
+ * peaks over the values before the top-ups are reported per 10k top-ups in flight.
+ *
+ * The top-ups only stay in flight together if Stripe is slow enough (the {@link StripeSimulator}
+ * with a fixed latency under stripe.circuit-breaker.slow-call-duration) and the service lets
+ * them all wait for it (stripe.bulkhead.max-concurrent-calls at least {@code in-flight}).
+ *
+ * Run it once against every mode with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.playtomic.tests.wallet.loadtest.InFlightTopUps \
+ *   -Dexec.args="--base-uri=http://localhost:8090 --in-flight=10000"
+ * </pre>
+ */
+public class InFlightTopUps {
+
+    private static final Logger log = LoggerFactory.getLogger(InFlightTopUps.class);
+
+    /**
+     * The meters sampled, by the name they are reported with. The database connections are
+     * "hikaricp.*" for JDBC and "r2dbc.pool.*" for R2DBC, so each mode only has one of them.
+     */
+    static final Map<String, Meter> METERS = meters();
+
+    private static final int CREATING_CLIENTS = 64;
+
+    private final Settings settings;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param path of the meter in /actuator/metrics, with its tags
+     * @param unit the value is divided by it, like 1 MB for the bytes
+     */
+    record Meter(String path, double unit) {
+    }
+
+    /**
+     * @param inFlight top-ups sent at once, each to one of the wallets
+     * @param wallets created before the top-ups, as many as top-ups by default so that they
+     * don't retry on the optimistic locking of the same wallets
+     * @param sampleInterval time between the samples of the metrics
+     */
+    public record Settings(URI baseUri, int inFlight, int wallets, String cardNumber,
+                           String amount, Duration sampleInterval) {
+
+        static Settings from(Arguments arguments) {
+            int inFlight = arguments.getInt("in-flight", 10_000);
+            return new Settings(
+                URI.create(arguments.get("base-uri", "http://localhost:8090")),
+                inFlight,
+                arguments.getInt("wallets", inFlight),
+                arguments.get("card-number", "4242 4242 4242 4242"),
+                arguments.get("amount", "15"),
+                arguments.getDuration("sample-interval", "100ms"));
+        }
+    }
+
+    /**
+     * @param baseline the value of every meter before the top-ups, missing if the service
+     * doesn't publish it
+     * @param peak the highest value of every meter while the top-ups were in flight
+     */
+    public record Report(int inFlight, int succeeded, int failed, Duration elapsed,
+                         Map<String, Double> baseline, Map<String, Double> peak) {
+
+        /**
+         * @return the growth of the meter from the baseline to the peak, scaled to 10k top-ups in
+         * flight, or null if the service doesn't publish it
+         */
+        public Double per10k(String meter) {
+            if (!baseline.containsKey(meter) || !peak.containsKey(meter)) {
+                return null;
+            }
+            return (peak.get(meter) - baseline.get(meter)) * 10_000 / inFlight;
+        }
+
+        public String format() {
+            StringBuilder table = new StringBuilder(String.format(
+                "%d top-ups in flight, %d succeeded, %d failed, in %d ms%n%n%-32s %12s %12s %14s%n",
+                inFlight, succeeded, failed, elapsed.toMillis(), "", "baseline", "peak",
+                "per 10k"));
+            for (String meter : METERS.keySet()) {
+                Double per10k = per10k(meter);
+                if (per10k != null) {
+                    table.append(String.format("%-32s %12.1f %12.1f %14.1f%n", meter,
+                        baseline.get(meter), peak.get(meter), per10k));
+                }
+            }
+            return table.toString();
+        }
+    }
+
+    public InFlightTopUps(Settings settings) {
+        this.settings = settings;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+    }
+
+    public Report run() throws InterruptedException {
+        List<UUID> walletIds = createWallets();
+        Map<String, Double> baseline = sample();
+        Map<String, Double> peak = new LinkedHashMap<>(baseline);
+
+        AtomicInteger succeeded = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(settings.inFlight());
+        long startTime;
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.inFlight(); i++) {
+                UUID walletId = walletIds.get(i % walletIds.size());
+                clients.execute(() -> {
+                    try {
+                        start.await();
+                        (topUp(walletId) ? succeeded : failed).incrementAndGet();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        done.countDown();
+                    }
+                });
+            }
+            startTime = System.nanoTime();
+            start.countDown();
+            while (!done.await(settings.sampleInterval().toMillis(), TimeUnit.MILLISECONDS)) {
+                sample().forEach((meter, value) -> peak.merge(meter, value, Math::max));
+            }
+        }
+        return new Report(settings.inFlight(), succeeded.get(), failed.get(),
+            Duration.ofNanos(System.nanoTime() - startTime), baseline, peak);
+    }
+
+    private List<UUID> createWallets() throws InterruptedException {
+        List<UUID> walletIds = Collections.synchronizedList(new ArrayList<>());
+        Semaphore creating = new Semaphore(CREATING_CLIENTS);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < settings.wallets(); i++) {
+                creating.acquire();
+                clients.execute(() -> {
+                    try {
+                        walletIds.add(createWallet());
+                    } finally {
+                        creating.release();
+                    }
+                });
+            }
+        }
+        if (walletIds.size() < settings.wallets()) {
+            throw new IllegalStateException("Failed to create the wallets at "
+                + settings.baseUri());
+        }
+        return walletIds;
+    }
+
+    private UUID createWallet() {
+        try {
+            HttpResponse<String> response = send(post("/v1/wallets",
+                "{\"userId\":\"" + UUID.randomUUID() + "\"}"));
+            if (response.statusCode() != 201) {
+                throw new IllegalStateException("Failed to create the wallets at "
+                    + settings.baseUri() + ": " + response.statusCode());
+            }
+            return UUID.fromString(objectMapper.readTree(response.body()).get("id").asText());
+        } catch (IOException e) {
+            throw new IllegalStateException("Failed to create the wallets at "
+                + settings.baseUri(), e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private boolean topUp(UUID walletId) throws InterruptedException {
+        try {
+            int status = send(post("/v1/wallets/" + walletId + "/actions/topup",
+                "{\"cardNumber\":\"" + settings.cardNumber() + "\",\"amount\":"
+                    + settings.amount() + "}")).statusCode();
+            return status >= 200 && status < 300;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * @return the current value of the meters published by the service
+     */
+    private Map<String, Double> sample() throws InterruptedException {
+        Map<String, Double> values = new LinkedHashMap<>();
+        for (Map.Entry<String, Meter> meter : METERS.entrySet()) {
+            try {
+                HttpResponse<String> response = send(HttpRequest.newBuilder(settings.baseUri()
+                    .resolve("/actuator/metrics/" + meter.getValue().path())).GET().build());
+                if (response.statusCode() == 200) {
+                    values.put(meter.getKey(), value(objectMapper.readTree(response.body()))
+                        / meter.getValue().unit());
+                }
+            } catch (IOException e) {
+                log.warn("Failed to sample {}: {}", meter.getKey(), e.getMessage());
+            }
+        }
+        return values;
+    }
+
+    private static double value(JsonNode meter) {
+        for (JsonNode measurement : meter.get("measurements")) {
+            String statistic = measurement.get("statistic").asText();
+            if (statistic.equals("VALUE") || statistic.equals("ACTIVE_TASKS")) {
+                return measurement.get("value").asDouble();
+            }
+        }
+        throw new IllegalStateException("No value in " + meter);
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(settings.baseUri().resolve(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request)
+        throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static Map<String, Meter> meters() {
+        Map<String, Meter> meters = new LinkedHashMap<>();
+        meters.put("http.server.requests.active", new Meter("http.server.requests.active", 1));
+        meters.put("jvm.threads.live", new Meter("jvm.threads.live", 1));
+        meters.put("jvm.memory.used heap (MB)",
+            new Meter("jvm.memory.used?tag=area:heap", 1024 * 1024));
+        meters.put("hikaricp.connections", new Meter("hikaricp.connections", 1));
+        meters.put("hikaricp.connections.active", new Meter("hikaricp.connections.active", 1));
+        meters.put("hikaricp.connections.pending", new Meter("hikaricp.connections.pending", 1));
+        meters.put("r2dbc.pool.allocated", new Meter("r2dbc.pool.allocated", 1));
+        meters.put("r2dbc.pool.acquired", new Meter("r2dbc.pool.acquired", 1));
+        meters.put("r2dbc.pool.pending", new Meter("r2dbc.pool.pending", 1));
+        return meters;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Settings settings = Settings.from(new Arguments(args));
+        log.info("Running {}", settings);
+        Report report = new InFlightTopUps(settings).run();
+        System.out.printf("%n%s", report.format());
+    }
+}
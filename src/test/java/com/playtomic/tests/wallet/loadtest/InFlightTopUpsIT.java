@@ -0,0 +1,73 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Keeps a few hundred top-ups in flight in the reactive mode, charging in the
+ * {@link StripeSimulator} with a latency, and checks that they are waiting for Stripe without a
+ * thread nor a database connection each.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+    "spring.main.web-application-type=reactive",
+    "stripe.bulkhead.max-concurrent-calls=" + InFlightTopUpsIT.IN_FLIGHT,
+    "wallet.reactive.pool.max-size=" + InFlightTopUpsIT.POOL_MAX_SIZE})
+@ActiveProfiles("stripe-test")
+public class InFlightTopUpsIT {
+
+    static final int IN_FLIGHT = 300;
+    static final int POOL_MAX_SIZE = 20;
+
+    private static final StripeSimulator stripeSimulator = startStripeSimulator();
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void stripeSimulatorProperties(DynamicPropertyRegistry registry) {
+        String baseUri = "http://localhost:" + stripeSimulator.getPort();
+        registry.add("stripe.simulator.charges-uri", () -> baseUri + StripeSimulator.CHARGES_PATH);
+        registry.add("stripe.simulator.refunds-uri",
+            () -> baseUri + StripeSimulator.PAYMENTS_PATH + "{payment_id}/refunds");
+    }
+
+    @AfterAll
+    static void stopStripeSimulator() {
+        stripeSimulator.close();
+    }
+
+    @Test
+    public void whenTheTopUpsWaitForStripe_thenTheyDontTakeAThreadNorAConnectionEach()
+        throws Exception {
+        InFlightTopUps.Report report = new InFlightTopUps(new InFlightTopUps.Settings(
+            URI.create("http://localhost:" + port), IN_FLIGHT, IN_FLIGHT, "4242 4242 4242 4242",
+            "15", Duration.ofMillis(50))).run();
+
+        assertEquals(IN_FLIGHT, report.succeeded(), report.format());
+        assertTrue(report.per10k("jvm.threads.live") < 10_000 / 4.0, report.format());
+        assertTrue(report.peak().get("r2dbc.pool.allocated") <= POOL_MAX_SIZE, report.format());
+        assertTrue(report.peak().get("r2dbc.pool.acquired") < IN_FLIGHT / 4.0, report.format());
+    }
+
+    private static StripeSimulator startStripeSimulator() {
+        try {
+            return StripeSimulator.start(0, new StripeSimulator.Settings(
+                LatencyDistribution.parse("fixed:1s"), 0, 0, new BigDecimal(10)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
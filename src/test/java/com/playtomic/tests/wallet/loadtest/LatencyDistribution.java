@@ -0,0 +1,72 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import org.springframework.boot.convert.DurationStyle;
+
+/**
+ * Latency of the responses of the {@link StripeSimulator}.
+ */
+sealed interface LatencyDistribution {
+
+    Duration next();
+
+    /**
+     * Parses one of:
+     * <ul>
+     *     <li>fixed:300ms</li>
+     *     <li>uniform:100ms,500ms</li>
+     *     <li>lognormal:300ms,1500ms - median and p99, a long tail like the real network
+     *     calls</li>
+     * </ul>
+     */
+    static LatencyDistribution parse(String value) {
+        String[] typeAndValues = value.split(":", 2);
+        String[] values = typeAndValues.length > 1 ? typeAndValues[1].split(",") : new String[0];
+        return switch (typeAndValues[0]) {
+            case "fixed" -> new Fixed(duration(values, 0));
+            case "uniform" -> new Uniform(duration(values, 0), duration(values, 1));
+            case "lognormal" -> new LogNormal(duration(values, 0), duration(values, 1));
+            default -> throw new IllegalArgumentException("Unknown latency distribution " + value);
+        };
+    }
+
+    private static Duration duration(String[] values, int index) {
+        if (index >= values.length) {
+            throw new IllegalArgumentException("Missing value " + (index + 1)
+                + " of the latency distribution");
+        }
+        return DurationStyle.detectAndParse(values[index].trim());
+    }
+
+    record Fixed(Duration latency) implements LatencyDistribution {
+
+        @Override
+        public Duration next() {
+            return latency;
+        }
+    }
+
+    record Uniform(Duration min, Duration max) implements LatencyDistribution {
+
+        @Override
+        public Duration next() {
+            return Duration.ofNanos(
+                ThreadLocalRandom.current().nextLong(min.toNanos(), max.toNanos() + 1));
+        }
+    }
+
+    record LogNormal(Duration median, Duration p99) implements LatencyDistribution {
+
+        // The 99th percentile of the standard normal distribution
+        private static final double Z_99 = 2.326;
+
+        @Override
+        public Duration next() {
+            double mu = Math.log(median.toNanos());
+            double sigma = (Math.log(p99.toNanos()) - mu) / Z_99;
+            double gaussian = ThreadLocalRandom.current().nextGaussian();
+            return Duration.ofNanos((long) Math.exp(mu + sigma * gaussian));
+        }
+    }
+}
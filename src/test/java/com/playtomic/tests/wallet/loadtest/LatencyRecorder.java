@@ -0,0 +1,64 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+/**
+ * Records every latency of an operation, to calculate the exact percentiles at the end. A load
+ * test of some minutes records a few hundred thousands of values, a few MB.
+ */
+class LatencyRecorder {
+
+    private long[] latencies = new long[1024];
+    private int count;
+    private int errors;
+
+    synchronized void record(long latencyNanos, boolean error) {
+        if (count == latencies.length) {
+            latencies = Arrays.copyOf(latencies, count * 2);
+        }
+        latencies[count++] = latencyNanos;
+        if (error) {
+            errors++;
+        }
+    }
+
+    /**
+     * Adds the latencies and the errors of this recorder to the target.
+     */
+    synchronized void copyTo(LatencyRecorder target) {
+        synchronized (target) {
+            for (int i = 0; i < count; i++) {
+                target.record(latencies[i], false);
+            }
+            target.errors += errors;
+        }
+    }
+
+    synchronized Stats stats(Duration elapsed) {
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        return new Stats(count, errors, count / (elapsed.toNanos() / 1_000_000_000.0),
+            percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+            count == 0 ? Duration.ZERO : Duration.ofNanos(sorted[count - 1]));
+    }
+
+    /**
+     * Nearest-rank percentile: the smallest latency with at least this fraction of the latencies
+     * lower or equal.
+     */
+    static Duration percentile(long[] sorted, double fraction) {
+        if (sorted.length == 0) {
+            return Duration.ZERO;
+        }
+        int rank = (int) Math.ceil(fraction * sorted.length);
+        return Duration.ofNanos(sorted[Math.max(rank, 1) - 1]);
+    }
+
+    /**
+     * @param throughput operations per second
+     */
+    record Stats(int count, int errors, double throughput, Duration p50, Duration p99,
+                 Duration p999, Duration max) {
+    }
+}
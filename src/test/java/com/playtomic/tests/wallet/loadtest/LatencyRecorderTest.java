@@ -0,0 +1,49 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import org.junit.jupiter.api.Test;
+
+public class LatencyRecorderTest {
+
+    @Test
+    public void whenRecordingLatencies_thenThePercentilesAreTheNearestRank() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        for (int millis = 1000; millis >= 1; millis--) {
+            recorder.record(Duration.ofMillis(millis).toNanos(), millis % 100 == 0);
+        }
+
+        LatencyRecorder.Stats stats = recorder.stats(Duration.ofSeconds(2));
+
+        assertEquals(1000, stats.count());
+        assertEquals(10, stats.errors());
+        assertEquals(500.0, stats.throughput());
+        assertEquals(Duration.ofMillis(500), stats.p50());
+        assertEquals(Duration.ofMillis(990), stats.p99());
+        assertEquals(Duration.ofMillis(999), stats.p999());
+        assertEquals(Duration.ofMillis(1000), stats.max());
+    }
+
+    @Test
+    public void whenThereAreNoLatencies_thenThePercentilesAreZero() {
+        LatencyRecorder.Stats stats = new LatencyRecorder().stats(Duration.ofSeconds(1));
+
+        assertEquals(0, stats.count());
+        assertEquals(Duration.ZERO, stats.p999());
+    }
+
+    @Test
+    public void whenCopyingToAnotherRecorder_thenTheLatenciesAndErrorsAreAdded() {
+        LatencyRecorder recorder = new LatencyRecorder();
+        recorder.record(10, true);
+        LatencyRecorder total = new LatencyRecorder();
+        total.record(20, false);
+
+        recorder.copyTo(total);
+
+        LatencyRecorder.Stats stats = total.stats(Duration.ofSeconds(1));
+        assertEquals(2, stats.count());
+        assertEquals(1, stats.errors());
+    }
+}
@@ -0,0 +1,273 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.playtomic.tests.wallet.loadtest.LatencyRecorder.Stats;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Drives a mix of wallet creations, top-ups and reads against a running wallet service and reports
+ * the throughput and the p50/p99/p999 latency of every operation.
+ *
+ * <ul>
+ *     <li>Closed loop (default): {@code concurrency} clients sending a request as soon as the
+ *     previous one is answered. Measures the maximum throughput.</li>
+ *     <li>Open loop ({@code --rate}): the requests are sent at a fixed rate, with at most
+ *     {@code concurrency} in progress, and the latency is measured from the moment the request
+ *     should have been sent. So a stall of the service shows up in the percentiles instead of
+ *     just slowing down the clients (coordinated omission).</li>
+ * </ul>
+ *
+ * Run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.playtomic.tests.wallet.loadtest.LoadGenerator \
+ *   -Dexec.args="--base-uri=http://localhost:8090 --duration=60s --rate=500 \
+ *   --mix=create:1,topup:4,get:15"
+ * </pre>
+ */
+public class LoadGenerator {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadGenerator.class);
+
+    private final Settings settings;
+    private final HttpClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final List<UUID> walletIds = Collections.synchronizedList(new ArrayList<>());
+    private final Map<Operation, LatencyRecorder> recorders = new EnumMap<>(Operation.class);
+
+    public enum Operation {
+        CREATE,
+        TOPUP,
+        GET
+    }
+
+    /**
+     * @param rate requests per second, or 0 to send them as fast as possible (closed loop)
+     * @param mix weight of every operation
+     * @param wallets wallets created before starting, used by the top-ups and the reads
+     */
+    public record Settings(URI baseUri, Duration duration, int concurrency, int rate,
+                           Map<Operation, Integer> mix, int wallets, String cardNumber,
+                           String amount) {
+
+        static Settings from(Arguments arguments) {
+            return new Settings(
+                URI.create(arguments.get("base-uri", "http://localhost:8090")),
+                arguments.getDuration("duration", "60s"),
+                arguments.getInt("concurrency", 64),
+                arguments.getInt("rate", 0),
+                parseMix(arguments.get("mix", "create:1,topup:4,get:15")),
+                arguments.getInt("wallets", 100),
+                arguments.get("card-number", "4242 4242 4242 4242"),
+                arguments.get("amount", "15"));
+        }
+
+        private static Map<Operation, Integer> parseMix(String value) {
+            Map<Operation, Integer> mix = new EnumMap<>(Operation.class);
+            for (String weight : value.split(",")) {
+                String[] operationAndWeight = weight.split(":");
+                mix.put(Operation.valueOf(operationAndWeight[0].trim().toUpperCase()),
+                    Integer.parseInt(operationAndWeight[1].trim()));
+            }
+            return mix;
+        }
+    }
+
+    /**
+     * @param elapsed duration of the measurement, without the creation of the initial wallets
+     */
+    public record Report(Map<Operation, Stats> operations, Stats total, Duration elapsed) {
+
+        public String format() {
+            StringBuilder table = new StringBuilder(String.format(
+                "%-8s %9s %7s %9s %9s %9s %9s %9s%n", "", "requests", "errors", "req/s",
+                "p50 ms", "p99 ms", "p999 ms", "max ms"));
+            operations.forEach((operation, stats) -> table.append(
+                row(operation.name().toLowerCase(), stats)));
+            table.append(row("total", total));
+            return table.toString();
+        }
+
+        private static String row(String name, Stats stats) {
+            return String.format("%-8s %9d %7d %9.1f %9.1f %9.1f %9.1f %9.1f%n", name,
+                stats.count(), stats.errors(), stats.throughput(), millis(stats.p50()),
+                millis(stats.p99()), millis(stats.p999()), millis(stats.max()));
+        }
+
+        private static double millis(Duration duration) {
+            return duration.toNanos() / 1_000_000.0;
+        }
+    }
+
+    public LoadGenerator(Settings settings) {
+        this.settings = settings;
+        this.httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_1_1)
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+        for (Operation operation : Operation.values()) {
+            recorders.put(operation, new LatencyRecorder());
+        }
+    }
+
+    public Report run() throws InterruptedException {
+        for (int i = 0; i < settings.wallets(); i++) {
+            if (!execute(Operation.CREATE)) {
+                throw new IllegalStateException("Failed to create the initial wallets at "
+                    + settings.baseUri());
+            }
+        }
+        recorders.put(Operation.CREATE, new LatencyRecorder());
+
+        long start = System.nanoTime();
+        long end = start + settings.duration().toNanos();
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            if (settings.rate() > 0) {
+                runOpenLoop(clients, start, end);
+            } else {
+                runClosedLoop(clients, end);
+            }
+        }
+        return report(Duration.ofNanos(System.nanoTime() - start));
+    }
+
+    private void runClosedLoop(ExecutorService clients, long end) {
+        for (int i = 0; i < settings.concurrency(); i++) {
+            clients.execute(() -> {
+                while (System.nanoTime() < end) {
+                    Operation operation = nextOperation();
+                    long start = System.nanoTime();
+                    boolean succeeded = execute(operation);
+                    recorders.get(operation).record(System.nanoTime() - start, !succeeded);
+                }
+            });
+        }
+    }
+
+    private void runOpenLoop(ExecutorService clients, long start, long end)
+        throws InterruptedException {
+        Semaphore inProgress = new Semaphore(settings.concurrency());
+        long interval = TimeUnit.SECONDS.toNanos(1) / settings.rate();
+        for (long intended = start; intended < end; intended += interval) {
+            long wait = intended - System.nanoTime();
+            if (wait > 0) {
+                TimeUnit.NANOSECONDS.sleep(wait);
+            }
+            inProgress.acquire();
+            long scheduled = intended;
+            clients.execute(() -> {
+                try {
+                    Operation operation = nextOperation();
+                    boolean succeeded = execute(operation);
+                    recorders.get(operation).record(System.nanoTime() - scheduled, !succeeded);
+                } finally {
+                    inProgress.release();
+                }
+            });
+        }
+    }
+
+    private Operation nextOperation() {
+        int total = settings.mix().values().stream().mapToInt(Integer::intValue).sum();
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<Operation, Integer> weight : settings.mix().entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    /**
+     * @return false if the request failed or was not answered with 2xx
+     */
+    private boolean execute(Operation operation) {
+        try {
+            return switch (operation) {
+                case CREATE -> createWallet();
+                case TOPUP -> isSuccessful(send(post("/v1/wallets/" + randomWalletId()
+                    + "/actions/topup", "{\"cardNumber\":\"" + settings.cardNumber()
+                    + "\",\"amount\":" + settings.amount() + "}")));
+                case GET -> isSuccessful(send(HttpRequest.newBuilder(
+                    settings.baseUri().resolve("/v1/wallets/" + randomWalletId())).GET()
+                    .build()));
+            };
+        } catch (IOException e) {
+            return false;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private boolean createWallet() throws IOException, InterruptedException {
+        HttpResponse<String> response = send(post("/v1/wallets",
+            "{\"userId\":\"" + UUID.randomUUID() + "\"}"));
+        if (!isSuccessful(response)) {
+            return false;
+        }
+        walletIds.add(UUID.fromString(objectMapper.readTree(response.body()).get("id").asText()));
+        return true;
+    }
+
+    private UUID randomWalletId() {
+        synchronized (walletIds) {
+            return walletIds.get(ThreadLocalRandom.current().nextInt(walletIds.size()));
+        }
+    }
+
+    private HttpRequest post(String path, String body) {
+        return HttpRequest.newBuilder(settings.baseUri().resolve(path))
+            .header("Content-Type", "application/json")
+            .POST(HttpRequest.BodyPublishers.ofString(body))
+            .build();
+    }
+
+    private HttpResponse<String> send(HttpRequest request)
+        throws IOException, InterruptedException {
+        return httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+    }
+
+    private static boolean isSuccessful(HttpResponse<?> response) {
+        return response.statusCode() >= 200 && response.statusCode() < 300;
+    }
+
+    private Report report(Duration elapsed) {
+        Map<Operation, Stats> operations = new EnumMap<>(Operation.class);
+        LatencyRecorder total = new LatencyRecorder();
+        recorders.forEach((operation, recorder) -> {
+            Stats stats = recorder.stats(elapsed);
+            if (stats.count() > 0) {
+                operations.put(operation, stats);
+            }
+            recorder.copyTo(total);
+        });
+        return new Report(operations, total.stats(elapsed), elapsed);
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        Settings settings = Settings.from(new Arguments(args));
+        log.info("Running {}", settings);
+        Report report = new LoadGenerator(settings).run();
+        System.out.printf("%nDuration %d s%n%s", report.elapsed().toSeconds(), report.format());
+    }
+}
@@ -0,0 +1,86 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.loadtest.LatencyRecorder.Stats;
+import com.playtomic.tests.wallet.loadtest.LoadGenerator.Operation;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Duration;
+import java.util.Map;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+
+/**
+ * Runs the load generator for a few seconds against the service, charging in the
+ * {@link StripeSimulator} with a latency and a decline rate.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("stripe-test")
+public class LoadGeneratorIT {
+
+    private static final StripeSimulator stripeSimulator = startStripeSimulator();
+
+    @LocalServerPort
+    private int port;
+
+    @DynamicPropertySource
+    static void stripeSimulatorProperties(DynamicPropertyRegistry registry) {
+        String baseUri = "http://localhost:" + stripeSimulator.getPort();
+        registry.add("stripe.simulator.charges-uri", () -> baseUri + StripeSimulator.CHARGES_PATH);
+        registry.add("stripe.simulator.refunds-uri",
+            () -> baseUri + StripeSimulator.PAYMENTS_PATH + "{payment_id}/refunds");
+    }
+
+    @AfterAll
+    static void stopStripeSimulator() {
+        stripeSimulator.close();
+    }
+
+    @Test
+    public void whenRunningAClosedLoop_thenEveryOperationIsReported() throws Exception {
+        LoadGenerator.Report report = new LoadGenerator(aSettings(0)).run();
+
+        Stats topUps = report.operations().get(Operation.TOPUP);
+        Stats gets = report.operations().get(Operation.GET);
+        assertTrue(topUps.count() > 0);
+        assertTrue(topUps.errors() > 0 && topUps.errors() < topUps.count(),
+            "Declined top-ups: " + topUps.errors() + " of " + topUps.count());
+        assertTrue(topUps.p50().toMillis() >= 20, "Top-up p50 " + topUps.p50());
+        assertEquals(0, gets.errors());
+        assertEquals(report.operations().values().stream().mapToInt(Stats::count).sum(),
+            report.total().count());
+    }
+
+    @Test
+    public void whenRunningAnOpenLoop_thenTheRequestsAreSentAtTheRate() throws Exception {
+        LoadGenerator.Report report = new LoadGenerator(aSettings(50)).run();
+
+        int requests = report.total().count();
+        assertTrue(requests > 50 && requests <= 100, "Requests " + requests);
+    }
+
+    private LoadGenerator.Settings aSettings(int rate) {
+        return new LoadGenerator.Settings(URI.create("http://localhost:" + port),
+            Duration.ofSeconds(2), 8, rate,
+            Map.of(Operation.CREATE, 1, Operation.TOPUP, 4, Operation.GET, 5), 10,
+            "4242 4242 4242 4242", "15");
+    }
+
+    private static StripeSimulator startStripeSimulator() {
+        try {
+            return StripeSimulator.start(0, new StripeSimulator.Settings(
+                LatencyDistribution.parse("fixed:20ms"), 0, 0.2, new BigDecimal(10)));
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
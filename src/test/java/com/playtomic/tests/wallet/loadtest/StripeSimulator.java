@@ -0,0 +1,163 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.math.BigDecimal;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.regex.Pattern;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local stand-in of the Stripe simulator, with the same paths, that answers with a configurable
+ * latency and error rates. It runs in its own process (or in a test), every request in a virtual
+ * thread, so thousands of slow charges in progress don't need thousands of platform threads.
+ *
+ * <ul>
+ *     <li>POST /v1/stripe-simulator/charges: 200 with a new payment id, 422 when the amount is
+ *     lower than the minimum or with decline-rate probability, 500 with error-rate
+ *     probability.</li>
+ *     <li>POST /v1/stripe-simulator/payments/{payment_id}/refunds: 200, or 500 with error-rate
+ *     probability.</li>
+ * </ul>
+ *
+ * Run it with:
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *   -Dexec.mainClass=com.playtomic.tests.wallet.loadtest.StripeSimulator \
+ *   -Dexec.args="--port=9999 --latency=lognormal:300ms,1500ms --error-rate=0.02"
+ * </pre>
+ */
+public class StripeSimulator implements AutoCloseable {
+
+    static final String CHARGES_PATH = "/v1/stripe-simulator/charges";
+    static final String PAYMENTS_PATH = "/v1/stripe-simulator/payments/";
+    private static final Pattern REFUND_PATH = Pattern.compile(
+        "/v1/stripe-simulator/payments/[^/]+/refunds");
+
+    private static final Logger log = LoggerFactory.getLogger(StripeSimulator.class);
+
+    private final HttpServer server;
+    private final Settings settings;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * @param latency latency of every response
+     * @param errorRate probability of answering 500
+     * @param declineRate probability of answering 422 to a valid amount
+     * @param minAmount the charges of lower amounts are answered with 422
+     */
+    public record Settings(LatencyDistribution latency, double errorRate, double declineRate,
+                           BigDecimal minAmount) {
+
+        static Settings from(Arguments arguments) {
+            return new Settings(
+                LatencyDistribution.parse(arguments.get("latency", "fixed:0ms")),
+                arguments.getDouble("error-rate", 0),
+                arguments.getDouble("decline-rate", 0),
+                new BigDecimal(arguments.get("min-amount", "10")));
+        }
+    }
+
+    private StripeSimulator(int port, Settings settings) throws IOException {
+        this.settings = settings;
+        this.server = HttpServer.create(new InetSocketAddress(port), 1024);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.createContext(CHARGES_PATH, this::charge);
+        server.createContext(PAYMENTS_PATH, this::refund);
+        server.start();
+    }
+
+    /**
+     * @param port 0 to use any free port
+     */
+    public static StripeSimulator start(int port, Settings settings) throws IOException {
+        return new StripeSimulator(port, settings);
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+    }
+
+    private void charge(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            JsonNode request = readBody(exchange.getRequestBody());
+            sleepLatency();
+            if (fails(settings.errorRate())) {
+                respond(exchange, 500, "{\"error\":\"Simulated error\"}");
+            } else if (request == null || !request.hasNonNull("amount")) {
+                respond(exchange, 400, "{\"error\":\"Missing amount\"}");
+            } else if (request.get("amount").decimalValue().compareTo(settings.minAmount()) < 0
+                || fails(settings.declineRate())) {
+                respond(exchange, 422, "{\"error\":\"Amount too small\"}");
+            } else {
+                respond(exchange, 200, "{\"id\":\"" + UUID.randomUUID() + "\"}");
+            }
+        }
+    }
+
+    private void refund(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            exchange.getRequestBody().readAllBytes();
+            if (!REFUND_PATH.matcher(exchange.getRequestURI().getPath()).matches()) {
+                respond(exchange, 404, "{\"error\":\"Not found\"}");
+                return;
+            }
+            sleepLatency();
+            if (fails(settings.errorRate())) {
+                respond(exchange, 500, "{\"error\":\"Simulated error\"}");
+            } else {
+                respond(exchange, 200, "{}");
+            }
+        }
+    }
+
+    private JsonNode readBody(InputStream body) throws IOException {
+        byte[] bytes = body.readAllBytes();
+        return bytes.length == 0 ? null : objectMapper.readTree(bytes);
+    }
+
+    private void sleepLatency() {
+        try {
+            Thread.sleep(settings.latency().next());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static boolean fails(double rate) {
+        return rate > 0 && ThreadLocalRandom.current().nextDouble() < rate;
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body)
+        throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream responseBody = exchange.getResponseBody()) {
+            responseBody.write(bytes);
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        Arguments arguments = new Arguments(args);
+        Settings settings = Settings.from(arguments);
+        StripeSimulator simulator = start(arguments.getInt("port", 9999), settings);
+        log.info("Stripe simulator listening at http://localhost:{}{} with {}", simulator.getPort(),
+            CHARGES_PATH, settings);
+    }
+}
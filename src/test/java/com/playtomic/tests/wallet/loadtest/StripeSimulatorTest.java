@@ -0,0 +1,121 @@
+package com.playtomic.tests.wallet.loadtest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Arrays;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+
+public class StripeSimulatorTest {
+
+    @Test
+    public void whenChargingAValidAmount_thenAPaymentIsReturned() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0, aSettings("fixed:0ms", 0, 0))) {
+            assertNotNull(aStripeService(simulator).charge("4242 4242 4242 4242",
+                new BigDecimal(15)).getId());
+        }
+    }
+
+    @Test
+    public void whenChargingLessThanTheMinimum_thenTheAmountIsTooSmall() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0, aSettings("fixed:0ms", 0, 0))) {
+            StripeService stripeService = aStripeService(simulator);
+
+            assertThrows(StripeAmountTooSmallException.class,
+                () -> stripeService.charge("4242 4242 4242 4242", new BigDecimal(5)));
+        }
+    }
+
+    @Test
+    public void whenTheDeclineRateIsOne_thenEveryChargeIsDeclined() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0, aSettings("fixed:0ms", 0, 1))) {
+            StripeService stripeService = aStripeService(simulator);
+
+            assertThrows(StripeAmountTooSmallException.class,
+                () -> stripeService.charge("4242 4242 4242 4242", new BigDecimal(15)));
+        }
+    }
+
+    @Test
+    public void whenTheErrorRateIsOne_thenEveryChargeFails() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0, aSettings("fixed:0ms", 1, 0))) {
+            StripeService stripeService = aStripeService(simulator);
+
+            StripeServiceException exception = assertThrows(StripeServiceException.class,
+                () -> stripeService.charge("4242 4242 4242 4242", new BigDecimal(15)));
+            assertEquals("Stripe answered 500", exception.getMessage());
+        }
+    }
+
+    @Test
+    public void whenRefundingAPayment_thenItIsRefunded() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0, aSettings("fixed:0ms", 0, 0))) {
+            aStripeService(simulator).refund("1234");
+        }
+    }
+
+    @Test
+    public void whenTheErrorRateIsOne_thenEveryRefundFails() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0, aSettings("fixed:0ms", 1, 0))) {
+            StripeService stripeService = aStripeService(simulator);
+
+            StripeServiceException exception = assertThrows(StripeServiceException.class,
+                () -> stripeService.refund("1234"));
+            assertEquals("Stripe answered 500", exception.getMessage());
+        }
+    }
+
+    @Test
+    public void whenTheLatencyIsFixed_thenTheChargeTakesAtLeastThatLatency() throws Exception {
+        try (StripeSimulator simulator = StripeSimulator.start(0,
+            aSettings("fixed:200ms", 0, 0))) {
+            StripeService stripeService = aStripeService(simulator);
+
+            long start = System.nanoTime();
+            stripeService.charge("4242 4242 4242 4242", new BigDecimal(15));
+
+            assertTrue(Duration.ofNanos(System.nanoTime() - start).toMillis() >= 200);
+        }
+    }
+
+    @Test
+    public void whenTheLatencyIsLogNormal_thenTheMedianIsTheConfiguredOne() {
+        LatencyDistribution latency = LatencyDistribution.parse("lognormal:100ms,500ms");
+        long[] samples = new long[10001];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.next().toNanos();
+        }
+        Arrays.sort(samples);
+
+        long median = Duration.ofNanos(samples[samples.length / 2]).toMillis();
+        long p99 = Duration.ofNanos(samples[samples.length * 99 / 100]).toMillis();
+        assertTrue(median > 90 && median < 110, "Median " + median);
+        assertTrue(p99 > 400 && p99 < 600, "p99 " + p99);
+    }
+
+    private static StripeSimulator.Settings aSettings(String latency, double errorRate,
+        double declineRate) {
+        return new StripeSimulator.Settings(LatencyDistribution.parse(latency), errorRate,
+            declineRate, new BigDecimal(10));
+    }
+
+    private static StripeService aStripeService(StripeSimulator simulator) {
+        URI baseUri = URI.create("http://localhost:" + simulator.getPort());
+        return new StripeService(baseUri.resolve(StripeSimulator.CHARGES_PATH),
+            baseUri + StripeSimulator.PAYMENTS_PATH + "{payment_id}/refunds",
+            new RestTemplateBuilder(), new SimpleClientHttpRequestFactory(),
+            HttpClient.newHttpClient(), Duration.ofSeconds(5), new ObjectMapper());
+    }
+}
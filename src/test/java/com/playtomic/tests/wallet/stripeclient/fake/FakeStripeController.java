@@ -6,6 +6,7 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RestController;
@@ -25,6 +26,14 @@ class FakeStripeController {
         }
     }
 
+    @PostMapping("/stripe/payments/{paymentId}/refunds")
+    public ResponseEntity<Void> refund(@PathVariable String paymentId) {
+        if (paymentId.equals("1234")) {
+            return ResponseEntity.ok().build();
+        }
+        throw new IllegalArgumentException();
+    }
+
     /**
      * Duplicated with the defined in stripeclient.dto but is giving problems building the object
      * in the controller (notnull parameters). For reasons of the exercise I've decided to not
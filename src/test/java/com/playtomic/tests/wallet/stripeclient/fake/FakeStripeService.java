@@ -1,14 +1,20 @@
 package com.playtomic.tests.wallet.stripeclient.fake;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.playtomic.tests.wallet.stripeclient.dto.Payment;
 import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
 import com.playtomic.tests.wallet.stripeclient.service.StripeService;
 import java.math.BigDecimal;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
 import lombok.NonNull;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Primary;
 import org.springframework.context.annotation.Profile;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.stereotype.Service;
 
 @Service
@@ -16,8 +22,12 @@ import org.springframework.stereotype.Service;
 @Profile("test")
 public class FakeStripeService extends StripeService {
 
+    public static final String FAILING_REFUND_PAYMENT_ID = "4321";
+
     public FakeStripeService(@NonNull RestTemplateBuilder restTemplateBuilder) {
-        super(URI.create("http://localhost"), URI.create("http://localhost"), restTemplateBuilder);
+        super(URI.create("http://localhost"), "http://localhost", restTemplateBuilder,
+            new SimpleClientHttpRequestFactory(), HttpClient.newHttpClient(), Duration.ofSeconds(5),
+            new ObjectMapper());
     }
 
     @Override
@@ -27,4 +37,21 @@ public class FakeStripeService extends StripeService {
         }
         return new Payment("1234");
     }
+
+    @Override
+    public CompletableFuture<Payment> chargeAsync(@NonNull String creditCardNumber,
+        @NonNull BigDecimal amount) {
+        try {
+            return CompletableFuture.completedFuture(charge(creditCardNumber, amount));
+        } catch (StripeServiceException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    @Override
+    public void refund(@NonNull String paymentId) {
+        if (paymentId.equals(FAILING_REFUND_PAYMENT_ID)) {
+            throw new StripeServiceException("Stripe answered 500");
+        }
+    }
 }
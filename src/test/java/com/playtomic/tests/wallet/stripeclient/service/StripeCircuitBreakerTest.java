@@ -0,0 +1,132 @@
+package com.playtomic.tests.wallet.stripeclient.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeUnavailableException;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class StripeCircuitBreakerTest {
+
+    @Test
+    public void whenTheLastCallsFail_thenTheNextCallsAreRejectedWithoutCallingStripe() {
+        StripeCircuitBreaker stripeCircuitBreaker = aStripeCircuitBreaker(Duration.ofSeconds(2),
+            10, new SimpleMeterRegistry());
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 4; i++) {
+            assertThrows(StripeServiceException.class, () -> stripeCircuitBreaker.execute(() -> {
+                calls.incrementAndGet();
+                throw new StripeServiceException("Service is down");
+            }));
+        }
+
+        assertThrows(StripeUnavailableException.class,
+            () -> stripeCircuitBreaker.execute(() -> {
+                calls.incrementAndGet();
+                return new Payment("paymentId");
+            }));
+
+        assertEquals(4, calls.get());
+        assertEquals(CircuitBreaker.State.OPEN, stripeCircuitBreaker.getState());
+    }
+
+    @Test
+    public void whenTheLastCallsAreSlow_thenTheCircuitOpens() {
+        StripeCircuitBreaker stripeCircuitBreaker = aStripeCircuitBreaker(Duration.ofMillis(10),
+            10, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 4; i++) {
+            stripeCircuitBreaker.execute(() -> {
+                sleep(20);
+                return new Payment("paymentId");
+            });
+        }
+
+        assertEquals(CircuitBreaker.State.OPEN, stripeCircuitBreaker.getState());
+    }
+
+    @Test
+    public void whenTheAmountIsTooSmall_thenTheCircuitIsKeptClosed() {
+        StripeCircuitBreaker stripeCircuitBreaker = aStripeCircuitBreaker(Duration.ofSeconds(2),
+            10, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(StripeAmountTooSmallException.class,
+                () -> stripeCircuitBreaker.execute(() -> {
+                    throw new StripeAmountTooSmallException();
+                }));
+        }
+
+        assertEquals(CircuitBreaker.State.CLOSED, stripeCircuitBreaker.getState());
+    }
+
+    @Test
+    public void whenTooManyCallsAreInProgress_thenTheNewOnesAreRejected() throws Exception {
+        StripeCircuitBreaker stripeCircuitBreaker = aStripeCircuitBreaker(Duration.ofSeconds(2),
+            1, new SimpleMeterRegistry());
+        CountDownLatch inProgress = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Thread slowCall = new Thread(() -> stripeCircuitBreaker.execute(() -> {
+            inProgress.countDown();
+            await(release);
+            return new Payment("paymentId");
+        }));
+        slowCall.start();
+        inProgress.await();
+
+        assertThrows(StripeUnavailableException.class,
+            () -> stripeCircuitBreaker.execute(() -> new Payment("paymentId")));
+
+        release.countDown();
+        slowCall.join();
+    }
+
+    @Test
+    public void whenTheCircuitOpens_thenTheStateIsPublished() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        StripeCircuitBreaker stripeCircuitBreaker = aStripeCircuitBreaker(Duration.ofSeconds(2),
+            10, meterRegistry);
+
+        for (int i = 0; i < 4; i++) {
+            assertThrows(StripeServiceException.class, () -> stripeCircuitBreaker.execute(() -> {
+                throw new StripeServiceException("Service is down");
+            }));
+        }
+
+        assertEquals(1, meterRegistry.get("resilience4j.circuitbreaker.state")
+            .tag("name", "stripe").tag("state", "open").gauge().value());
+        assertEquals(0, meterRegistry.get("resilience4j.circuitbreaker.state")
+            .tag("name", "stripe").tag("state", "closed").gauge().value());
+    }
+
+    private static StripeCircuitBreaker aStripeCircuitBreaker(Duration slowCallDuration,
+        int maxConcurrentCalls, MeterRegistry meterRegistry) {
+        return new StripeCircuitBreaker(50, 50, slowCallDuration, 4, Duration.ofSeconds(10), 1,
+            maxConcurrentCalls, meterRegistry);
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.playtomic.tests.wallet.stripeclient.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.playtomic.tests.wallet.stripeclient.dto.ChargeRequest;
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import java.math.BigDecimal;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * Compares the charges per second against the FakeStripeController of:
+ * <ul>
+ *     <li>the previous client: a RestTemplate with the default request factory</li>
+ *     <li>the pooled client, blocking one thread per charge in progress</li>
+ *     <li>the pooled client, non-blocking</li>
+ * </ul>
+ * All of them with the same number of charges in progress. The numbers are logged, the test only
+ * checks that all the charges succeed.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.DEFINED_PORT)
+@ActiveProfiles("stripe-test")
+public class StripeServiceBenchmarkIT {
+
+    private static final int CHARGES = 2000;
+    private static final int IN_PROGRESS = 16;
+    private static final BigDecimal AMOUNT = new BigDecimal(15);
+
+    private final Logger log = LoggerFactory.getLogger(StripeServiceBenchmarkIT.class);
+
+    @Autowired
+    private StripeService stripeService;
+
+    @Value("${stripe.simulator.charges-uri}")
+    private URI chargesUri;
+
+    @Test
+    public void compareChargesPerSecond() throws Exception {
+        RestTemplate defaultRestTemplate = new RestTemplate(new SimpleClientHttpRequestFactory());
+        Supplier<Payment> defaultCharge = () -> defaultRestTemplate.postForObject(chargesUri,
+            new ChargeRequest("4242 4242 4242 4242", AMOUNT), Payment.class);
+        Supplier<Payment> pooledCharge = () -> stripeService.charge("4242 4242 4242 4242", AMOUNT);
+
+        // Warm-up of the server and the clients
+        runBlocking(defaultCharge, 200);
+        runBlocking(pooledCharge, 200);
+        runAsync(200);
+
+        double defaultRate = runBlocking(defaultCharge, CHARGES);
+        double pooledRate = runBlocking(pooledCharge, CHARGES);
+        double asyncRate = runAsync(CHARGES);
+
+        log.info("Stripe charges/s with {} in progress: default {}, pooled {}, pooled async {}",
+            IN_PROGRESS, Math.round(defaultRate), Math.round(pooledRate), Math.round(asyncRate));
+    }
+
+    private double runBlocking(Supplier<Payment> charge, int charges) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(IN_PROGRESS);
+        try {
+            long start = System.nanoTime();
+            List<Future<Payment>> payments = new ArrayList<>();
+            for (int i = 0; i < charges; i++) {
+                payments.add(executor.submit(charge::get));
+            }
+            for (Future<Payment> payment : payments) {
+                assertEquals("1234", payment.get().getId());
+            }
+            return ratePerSecond(charges, start);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    private double runAsync(int charges) {
+        Semaphore inProgress = new Semaphore(IN_PROGRESS);
+        AtomicInteger succeeded = new AtomicInteger();
+        long start = System.nanoTime();
+        List<CompletableFuture<Void>> payments = new ArrayList<>();
+        for (int i = 0; i < charges; i++) {
+            inProgress.acquireUninterruptibly();
+            payments.add(stripeService.chargeAsync("4242 4242 4242 4242", AMOUNT)
+                .thenAccept(payment -> succeeded.incrementAndGet())
+                .whenComplete((ignored, error) -> inProgress.release()));
+        }
+        CompletableFuture.allOf(payments.toArray(CompletableFuture[]::new)).join();
+        assertEquals(charges, succeeded.get());
+        return ratePerSecond(charges, start);
+    }
+
+    private static double ratePerSecond(int charges, long start) {
+        return charges / ((System.nanoTime() - start) / 1_000_000_000.0);
+    }
+}
@@ -1,12 +1,15 @@
 package com.playtomic.tests.wallet.stripeclient.service;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import com.playtomic.tests.wallet.stripeclient.dto.Payment;
 import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
 import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
 import java.math.BigDecimal;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
@@ -33,4 +36,41 @@ public class StripeServiceIT {
 
         assertEquals("1234", actual.getId());
     }
+
+    @Test
+    public void whenChargeAsyncAndStripeReturnsSuccessfull_thenThePaymentIsCompleted() {
+        Payment actual = stripeService.chargeAsync("4242 4242 4242 4242", new BigDecimal(15))
+            .join();
+
+        assertEquals("1234", actual.getId());
+    }
+
+    @Test
+    public void whenChargeAsyncAndStripeReturnsUnprocessableEntity_thenCompletesWithStripeAmountTooSmallException() {
+        CompletableFuture<Payment> payment = stripeService.chargeAsync("4242 4242 4242 4242",
+            new BigDecimal(5));
+        CompletionException exception = assertThrows(CompletionException.class, payment::join);
+
+        assertInstanceOf(StripeAmountTooSmallException.class, exception.getCause());
+        // The future itself completes with the exception, not wrapped
+        assertInstanceOf(StripeAmountTooSmallException.class, payment.exceptionNow());
+    }
+
+    @Test
+    public void whenChargeAsyncAndStripeFails_thenCompletesWithStripeServiceException() {
+        CompletionException exception = assertThrows(CompletionException.class,
+            () -> stripeService.chargeAsync("4242 4242 4242 4242", new BigDecimal(7)).join());
+
+        assertInstanceOf(StripeServiceException.class, exception.getCause());
+    }
+
+    @Test
+    public void whenRefundAndStripeReturnsSuccessfull_thenNoExceptionIsThrown() {
+        stripeService.refund("1234");
+    }
+
+    @Test
+    public void whenRefundAndStripeFails_thenThrowStripeServiceException() {
+        assertThrows(StripeServiceException.class, () -> stripeService.refund("4321"));
+    }
 }
@@ -5,9 +5,12 @@ import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.playtomic.tests.wallet.stripeclient.dto.ChargeRequest;
 import com.playtomic.tests.wallet.stripeclient.dto.Payment;
 import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
@@ -16,10 +19,16 @@ import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 
 import java.math.BigDecimal;
 import java.net.URI;
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.function.Supplier;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
 public class StripeServiceTest {
@@ -27,15 +36,20 @@ public class StripeServiceTest {
     private RestTemplate restTemplateMock;
     private StripeService stripeService;
     private final URI chargesUri = URI.create("http://mock-url/stripe/charges");
-    private final URI refundsUri = URI.create("http://mock-url/stripe/refunds");
+    private final String refundsUri = "http://mock-url/stripe/payments/{payment_id}/refunds";
 
     @BeforeEach
     public void setUp() {
         restTemplateMock = mock(RestTemplate.class);
         RestTemplateBuilder restTemplateBuilder = mock(RestTemplateBuilder.class);
+        when(restTemplateBuilder.requestFactory(
+            ArgumentMatchers.<Supplier<ClientHttpRequestFactory>>any())).thenReturn(
+            restTemplateBuilder);
         when(restTemplateBuilder.errorHandler(any())).thenReturn(restTemplateBuilder);
         when(restTemplateBuilder.build()).thenReturn(restTemplateMock);
-        stripeService = new StripeService(chargesUri, refundsUri, restTemplateBuilder);
+        stripeService = new StripeService(chargesUri, refundsUri, restTemplateBuilder,
+            new SimpleClientHttpRequestFactory(), HttpClient.newHttpClient(),
+            Duration.ofSeconds(5), new ObjectMapper());
     }
 
     @Test
@@ -70,4 +84,12 @@ public class StripeServiceTest {
         assertEquals("4242 4242 4242 4242", chargeRequest.getCreditCardNumber());
         assertEquals(new BigDecimal(15), chargeRequest.getAmount());
     }
+
+    @Test
+    public void whenRefund_thenThePaymentIsRefundedInStripe() throws StripeServiceException {
+        stripeService.refund("1234");
+
+        verify(restTemplateMock).postForEntity(eq(refundsUri), isNull(), eq(Object.class),
+            eq("1234"));
+    }
 }
@@ -0,0 +1,143 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.hamcrest.core.Is.is;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.jayway.jsonpath.JsonPath;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.HoldRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+public class ChargeControllerIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @AfterEach
+    public void tearDown() {
+        holdRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenCharge_thenReturnsTheWalletWithTheAmountSubtracted() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/charge")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\":12.5}"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.id", is(wallet.getId().toString())));
+        response.andExpect(jsonPath("$.amount", is(37.5)));
+    }
+
+    @Test
+    public void whenChargeMoreThanTheAmount_thenReturnsInsufficientFunds() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(1000L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/charge")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\":10.01}"));
+
+        response.andExpect(status().isUnprocessableEntity());
+        response.andExpect(jsonPath("$.error", is("Insufficient funds")));
+    }
+
+    @Test
+    public void whenChargeAWalletThatDoesNotExist_thenReturnsNotFound() throws Exception {
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + UUID.randomUUID() + "/actions/charge")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\":10}"));
+
+        response.andExpect(status().isNotFound());
+        response.andExpect(jsonPath("$.error", is("Wallet not found")));
+    }
+
+    @Test
+    public void whenHoldAndCapture_thenTheHoldIsCapturedOnlyOnce() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+
+        ResultActions hold = mockMvc.perform(post("/v1/wallets/" + wallet.getId() + "/holds")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"amount\":20,\"ttlSeconds\":60}"));
+        hold.andExpect(status().isCreated());
+        hold.andExpect(jsonPath("$.status", is("RESERVED")));
+        hold.andExpect(jsonPath("$.amount", is(20.0)));
+        String holdId = JsonPath.parse(hold.andReturn().getResponse().getContentAsString())
+            .read("$.id", String.class);
+        String capturePath = "/v1/wallets/" + wallet.getId() + "/holds/" + holdId
+            + "/actions/capture";
+
+        mockMvc.perform(post(capturePath))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.status", is("CAPTURED")));
+        mockMvc.perform(post(capturePath))
+            .andExpect(status().isConflict())
+            .andExpect(jsonPath("$.error", is("Hold is already CAPTURED")));
+    }
+
+    @Test
+    public void whenReleaseAHoldOfAnotherWallet_thenReturnsNotFound() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+        ResultActions hold = mockMvc.perform(post("/v1/wallets/" + wallet.getId() + "/holds")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"amount\":20}"));
+        String holdId = JsonPath.parse(hold.andReturn().getResponse().getContentAsString())
+            .read("$.id", String.class);
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + UUID.randomUUID() + "/holds/" + holdId + "/actions/release"));
+
+        response.andExpect(status().isNotFound());
+        response.andExpect(jsonPath("$.error", is("Hold not found")));
+    }
+
+    @Test
+    public void whenHoldWithTooLongTtl_thenReturnsInvalidTtl() throws Exception {
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + UUID.randomUUID() + "/holds")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\":20,\"ttlSeconds\":86401}"));
+
+        response.andExpect(status().isBadRequest());
+        response.andExpect(jsonPath("$.ttlSeconds", is("ttlSeconds must be at most 86400")));
+    }
+
+    private static Wallet aNewWalletWithAmount(long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
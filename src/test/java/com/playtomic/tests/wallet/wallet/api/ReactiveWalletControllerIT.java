@@ -0,0 +1,230 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.RefundStatus;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletEventType;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import com.playtomic.tests.wallet.wallet.repository.RefundRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.web.reactive.context.ReactiveWebServerApplicationContext;
+import org.springframework.context.ApplicationContext;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.reactive.server.WebTestClient;
+import org.springframework.test.web.reactive.server.WebTestClient.ResponseSpec;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT,
+    properties = "spring.main.web-application-type=reactive")
+@ActiveProfiles("test")
+public class ReactiveWalletControllerIT {
+
+    @Autowired
+    private WebTestClient webTestClient;
+
+    @Autowired
+    private ApplicationContext applicationContext;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private RefundRepository refundRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @AfterEach
+    public void tearDown() {
+        outboxEventRepository.deleteAll();
+        refundRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenRunningReactive_thenOnlyTheReactiveEndpointsAreServedByNetty() {
+        assertTrue(applicationContext instanceof ReactiveWebServerApplicationContext);
+        assertEquals("NettyWebServer", ((ReactiveWebServerApplicationContext) applicationContext)
+            .getWebServer().getClass().getSimpleName());
+        assertEquals(0, applicationContext.getBeanNamesForType(WalletController.class).length);
+        assertEquals(0, applicationContext.getBeanNamesForType(ChargeController.class).length);
+    }
+
+    @Test
+    public void whenCreatingWalletWithAUserID_thenReturnsTheWalletWithItsEvent() {
+        UUID userId = UUID.randomUUID();
+
+        WalletJson response = create(userId)
+            .expectStatus().isCreated()
+            .expectBody(WalletJson.class).returnResult().getResponseBody();
+
+        assertEquals(userId, response.userId());
+        assertEquals(0, response.amount());
+        Wallet actual = walletRepository.findById(response.id()).orElseThrow();
+        assertEquals(userId, actual.getUserId());
+        assertEquals(0L, actual.getVersion());
+        List<OutboxEvent> events = outboxEventRepository.findAll();
+        assertEquals(1, events.size());
+        assertEquals(WalletEventType.CREATED, events.get(0).getType());
+        assertEquals(response.id(), events.get(0).getWalletId());
+    }
+
+    @Test
+    public void whenCreatingWalletOfAUserWithWallet_thenReturnsError() {
+        UUID userId = UUID.randomUUID();
+        walletRepository.save(aNewWalletWithAmount(userId, 0L));
+
+        create(userId)
+            .expectStatus().isBadRequest()
+            .expectBody().jsonPath("$.error")
+            .isEqualTo("Failed to create wallet, maybe the user has already a Wallet");
+        assertEquals(0, outboxEventRepository.count());
+    }
+
+    @Test
+    public void whenCreatingWalletWithEmptyUserId_thenReturnsInvalidUserId() {
+        webTestClient.post().uri("/v1/wallets/")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"userId\":null}")
+            .exchange()
+            .expectStatus().isBadRequest()
+            .expectBody().jsonPath("$.userId").isEqualTo("userID should be a valid UUID");
+    }
+
+    @Test
+    public void whenTopUp_thenReturnsTheWalletWithTheAmountAddedAndTheTransactionSucceeds() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(UUID.randomUUID(), 1000L));
+
+        topUp(wallet.getId(), 15)
+            .expectStatus().isAccepted()
+            .expectBody()
+            .jsonPath("$.id").isEqualTo(wallet.getId().toString())
+            .jsonPath("$.amount").isEqualTo(25.0);
+
+        Wallet actual = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(2500L, actual.getAmount());
+        assertEquals(1L, actual.getVersion());
+        Transaction transaction = transactionRepository.findAll().get(0);
+        assertEquals(TransactionStatus.SUCCESS, transaction.getStatus());
+        assertEquals("1234", transaction.getPaymentId());
+        assertEquals(1500L, transaction.getAmount());
+        assertEquals(List.of(WalletEventType.TOPPED_UP), eventTypes());
+        webTestClient.get().uri("/v1/wallets/" + wallet.getId())
+            .exchange()
+            .expectStatus().isOk()
+            .expectBody().jsonPath("$.amount").isEqualTo(25.0);
+    }
+
+    @Test
+    public void whenTopUpWithAnAmountTooSmall_thenReturnsErrorAndTheTransactionFails() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(UUID.randomUUID(), 0L));
+
+        topUp(wallet.getId(), 5)
+            .expectStatus().isBadRequest()
+            .expectBody().jsonPath("$.error").isEqualTo("Amount too small");
+
+        assertEquals(0L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(TransactionStatus.FAILED, transactionRepository.findAll().get(0).getStatus());
+        assertEquals(List.of(WalletEventType.TOP_UP_FAILED), eventTypes());
+    }
+
+    @Test
+    public void whenTopUpAWalletThatDoesNotExist_thenReturnsNotFound() {
+        topUp(UUID.randomUUID(), 15)
+            .expectStatus().isNotFound()
+            .expectBody().jsonPath("$.error").isEqualTo("Wallet not found");
+    }
+
+    @Test
+    public void whenGetAWalletThatDoesNotExist_thenReturnsNotFound() {
+        webTestClient.get().uri("/v1/wallets/" + UUID.randomUUID())
+            .exchange()
+            .expectStatus().isNotFound()
+            .expectBody().jsonPath("$.error").isEqualTo("Wallet not found");
+    }
+
+    @Test
+    public void whenTopUpConcurrently_thenTheWalletHasTheAmountOfTheSucceededTopUps()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(UUID.randomUUID(), 0L));
+        int topUps = 20;
+
+        CountDownLatch start = new CountDownLatch(1);
+        try (ExecutorService clients = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < topUps; i++) {
+                clients.execute(() -> {
+                    await(start);
+                    topUp(wallet.getId(), 15).expectBody().returnResult();
+                });
+            }
+            start.countDown();
+        }
+
+        List<Transaction> transactions = transactionRepository.findAll();
+        long succeeded = transactions.stream()
+            .filter(transaction -> transaction.getStatus() == TransactionStatus.SUCCESS).count();
+        long failed = transactions.stream()
+            .filter(transaction -> transaction.getStatus() == TransactionStatus.FAILED).count();
+        assertEquals(topUps, succeeded + failed);
+        Wallet actual = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(1500L * succeeded, actual.getAmount());
+        assertEquals(succeeded, actual.getVersion());
+        assertEquals(failed, refundRepository.countByStatus(RefundStatus.PENDING));
+    }
+
+    private ResponseSpec create(UUID userId) {
+        return webTestClient.post().uri("/v1/wallets")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"userId\":\"" + userId + "\"}")
+            .exchange();
+    }
+
+    private ResponseSpec topUp(UUID walletId, int amount) {
+        return webTestClient.post().uri("/v1/wallets/" + walletId + "/actions/topup/")
+            .contentType(MediaType.APPLICATION_JSON)
+            .bodyValue("{\"cardNumber\":\"4242424242424242\",\"amount\":" + amount + "}")
+            .exchange();
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private List<WalletEventType> eventTypes() {
+        return outboxEventRepository.findAll().stream().map(OutboxEvent::getType).toList();
+    }
+
+    private static Wallet aNewWalletWithAmount(UUID userId, long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(amount);
+        return wallet;
+    }
+
+    private record WalletJson(UUID id, UUID userId, double amount) {
+    }
+}
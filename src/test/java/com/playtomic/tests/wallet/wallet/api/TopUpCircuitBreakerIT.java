@@ -0,0 +1,94 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.hamcrest.core.Is.is;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.playtomic.tests.wallet.stripeclient.exception.StripeServiceException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+@TestPropertySource(properties = {
+    "stripe.circuit-breaker.sliding-window-size=4",
+    "stripe.circuit-breaker.wait-in-open=1m"
+})
+public class TopUpCircuitBreakerIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @MockBean
+    private StripeService stripeService;
+
+    @AfterEach
+    public void tearDown() {
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenStripeKeepsFailing_thenTheTopUpsFailFastWithServiceUnavailable()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge(any(), any())).thenThrow(
+            new StripeServiceException("Service is down"));
+        for (int i = 0; i < 4; i++) {
+            topUp(wallet).andExpect(status().isBadRequest());
+        }
+
+        ResultActions response = topUp(wallet);
+
+        response.andExpect(status().isServiceUnavailable());
+        response.andExpect(
+            jsonPath("$.error", is("Payment provider not available, try again later")));
+        verify(stripeService, times(4)).charge(any(), any());
+        mockMvc.perform(get("/actuator/metrics/resilience4j.circuitbreaker.state"
+                + "?tag=name:stripe&tag=state:open"))
+            .andExpect(status().isOk())
+            .andExpect(jsonPath("$.measurements[0].value", is(1.0)));
+        mockMvc.perform(get("/v1/wallets/" + wallet.getId())).andExpect(status().isOk());
+    }
+
+    private ResultActions topUp(Wallet wallet) throws Exception {
+        return mockMvc.perform(post("/v1/wallets/" + wallet.getId() + "/actions/topup")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"cardNumber\":\"4242424242424242\",\"amount\":15}"));
+    }
+
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
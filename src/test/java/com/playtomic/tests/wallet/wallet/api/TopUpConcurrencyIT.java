@@ -0,0 +1,152 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.boot.test.web.server.LocalServerPort;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+/**
+ * Load test of the top-up endpoint with a slow Stripe. It counts how many top-ups are waiting for
+ * Stripe at the same time with the same number of request threads, using platform threads and
+ * using virtual threads.
+ */
+public class TopUpConcurrencyIT {
+
+    private static final int REQUEST_THREADS = 8;
+    private static final int CONCURRENT_TOP_UPS = 64;
+    private static final long STRIPE_LATENCY_MILLIS = 200;
+
+    @Nested
+    @TestPropertySource(properties = {"server.tomcat.threads.max=" + REQUEST_THREADS,
+        "spring.threads.virtual.enabled=false",
+        "stripe.bulkhead.max-concurrent-calls=" + CONCURRENT_TOP_UPS})
+    class WithPlatformThreads extends InFlightTopUps {
+
+        @Test
+        public void thenTheTopUpsInFlightAreLimitedByTheRequestThreads() throws Exception {
+            int maxInFlight = runConcurrentTopUps("platform threads");
+
+            assertTrue(maxInFlight <= REQUEST_THREADS);
+        }
+    }
+
+    @Nested
+    @TestPropertySource(properties = {"server.tomcat.threads.max=" + REQUEST_THREADS,
+        "spring.threads.virtual.enabled=true",
+        "stripe.bulkhead.max-concurrent-calls=" + CONCURRENT_TOP_UPS})
+    class WithVirtualThreads extends InFlightTopUps {
+
+        @Test
+        public void thenTheTopUpsInFlightAreNotLimitedByTheRequestThreads() throws Exception {
+            int maxInFlight = runConcurrentTopUps("virtual threads");
+
+            assertTrue(maxInFlight > REQUEST_THREADS);
+        }
+    }
+
+    @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+    @ActiveProfiles("test")
+    abstract static class InFlightTopUps {
+
+        private final Logger log = LoggerFactory.getLogger(TopUpConcurrencyIT.class);
+
+        @LocalServerPort
+        private int port;
+
+        @Autowired
+        private WalletRepository walletRepository;
+
+        @Autowired
+        private TransactionRepository transactionRepository;
+
+        @MockBean
+        private StripeService stripeService;
+
+        @AfterEach
+        public void tearDown() {
+            transactionRepository.deleteAll();
+            walletRepository.deleteAll();
+        }
+
+        int runConcurrentTopUps(String mode) throws Exception {
+            AtomicInteger inFlight = new AtomicInteger();
+            AtomicInteger maxInFlight = new AtomicInteger();
+            HttpClient httpClient = HttpClient.newHttpClient();
+            when(stripeService.charge(any(), any())).thenReturn(new Payment("paymentId"));
+            // Warm-up, the first request initializes the dispatcher
+            httpClient.send(aTopUpRequest(walletRepository.save(aNewWallet()).getId()),
+                BodyHandlers.ofString());
+            when(stripeService.charge(any(), any())).thenAnswer(invocation -> {
+                maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+                Thread.sleep(STRIPE_LATENCY_MILLIS);
+                inFlight.decrementAndGet();
+                return new Payment("paymentId");
+            });
+            List<Wallet> wallets = new ArrayList<>();
+            for (int i = 0; i < CONCURRENT_TOP_UPS; i++) {
+                wallets.add(walletRepository.save(aNewWallet()));
+            }
+
+            long startTime = System.nanoTime();
+            List<CompletableFuture<HttpResponse<String>>> topUps = new ArrayList<>();
+            for (Wallet wallet : wallets) {
+                topUps.add(httpClient.sendAsync(aTopUpRequest(wallet.getId()),
+                    BodyHandlers.ofString()));
+            }
+            for (CompletableFuture<HttpResponse<String>> topUp : topUps) {
+                assertEquals(202, topUp.get().statusCode());
+            }
+            long elapsedMillis = (System.nanoTime() - startTime) / 1_000_000;
+
+            log.info("{}: {} top-ups with {} request threads in {} ms, max {} top-ups in flight",
+                mode, CONCURRENT_TOP_UPS, REQUEST_THREADS, elapsedMillis, maxInFlight.get());
+            return maxInFlight.get();
+        }
+
+        private HttpRequest aTopUpRequest(UUID walletId) {
+            return HttpRequest.newBuilder()
+                .uri(URI.create("http://localhost:" + port + "/v1/wallets/" + walletId
+                    + "/actions/topup"))
+                .header("Content-Type", "application/json")
+                .POST(BodyPublishers.ofString(
+                    "{\"cardNumber\":\"4242424242424242\",\"amount\":15}"))
+                .build();
+        }
+
+        private static Wallet aNewWallet() {
+            Wallet wallet = new Wallet();
+            wallet.setUserId(UUID.randomUUID());
+            wallet.setAmount(0L);
+            return wallet;
+        }
+    }
+}
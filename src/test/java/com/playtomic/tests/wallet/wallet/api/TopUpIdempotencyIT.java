@@ -0,0 +1,199 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequest;
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequestStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.IdempotentRequestRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import com.playtomic.tests.wallet.wallet.service.IdempotencyService;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+public class TopUpIdempotencyIT {
+
+    private static final int CONCURRENT_RETRIES = 8;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private IdempotentRequestRepository idempotentRequestRepository;
+
+    @Autowired
+    private IdempotencyService idempotencyService;
+
+    @MockBean
+    private StripeService stripeService;
+
+    @AfterEach
+    public void tearDown() {
+        idempotentRequestRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenTheTopUpIsRetriedWithTheSameKey_thenTheCardIsChargedOnce() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        when(stripeService.charge(any(), any())).thenReturn(new Payment("paymentId"));
+
+        topUp(wallet, "key", 15).andExpect(status().isAccepted());
+        ResultActions retry = topUp(wallet, "key", 15);
+
+        retry.andExpect(status().isAccepted());
+        retry.andExpect(jsonPath("$.amount", is(15.0)));
+        verify(stripeService, times(1)).charge(any(), any());
+        assertEquals(1, transactionRepository.count());
+        assertEquals(1500L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    @Test
+    public void whenTheKeyIsReusedWithAnotherAmount_thenItIsRejected() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        when(stripeService.charge(any(), any())).thenReturn(new Payment("paymentId"));
+        topUp(wallet, "key", 15).andExpect(status().isAccepted());
+
+        ResultActions response = topUp(wallet, "key", 20);
+
+        response.andExpect(status().isUnprocessableEntity());
+        response.andExpect(
+            jsonPath("$.error", is("Idempotency-Key already used with a different request")));
+        verify(stripeService, times(1)).charge(any(), any());
+    }
+
+    @Test
+    public void whenTheSameKeyIsUsedForAnotherWallet_thenBothAreToppedUp() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        Wallet anotherWallet = walletRepository.save(aNewWalletWithAmount(0L));
+        when(stripeService.charge(any(), any())).thenReturn(new Payment("paymentId"));
+
+        topUp(wallet, "key", 15).andExpect(status().isAccepted());
+        topUp(anotherWallet, "key", 15).andExpect(status().isAccepted());
+
+        verify(stripeService, times(2)).charge(any(), any());
+    }
+
+    @Test
+    public void whenTheRetriesAreConcurrent_thenTheyShareTheFirstTopUp() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        when(stripeService.charge(any(), any())).thenAnswer(invocation -> {
+            Thread.sleep(200);
+            return new Payment("paymentId");
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_RETRIES);
+        List<Future<ResultActions>> responses = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_RETRIES; i++) {
+            responses.add(executor.submit(() -> topUp(wallet, "key", 15)));
+        }
+        for (Future<ResultActions> response : responses) {
+            response.get().andExpect(status().isAccepted());
+        }
+        executor.shutdown();
+
+        verify(stripeService, times(1)).charge(any(), any());
+        assertEquals(1, transactionRepository.count());
+    }
+
+    @Test
+    public void whenTheKeyWasAbandonedInProgress_thenTheRetryTakesItOver() {
+        WalletResponse walletResponse = new WalletResponse(UUID.randomUUID(), UUID.randomUUID(),
+            1500L);
+        assertThrows(ServiceKilled.class, () -> idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> {
+                throw new ServiceKilled();
+            }));
+        IdempotentRequest abandoned = idempotentRequestRepository.findById("key").orElseThrow();
+        assertEquals(IdempotentRequestStatus.IN_PROGRESS, abandoned.getStatus());
+        abandoned.setCreatedAt(Instant.now().minus(Duration.ofMinutes(2)));
+        idempotentRequestRepository.save(abandoned);
+
+        WalletResponse response = idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> walletResponse);
+
+        assertEquals(walletResponse, response);
+        assertEquals(IdempotentRequestStatus.COMPLETED,
+            idempotentRequestRepository.findById("key").orElseThrow().getStatus());
+    }
+
+    @Test
+    public void whenTheKeysExpire_thenThePurgeDeletesThem() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        when(stripeService.charge(any(), any())).thenReturn(new Payment("paymentId"));
+        topUp(wallet, "expired", 15).andExpect(status().isAccepted());
+        topUp(wallet, "recent", 15).andExpect(status().isAccepted());
+        IdempotentRequest expired = idempotentRequestRepository.findById(
+            wallet.getId() + "/expired").orElseThrow();
+        expired.setCreatedAt(Instant.now().minus(Duration.ofDays(2)));
+        idempotentRequestRepository.save(expired);
+
+        idempotencyService.purgeExpiredKeys();
+
+        assertFalse(idempotentRequestRepository.existsById(wallet.getId() + "/expired"));
+        assertTrue(idempotentRequestRepository.existsById(wallet.getId() + "/recent"));
+    }
+
+    private ResultActions topUp(Wallet wallet, String idempotencyKey, int amount)
+        throws Exception {
+        return mockMvc.perform(post("/v1/wallets/" + wallet.getId() + "/actions/topup")
+            .header("Idempotency-Key", idempotencyKey)
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"cardNumber\":\"4242424242424242\",\"amount\":" + amount + "}"));
+    }
+
+    /**
+     * The instance stops while running the top-up, so the key is never completed nor released.
+     */
+    private static class ServiceKilled extends Error {
+    }
+
+    private static Wallet aNewWalletWithAmount(long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
@@ -0,0 +1,35 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.service.WalletService;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class TransactionControllerTest {
+
+    @Test
+    public void whenGetTransaction_thenTheTransactionIsReturned() {
+        UUID transactionId = UUID.randomUUID();
+        TransactionResponse transaction = new TransactionResponse(transactionId, UUID.randomUUID(),
+            1000L, TransactionStatus.SUCCESS, Instant.now());
+        WalletService walletService = mock(WalletService.class);
+        when(walletService.getTransaction(transactionId)).thenReturn(transaction);
+        TransactionController transactionController = new TransactionController(walletService);
+
+        ResponseEntity<TransactionResponse> response = transactionController.get(transactionId);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        TransactionResponse actual = response.getBody();
+        assertEquals(transaction.getId(), actual.getId());
+        assertEquals(transaction.getWalletId(), actual.getWalletId());
+        assertEquals(transaction.getStatus(), actual.getStatus());
+    }
+}
@@ -0,0 +1,134 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@AutoConfigureMockMvc
+public class WalletBatchControllerIT {
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @AfterEach
+    public void tearDown() {
+        outboxEventRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenTopUpBatch_thenReturnsTheResultOfEveryItem() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        UUID unknownWalletId = UUID.randomUUID();
+
+        ResultActions response = mockMvc.perform(post("/v1/wallets/actions/topup-batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"items\":["
+                + "{\"walletId\":\"" + wallet.getId() + "\",\"cardNumber\":\"4242\",\"amount\":15},"
+                + "{\"walletId\":\"" + unknownWalletId + "\",\"cardNumber\":\"4242\",\"amount\":15}"
+                + "]}"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.results[0].walletId", is(wallet.getId().toString())));
+        response.andExpect(jsonPath("$.results[0].status", is("SUCCESS")));
+        response.andExpect(jsonPath("$.results[1].walletId", is(unknownWalletId.toString())));
+        response.andExpect(jsonPath("$.results[1].status", is("FAILED")));
+        response.andExpect(jsonPath("$.results[1].error", is("Wallet not found")));
+    }
+
+    @Test
+    public void whenTopUpBatchWithAnInvalidItem_thenReturnsAnError() throws Exception {
+        ResultActions response = mockMvc.perform(post("/v1/wallets/actions/topup-batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"items\":["
+                + "{\"walletId\":\"" + UUID.randomUUID() + "\",\"cardNumber\":\"4242\",\"amount\":0}"
+                + "]}"));
+
+        response.andExpect(status().isBadRequest());
+        response.andExpect(jsonPath("$['items[0].amount']", is("amount must be a positive number")));
+    }
+
+    @Test
+    public void whenTopUpBatchWithoutItems_thenReturnsAnError() throws Exception {
+        ResultActions response = mockMvc.perform(post("/v1/wallets/actions/topup-batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"items\":[]}"));
+
+        response.andExpect(status().isBadRequest());
+        response.andExpect(jsonPath("$.items", is("items must not be empty")));
+    }
+
+    @Test
+    public void whenCreateBatch_thenReturnsTheWalletOfEveryUserAndTheDuplicates() throws Exception {
+        UUID newUserId = UUID.randomUUID();
+        Wallet existing = walletRepository.save(
+            aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+
+        ResultActions response = mockMvc.perform(post("/v1/wallets/actions/create-batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"items\":["
+                + "{\"userId\":\"" + newUserId + "\"},"
+                + "{\"userId\":\"" + existing.getUserId() + "\"},"
+                + "{\"userId\":\"" + newUserId + "\"}"
+                + "]}"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.results[0].userId", is(newUserId.toString())));
+        response.andExpect(jsonPath("$.results[0].error").doesNotExist());
+        response.andExpect(jsonPath("$.results[1].userId", is(existing.getUserId().toString())));
+        response.andExpect(jsonPath("$.results[1].walletId").doesNotExist());
+        response.andExpect(jsonPath("$.results[1].error", is("User has already a Wallet")));
+        response.andExpect(jsonPath("$.results[2].error", is("User repeated in the batch")));
+        assertEquals(2, walletRepository.count());
+        assertTrue(walletRepository.findAll().stream()
+            .anyMatch(wallet -> wallet.getUserId().equals(newUserId)));
+    }
+
+    @Test
+    public void whenCreateBatchWithoutUserId_thenReturnsAnError() throws Exception {
+        ResultActions response = mockMvc.perform(post("/v1/wallets/actions/create-batch")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"items\":[{}]}"));
+
+        response.andExpect(status().isBadRequest());
+        response.andExpect(jsonPath("$['items[0].userId']", is("userID should be a valid UUID")));
+    }
+
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
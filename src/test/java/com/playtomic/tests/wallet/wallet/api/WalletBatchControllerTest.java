@@ -0,0 +1,64 @@
+package com.playtomic.tests.wallet.wallet.api;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchItemResult;
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchRequest;
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchResponse;
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletRequest;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItem;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItemResult;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchRequest;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchResponse;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.service.BatchCreateWalletService;
+import com.playtomic.tests.wallet.wallet.service.BatchTopUpService;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+public class WalletBatchControllerTest {
+
+    @Test
+    public void whenTopUpBatch_thenTheResultOfEveryItemIsReturned() {
+        List<TopUpBatchItem> items = List.of(
+            new TopUpBatchItem(UUID.randomUUID(), "cardNumber", 1000L));
+        List<TopUpBatchItemResult> results = List.of(new TopUpBatchItemResult(
+            items.get(0).getWalletId(), UUID.randomUUID(), TransactionStatus.SUCCESS, null));
+        BatchTopUpService batchTopUpService = mock(BatchTopUpService.class);
+        when(batchTopUpService.topUp(items)).thenReturn(results);
+        WalletBatchController walletBatchController = new WalletBatchController(
+            batchTopUpService, mock(BatchCreateWalletService.class));
+
+        TopUpBatchRequest request = new TopUpBatchRequest();
+        request.setItems(items);
+        ResponseEntity<TopUpBatchResponse> response = walletBatchController.topUp(request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(results, response.getBody().getResults());
+    }
+
+    @Test
+    public void whenCreateBatch_thenTheResultOfEveryUserIsReturned() {
+        UUID userId = UUID.randomUUID();
+        List<CreateWalletBatchItemResult> results = List.of(
+            new CreateWalletBatchItemResult(userId, UUID.randomUUID(), null));
+        BatchCreateWalletService batchCreateWalletService = mock(BatchCreateWalletService.class);
+        when(batchCreateWalletService.create(List.of(userId))).thenReturn(results);
+        WalletBatchController walletBatchController = new WalletBatchController(
+            mock(BatchTopUpService.class), batchCreateWalletService);
+
+        CreateWalletRequest item = new CreateWalletRequest();
+        item.setUserId(userId);
+        CreateWalletBatchRequest request = new CreateWalletBatchRequest();
+        request.setItems(List.of(item));
+        ResponseEntity<CreateWalletBatchResponse> response = walletBatchController.create(request);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(results, response.getBody().getResults());
+    }
+}
@@ -1,5 +1,9 @@
 package com.playtomic.tests.wallet.wallet.api;
 
+import static org.awaitility.Awaitility.await;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.hasSize;
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.Matchers.notNullValue;
 import static org.hamcrest.core.Is.is;
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -9,10 +13,16 @@ import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
 
 import com.jayway.jsonpath.JsonPath;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
 import com.playtomic.tests.wallet.wallet.model.Wallet;
 import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
 import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
@@ -24,6 +34,7 @@ import org.springframework.http.MediaType;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.web.servlet.MockMvc;
 import org.springframework.test.web.servlet.ResultActions;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
 
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
@@ -56,18 +67,18 @@ public class WalletControllerIT {
         response.andExpect(status().isCreated());
         response.andExpect(jsonPath("$.id", is(notNullValue())));
         response.andExpect(jsonPath("$.userId", is(userId.toString())));
-        response.andExpect(jsonPath("$.amount", is(0)));
+        response.andExpect(jsonPath("$.amount", is(0.0)));
         String jsonResponse = response.andReturn().getResponse().getContentAsString();
         UUID walletId = UUID.fromString(JsonPath.parse(jsonResponse).read("$.id", String.class));
         Wallet actual = walletRepository.findById(walletId).orElseThrow();
         assertEquals(userId, actual.getUserId());
-        assertEquals(0, BigDecimal.valueOf(0).compareTo(actual.getAmount()));
+        assertEquals(0L, actual.getAmount());
     }
 
     @Test
     public void whenCreatingWalletAnErrorIsProduced_thenReturnsError() throws Exception {
         UUID userId = UUID.randomUUID();
-        walletRepository.save(aNewWalletWithUserIdAndAmount(userId, new BigDecimal(0)));
+        walletRepository.save(aNewWalletWithUserIdAndAmount(userId, 0L));
 
         ResultActions response = mockMvc.perform(post("/v1/wallets/")
             .contentType(MediaType.APPLICATION_JSON)
@@ -109,8 +120,7 @@ public class WalletControllerIT {
 
     @Test
     public void whenTopUp_thenReturnsTheWalletWithTheAmountAdded() throws Exception {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
 
         ResultActions response = mockMvc.perform(
             post("/v1/wallets/" + wallet.getId() + "/actions/topup/")
@@ -123,10 +133,37 @@ public class WalletControllerIT {
         response.andExpect(jsonPath("$.amount", is(15.0)));
     }
 
+    @Test
+    public void whenTopUpWithCents_thenTheCentsAreAddedToTheWallet() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/topup/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"cardNumber\":\"4242424242424242\",\"amount\":15.25}"));
+
+        response.andExpect(status().isAccepted());
+        response.andExpect(jsonPath("$.amount", is(15.25)));
+        assertEquals(1525L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    @Test
+    public void whenTopUpWithMoreDecimalsThanCents_thenReturnsMalformed() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/topup/")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"cardNumber\":\"4242424242424242\",\"amount\":15.255}"));
+
+        response.andExpect(status().isBadRequest());
+        response.andExpect(jsonPath("$.error", is("Request body is missing or malformed")));
+        assertEquals(0L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
     @Test
     public void whenTopUpAndAnErrorsIsProduced_thenReturnsTheError() throws Exception {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
 
         ResultActions response = mockMvc.perform(
             post("/v1/wallets/" + wallet.getId() + "/actions/topup/")
@@ -139,8 +176,7 @@ public class WalletControllerIT {
 
     @Test
     public void whenTopUpZeroAmount_thenReturnsAnError() throws Exception {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
 
         ResultActions response = mockMvc.perform(
             post("/v1/wallets/" + wallet.getId() + "/actions/topup/")
@@ -153,8 +189,7 @@ public class WalletControllerIT {
 
     @Test
     public void whenTopUpEmptyCardAmount_thenReturnsAnError() throws Exception {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
 
         ResultActions response = mockMvc.perform(
             post("/v1/wallets/" + wallet.getId() + "/actions/topup/")
@@ -165,10 +200,59 @@ public class WalletControllerIT {
         response.andExpect(jsonPath("$.cardNumber", is("cardNumber must not be blank")));
     }
 
+    @Test
+    public void whenTopUpAsync_thenReturnsTheTransactionThatEndsWithTheAmountAdded()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/topup")
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"cardNumber\":\"4242424242424242\",\"amount\":15}"));
+
+        response.andExpect(status().isAccepted());
+        response.andExpect(jsonPath("$.id", is(notNullValue())));
+        response.andExpect(jsonPath("$.walletId", is(wallet.getId().toString())));
+        String location = response.andReturn().getResponse().getHeader("Location");
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+            mockMvc.perform(get(location))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$.status", is("SUCCESS"))));
+        mockMvc.perform(get("/v1/wallets/" + wallet.getId()))
+            .andExpect(jsonPath("$.amount", is(15.0)));
+    }
+
+    @Test
+    public void whenTopUpAsyncAndAnErrorIsProduced_thenTheTransactionEndsFAILED()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/topup")
+                .header("Prefer", "respond-async")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"cardNumber\":\"4242424242424242\",\"amount\":3}"));
+
+        response.andExpect(status().isAccepted());
+        String location = response.andReturn().getResponse().getHeader("Location");
+        await().atMost(Duration.ofSeconds(5)).untilAsserted(() ->
+            mockMvc.perform(get(location))
+                .andExpect(jsonPath("$.status", is("FAILED"))));
+    }
+
+    @Test
+    public void whenGettingATransactionDoesntExist_thenReturnsNotFound() throws Exception {
+        ResultActions response = mockMvc.perform(get("/v1/transactions/" + UUID.randomUUID()));
+
+        response.andExpect(status().isNotFound());
+        response.andExpect(jsonPath("$.error", is("Transaction not found")));
+    }
+
     @Test
     public void whenGettingAWalletThatExists_thenReturnsTheWalletInformation() throws Exception {
         Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(15)));
+            1500L));
 
         ResultActions response = mockMvc.perform(get("/v1/wallets/" + wallet.getId()));
 
@@ -178,6 +262,36 @@ public class WalletControllerIT {
         response.andExpect(jsonPath("$.amount", is(15.0)));
     }
 
+    @Test
+    public void whenGettingAWalletAfterATopUp_thenReturnsTheAmountAdded() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
+            1500L));
+        mockMvc.perform(get("/v1/wallets/" + wallet.getId()))
+            .andExpect(jsonPath("$.amount", is(15.0)));
+
+        mockMvc.perform(post("/v1/wallets/" + wallet.getId() + "/actions/topup")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"cardNumber\":\"4242424242424242\",\"amount\":10}"));
+        ResultActions response = mockMvc.perform(get("/v1/wallets/" + wallet.getId()));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.amount", is(25.0)));
+    }
+
+    @Test
+    public void whenGettingTheWalletCacheMetrics_thenReturnsTheHits() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
+            1500L));
+        mockMvc.perform(get("/v1/wallets/" + wallet.getId()));
+        mockMvc.perform(get("/v1/wallets/" + wallet.getId()));
+
+        ResultActions response = mockMvc.perform(
+            get("/actuator/metrics/cache.gets?tag=cache:wallets&tag=result:hit"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.measurements[0].value", greaterThanOrEqualTo(1.0)));
+    }
+
     @Test
     public void whenGettingAWalletDoesntExist_thenReturnsNotFound() throws Exception {
         ResultActions response = mockMvc.perform(get("/v1/wallets/" + UUID.randomUUID()));
@@ -186,7 +300,124 @@ public class WalletControllerIT {
         response.andExpect(jsonPath("$.error", is("Wallet not found")));
     }
 
-    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, BigDecimal amount) {
+    @Test
+    public void whenGettingTheWalletOfAUser_thenReturnsItsWallet() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
+            1500L));
+
+        ResultActions response = mockMvc.perform(
+            get("/v1/users/" + wallet.getUserId() + "/wallet"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.id", is(wallet.getId().toString())));
+        response.andExpect(jsonPath("$.userId", is(wallet.getUserId().toString())));
+        response.andExpect(jsonPath("$.amount", is(15.0)));
+    }
+
+    @Test
+    public void whenGettingTheWalletOfAUserAfterATopUp_thenReturnsTheAmountAdded()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
+            1500L));
+        mockMvc.perform(get("/v1/users/" + wallet.getUserId() + "/wallet"))
+            .andExpect(jsonPath("$.amount", is(15.0)));
+
+        mockMvc.perform(post("/v1/wallets/" + wallet.getId() + "/actions/topup")
+            .contentType(MediaType.APPLICATION_JSON)
+            .content("{\"cardNumber\":\"4242424242424242\",\"amount\":10}"));
+        ResultActions response = mockMvc.perform(
+            get("/v1/users/" + wallet.getUserId() + "/wallet"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.amount", is(25.0)));
+    }
+
+    @Test
+    public void whenGettingTheWalletOfAUserWithoutWallet_thenReturnsNotFound() throws Exception {
+        ResultActions response = mockMvc.perform(
+            get("/v1/users/" + UUID.randomUUID() + "/wallet"));
+
+        response.andExpect(status().isNotFound());
+        response.andExpect(jsonPath("$.error", is("Wallet not found")));
+    }
+
+    @Test
+    public void whenGettingTheTransactionsOfAWallet_thenEveryPageHasTheNextOnesNewestFirst()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        Wallet otherWallet = walletRepository.save(aNewWalletWithUserIdAndAmount(
+            UUID.randomUUID(), 0L));
+        List<String> expected = new ArrayList<>();
+        for (int i = 1; i <= 25; i++) {
+            expected.add(transactionRepository.save(aTransaction(wallet, i)).getId().toString());
+            transactionRepository.save(aTransaction(otherWallet, i));
+        }
+        Collections.reverse(expected);
+
+        List<String> actual = new ArrayList<>();
+        String cursor = null;
+        for (int page = 0; page < 3; page++) {
+            MockHttpServletRequestBuilder request = get("/v1/wallets/" + wallet.getId()
+                + "/transactions").param("limit", "10");
+            if (cursor != null) {
+                request.param("cursor", cursor);
+            }
+            ResultActions response = mockMvc.perform(request);
+            response.andExpect(status().isOk());
+            response.andExpect(jsonPath("$.transactions", hasSize(page < 2 ? 10 : 5)));
+            response.andExpect(jsonPath("$.transactions[0].walletId",
+                is(wallet.getId().toString())));
+            String jsonResponse = response.andReturn().getResponse().getContentAsString();
+            actual.addAll(JsonPath.parse(jsonResponse).read("$.transactions[*].id"));
+            cursor = JsonPath.parse(jsonResponse).read("$.nextCursor");
+        }
+
+        assertEquals(expected, actual);
+        assertEquals(null, cursor);
+    }
+
+    @Test
+    public void whenGettingTheTransactionsOfAWalletWithoutTransactions_thenReturnsAnEmptyPage()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+
+        ResultActions response = mockMvc.perform(get("/v1/wallets/" + wallet.getId()
+            + "/transactions"));
+
+        response.andExpect(status().isOk());
+        response.andExpect(jsonPath("$.transactions", hasSize(0)));
+        response.andExpect(jsonPath("$.nextCursor", is(nullValue())));
+    }
+
+    @Test
+    public void whenGettingTheTransactionsOfAWalletDoesntExist_thenReturnsNotFound()
+        throws Exception {
+        ResultActions response = mockMvc.perform(get("/v1/wallets/" + UUID.randomUUID()
+            + "/transactions"));
+
+        response.andExpect(status().isNotFound());
+        response.andExpect(jsonPath("$.error", is("Wallet not found")));
+    }
+
+    @Test
+    public void whenGettingTheTransactionsWithAnInvalidCursor_thenReturnsBadRequest()
+        throws Exception {
+        ResultActions response = mockMvc.perform(get("/v1/wallets/" + UUID.randomUUID()
+            + "/transactions").param("cursor", "not-a-cursor"));
+
+        response.andExpect(status().isBadRequest());
+        response.andExpect(jsonPath("$.error", is("Invalid cursor")));
+    }
+
+    private static Transaction aTransaction(Wallet wallet, int amount) {
+        Transaction transaction = new Transaction();
+        transaction.setWallet(wallet);
+        transaction.setAmount(amount * 100L);
+        transaction.setStatus(TransactionStatus.SUCCESS);
+        return transaction;
+    }
+
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
         Wallet wallet = new Wallet();
         wallet.setUserId(userId);
         wallet.setAmount(amount);
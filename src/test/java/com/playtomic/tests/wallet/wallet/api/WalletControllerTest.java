@@ -6,9 +6,13 @@ import static org.mockito.Mockito.when;
 
 import com.playtomic.tests.wallet.wallet.dto.CreateWalletRequest;
 import com.playtomic.tests.wallet.wallet.dto.TopUpRequest;
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
 import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.service.IdempotencyService;
 import com.playtomic.tests.wallet.wallet.service.WalletService;
-import java.math.BigDecimal;
+import java.net.URI;
+import java.time.Instant;
 import java.util.UUID;
 import org.junit.jupiter.api.Test;
 import org.springframework.http.HttpStatus;
@@ -19,10 +23,11 @@ public class WalletControllerTest {
     @Test
     public void whenCreatingWalletWithAUserID_thenReturnsTheWallet() {
         UUID userId = UUID.randomUUID();
-        WalletResponse wallet = new WalletResponse(UUID.randomUUID(), userId, new BigDecimal(0));
+        WalletResponse wallet = new WalletResponse(UUID.randomUUID(), userId, 0L);
         WalletService walletService = mock(WalletService.class);
         when(walletService.create(userId)).thenReturn(wallet);
-        WalletController walletController = new WalletController(walletService);
+        WalletController walletController = new WalletController(walletService,
+            mock(IdempotencyService.class));
 
         CreateWalletRequest request = new CreateWalletRequest();
         request.setUserId(userId);
@@ -38,16 +43,18 @@ public class WalletControllerTest {
     @Test
     public void whenTopUp_thenTheTopUpIsApplied() {
         UUID userId = UUID.randomUUID();
-        WalletResponse wallet = new WalletResponse(UUID.randomUUID(), userId, new BigDecimal(0));
+        WalletResponse wallet = new WalletResponse(UUID.randomUUID(), userId, 0L);
         WalletService walletService = mock(WalletService.class);
-        when(walletService.topUp(wallet.getId(), "cardNumber", new BigDecimal(10))).thenReturn(
+        when(walletService.topUp(wallet.getId(), "cardNumber", 1000L)).thenReturn(
             wallet);
-        WalletController walletController = new WalletController(walletService);
+        WalletController walletController = new WalletController(walletService,
+            mock(IdempotencyService.class));
 
         TopUpRequest request = new TopUpRequest();
-        request.setAmount(new BigDecimal(10));
+        request.setAmount(1000L);
         request.setCardNumber("cardNumber");
-        ResponseEntity<WalletResponse> response = walletController.topUp(wallet.getId(), request);
+        ResponseEntity<WalletResponse> response = walletController.topUp(wallet.getId(), null,
+            request);
 
         assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
         WalletResponse actual = response.getBody();
@@ -56,13 +63,39 @@ public class WalletControllerTest {
         assertEquals(wallet.getAmount(), actual.getAmount());
     }
 
+    @Test
+    public void whenTopUpAsync_thenTheTransactionIsReturnedWithItsLocation() {
+        UUID walletId = UUID.randomUUID();
+        TransactionResponse transaction = new TransactionResponse(UUID.randomUUID(), walletId,
+            1000L, TransactionStatus.INITIATED, Instant.now());
+        WalletService walletService = mock(WalletService.class);
+        when(walletService.topUpAsync(walletId, "cardNumber", 1000L)).thenReturn(
+            transaction);
+        WalletController walletController = new WalletController(walletService,
+            mock(IdempotencyService.class));
+
+        TopUpRequest request = new TopUpRequest();
+        request.setAmount(1000L);
+        request.setCardNumber("cardNumber");
+        ResponseEntity<TransactionResponse> response = walletController.topUpAsync(walletId, null,
+            request);
+
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals(URI.create("/v1/transactions/" + transaction.getId()),
+            response.getHeaders().getLocation());
+        TransactionResponse actual = response.getBody();
+        assertEquals(transaction.getId(), actual.getId());
+        assertEquals(TransactionStatus.INITIATED, actual.getStatus());
+    }
+
     @Test
     public void whenGetWallet_thenTheWalletIsReturned() {
         UUID walletId = UUID.randomUUID();
-        WalletResponse wallet = new WalletResponse(walletId, UUID.randomUUID(), new BigDecimal(0));
+        WalletResponse wallet = new WalletResponse(walletId, UUID.randomUUID(), 0L);
         WalletService walletService = mock(WalletService.class);
         when(walletService.get(walletId)).thenReturn(wallet);
-        WalletController walletController = new WalletController(walletService);
+        WalletController walletController = new WalletController(walletService,
+            mock(IdempotencyService.class));
 
         ResponseEntity<WalletResponse> response = walletController.get(walletId);
 
@@ -73,4 +106,21 @@ public class WalletControllerTest {
         assertEquals(wallet.getAmount(), actual.getAmount());
     }
 
+    @Test
+    public void whenGetTheWalletOfAUser_thenTheWalletIsReturned() {
+        UUID userId = UUID.randomUUID();
+        WalletResponse wallet = new WalletResponse(UUID.randomUUID(), userId, 500L);
+        WalletService walletService = mock(WalletService.class);
+        when(walletService.getByUserId(userId)).thenReturn(wallet);
+        WalletController walletController = new WalletController(walletService,
+            mock(IdempotencyService.class));
+
+        ResponseEntity<WalletResponse> response = walletController.getByUserId(userId);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        WalletResponse actual = response.getBody();
+        assertEquals(wallet.getId(), actual.getId());
+        assertEquals(userId, actual.getUserId());
+        assertEquals(500L, actual.getAmount());
+    }
 }
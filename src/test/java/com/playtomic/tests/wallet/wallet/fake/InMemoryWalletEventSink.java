@@ -0,0 +1,33 @@
+package com.playtomic.tests.wallet.wallet.fake;
+
+import com.playtomic.tests.wallet.wallet.dto.WalletEvent;
+import com.playtomic.tests.wallet.wallet.service.WalletEventSink;
+import java.util.ArrayList;
+import java.util.List;
+import org.springframework.context.annotation.Primary;
+import org.springframework.context.annotation.Profile;
+import org.springframework.stereotype.Component;
+
+/**
+ * Keeps the published events in memory, so the tests can check them.
+ */
+@Component
+@Primary
+@Profile("test")
+public class InMemoryWalletEventSink implements WalletEventSink {
+
+    private final List<WalletEvent> events = new ArrayList<>();
+
+    @Override
+    public synchronized void publish(List<WalletEvent> published) {
+        events.addAll(published);
+    }
+
+    public synchronized List<WalletEvent> getEvents() {
+        return List.copyOf(events);
+    }
+
+    public synchronized void clear() {
+        events.clear();
+    }
+}
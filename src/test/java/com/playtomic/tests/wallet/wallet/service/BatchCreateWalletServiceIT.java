@@ -0,0 +1,92 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchItemResult;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class BatchCreateWalletServiceIT {
+
+    private final Logger log = LoggerFactory.getLogger(BatchCreateWalletServiceIT.class);
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private BatchCreateWalletService batchCreateWalletService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    public void tearDown() {
+        outboxEventRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenCreateBatch_thenTheWalletsAreInsertedInJdbcBatches() {
+        Wallet existing = walletRepository.save(aNewWallet(UUID.randomUUID()));
+        List<UUID> userIds = new ArrayList<>();
+        for (int i = 0; i < 2_500; i++) {
+            userIds.add(UUID.randomUUID());
+        }
+        userIds.add(existing.getUserId());
+        Statistics statistics = anEmptyStatistics();
+
+        long start = System.nanoTime();
+        List<CreateWalletBatchItemResult> actual = batchCreateWalletService.create(userIds);
+        double elapsed = (System.nanoTime() - start) / 1_000_000_000.0;
+        log.info("Created 2500 wallets in {} ms ({} rows/s) with {} statements",
+            Math.round(elapsed * 1000), Math.round(2_500 / elapsed),
+            statistics.getPrepareStatementCount());
+
+        assertEquals(2_501, actual.size());
+        assertNotNull(actual.get(0).getWalletId());
+        assertEquals(BatchCreateWalletService.DUPLICATED_USER, actual.get(2_500).getError());
+        assertEquals(2_501, walletRepository.count());
+        assertEquals(2_500, outboxEventRepository.count());
+        assertEquals(2_500, statistics.getEntityInsertCount() / 2);
+        // A wallet and an event per user, sent in JDBC batches of 50
+        assertTrue(statistics.getPrepareStatementCount() < 2_500 * 2 / 10,
+            "Statements " + statistics.getPrepareStatementCount());
+    }
+
+    private Statistics anEmptyStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
+    }
+
+    private static Wallet aNewWallet(UUID userId) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(0L);
+        return wallet;
+    }
+}
@@ -0,0 +1,103 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aPlatformTransactionManager;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aWalletEvents;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyCollection;
+import static org.mockito.ArgumentMatchers.anyList;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.wallet.dto.CreateWalletBatchItemResult;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DataIntegrityViolationException;
+
+public class BatchCreateWalletServiceTest {
+
+    @Test
+    public void whenCreateBatch_thenTheWalletsAreInsertedTogetherPerChunk() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findUserIdsIn(anyCollection())).thenReturn(Set.of());
+        when(walletRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Wallet> wallets = invocation.getArgument(0);
+            wallets.forEach(wallet -> wallet.setId(UUID.randomUUID()));
+            return wallets;
+        });
+        BatchCreateWalletService service = aBatchCreateWalletService(walletRepository, 2);
+        List<UUID> userIds = List.of(UUID.randomUUID(), UUID.randomUUID(), UUID.randomUUID());
+
+        List<CreateWalletBatchItemResult> actual = service.create(userIds);
+
+        verify(walletRepository, times(2)).saveAll(anyList());
+        assertEquals(3, actual.size());
+        for (int i = 0; i < userIds.size(); i++) {
+            assertEquals(userIds.get(i), actual.get(i).getUserId());
+            assertNotNull(actual.get(i).getWalletId());
+            assertNull(actual.get(i).getError());
+        }
+    }
+
+    @Test
+    public void whenCreateBatchWithExistingAndRepeatedUsers_thenOnlyTheyAreReported() {
+        UUID newUserId = UUID.randomUUID();
+        UUID existingUserId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findUserIdsIn(anyCollection())).thenReturn(Set.of(existingUserId));
+        when(walletRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Wallet> wallets = invocation.getArgument(0);
+            assertEquals(1, wallets.size());
+            wallets.forEach(wallet -> wallet.setId(UUID.randomUUID()));
+            return wallets;
+        });
+        BatchCreateWalletService service = aBatchCreateWalletService(walletRepository, 10);
+
+        List<CreateWalletBatchItemResult> actual = service.create(
+            List.of(newUserId, existingUserId, newUserId));
+
+        assertNotNull(actual.get(0).getWalletId());
+        assertNull(actual.get(1).getWalletId());
+        assertEquals(BatchCreateWalletService.DUPLICATED_USER, actual.get(1).getError());
+        assertNull(actual.get(2).getWalletId());
+        assertEquals(BatchCreateWalletService.REPEATED_USER, actual.get(2).getError());
+    }
+
+    @Test
+    public void whenAUserGetsAWalletConcurrently_thenTheChunkIsInsertedOneAtATime() {
+        UUID userId = UUID.randomUUID();
+        UUID concurrentUserId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findUserIdsIn(anyCollection())).thenReturn(Set.of());
+        when(walletRepository.saveAll(anyList())).thenAnswer(invocation -> {
+            List<Wallet> wallets = invocation.getArgument(0);
+            if (wallets.stream().anyMatch(wallet -> wallet.getUserId().equals(concurrentUserId))) {
+                throw new DataIntegrityViolationException("Unique index violation");
+            }
+            wallets.forEach(wallet -> wallet.setId(UUID.randomUUID()));
+            return wallets;
+        });
+        BatchCreateWalletService service = aBatchCreateWalletService(walletRepository, 10);
+
+        List<CreateWalletBatchItemResult> actual = service.create(
+            List.of(userId, concurrentUserId));
+
+        assertNotNull(actual.get(0).getWalletId());
+        assertNull(actual.get(0).getError());
+        assertNull(actual.get(1).getWalletId());
+        assertEquals(BatchCreateWalletService.DUPLICATED_USER, actual.get(1).getError());
+    }
+
+    private static BatchCreateWalletService aBatchCreateWalletService(
+        WalletRepository walletRepository, int chunkSize) {
+        return new BatchCreateWalletService(walletRepository, aWalletEvents(),
+            aPlatformTransactionManager(), chunkSize);
+    }
+}
@@ -0,0 +1,105 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItem;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItemResult;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import jakarta.persistence.EntityManagerFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
+public class BatchTopUpServiceIT {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private BatchTopUpService batchTopUpService;
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    @AfterEach
+    public void tearDown() {
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenTopUpBatch_thenEveryWalletGetsItsAmountAndEveryItemHasItsResult() {
+        Wallet first = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        Wallet second = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
+            500L));
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(first.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(second.getId(), "cardNumber", 2000L),
+            new TopUpBatchItem(first.getId(), "cardNumber", 300L),
+            new TopUpBatchItem(UUID.randomUUID(), "cardNumber", 1000L),
+            new TopUpBatchItem(first.getId(), "cardNumber", 3000L)));
+
+        assertEquals(TransactionStatus.SUCCESS, actual.get(0).getStatus());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(1).getStatus());
+        assertEquals(TransactionStatus.FAILED, actual.get(2).getStatus());
+        assertEquals("Amount too small", actual.get(2).getError());
+        assertEquals(TransactionStatus.FAILED, actual.get(3).getStatus());
+        assertEquals("Wallet not found", actual.get(3).getError());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(4).getStatus());
+        assertEquals(4000L, walletRepository.findById(first.getId()).orElseThrow().getAmount());
+        assertEquals(2500L, walletRepository.findById(second.getId()).orElseThrow().getAmount());
+        Transaction failed = transactionRepository.findById(actual.get(2).getTransactionId())
+            .orElseThrow();
+        assertEquals(TransactionStatus.FAILED, failed.getStatus());
+        assertEquals(3, transactionRepository.findAllByStatus(TransactionStatus.SUCCESS).size());
+    }
+
+    @Test
+    public void whenTopUpBatchOfManyWallets_thenTheInsertsAreSentInBatches() {
+        List<TopUpBatchItem> items = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
+                0L));
+            items.add(new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L));
+        }
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(items);
+
+        assertTrue(actual.stream().allMatch(
+            result -> result.getStatus() == TransactionStatus.SUCCESS));
+        // Per top-up, the conditional updates of its payment and its SUCCESS, and one addition per
+        // wallet. The 200 inserts of the transactions and of their events are sent in batches
+        assertTrue(statistics.getPrepareStatementCount() < 3 * items.size() + 50,
+            "Prepared statements: " + statistics.getPrepareStatementCount());
+    }
+
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
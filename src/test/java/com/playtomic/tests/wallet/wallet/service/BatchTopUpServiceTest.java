@@ -0,0 +1,288 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aPlatformTransactionManager;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aStripeCircuitBreaker;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aLedger;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aRefundQueue;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aReplicaReads;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aWalletShards;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aWalletCache;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aWalletEvents;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyIterable;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItem;
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItemResult;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.mockito.InOrder;
+
+public class BatchTopUpServiceTest {
+
+    @Test
+    public void whenTopUpBatch_thenTheAmountsAreAddedOncePerWallet() {
+        Wallet wallet = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(List.of(wallet));
+        List<Transaction> transactions = new ArrayList<>();
+        TransactionRepository transactionRepository = aTransactionRepositoryKeeping(transactions);
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            transactionRepository, WalletServiceTest.aStripeServiceMock());
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 2000L)));
+
+        verify(walletRepository).addAmount(wallet.getId(), 3000L);
+        assertEquals(2, actual.size());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(0).getStatus());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(1).getStatus());
+        assertEquals(TransactionStatus.SUCCESS, transactions.get(0).getStatus());
+        assertEquals("paymentId", transactions.get(0).getPaymentId());
+    }
+
+    @Test
+    public void whenTopUpBatchWithAnUnknownWallet_thenOnlyThatItemFails() {
+        Wallet wallet = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(List.of(wallet));
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            aTransactionRepositoryKeeping(new ArrayList<>()),
+            WalletServiceTest.aStripeServiceMock());
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(UUID.randomUUID(), "cardNumber", 1000L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L)));
+
+        assertEquals(TransactionStatus.FAILED, actual.get(0).getStatus());
+        assertEquals("Wallet not found", actual.get(0).getError());
+        assertNull(actual.get(0).getTransactionId());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(1).getStatus());
+        verify(walletRepository).addAmount(wallet.getId(), 1000L);
+    }
+
+    @Test
+    public void whenTopUpBatchAndAChargeFails_thenOnlyThatItemFails() {
+        Wallet wallet = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(List.of(wallet));
+        StripeService stripeService = mock(StripeService.class);
+        when(stripeService.charge("cardNumber", new BigDecimal("3.00"))).thenThrow(
+            new StripeAmountTooSmallException());
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenReturn(
+            new Payment("paymentId"));
+        List<Transaction> transactions = new ArrayList<>();
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            aTransactionRepositoryKeeping(transactions), stripeService);
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 300L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L)));
+
+        assertEquals(TransactionStatus.FAILED, actual.get(0).getStatus());
+        assertEquals("Amount too small", actual.get(0).getError());
+        assertEquals(TransactionStatus.FAILED, transactions.get(0).getStatus());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(1).getStatus());
+        verify(walletRepository).addAmount(wallet.getId(), 1000L);
+    }
+
+    @Test
+    public void whenTopUpBatchAndAChunkCantBeCredited_thenOnlyItsItemsFailAndAreRefunded() {
+        Wallet credited = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        Wallet notCredited = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(
+            List.of(credited, notCredited));
+        when(walletRepository.addAmount(notCredited.getId(), 2000L)).thenThrow(
+            new RuntimeException("Database is down"));
+        List<Transaction> transactions = new ArrayList<>();
+        TransactionRepository transactionRepository = aTransactionRepositoryKeeping(transactions);
+        when(transactionRepository.failCharged(any(), eq("paymentId"))).thenReturn(1);
+        RefundQueue refundQueue = aRefundQueue();
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            transactionRepository, WalletServiceTest.aStripeServiceMock(), refundQueue, 1);
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(credited.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(notCredited.getId(), "cardNumber", 2000L)));
+
+        assertEquals(TransactionStatus.SUCCESS, actual.get(0).getStatus());
+        verify(walletRepository).addAmount(credited.getId(), 1000L);
+        assertEquals(TransactionStatus.FAILED, actual.get(1).getStatus());
+        assertEquals("Error updating the Wallet", actual.get(1).getError());
+        verify(transactionRepository).failCharged(transactions.get(1).getId(), "paymentId");
+        verify(transactionRepository, never()).failCharged(eq(transactions.get(0).getId()),
+            any());
+        // Charged but not credited
+        verify(refundQueue).enqueue(argThat(transaction -> transaction.getId().equals(
+            transactions.get(1).getId())));
+        verify(refundQueue, times(1)).enqueue(any());
+    }
+
+    @Test
+    public void whenTopUpBatchAndThePaymentsCantBeWritten_thenTheyAreRefundedWithoutCrediting() {
+        Wallet wallet = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(List.of(wallet));
+        List<Transaction> transactions = new ArrayList<>();
+        TransactionRepository transactionRepository = aTransactionRepositoryKeeping(transactions);
+        when(transactionRepository.markProcessed(any(), eq("paymentId"))).thenThrow(
+            new RuntimeException("Database is down"));
+        when(transactionRepository.failCharged(any(), eq("paymentId"))).thenReturn(1);
+        RefundQueue refundQueue = aRefundQueue();
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            transactionRepository, WalletServiceTest.aStripeServiceMock(), refundQueue, 500);
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L)));
+
+        assertEquals(TransactionStatus.FAILED, actual.get(0).getStatus());
+        assertEquals("Failed to update transaction", actual.get(0).getError());
+        verify(walletRepository, never()).addAmount(any(), anyLong());
+        verify(refundQueue).enqueue(transactions.get(0));
+    }
+
+    @Test
+    public void whenTopUpBatchOfManyChunks_thenEveryChunkIsChargedWrittenAndCreditedInTurn() {
+        Wallet first = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        Wallet second = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(List.of(first, second));
+        List<Transaction> transactions = new ArrayList<>();
+        TransactionRepository transactionRepository = aTransactionRepositoryKeeping(transactions);
+        StripeService stripeService = WalletServiceTest.aStripeServiceMock();
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            transactionRepository, stripeService, aRefundQueue(), 1);
+
+        batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(first.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(second.getId(), "cardNumber", 2000L)));
+
+        InOrder inOrder = inOrder(transactionRepository, stripeService, walletRepository);
+        inOrder.verify(transactionRepository).saveAll(anyIterable());
+        inOrder.verify(stripeService).charge("cardNumber", new BigDecimal("10.00"));
+        inOrder.verify(transactionRepository).markProcessed(transactions.get(0).getId(),
+            "paymentId");
+        inOrder.verify(transactionRepository).updateStatusIf(transactions.get(0).getId(),
+            TransactionStatus.PROCESSED, TransactionStatus.SUCCESS);
+        inOrder.verify(walletRepository).addAmount(first.getId(), 1000L);
+        inOrder.verify(transactionRepository).saveAll(anyIterable());
+        inOrder.verify(stripeService).charge("cardNumber", new BigDecimal("20.00"));
+        inOrder.verify(transactionRepository).markProcessed(transactions.get(1).getId(),
+            "paymentId");
+        inOrder.verify(walletRepository).addAmount(second.getId(), 2000L);
+    }
+
+    @Test
+    public void whenTheReconcilerFailsATransactionWhileCharging_thenItIsRefundedNotCredited() {
+        Wallet credited = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        Wallet failed = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(List.of(credited, failed));
+        List<Transaction> transactions = new ArrayList<>();
+        TransactionRepository transactionRepository = aTransactionRepositoryKeeping(transactions);
+        // The second transaction is no longer INITIATED
+        when(transactionRepository.markProcessed(any(), any())).thenReturn(1, 0);
+        RefundQueue refundQueue = aRefundQueue();
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            transactionRepository, WalletServiceTest.aStripeServiceMock(), refundQueue, 500);
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(credited.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(failed.getId(), "cardNumber", 2000L)));
+
+        assertEquals(TransactionStatus.SUCCESS, actual.get(0).getStatus());
+        assertEquals(TransactionStatus.FAILED, actual.get(1).getStatus());
+        assertEquals("Transaction failed while charging the card", actual.get(1).getError());
+        verify(walletRepository).addAmount(credited.getId(), 1000L);
+        verify(walletRepository, never()).addAmount(eq(failed.getId()), anyLong());
+        verify(transactionRepository, never()).updateStatusIf(transactions.get(1).getId(),
+            TransactionStatus.PROCESSED, TransactionStatus.SUCCESS);
+        verify(refundQueue).enqueue(transactions.get(1));
+        verify(refundQueue, times(1)).enqueue(any());
+    }
+
+    @Test
+    public void whenTheReconcilerCompletesATransaction_thenItIsNotCreditedAgain() {
+        Wallet completed = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        Wallet credited = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findAllById(anyIterable())).thenReturn(
+            List.of(completed, credited));
+        List<Transaction> transactions = new ArrayList<>();
+        TransactionRepository transactionRepository = aTransactionRepositoryKeeping(transactions);
+        // The first transaction is no longer PROCESSED
+        when(transactionRepository.updateStatusIf(any(), eq(TransactionStatus.PROCESSED),
+            eq(TransactionStatus.SUCCESS))).thenReturn(0, 1);
+        RefundQueue refundQueue = aRefundQueue();
+        BatchTopUpService batchTopUpService = aBatchTopUpService(walletRepository,
+            transactionRepository, WalletServiceTest.aStripeServiceMock(), refundQueue, 500);
+
+        List<TopUpBatchItemResult> actual = batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(completed.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(credited.getId(), "cardNumber", 2000L)));
+
+        assertEquals(TransactionStatus.FAILED, actual.get(0).getStatus());
+        assertEquals("Transaction completed by the reconciliation", actual.get(0).getError());
+        assertEquals(TransactionStatus.SUCCESS, actual.get(1).getStatus());
+        verify(walletRepository, never()).addAmount(eq(completed.getId()), anyLong());
+        verify(walletRepository).addAmount(credited.getId(), 2000L);
+        verify(refundQueue, never()).enqueue(any());
+    }
+
+    private static BatchTopUpService aBatchTopUpService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService) {
+        return aBatchTopUpService(walletRepository, transactionRepository, stripeService,
+            aRefundQueue(), 500);
+    }
+
+    private static BatchTopUpService aBatchTopUpService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService,
+        RefundQueue refundQueue, int chunkSize) {
+        return new BatchTopUpService(walletRepository, transactionRepository, stripeService,
+            aPlatformTransactionManager(), 2, chunkSize, false, aWalletCache(),
+            aStripeCircuitBreaker(), aLedger(), aWalletShards(), refundQueue, aWalletEvents(),
+            aReplicaReads());
+    }
+
+    /**
+     * Repository that assigns ids to the saved transactions and writes their statuses.
+     */
+    private static TransactionRepository aTransactionRepositoryKeeping(
+        List<Transaction> transactions) {
+        TransactionRepository transactionRepository = mock(TransactionRepository.class);
+        when(transactionRepository.saveAll(anyIterable())).thenAnswer(invocation -> {
+            Iterable<Transaction> saved = invocation.getArgument(0);
+            saved.forEach(transaction -> {
+                transaction.setId(UUID.randomUUID());
+                transactions.add(transaction);
+            });
+            return transactions;
+        });
+        when(transactionRepository.markProcessed(any(), any())).thenReturn(1);
+        when(transactionRepository.updateStatusIf(any(), any(), any())).thenReturn(1);
+        return transactionRepository;
+    }
+}
@@ -0,0 +1,176 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.playtomic.tests.wallet.wallet.dto.HoldResponse;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.HoldNotReservedError;
+import com.playtomic.tests.wallet.wallet.exception.InsufficientFundsError;
+import com.playtomic.tests.wallet.wallet.model.HoldStatus;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.HoldRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class ChargeServiceIT {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private HoldRepository holdRepository;
+
+    @Autowired
+    private ChargeService chargeService;
+
+    @Autowired
+    private WalletService walletService;
+
+    @AfterEach
+    public void tearDown() {
+        holdRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenCharge_thenTheAmountIsSubtractedAndAChargeTransactionIsRecorded() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+
+        WalletResponse actual = chargeService.charge(wallet.getId(), 1500L);
+
+        assertEquals(3500L, actual.getAmount());
+        assertEquals(3500L, walletService.get(wallet.getId()).getAmount());
+        List<Transaction> transactions = transactionRepository.findAll();
+        assertEquals(1, transactions.size());
+        assertEquals(-1500L, transactions.get(0).getAmount());
+        assertEquals(TransactionStatus.SUCCESS, transactions.get(0).getStatus());
+    }
+
+    @Test
+    public void whenChargeMoreThanTheAmount_thenItFailsAndTheWalletIsNotChanged() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(1000L));
+
+        assertThrows(InsufficientFundsError.class,
+            () -> chargeService.charge(wallet.getId(), 1001L));
+
+        assertEquals(1000L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(0, transactionRepository.count());
+    }
+
+    @Test
+    public void whenConcurrentCharges_thenTheAmountIsNeverOversubscribed() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(10000L));
+        ExecutorService executor = Executors.newFixedThreadPool(20);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> charges = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            charges.add(executor.submit(() -> {
+                start.await();
+                return chargeService.charge(wallet.getId(), 1000L);
+            }));
+        }
+        start.countDown();
+        int succeeded = 0;
+        for (Future<?> charge : charges) {
+            try {
+                charge.get();
+                succeeded++;
+            } catch (Exception e) {
+                assertEquals(InsufficientFundsError.class, e.getCause().getClass());
+            }
+        }
+        executor.shutdown();
+
+        assertEquals(10, succeeded);
+        assertEquals(0L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    @Test
+    public void whenHoldIsCaptured_thenTheAmountIsCharged() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+
+        HoldResponse hold = chargeService.reserve(wallet.getId(), 2000L, null);
+        assertEquals(3000L, walletService.get(wallet.getId()).getAmount());
+        HoldResponse actual = chargeService.capture(wallet.getId(), hold.getId());
+
+        assertEquals(HoldStatus.CAPTURED, actual.getStatus());
+        assertEquals(3000L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(-2000L, transactionRepository.findAll().get(0).getAmount());
+        assertThrows(HoldNotReservedError.class,
+            () -> chargeService.release(wallet.getId(), hold.getId()));
+    }
+
+    @Test
+    public void whenHoldIsReleased_thenTheAmountIsGivenBack() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+
+        HoldResponse hold = chargeService.reserve(wallet.getId(), 2000L, null);
+        HoldResponse actual = chargeService.release(wallet.getId(), hold.getId());
+
+        assertEquals(HoldStatus.RELEASED, actual.getStatus());
+        assertEquals(5000L, walletService.get(wallet.getId()).getAmount());
+        assertEquals(0, transactionRepository.count());
+    }
+
+    @Test
+    public void whenHoldExpires_thenTheAmountIsGivenBackAndItCanNotBeCaptured()
+        throws InterruptedException {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+        HoldResponse hold = chargeService.reserve(wallet.getId(), 2000L, Duration.ofSeconds(1));
+        HoldResponse otherHold = chargeService.reserve(wallet.getId(), 1000L, null);
+        Thread.sleep(1100);
+
+        // Expired, even if it has not been released yet
+        assertThrows(HoldNotReservedError.class,
+            () -> chargeService.capture(wallet.getId(), hold.getId()));
+        int expired = chargeService.expireHolds(Instant.now().plusSeconds(1));
+
+        assertEquals(1, expired);
+        assertEquals(HoldStatus.EXPIRED,
+            holdRepository.findById(hold.getId()).orElseThrow().getStatus());
+        assertEquals(HoldStatus.RESERVED,
+            holdRepository.findById(otherHold.getId()).orElseThrow().getStatus());
+        assertEquals(4000L, walletService.get(wallet.getId()).getAmount());
+    }
+
+    @Test
+    public void whenHoldMoreThanTheAmount_thenItFails() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(1000L));
+
+        assertThrows(InsufficientFundsError.class,
+            () -> chargeService.reserve(wallet.getId(), 2000L, null));
+
+        assertEquals(0, holdRepository.count());
+    }
+
+    private static Wallet aNewWalletWithAmount(long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
@@ -0,0 +1,260 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.IdempotencyKeyInProgressError;
+import com.playtomic.tests.wallet.wallet.exception.IdempotencyKeyReusedError;
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequest;
+import com.playtomic.tests.wallet.wallet.model.IdempotentRequestStatus;
+import com.playtomic.tests.wallet.wallet.repository.IdempotentRequestRepository;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class IdempotencyServiceTest {
+
+    private static final Duration IN_PROGRESS_TIMEOUT = Duration.ofMinutes(1);
+    private static final Duration TTL = Duration.ofDays(1);
+
+    private final IdempotentRequestRepository idempotentRequestRepository =
+        mock(IdempotentRequestRepository.class);
+    private final IdempotencyService idempotencyService = new IdempotencyService(
+        idempotentRequestRepository, new ObjectMapper(), 100, IN_PROGRESS_TIMEOUT, TTL);
+
+    @Test
+    public void whenTheKeyIsNew_thenTheRequestIsExecutedAndItsResponseStored() {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.empty());
+        WalletResponse walletResponse = aWalletResponse();
+
+        WalletResponse response = idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> walletResponse);
+
+        assertSame(walletResponse, response);
+        verify(idempotentRequestRepository).saveAndFlush(any());
+        verify(idempotentRequestRepository).complete(eq("key"), anyString());
+    }
+
+    @Test
+    public void whenTheResponseCantBeStored_thenItIsReturnedAndStoredAgainLater() {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.empty());
+        when(idempotentRequestRepository.complete(eq("key"), anyString()))
+            .thenThrow(new RuntimeException("Database is down"))
+            .thenReturn(1);
+        WalletResponse walletResponse = aWalletResponse();
+
+        WalletResponse response = idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> walletResponse);
+
+        assertSame(walletResponse, response);
+        verify(idempotentRequestRepository, never()).release(any(), anyLong());
+        idempotencyService.completePendingKeys();
+        idempotencyService.completePendingKeys();
+        verify(idempotentRequestRepository, times(2)).complete(eq("key"), anyString());
+    }
+
+    @Test
+    public void whenTheKeyIsRepeated_thenTheResponseIsReplayedFromMemory() {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.empty());
+        AtomicInteger executions = new AtomicInteger();
+        WalletResponse walletResponse = aWalletResponse();
+        idempotencyService.execute("key", "request", WalletResponse.class, () -> {
+            executions.incrementAndGet();
+            return walletResponse;
+        });
+
+        WalletResponse response = idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> {
+                executions.incrementAndGet();
+                return walletResponse;
+            });
+
+        assertSame(walletResponse, response);
+        assertEquals(1, executions.get());
+        verify(idempotentRequestRepository, times(1)).findById("key");
+    }
+
+    @Test
+    public void whenTheKeyIsCompletedInTheDatabase_thenTheStoredResponseIsReplayed()
+        throws Exception {
+        WalletResponse walletResponse = aWalletResponse();
+        IdempotentRequest stored = anIdempotentRequest("request",
+            IdempotentRequestStatus.COMPLETED);
+        stored.setResponse(new ObjectMapper().writeValueAsString(walletResponse));
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.of(stored));
+        AtomicInteger executions = new AtomicInteger();
+
+        WalletResponse response = idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> {
+                executions.incrementAndGet();
+                return walletResponse;
+            });
+
+        assertEquals(walletResponse.getId(), response.getId());
+        assertEquals(walletResponse.getUserId(), response.getUserId());
+        assertEquals(walletResponse.getAmount(), response.getAmount());
+        assertEquals(0, executions.get());
+        verify(idempotentRequestRepository, never()).saveAndFlush(any());
+    }
+
+    @Test
+    public void whenTheKeyIsReusedWithAnotherRequest_thenItIsRejected() {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.empty());
+        idempotencyService.execute("key", "request", WalletResponse.class,
+            IdempotencyServiceTest::aWalletResponse);
+
+        assertThrows(IdempotencyKeyReusedError.class, () -> idempotencyService.execute("key",
+            "another request", WalletResponse.class, IdempotencyServiceTest::aWalletResponse));
+    }
+
+    @Test
+    public void whenTheKeyIsInProgressInAnotherInstance_thenItIsRejected() {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.of(
+            anIdempotentRequest("request", IdempotentRequestStatus.IN_PROGRESS)));
+
+        assertThrows(IdempotencyKeyInProgressError.class, () -> idempotencyService.execute("key",
+            "request", WalletResponse.class, IdempotencyServiceTest::aWalletResponse));
+    }
+
+    @Test
+    public void whenTheKeyIsInProgressForLongerThanTheTimeout_thenItIsTakenOver() {
+        IdempotentRequest abandoned = anIdempotentRequest("request",
+            IdempotentRequestStatus.IN_PROGRESS);
+        abandoned.setCreatedAt(Instant.now().minus(IN_PROGRESS_TIMEOUT).minusSeconds(1));
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.of(abandoned));
+        when(idempotentRequestRepository.takeOver(eq("key"), eq(0L), any())).thenReturn(1);
+        WalletResponse walletResponse = aWalletResponse();
+
+        WalletResponse response = idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> walletResponse);
+
+        assertSame(walletResponse, response);
+        verify(idempotentRequestRepository).complete(eq("key"), anyString());
+    }
+
+    @Test
+    public void whenTheAbandonedKeyIsTakenOverByAnotherInstance_thenItIsRejected() {
+        IdempotentRequest abandoned = anIdempotentRequest("request",
+            IdempotentRequestStatus.IN_PROGRESS);
+        abandoned.setCreatedAt(Instant.now().minus(IN_PROGRESS_TIMEOUT).minusSeconds(1));
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.of(abandoned));
+        when(idempotentRequestRepository.takeOver(eq("key"), eq(0L), any())).thenReturn(0);
+
+        assertThrows(IdempotencyKeyInProgressError.class, () -> idempotencyService.execute("key",
+            "request", WalletResponse.class, IdempotencyServiceTest::aWalletResponse));
+    }
+
+    @Test
+    public void whenTheTakenOverRequestFails_thenOnlyItsClaimIsReleased() {
+        IdempotentRequest abandoned = anIdempotentRequest("request",
+            IdempotentRequestStatus.IN_PROGRESS);
+        abandoned.setCreatedAt(Instant.now().minus(IN_PROGRESS_TIMEOUT).minusSeconds(1));
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.of(abandoned));
+        when(idempotentRequestRepository.takeOver(eq("key"), eq(0L), any())).thenReturn(1);
+
+        assertThrows(ProcessingChargeError.class, () -> idempotencyService.execute("key",
+            "request", WalletResponse.class, () -> {
+                throw new ProcessingChargeError("Failed to charge card");
+            }));
+
+        verify(idempotentRequestRepository).release("key", 1);
+    }
+
+    @Test
+    public void whenPurgingTheExpiredKeys_thenTheKeysOlderThanTheTtlAreDeleted() {
+        Instant before = Instant.now();
+
+        idempotencyService.purgeExpiredKeys();
+
+        verify(idempotentRequestRepository).deleteCreatedBefore(argThat(createdBefore ->
+            !createdBefore.isBefore(before.minus(TTL))
+                && !createdBefore.isAfter(Instant.now().minus(TTL))));
+    }
+
+    @Test
+    public void whenTheRequestFails_thenTheKeyIsReleased() {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.empty());
+
+        assertThrows(ProcessingChargeError.class, () -> idempotencyService.execute("key",
+            "request", WalletResponse.class, () -> {
+                throw new ProcessingChargeError("Failed to charge card");
+            }));
+
+        verify(idempotentRequestRepository).release("key", 0);
+        WalletResponse walletResponse = aWalletResponse();
+        assertSame(walletResponse, idempotencyService.execute("key", "request",
+            WalletResponse.class, () -> walletResponse));
+    }
+
+    @Test
+    public void whenTheKeyIsRepeatedWhileInFlight_thenTheDuplicateWaitsForTheSameResponse()
+        throws Exception {
+        when(idempotentRequestRepository.findById("key")).thenReturn(Optional.empty());
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger executions = new AtomicInteger();
+        WalletResponse walletResponse = aWalletResponse();
+        CompletableFuture<WalletResponse> first = CompletableFuture.supplyAsync(
+            () -> idempotencyService.execute("key", "request", WalletResponse.class, () -> {
+                executions.incrementAndGet();
+                started.countDown();
+                await(release);
+                return walletResponse;
+            }));
+        started.await(5, TimeUnit.SECONDS);
+
+        CompletableFuture<WalletResponse> duplicate = CompletableFuture.supplyAsync(
+            () -> idempotencyService.execute("key", "request", WalletResponse.class, () -> {
+                executions.incrementAndGet();
+                return walletResponse;
+            }));
+        release.countDown();
+
+        assertSame(walletResponse, first.get(5, TimeUnit.SECONDS));
+        assertSame(walletResponse, duplicate.get(5, TimeUnit.SECONDS));
+        assertEquals(1, executions.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static WalletResponse aWalletResponse() {
+        return new WalletResponse(UUID.randomUUID(), UUID.randomUUID(), 1050L);
+    }
+
+    private static IdempotentRequest anIdempotentRequest(String request,
+        IdempotentRequestStatus status) {
+        IdempotentRequest idempotentRequest = new IdempotentRequest();
+        idempotentRequest.setId("key");
+        idempotentRequest.setRequestHash(IdempotencyService.hash(request));
+        idempotentRequest.setStatus(status);
+        idempotentRequest.setVersion(0L);
+        idempotentRequest.setCreatedAt(Instant.now());
+        return idempotentRequest;
+    }
+}
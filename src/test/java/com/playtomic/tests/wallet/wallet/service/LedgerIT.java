@@ -0,0 +1,204 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.hamcrest.core.Is.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItem;
+import com.playtomic.tests.wallet.wallet.model.BalanceSnapshot;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.BalanceSnapshotRepository;
+import com.playtomic.tests.wallet.wallet.repository.LedgerEntryRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.http.MediaType;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.ResultActions;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {"wallet.update-strategy=LEDGER",
+    "wallet.ledger.compaction.min-entries=5"})
+@AutoConfigureMockMvc
+public class LedgerIT {
+
+    private static final int CONCURRENT_TOP_UPS = 16;
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private LedgerEntryRepository ledgerEntryRepository;
+
+    @Autowired
+    private BalanceSnapshotRepository balanceSnapshotRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private BatchTopUpService batchTopUpService;
+
+    @Autowired
+    private TransactionReconciler transactionReconciler;
+
+    @Autowired
+    private Ledger ledger;
+
+    @AfterEach
+    public void tearDown() {
+        balanceSnapshotRepository.deleteAll();
+        ledgerEntryRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenTopUp_thenAnEntryIsAppendedAndTheWalletIsNotUpdated() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+
+        walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+        long actual = walletService.topUp(wallet.getId(), "cardNumber", 2000L)
+            .getAmount();
+
+        assertEquals(3500L, actual);
+        assertEquals(3500L, walletService.get(wallet.getId()).getAmount());
+        Wallet row = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(500L, row.getAmount());
+        assertEquals(0L, row.getVersion());
+        assertEquals(2, ledgerEntryRepository.count());
+        assertEquals(2, transactionRepository.findAllByStatus(TransactionStatus.SUCCESS).size());
+    }
+
+    @Test
+    public void whenConcurrentTopUpsOfTheSameWallet_thenNoneConflicts() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_TOP_UPS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> topUps = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_TOP_UPS; i++) {
+            topUps.add(executor.submit(() -> {
+                start.await();
+                return walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+            }));
+        }
+
+        start.countDown();
+        for (Future<?> topUp : topUps) {
+            topUp.get();
+        }
+        executor.shutdown();
+
+        assertEquals(1000L * CONCURRENT_TOP_UPS, walletService.get(wallet.getId()).getAmount());
+        assertEquals(CONCURRENT_TOP_UPS, ledgerEntryRepository.count());
+    }
+
+    @Test
+    public void whenCompacting_thenTheSnapshotHasTheEntriesAndTheBalanceIsTheSame()
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        Wallet fewEntries = walletRepository.save(aNewWalletWithAmount(0L));
+        for (int i = 0; i < 6; i++) {
+            walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+        }
+        walletService.topUp(fewEntries.getId(), "cardNumber", 1000L);
+
+        Instant settled = Instant.now();
+        Thread.sleep(5);
+
+        int compacted = ledger.compact(settled);
+        walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+
+        assertEquals(1, compacted);
+        BalanceSnapshot snapshot = balanceSnapshotRepository.findById(wallet.getId())
+            .orElseThrow();
+        assertEquals(6000L, snapshot.getAmount());
+        assertEquals(6, snapshot.getEntries());
+        Wallet actual = ledger.withBalance(walletRepository.findById(wallet.getId())
+            .orElseThrow());
+        assertEquals(7500L, actual.getAmount());
+        assertEquals(7L, actual.getVersion());
+        assertEquals(8, ledgerEntryRepository.count());
+        assertEquals(0, ledger.compact(Instant.now()));
+    }
+
+    @Test
+    public void whenTopUpBatch_thenEverySuccessfulTopUpIsAppended() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+
+        batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 300L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 2000L)));
+
+        assertEquals(2, ledgerEntryRepository.count());
+        assertEquals(3500L, walletService.get(wallet.getId()).getAmount());
+        assertEquals(500L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    @Test
+    public void whenReconcilingAStuckTopUp_thenItIsAppended() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        Transaction transaction = new Transaction();
+        transaction.setWallet(wallet);
+        transaction.setAmount(1000L);
+        transaction.setStatus(TransactionStatus.PROCESSED);
+        transaction.setPaymentId("payment");
+        transactionRepository.save(transaction);
+
+        transactionReconciler.reconcile(Instant.now().plusSeconds(1));
+        transactionReconciler.reconcile(Instant.now().plusSeconds(1));
+
+        assertEquals(1, ledgerEntryRepository.count());
+        assertEquals(1500L, walletService.get(wallet.getId()).getAmount());
+    }
+
+    @Test
+    public void whenChargingAWallet_thenItIsNotImplemented() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(5000L));
+
+        ResultActions response = mockMvc.perform(
+            post("/v1/wallets/" + wallet.getId() + "/actions/charge")
+                .contentType(MediaType.APPLICATION_JSON)
+                .content("{\"amount\":12.5}"));
+
+        response.andExpect(status().isNotImplemented());
+        response.andExpect(jsonPath("$.error",
+            is("Charges are not supported with the LEDGER update strategy")));
+        assertEquals(5000L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    private static Wallet aNewWalletWithAmount(long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
@@ -0,0 +1,109 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.wallet.dto.WalletEvent;
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.fake.InMemoryWalletEventSink;
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.WalletEventType;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = "wallet.outbox.batch-size=200")
+public class OutboxRelayIT {
+
+    private final Logger log = LoggerFactory.getLogger(OutboxRelayIT.class);
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private OutboxRelay outboxRelay;
+
+    @Autowired
+    private InMemoryWalletEventSink sink;
+
+    @BeforeEach
+    public void setUp() {
+        outboxEventRepository.deleteAll();
+        sink.clear();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        outboxEventRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+        sink.clear();
+    }
+
+    @Test
+    public void whenTheWalletChanges_thenItsEventsArePublishedInOrder() {
+        UUID walletId = walletService.create(UUID.randomUUID()).getId();
+        walletService.topUp(walletId, "cardNumber", 1000L);
+        assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 5L));
+
+        OutboxRelay.Report report = outboxRelay.relay();
+
+        assertEquals(3, report.published());
+        List<WalletEvent> events = sink.getEvents();
+        assertEquals(List.of(WalletEventType.CREATED, WalletEventType.TOPPED_UP,
+            WalletEventType.TOP_UP_FAILED), events.stream().map(WalletEvent::getType).toList());
+        assertTrue(events.stream().allMatch(event -> event.getWalletId().equals(walletId)));
+        assertEquals(1000L, events.get(1).getAmount());
+        assertEquals(5L, events.get(2).getAmount());
+        assertEquals(0, outboxEventRepository.count());
+        assertEquals(0, outboxRelay.relay().published());
+    }
+
+    @Test
+    public void whenTheOutboxHasManyEvents_thenTheyArePublishedInBatchesInOrder() {
+        UUID walletId = UUID.randomUUID();
+        List<OutboxEvent> outbox = new ArrayList<>();
+        for (int i = 0; i < 5_000; i++) {
+            outbox.add(new OutboxEvent(WalletEventType.TOPPED_UP, walletId, UUID.randomUUID(), i));
+        }
+        outboxEventRepository.saveAll(outbox);
+
+        OutboxRelay.Report report = outboxRelay.relay();
+        log.info("Published {} events in {} ms ({}/s)", report.published(),
+            report.elapsed().toMillis(), Math.round(report.throughput()));
+
+        assertEquals(5_000, report.published());
+        List<WalletEvent> events = sink.getEvents();
+        assertEquals(5_000, events.size());
+        for (int i = 1; i < events.size(); i++) {
+            assertTrue(events.get(i - 1).getId() < events.get(i).getId());
+        }
+        assertEquals(0, outboxEventRepository.count());
+    }
+}
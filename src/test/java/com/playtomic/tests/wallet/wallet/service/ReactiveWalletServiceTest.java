@@ -0,0 +1,302 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aStripeCircuitBreaker;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aWalletCache;
+import static com.playtomic.tests.wallet.wallet.service.WalletServiceTest.aWalletIdCache;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeAmountTooSmallException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.ReactiveWalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
+import org.springframework.transaction.reactive.TransactionalOperator;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+
+public class ReactiveWalletServiceTest {
+
+    @Test
+    public void whenTopUp_thenTheAmountIsAddedToTheWallet() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.updateAmount(walletId, 1500L, 0L)).thenReturn(Mono.just(1L));
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(new SimpleMeterRegistry()),
+            mock(RefundQueue.class));
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .assertNext(actual -> {
+                assertEquals(walletId, actual.getId());
+                assertEquals(1500L, actual.getAmount());
+            })
+            .verifyComplete();
+
+        verify(walletRepository).markProcessed(any(), eq("1234"));
+        verify(walletRepository).updateTransactionStatusIf(any(),
+            eq(TransactionStatus.PROCESSED), eq(TransactionStatus.SUCCESS));
+    }
+
+    @Test
+    public void whenTheTopUpIsCancelledAfterTheCharge_thenTheWalletIsStillCredited() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.updateAmount(walletId, 1500L, 0L)).thenReturn(Mono.just(1L));
+        StripeService stripeService = mock(StripeService.class);
+        CompletableFuture<Payment> payment = new CompletableFuture<>();
+        when(stripeService.chargeAsync(any(), any())).thenReturn(payment);
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            stripeService, aTopUpMetrics(new SimpleMeterRegistry()), mock(RefundQueue.class));
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .then(() -> verify(stripeService).chargeAsync(any(), any()))
+            .thenCancel()
+            .verify();
+        payment.complete(new Payment("1234"));
+
+        verify(walletRepository).markProcessed(any(), eq("1234"));
+        verify(walletRepository).updateAmount(walletId, 1500L, 0L);
+        verify(walletRepository).updateTransactionStatusIf(any(),
+            eq(TransactionStatus.PROCESSED), eq(TransactionStatus.SUCCESS));
+    }
+
+    @Test
+    public void whenTopUpAndThePaymentCantBeWritten_thenItIsRefundedWithoutCrediting() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.markProcessed(any(), eq("1234"))).thenReturn(
+            Mono.error(new RuntimeException("Database is down")));
+        when(walletRepository.failCharged(any(), eq("1234"))).thenReturn(Mono.just(1L));
+        RefundQueue refundQueue = mock(RefundQueue.class);
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(new SimpleMeterRegistry()), refundQueue);
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .expectErrorMessage("Failed to update transaction")
+            .verify();
+
+        verify(walletRepository, never()).updateAmount(any(), anyLong(), anyLong());
+        verify(walletRepository).insertRefund(any(Transaction.class));
+        verify(refundQueue).enqueued(any(Transaction.class));
+    }
+
+    @Test
+    public void whenTheTransactionIsFailedWhileCharging_thenItIsRefundedWithoutCrediting() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        // Failed by the reconciler while Stripe was charging the card
+        when(walletRepository.markProcessed(any(), eq("1234"))).thenReturn(Mono.just(0L));
+        RefundQueue refundQueue = mock(RefundQueue.class);
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(new SimpleMeterRegistry()), refundQueue);
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .expectErrorMessage("Transaction failed while charging the card")
+            .verify();
+
+        verify(walletRepository, never()).updateAmount(any(), anyLong(), anyLong());
+        verify(walletRepository, never()).failCharged(any(), any());
+        verify(walletRepository).insertRefund(any(Transaction.class));
+        verify(refundQueue).enqueued(any(Transaction.class));
+    }
+
+    @Test
+    public void whenTheTransactionIsCompletedByTheReconciliation_thenItIsNotCreditedAgain() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.updateAmount(walletId, 1500L, 0L)).thenReturn(Mono.just(1L));
+        // Credited or refunded by the reconciler, so no longer PROCESSED
+        when(walletRepository.updateTransactionStatusIf(any(), eq(TransactionStatus.PROCESSED),
+            eq(TransactionStatus.SUCCESS))).thenReturn(Mono.just(0L));
+        when(walletRepository.failCharged(any(), eq("1234"))).thenReturn(Mono.just(0L));
+        RefundQueue refundQueue = mock(RefundQueue.class);
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(new SimpleMeterRegistry()), refundQueue);
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .expectErrorMessage("Transaction completed by the reconciliation")
+            .verify();
+
+        // The credit is rolled back with the database transaction
+        verify(walletRepository, times(1)).updateAmount(any(), anyLong(), anyLong());
+        verify(walletRepository, never()).insertRefund(any());
+        verify(refundQueue, never()).enqueued(any());
+    }
+
+    @Test
+    public void whenTopUpAndUpdateWalletFailsTwice_thenTheWalletIsReadAgainAndRetried() {
+        UUID userId = UUID.randomUUID();
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId))
+            .thenReturn(Mono.just(new Wallet(walletId, 0L, userId, 500L)))
+            .thenReturn(Mono.just(new Wallet(walletId, 1L, userId, 2000L)))
+            .thenReturn(Mono.just(new Wallet(walletId, 2L, userId, 3000L)));
+        when(walletRepository.updateAmount(eq(walletId), anyLong(), anyLong()))
+            .thenReturn(Mono.just(0L)).thenReturn(Mono.just(0L)).thenReturn(Mono.just(1L));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(meterRegistry), mock(RefundQueue.class));
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .assertNext(actual -> assertEquals(4000L, actual.getAmount()))
+            .verifyComplete();
+
+        verify(walletRepository).updateAmount(walletId, 1500L, 0L);
+        verify(walletRepository).updateAmount(walletId, 3000L, 1L);
+        verify(walletRepository).updateAmount(walletId, 4000L, 2L);
+        assertEquals(2, meterRegistry.get("wallet.topup.retries").counter().count());
+        assertEquals(2,
+            meterRegistry.get("wallet.topup.optimistic.lock.failures").counter().count());
+        assertEquals(1, meterRegistry.get("wallet.topup.outcome").tag("status", "SUCCESS")
+            .counter().count());
+        assertEquals(3, meterRegistry.get("wallet.topup.phase").tag("phase", "commit").timer()
+            .count());
+    }
+
+    @Test
+    public void whenTopUpAndUpdateWalletAlwaysFails_thenThePaymentIsRefunded() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.updateAmount(eq(walletId), anyLong(), anyLong()))
+            .thenReturn(Mono.just(0L));
+        when(walletRepository.failCharged(any(), eq("1234"))).thenReturn(Mono.just(1L));
+        RefundQueue refundQueue = mock(RefundQueue.class);
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(meterRegistry), refundQueue);
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 1000L))
+            .expectErrorSatisfies(e -> {
+                assertEquals(ProcessingChargeError.class, e.getClass());
+                assertEquals("Error updating the Wallet", e.getMessage());
+            })
+            .verify();
+
+        verify(walletRepository, times(WalletService.MAX_WALLET_RETRIES))
+            .updateAmount(eq(walletId), anyLong(), anyLong());
+        verify(walletRepository).insertRefund(any(Transaction.class));
+        verify(refundQueue).enqueued(any(Transaction.class));
+        assertEquals(1, meterRegistry.get("wallet.topup.outcome").tag("status", "FAILED")
+            .counter().count());
+    }
+
+    @Test
+    public void whenTopUpWithAnAmountTooSmall_thenTheTransactionFailsWithoutRefund() {
+        UUID walletId = UUID.randomUUID();
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Mono.just(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        StripeService stripeService = mock(StripeService.class);
+        when(stripeService.chargeAsync(any(), any())).thenReturn(
+            CompletableFuture.failedFuture(new StripeAmountTooSmallException()));
+        RefundQueue refundQueue = mock(RefundQueue.class);
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            stripeService, aTopUpMetrics(new SimpleMeterRegistry()), refundQueue);
+
+        StepVerifier.create(walletService.topUp(walletId, "cardNumber", 100L))
+            .expectErrorMessage("Amount too small")
+            .verify();
+
+        verify(walletRepository).updateTransactionStatus(any(), eq(TransactionStatus.FAILED),
+            any());
+        verify(walletRepository, never()).updateAmount(any(), anyLong(), anyLong());
+        verify(refundQueue, never()).enqueued(any());
+    }
+
+    @Test
+    public void whenGetAWalletThatDoesNotExist_thenReturnsNotFound() {
+        ReactiveWalletRepository walletRepository = aReactiveWalletRepositoryMock();
+        when(walletRepository.findById(any())).thenReturn(Mono.empty());
+        ReactiveWalletService walletService = aReactiveWalletService(walletRepository,
+            aStripeServiceMock(), aTopUpMetrics(new SimpleMeterRegistry()),
+            mock(RefundQueue.class));
+
+        StepVerifier.create(walletService.get(UUID.randomUUID()))
+            .expectError(ResourceNotFoundException.class)
+            .verify();
+    }
+
+    @Test
+    public void whenTheUpdateStrategyKeepsTheBalanceOutOfTheWallet_thenItIsNotSupported() {
+        for (WalletUpdateStrategy strategy : new WalletUpdateStrategy[]{
+            WalletUpdateStrategy.LEDGER, WalletUpdateStrategy.SHARDED}) {
+            assertThrows(IllegalStateException.class, () -> new ReactiveWalletService(
+                aReactiveWalletRepositoryMock(), aTransactionalOperator(), aStripeServiceMock(),
+                aStripeCircuitBreaker(), aWalletCache(), aWalletIdCache(),
+                aTopUpMetrics(new SimpleMeterRegistry()), mock(RefundQueue.class), strategy));
+        }
+    }
+
+    private static ReactiveWalletService aReactiveWalletService(
+        ReactiveWalletRepository walletRepository, StripeService stripeService,
+        TopUpMetrics topUpMetrics, RefundQueue refundQueue) {
+        return new ReactiveWalletService(walletRepository, aTransactionalOperator(),
+            stripeService, aStripeCircuitBreaker(), aWalletCache(), aWalletIdCache(),
+            topUpMetrics, refundQueue, WalletUpdateStrategy.OPTIMISTIC);
+    }
+
+    private static ReactiveWalletRepository aReactiveWalletRepositoryMock() {
+        ReactiveWalletRepository walletRepository = mock(ReactiveWalletRepository.class);
+        when(walletRepository.insertTransaction(any())).thenReturn(Mono.empty());
+        when(walletRepository.markProcessed(any(), any())).thenReturn(Mono.just(1L));
+        when(walletRepository.updateTransactionStatusIf(any(), any(), any()))
+            .thenReturn(Mono.just(1L));
+        when(walletRepository.updateTransactionStatus(any(), any(), any()))
+            .thenReturn(Mono.just(1L));
+        when(walletRepository.insertRefund(any())).thenReturn(Mono.empty());
+        when(walletRepository.insertEvent(any())).thenReturn(Mono.empty());
+        return walletRepository;
+    }
+
+    private static StripeService aStripeServiceMock() {
+        StripeService stripeService = mock(StripeService.class);
+        when(stripeService.chargeAsync(any(), any())).thenReturn(
+            CompletableFuture.completedFuture(new Payment("1234")));
+        return stripeService;
+    }
+
+    /**
+     * Runs the writes without a database transaction.
+     */
+    @SuppressWarnings("unchecked")
+    private static TransactionalOperator aTransactionalOperator() {
+        TransactionalOperator transactionalOperator = mock(TransactionalOperator.class);
+        when(transactionalOperator.transactional(any(Mono.class)))
+            .thenAnswer(invocation -> invocation.getArgument(0));
+        return transactionalOperator;
+    }
+
+    private static TopUpMetrics aTopUpMetrics(SimpleMeterRegistry meterRegistry) {
+        return new TopUpMetrics(meterRegistry);
+    }
+}
@@ -0,0 +1,148 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.awaitility.Awaitility.await;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import com.playtomic.tests.wallet.wallet.dto.TransactionPageResponse;
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import javax.sql.DataSource;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.test.context.ActiveProfiles;
+
+/**
+ * Reads with a replica in another H2 database, which catches up with the primary only when the
+ * tests copy it. Without the WalletCache, so that every get reads the database.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT, properties = {
+    "wallet.datasource.replica.url=" + ReadReplicaIT.REPLICA_URL,
+    "wallet.datasource.replica.max-lag=" + ReadReplicaIT.MAX_LAG,
+    "wallet.cache.ttl=0s"})
+@ActiveProfiles("test")
+public class ReadReplicaIT {
+
+    static final String REPLICA_URL = "jdbc:h2:mem:read-replica-it;DB_CLOSE_DELAY=-1";
+    static final String MAX_LAG = "2s";
+
+    // Writes in the replica, the connections of the application there are read-only
+    private final JdbcTemplate replica = new JdbcTemplate(
+        new DriverManagerDataSource(REPLICA_URL, "sa", ""));
+
+    @Autowired
+    @Qualifier("primaryDataSource")
+    private DataSource primaryDataSource;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @BeforeEach
+    public void setUp() {
+        catchUp();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        outboxEventRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenTheReplicaIsUpToDate_thenTheWalletIsReadFromIt() {
+        WalletResponse created = walletService.create(UUID.randomUUID());
+        catchUp();
+        replica.update("update wallet set amount = 999 where id = ?", created.getId());
+        double replicaReadsBefore = count("replica");
+
+        WalletResponse actual = walletService.get(created.getId());
+
+        assertEquals(999L, actual.getAmount());
+        assertEquals(replicaReadsBefore + 1, count("replica"));
+    }
+
+    @Test
+    public void whenTheReplicaIsBehindATopUp_thenTheWalletIsReadFromThePrimary() {
+        WalletResponse created = walletService.create(UUID.randomUUID());
+        catchUp();
+        double fallbacksBefore = count("fallback");
+
+        walletService.topUp(created.getId(), "4242 4242 4242 4242", 1000L);
+        WalletResponse actual = walletService.get(created.getId());
+
+        assertEquals(1000L, actual.getAmount());
+        assertEquals(fallbacksBefore + 1, count("fallback"));
+    }
+
+    @Test
+    public void whenTheReplicaDoesNotHaveTheWalletYet_thenItIsReadFromThePrimary() {
+        UUID userId = UUID.randomUUID();
+        WalletResponse created = walletService.create(userId);
+
+        WalletResponse actual = walletService.get(created.getId());
+
+        assertEquals(created.getId(), actual.getId());
+        assertEquals(userId, actual.getUserId());
+    }
+
+    @Test
+    public void whenTheWalletWasRecentlyToppedUp_thenItsTransactionsAreReadFromThePrimary() {
+        WalletResponse created = walletService.create(UUID.randomUUID());
+        catchUp();
+
+        walletService.topUp(created.getId(), "4242 4242 4242 4242", 1000L);
+        TransactionPageResponse recent = walletService.getTransactions(created.getId(), null, 10);
+
+        assertEquals(1, recent.getTransactions().size());
+
+        await().atMost(Duration.parse("PT" + MAX_LAG).multipliedBy(3))
+            .until(() -> !replicaReads.isRecentlyWritten(created.getId()));
+        TransactionPageResponse later = walletService.getTransactions(created.getId(), null, 10);
+
+        // The replica has not caught up with the top-up
+        assertEquals(List.of(), later.getTransactions());
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("wallet.replica.reads").tag("outcome", outcome).counter()
+            .count();
+    }
+
+    /**
+     * Replaces the replica with a copy of the primary.
+     */
+    private void catchUp() {
+        List<String> script = new JdbcTemplate(primaryDataSource)
+            .queryForList("SCRIPT NOPASSWORDS NOSETTINGS", String.class);
+        replica.execute("DROP ALL OBJECTS");
+        script.forEach(replica::execute);
+    }
+}
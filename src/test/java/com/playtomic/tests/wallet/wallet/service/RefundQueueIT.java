@@ -0,0 +1,128 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.stripeclient.fake.FakeStripeService;
+import com.playtomic.tests.wallet.wallet.model.Refund;
+import com.playtomic.tests.wallet.wallet.model.RefundStatus;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.RefundRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {"wallet.refunds.batch-size=7",
+    "wallet.refunds.max-attempts=2", "wallet.refunds.initial-backoff=PT10S",
+    "wallet.refunds.max-backoff=PT20S"})
+public class RefundQueueIT {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private RefundRepository refundRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private RefundQueue refundQueue;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @AfterEach
+    public void tearDown() {
+        refundRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenDraining_thenTheQueuedRefundsAreRefundedInBatches() {
+        Wallet wallet = walletRepository.save(aNewWallet());
+        for (int i = 0; i < 20; i++) {
+            enqueue(aFailedTransaction(wallet, "1234"));
+        }
+        double refundedBefore = processed("refunded");
+
+        int attempted = refundQueue.drain(Instant.now());
+
+        assertEquals(20, attempted);
+        assertEquals(20, refundRepository.findAllByStatus(RefundStatus.REFUNDED).size());
+        assertEquals(20, processed("refunded") - refundedBefore);
+        assertEquals(0, meterRegistry.get("wallet.refunds.pending").gauge().value());
+        assertEquals(0, refundQueue.drain(Instant.now()));
+    }
+
+    @Test
+    public void whenTheRefundFails_thenItIsRetriedAfterABackoffAndThenMarkedFAILED() {
+        Wallet wallet = walletRepository.save(aNewWallet());
+        enqueue(aFailedTransaction(wallet, FakeStripeService.FAILING_REFUND_PAYMENT_ID));
+        Instant now = Instant.now();
+
+        assertEquals(1, refundQueue.drain(now));
+
+        Refund retried = refundRepository.findAll().get(0);
+        assertEquals(RefundStatus.PENDING, retried.getStatus());
+        assertEquals(1, retried.getAttempts());
+        Duration backoff = Duration.between(now, retried.getNextAttemptAt());
+        assertTrue(backoff.compareTo(Duration.ofSeconds(5)) >= 0
+            && backoff.compareTo(Duration.ofSeconds(10)) <= 0, "Backoff " + backoff);
+        assertEquals(1, meterRegistry.get("wallet.refunds.pending").gauge().value());
+        assertEquals(0, refundQueue.drain(now));
+
+        assertEquals(1, refundQueue.drain(now.plusSeconds(10)));
+
+        Refund failed = refundRepository.findAll().get(0);
+        assertEquals(RefundStatus.FAILED, failed.getStatus());
+        assertEquals(2, failed.getAttempts());
+        assertEquals(0, meterRegistry.get("wallet.refunds.pending").gauge().value());
+    }
+
+    private void enqueue(Transaction transaction) {
+        new TransactionTemplate(transactionManager).executeWithoutResult(
+            status -> refundQueue.enqueue(transaction));
+    }
+
+    private double processed(String outcome) {
+        return meterRegistry.get("wallet.refunds.processed").tag("outcome", outcome).counter()
+            .count();
+    }
+
+    private Transaction aFailedTransaction(Wallet wallet, String paymentId) {
+        Transaction transaction = new Transaction();
+        transaction.setWallet(wallet);
+        transaction.setAmount(1000L);
+        transaction.setPaymentId(paymentId);
+        transaction.setStatus(TransactionStatus.FAILED);
+        return transactionRepository.save(transaction);
+    }
+
+    private static Wallet aNewWallet() {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(0L);
+        return wallet;
+    }
+}
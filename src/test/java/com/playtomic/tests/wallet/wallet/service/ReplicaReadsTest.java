@@ -0,0 +1,153 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import com.playtomic.tests.wallet.infrastructure.ReplicaRoutingDataSource;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+
+public class ReplicaReadsTest {
+
+    private static final String REPLICA_URL = "jdbc:h2:mem:replica";
+
+    private final PlatformTransactionManager transactionManager =
+        mock(PlatformTransactionManager.class);
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Test
+    public void whenReading_thenItRunsInTheReadOnlyTransactionOfTheReplica() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+
+        replicaReads.read(() -> "replica", result -> true);
+
+        ArgumentCaptor<TransactionDefinition> definition =
+            ArgumentCaptor.forClass(TransactionDefinition.class);
+        verify(transactionManager).getTransaction(definition.capture());
+        assertTrue(definition.getValue().isReadOnly());
+        assertEquals(ReplicaRoutingDataSource.REPLICA_READS, definition.getValue().getName());
+        assertEquals(1, count("replica"));
+    }
+
+    @Test
+    public void whenTheReplicaIsBehindTheLastWrite_thenItIsReadAgainInThePrimary() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+        Wallet written = aWalletWithVersion(UUID.randomUUID(), 3L);
+        Wallet stale = aWalletWithVersion(written.getId(), 2L);
+        List<Wallet> reads = new ArrayList<>(List.of(stale, written));
+
+        replicaReads.written(written);
+        Wallet actual = replicaReads.read(() -> reads.remove(0), replicaReads::isUpToDate);
+
+        assertEquals(3L, actual.getVersion());
+        assertEquals(1, count("fallback"));
+        assertEquals(0, count("replica"));
+    }
+
+    @Test
+    public void whenTheReplicaDoesNotHaveTheWalletYet_thenItIsReadAgainInThePrimary() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+        Wallet created = aWalletWithVersion(UUID.randomUUID(), 0L);
+        List<Optional<Wallet>> reads = new ArrayList<>(List.of(Optional.empty(),
+            Optional.of(created)));
+
+        Optional<Wallet> actual = replicaReads.read(() -> reads.remove(0), Optional::isPresent);
+
+        assertEquals(Optional.of(created), actual);
+        assertEquals(1, count("fallback"));
+    }
+
+    @Test
+    public void whenOnlyOlderVersionsWereWritten_thenTheReplicaIsUpToDate() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+        UUID walletId = UUID.randomUUID();
+
+        replicaReads.written(aWalletWithVersion(walletId, 2L));
+        replicaReads.written(aWalletWithVersion(walletId, 1L));
+
+        assertTrue(replicaReads.isUpToDate(aWalletWithVersion(walletId, 2L)));
+        assertFalse(replicaReads.isUpToDate(aWalletWithVersion(walletId, 1L)));
+        assertTrue(replicaReads.isUpToDate(aWalletWithVersion(UUID.randomUUID(), 0L)));
+    }
+
+    @Test
+    public void whenReadingTheDataOfARecentlyWrittenWallet_thenItIsReadInThePrimary() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+        UUID written = UUID.randomUUID();
+
+        replicaReads.written(aWalletWithVersion(written, 1L));
+        replicaReads.read(written, () -> "primary");
+        replicaReads.read(UUID.randomUUID(), () -> "replica");
+
+        verify(transactionManager, times(1)).getTransaction(any());
+        assertEquals(1, count("primary"));
+        assertEquals(1, count("replica"));
+    }
+
+    @Test
+    public void whenATransactionOfTheWalletIsWritten_thenItsDataIsReadInThePrimary() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+        UUID walletId = UUID.randomUUID();
+
+        replicaReads.transactionWritten(walletId);
+        replicaReads.read(walletId, () -> "primary");
+
+        assertTrue(replicaReads.isRecentlyWritten(walletId));
+        assertTrue(replicaReads.isUpToDate(aWalletWithVersion(walletId, 0L)));
+        assertEquals(1, count("primary"));
+    }
+
+    @Test
+    public void whenATransactionIsWrittenAfterTheWallet_thenItsVersionIsKept() {
+        ReplicaReads replicaReads = aReplicaReads(REPLICA_URL);
+        UUID walletId = UUID.randomUUID();
+
+        replicaReads.written(aWalletWithVersion(walletId, 2L));
+        replicaReads.transactionWritten(walletId);
+
+        assertFalse(replicaReads.isUpToDate(aWalletWithVersion(walletId, 1L)));
+    }
+
+    @Test
+    public void whenThereIsNoReplica_thenTheReadsGoToThePrimaryWithoutTracking() {
+        ReplicaReads replicaReads = aReplicaReads("");
+        Wallet wallet = aWalletWithVersion(UUID.randomUUID(), 1L);
+
+        replicaReads.written(wallet);
+        String actual = replicaReads.read(() -> "primary", result -> false);
+
+        assertEquals("primary", actual);
+        assertFalse(replicaReads.isRecentlyWritten(wallet.getId()));
+        verify(transactionManager, times(0)).getTransaction(any());
+        assertEquals(0, count("fallback"));
+    }
+
+    private ReplicaReads aReplicaReads(String replicaUrl) {
+        return new ReplicaReads(transactionManager, replicaUrl, Duration.ofMinutes(1), 100,
+            meterRegistry);
+    }
+
+    private double count(String outcome) {
+        return meterRegistry.get("wallet.replica.reads").tag("outcome", outcome).counter()
+            .count();
+    }
+
+    private static Wallet aWalletWithVersion(UUID walletId, Long version) {
+        return new Wallet(walletId, version, UUID.randomUUID(), 1000L);
+    }
+}
@@ -0,0 +1,67 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import org.junit.jupiter.api.Test;
+
+public class TimerWheelTest {
+
+    private static final Instant NOW = Instant.parse("2026-01-01T10:00:00Z");
+
+    private final TimerWheel<String> timerWheel = new TimerWheel<>(Duration.ofSeconds(1), 8);
+
+    @Test
+    public void whenTheDeadlineHasNotArrived_thenTheTimeoutIsNotExpired() {
+        timerWheel.advance(NOW);
+        timerWheel.schedule("timeout", NOW.plusSeconds(3));
+
+        assertEquals(List.of(), timerWheel.advance(NOW.plusSeconds(2)));
+        assertEquals(List.of("timeout"), timerWheel.advance(NOW.plusSeconds(3)));
+        assertEquals(List.of(), timerWheel.advance(NOW.plusSeconds(4)));
+    }
+
+    @Test
+    public void whenTheDeadlineIsAfterATurnOfTheWheel_thenItExpiresInItsTurn() {
+        timerWheel.advance(NOW);
+        timerWheel.schedule("timeout", NOW.plusSeconds(20));
+
+        for (int second = 1; second < 20; second++) {
+            assertEquals(List.of(), timerWheel.advance(NOW.plusSeconds(second)));
+        }
+        assertEquals(List.of("timeout"), timerWheel.advance(NOW.plusSeconds(20)));
+    }
+
+    @Test
+    public void whenTheWheelIsNotAdvancedForSomeTurns_thenAllTheDueTimeoutsExpire() {
+        timerWheel.advance(NOW);
+        timerWheel.schedule("first", NOW.plusSeconds(2));
+        timerWheel.schedule("second", NOW.plusSeconds(30));
+        timerWheel.schedule("later", NOW.plusSeconds(100));
+
+        List<String> actual = timerWheel.advance(NOW.plusSeconds(50));
+
+        assertEquals(List.of("first", "second"), actual.stream().sorted().toList());
+        assertEquals(List.of("later"), timerWheel.advance(NOW.plusSeconds(100)));
+    }
+
+    @Test
+    public void whenTheDeadlineHasAlreadyPassed_thenItExpiresInTheNextAdvance() {
+        timerWheel.advance(NOW);
+        timerWheel.advance(NOW.plusSeconds(5));
+        timerWheel.schedule("timeout", NOW.plusSeconds(1));
+
+        assertEquals(List.of("timeout"), timerWheel.advance(NOW.plusSeconds(5)));
+    }
+
+    @Test
+    public void whenTheDeadlineIsBetweenTicks_thenItExpiresInTheNextTick() {
+        timerWheel.advance(NOW);
+        timerWheel.schedule("timeout", NOW.plusMillis(1500));
+
+        assertEquals(List.of(), timerWheel.advance(NOW.plusMillis(1999)));
+        assertEquals(List.of("timeout"), timerWheel.advance(NOW.plusSeconds(2)));
+    }
+}
@@ -0,0 +1,48 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class TopUpWorkersTest {
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void whenSubmittingATopUp_thenItIsExecuted(boolean virtualThreads)
+        throws InterruptedException {
+        TopUpWorkers topUpWorkers = new TopUpWorkers(1, 1, virtualThreads);
+        CountDownLatch executed = new CountDownLatch(1);
+
+        topUpWorkers.submit(executed::countDown);
+
+        assertTrue(executed.await(5, TimeUnit.SECONDS));
+        topUpWorkers.shutdown();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void whenTheWorkersAndTheQueueAreFull_thenTheTopUpIsRejected(boolean virtualThreads)
+        throws InterruptedException {
+        TopUpWorkers topUpWorkers = new TopUpWorkers(1, 1, virtualThreads);
+        CountDownLatch release = new CountDownLatch(1);
+        Runnable blockedTopUp = () -> {
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        topUpWorkers.submit(blockedTopUp);
+        topUpWorkers.submit(blockedTopUp);
+
+        assertThrows(RejectedExecutionException.class, () -> topUpWorkers.submit(blockedTopUp));
+
+        release.countDown();
+        topUpWorkers.shutdown();
+    }
+}
@@ -0,0 +1,181 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.reset;
+
+import com.playtomic.tests.wallet.wallet.model.Refund;
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.RefundRepository;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import java.time.Instant;
+import java.util.List;
+import java.util.UUID;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.SpyBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = "wallet.reconciliation.page-size=7")
+public class TransactionReconcilerIT {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private TransactionReconciler transactionReconciler;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private RefundRepository refundRepository;
+
+    @SpyBean
+    private WalletEvents walletEvents;
+
+    @AfterEach
+    public void tearDown() {
+        refundRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenThereAreStuckTransactions_thenTheyAreCompletedOrFailedInPages() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        for (int i = 0; i < 20; i++) {
+            transactionRepository.save(aTransaction(wallet, TransactionStatus.PROCESSED,
+                "payment-" + i));
+        }
+        for (int i = 0; i < 15; i++) {
+            transactionRepository.save(aTransaction(wallet, TransactionStatus.INITIATED, null));
+        }
+        transactionRepository.save(aTransaction(wallet, TransactionStatus.SUCCESS, "payment"));
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(
+            Instant.now().plusSeconds(1));
+
+        assertEquals(20, report.completed());
+        assertEquals(15, report.failed());
+        assertEquals(0, report.errors());
+        assertEquals(21, transactionRepository.findAllByStatus(TransactionStatus.SUCCESS).size());
+        assertEquals(15, transactionRepository.findAllByStatus(TransactionStatus.FAILED).size());
+        assertEquals(20000L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(20000L, walletService.get(wallet.getId()).getAmount());
+    }
+
+    @Test
+    public void whenTheTransactionsAreRecent_thenTheyAreNotReconciled() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        Instant before = Instant.now().minusSeconds(60);
+        transactionRepository.save(aTransaction(wallet, TransactionStatus.PROCESSED, "payment"));
+        transactionRepository.save(aTransaction(wallet, TransactionStatus.INITIATED, null));
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(before);
+
+        assertEquals(0, report.total());
+        assertEquals(1, transactionRepository.findAllByStatus(TransactionStatus.PROCESSED).size());
+        assertEquals(1, transactionRepository.findAllByStatus(TransactionStatus.INITIATED).size());
+    }
+
+    @Test
+    public void whenReconciledTwice_thenTheAmountIsAddedOnce() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        transactionRepository.save(aTransaction(wallet, TransactionStatus.PROCESSED, "payment"));
+
+        transactionReconciler.reconcile(Instant.now().plusSeconds(1));
+        TransactionReconciler.Report report = transactionReconciler.reconcile(
+            Instant.now().plusSeconds(1));
+
+        assertEquals(0, report.total());
+        assertEquals(1500L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    @Test
+    public void whenTheTopUpStopsAfterTheCharge_thenTheAmountIsCredited() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        Transaction stopped = aTopUpStoppedAfterTheCharge(wallet);
+        assertEquals(TransactionStatus.PROCESSED, stopped.getStatus());
+        assertEquals(500L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(
+            Instant.now().plusSeconds(1));
+
+        assertEquals(1, report.completed());
+        assertEquals(TransactionStatus.SUCCESS,
+            transactionRepository.findById(stopped.getId()).orElseThrow().getStatus());
+        assertEquals(1500L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        assertEquals(List.of(), refundRepository.findAll());
+    }
+
+    @Test
+    public void whenTheTopUpStopsAfterTheChargeAndCantBeCredited_thenThePaymentIsRefunded() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        Transaction stopped = aTopUpStoppedAfterTheCharge(wallet);
+        doThrow(new IllegalStateException("Failed to write the event")).when(walletEvents)
+            .toppedUp(any());
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(
+            Instant.now().plusSeconds(1));
+
+        assertEquals(1, report.refunded());
+        assertEquals(TransactionStatus.FAILED,
+            transactionRepository.findById(stopped.getId()).orElseThrow().getStatus());
+        assertEquals(500L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        List<Refund> refunds = refundRepository.findAll();
+        assertEquals(1, refunds.size());
+        assertEquals(stopped.getId(), refunds.get(0).getTransactionId());
+        assertEquals(stopped.getPaymentId(), refunds.get(0).getPaymentId());
+    }
+
+    /**
+     * Runs a top-up that stops while crediting the charged amount, without running any of its
+     * error handling, as if the service had been killed.
+     */
+    private Transaction aTopUpStoppedAfterTheCharge(Wallet wallet) {
+        doThrow(new ServiceKilled()).when(walletEvents).toppedUp(any());
+        assertThrows(ServiceKilled.class,
+            () -> walletService.topUp(wallet.getId(), "cardNumber", 1000L));
+        reset(walletEvents);
+
+        Transaction stopped = transactionRepository.findAll().get(0);
+        // Written before the credit, with the payment of the FakeStripeService
+        assertEquals("1234", stopped.getPaymentId());
+        return stopped;
+    }
+
+    private static Transaction aTransaction(Wallet wallet, TransactionStatus status,
+        String paymentId) {
+        Transaction transaction = new Transaction();
+        transaction.setWallet(wallet);
+        transaction.setAmount(1000L);
+        transaction.setStatus(status);
+        transaction.setPaymentId(paymentId);
+        return transaction;
+    }
+
+    private static Wallet aNewWalletWithAmount(long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(amount);
+        return wallet;
+    }
+
+    private static class ServiceKilled extends Error {
+    }
+}
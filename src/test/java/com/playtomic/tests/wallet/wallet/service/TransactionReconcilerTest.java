@@ -0,0 +1,150 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.wallet.model.Transaction;
+import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Optional;
+import java.util.UUID;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+
+public class TransactionReconcilerTest {
+
+    private static final int PAGE_SIZE = 2;
+
+    private final TransactionRepository transactionRepository = mock(TransactionRepository.class);
+    private final WalletRepository walletRepository = mock(WalletRepository.class);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final RefundQueue refundQueue = mock(RefundQueue.class);
+    private final TransactionReconciler transactionReconciler = new TransactionReconciler(
+        transactionRepository, walletRepository, mock(PlatformTransactionManager.class),
+        new WalletCache(100, Duration.ofMinutes(1), meterRegistry,
+            mock(ReplicaReads.class)), mock(Ledger.class),
+        mock(WalletShards.class), mock(WalletEvents.class), refundQueue, true,
+        Duration.ofMinutes(10), PAGE_SIZE, 2, meterRegistry);
+
+    @Test
+    public void whenThereAreMorePagesThanOne_thenEveryPageStartsAfterTheLastOfThePrevious() {
+        Instant createdBefore = Instant.now();
+        Wallet wallet = aWallet();
+        Transaction first = aStuckTransaction(wallet, Instant.parse("2024-01-01T00:00:00Z"));
+        Transaction second = aStuckTransaction(wallet, Instant.parse("2024-01-01T00:00:01Z"));
+        Transaction third = aStuckTransaction(wallet, Instant.parse("2024-01-01T00:00:02Z"));
+        when(transactionRepository.findPageByStatusCreatedBefore(eq(TransactionStatus.INITIATED),
+            eq(createdBefore), eq(Instant.EPOCH), any(), eq(Limit.of(PAGE_SIZE))))
+            .thenReturn(List.of(first, second));
+        when(transactionRepository.findPageByStatusCreatedBefore(TransactionStatus.INITIATED,
+            createdBefore, second.getCreatedAt(), second.getId(), Limit.of(PAGE_SIZE)))
+            .thenReturn(List.of(third));
+        when(transactionRepository.updateStatusIf(any(), eq(TransactionStatus.INITIATED),
+            eq(TransactionStatus.FAILED))).thenReturn(1);
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(createdBefore);
+
+        assertEquals(3, report.failed());
+        assertEquals(3, report.total());
+        verify(transactionRepository).updateStatusIf(third.getId(), TransactionStatus.INITIATED,
+            TransactionStatus.FAILED);
+        verify(transactionRepository, never()).findPageByStatusCreatedBefore(
+            TransactionStatus.INITIATED, createdBefore, third.getCreatedAt(), third.getId(),
+            Limit.of(PAGE_SIZE));
+        assertEquals(3, meterRegistry.get("wallet.reconciliation.transactions")
+            .tag("outcome", "failed").counter().count());
+        // Without payment there is nothing to refund
+        verify(refundQueue, never()).enqueue(any());
+    }
+
+    @Test
+    public void whenTheTransactionIsCompletedMeanwhile_thenItIsSkipped() {
+        Instant createdBefore = Instant.now();
+        Transaction transaction = aStuckTransaction(aWallet(), Instant.now().minusSeconds(60));
+        transaction.setStatus(TransactionStatus.PROCESSED);
+        transaction.setPaymentId("paymentId");
+        when(transactionRepository.findPageByStatusCreatedBefore(eq(TransactionStatus.PROCESSED),
+            eq(createdBefore), eq(Instant.EPOCH), any(), any())).thenReturn(List.of(transaction));
+        when(transactionRepository.updateStatusIf(transaction.getId(),
+            TransactionStatus.PROCESSED, TransactionStatus.SUCCESS)).thenReturn(0);
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(createdBefore);
+
+        assertEquals(1, report.skipped());
+        verify(walletRepository, never()).addAmount(any(), anyLong());
+    }
+
+    @Test
+    public void whenTheTransactionWasCharged_thenTheAmountIsAddedToTheWallet() {
+        Instant createdBefore = Instant.now();
+        Wallet wallet = aWallet();
+        Transaction transaction = aStuckTransaction(wallet, Instant.now().minusSeconds(60));
+        transaction.setStatus(TransactionStatus.PROCESSED);
+        transaction.setPaymentId("paymentId");
+        when(transactionRepository.findPageByStatusCreatedBefore(eq(TransactionStatus.PROCESSED),
+            eq(createdBefore), eq(Instant.EPOCH), any(), any())).thenReturn(List.of(transaction));
+        when(transactionRepository.updateStatusIf(transaction.getId(),
+            TransactionStatus.PROCESSED, TransactionStatus.SUCCESS)).thenReturn(1);
+        when(walletRepository.findById(wallet.getId())).thenReturn(Optional.of(wallet));
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(createdBefore);
+
+        assertEquals(1, report.completed());
+        verify(walletRepository).addAmount(wallet.getId(), transaction.getAmount());
+    }
+
+    @Test
+    public void whenTheTransactionWasChargedButCantBeCredited_thenItIsFailedAndRefunded() {
+        Instant createdBefore = Instant.now();
+        Wallet wallet = aWallet();
+        Transaction transaction = aStuckTransaction(wallet, Instant.now().minusSeconds(60));
+        transaction.setStatus(TransactionStatus.PROCESSED);
+        transaction.setPaymentId("paymentId");
+        when(transactionRepository.findPageByStatusCreatedBefore(eq(TransactionStatus.PROCESSED),
+            eq(createdBefore), eq(Instant.EPOCH), any(), any())).thenReturn(List.of(transaction));
+        when(transactionRepository.updateStatusIf(transaction.getId(),
+            TransactionStatus.PROCESSED, TransactionStatus.SUCCESS)).thenReturn(1);
+        when(walletRepository.addAmount(wallet.getId(), transaction.getAmount())).thenThrow(
+            new RuntimeException("Database is down"));
+        when(transactionRepository.updateStatusIf(transaction.getId(),
+            TransactionStatus.PROCESSED, TransactionStatus.FAILED)).thenReturn(1);
+
+        TransactionReconciler.Report report = transactionReconciler.reconcile(createdBefore);
+
+        assertEquals(1, report.refunded());
+        assertEquals(0, report.errors());
+        verify(refundQueue).enqueue(transaction);
+    }
+
+    private static Transaction aStuckTransaction(Wallet wallet, Instant createdAt) {
+        Transaction transaction = new Transaction();
+        transaction.setId(UUID.randomUUID());
+        transaction.setWallet(wallet);
+        transaction.setAmount(1000L);
+        transaction.setStatus(TransactionStatus.INITIATED);
+        transaction.setCreatedAt(createdAt);
+        return transaction;
+    }
+
+    private static Wallet aWallet() {
+        Wallet wallet = new Wallet();
+        wallet.setId(UUID.randomUUID());
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(0L);
+        wallet.setVersion(0L);
+        return wallet;
+    }
+}
@@ -0,0 +1,117 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import java.time.Duration;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.Test;
+
+public class WalletCacheTest {
+
+    @Test
+    public void whenGettingACachedWallet_thenItIsNotLoaded() {
+        WalletCache walletCache = new WalletCache(10, Duration.ofMinutes(1),
+            new SimpleMeterRegistry(), mock(ReplicaReads.class));
+        Wallet wallet = aWalletWithVersionAndAmount(0L, 500L);
+        AtomicInteger loads = new AtomicInteger();
+
+        walletCache.get(wallet.getId(), id -> {
+            loads.incrementAndGet();
+            return wallet;
+        });
+        WalletResponse actual = walletCache.get(wallet.getId(), id -> {
+            loads.incrementAndGet();
+            return wallet;
+        });
+
+        assertEquals(1, loads.get());
+        assertEquals(500L, actual.getAmount());
+    }
+
+    @Test
+    public void whenAWalletIsLoadedOnAMiss_thenItIsNotTrackedAsWritten() {
+        ReplicaReads replicaReads = mock(ReplicaReads.class);
+        WalletCache walletCache = new WalletCache(10, Duration.ofMinutes(1),
+            new SimpleMeterRegistry(), replicaReads);
+        Wallet wallet = aWalletWithVersionAndAmount(0L, 500L);
+
+        walletCache.get(wallet.getId(), id -> wallet);
+
+        verify(replicaReads, never()).written(any());
+    }
+
+    @Test
+    public void whenPuttingAWrittenWallet_thenItIsTrackedForTheReplicaReads() {
+        ReplicaReads replicaReads = mock(ReplicaReads.class);
+        WalletCache walletCache = new WalletCache(10, Duration.ofMinutes(1),
+            new SimpleMeterRegistry(), replicaReads);
+        Wallet wallet = aWalletWithVersionAndAmount(1L, 1500L);
+
+        walletCache.putWritten(wallet);
+
+        verify(replicaReads).written(wallet);
+        assertEquals(1500L, walletCache.getIfPresent(wallet.getId()).getAmount());
+    }
+
+    @Test
+    public void whenPuttingAnOlderVersion_thenTheNewerIsKept() {
+        WalletCache walletCache = new WalletCache(10, Duration.ofMinutes(1),
+            new SimpleMeterRegistry(), mock(ReplicaReads.class));
+        Wallet newer = aWalletWithVersionAndAmount(2L, 2000L);
+        Wallet older = new Wallet(newer.getId(), 1L, newer.getUserId(), 1000L);
+
+        walletCache.put(newer);
+        walletCache.put(older);
+
+        WalletResponse actual = walletCache.get(newer.getId(), id -> older);
+        assertEquals(2000L, actual.getAmount());
+    }
+
+    @Test
+    public void whenPuttingANewerVersion_thenItReplacesTheCachedOne() {
+        WalletCache walletCache = new WalletCache(10, Duration.ofMinutes(1),
+            new SimpleMeterRegistry(), mock(ReplicaReads.class));
+        Wallet older = aWalletWithVersionAndAmount(1L, 1000L);
+        Wallet newer = new Wallet(older.getId(), 2L, older.getUserId(), 2000L);
+
+        walletCache.put(older);
+        walletCache.put(newer);
+
+        WalletResponse actual = walletCache.get(older.getId(), id -> older);
+        assertEquals(2000L, actual.getAmount());
+    }
+
+    @Test
+    public void whenUsingTheCache_thenTheHitsMissesAndEvictionsAreCounted() {
+        MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletCache walletCache = new WalletCache(1, Duration.ofMinutes(1), meterRegistry,
+            mock(ReplicaReads.class));
+        Wallet first = aWalletWithVersionAndAmount(0L, 500L);
+        Wallet second = aWalletWithVersionAndAmount(0L, 500L);
+
+        walletCache.get(first.getId(), id -> first);
+        walletCache.get(first.getId(), id -> first);
+        walletCache.get(second.getId(), id -> second);
+        walletCache.cleanUp();
+
+        assertEquals(1, meterRegistry.get("cache.gets").tag("cache", "wallets")
+            .tag("result", "hit").functionCounter().count());
+        assertEquals(2, meterRegistry.get("cache.gets").tag("cache", "wallets")
+            .tag("result", "miss").functionCounter().count());
+        assertEquals(1, meterRegistry.get("cache.evictions").tag("cache", "wallets")
+            .functionCounter().count());
+    }
+
+    private static Wallet aWalletWithVersionAndAmount(Long version, long amount) {
+        return new Wallet(UUID.randomUUID(), version, UUID.randomUUID(), amount);
+    }
+}
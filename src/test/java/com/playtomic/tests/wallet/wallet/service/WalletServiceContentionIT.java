@@ -0,0 +1,194 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.when;
+
+import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.service.StripeCircuitBreaker;
+import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletShardRepository;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.transaction.PlatformTransactionManager;
+
+/**
+ * Measures the throughput and the failure rate of N concurrent top-ups to the same Wallet for
+ * every {@link WalletUpdateStrategy}.
+ */
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+public class WalletServiceContentionIT {
+
+    private static final int CONCURRENT_TOP_UPS = 50;
+    private final Logger log = LoggerFactory.getLogger(WalletServiceContentionIT.class);
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WalletWriteLanes walletWriteLanes;
+
+    @Autowired
+    private TopUpWorkers topUpWorkers;
+
+    @Autowired
+    private WalletCache walletCache;
+
+    @Autowired
+    private StripeCircuitBreaker stripeCircuitBreaker;
+
+    @Autowired
+    private TopUpMetrics topUpMetrics;
+
+    @Autowired
+    private Ledger ledger;
+
+    @Autowired
+    private WalletShards walletShards;
+
+    @Autowired
+    private WalletShardRepository walletShardRepository;
+
+    @Autowired
+    private RefundQueue refundQueue;
+
+    @Autowired
+    private WalletEvents walletEvents;
+
+    @Autowired
+    private WalletIdCache walletIdCache;
+
+    @Autowired
+    private ReplicaReads replicaReads;
+
+    @MockBean
+    private StripeService stripeService;
+
+    @AfterEach
+    public void tearDown() {
+        walletShardRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenConcurrentTopUpsWithOptimisticStrategy_thenTheWalletAmountIsConsistent()
+        throws Exception {
+        ContentionResult result = runConcurrentTopUps(WalletUpdateStrategy.OPTIMISTIC);
+
+        assertEquals(1000L * result.succeeded(), result.walletAmount());
+    }
+
+    @Test
+    public void whenConcurrentTopUpsWithSingleWriterStrategy_thenAllTheTopUpsSucceed()
+        throws Exception {
+        ContentionResult result = runConcurrentTopUps(WalletUpdateStrategy.SINGLE_WRITER);
+
+        assertEquals(0, result.failed());
+        assertEquals(1000L * CONCURRENT_TOP_UPS, result.walletAmount());
+    }
+
+    @Test
+    public void whenConcurrentTopUpsWithPessimisticStrategy_thenAllTheTopUpsSucceed()
+        throws Exception {
+        ContentionResult result = runConcurrentTopUps(WalletUpdateStrategy.PESSIMISTIC);
+
+        assertEquals(0, result.failed());
+        assertEquals(1000L * CONCURRENT_TOP_UPS, result.walletAmount());
+    }
+
+    @Test
+    public void whenConcurrentTopUpsWithAtomicStrategy_thenAllTheTopUpsSucceed()
+        throws Exception {
+        ContentionResult result = runConcurrentTopUps(WalletUpdateStrategy.ATOMIC);
+
+        assertEquals(0, result.failed());
+        assertEquals(1000L * CONCURRENT_TOP_UPS, result.walletAmount());
+    }
+
+    @Test
+    public void whenConcurrentTopUpsWithShardedStrategy_thenAllTheTopUpsSucceed()
+        throws Exception {
+        ContentionResult result = runConcurrentTopUps(WalletUpdateStrategy.SHARDED);
+
+        assertEquals(0, result.failed());
+        assertEquals(1000L * CONCURRENT_TOP_UPS, result.walletAmount());
+    }
+
+    private ContentionResult runConcurrentTopUps(WalletUpdateStrategy strategy)
+        throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenAnswer(invocation -> {
+            Thread.sleep(5);
+            return new Payment("paymentId");
+        });
+        WalletService walletService = new WalletService(walletRepository, transactionRepository,
+            stripeService, transactionManager, walletWriteLanes, strategy, topUpWorkers, walletCache,
+            stripeCircuitBreaker, topUpMetrics, ledger, walletShards, refundQueue, walletEvents,
+            walletIdCache, replicaReads);
+
+        ExecutorService executor = Executors.newFixedThreadPool(CONCURRENT_TOP_UPS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> topUps = new ArrayList<>();
+        for (int i = 0; i < CONCURRENT_TOP_UPS; i++) {
+            topUps.add(executor.submit(() -> {
+                start.await();
+                return walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+            }));
+        }
+        long startTime = System.nanoTime();
+        start.countDown();
+        int failed = 0;
+        for (Future<?> topUp : topUps) {
+            try {
+                topUp.get();
+            } catch (Exception e) {
+                failed++;
+            }
+        }
+        long elapsedMillis = Math.max(1, (System.nanoTime() - startTime) / 1_000_000);
+        executor.shutdown();
+
+        int succeeded = CONCURRENT_TOP_UPS - failed;
+        log.info("{}: {} concurrent top-ups in {} ms, {} top-ups/s, {}% failed", strategy,
+            CONCURRENT_TOP_UPS, elapsedMillis, succeeded * 1000L / elapsedMillis,
+            failed * 100 / CONCURRENT_TOP_UPS);
+        // The Wallet row plus its shards, only the SHARDED strategy has shards
+        Wallet updatedWallet = walletShards.findById(wallet.getId()).orElseThrow();
+        return new ContentionResult(succeeded, failed, updatedWallet.getAmount());
+    }
+
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(userId);
+        wallet.setAmount(amount);
+        return wallet;
+    }
+
+    private record ContentionResult(int succeeded, int failed, long walletAmount) {
+    }
+}
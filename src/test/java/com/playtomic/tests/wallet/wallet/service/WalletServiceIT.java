@@ -11,15 +11,23 @@ import com.playtomic.tests.wallet.stripeclient.service.StripeService;
 import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
 import com.playtomic.tests.wallet.wallet.exception.CreateWalletError;
 import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.model.OutboxEvent;
+import com.playtomic.tests.wallet.wallet.model.Refund;
 import com.playtomic.tests.wallet.wallet.model.Transaction;
 import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
 import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletEventType;
+import com.playtomic.tests.wallet.wallet.repository.OutboxEventRepository;
+import com.playtomic.tests.wallet.wallet.repository.RefundRepository;
 import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
 import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import jakarta.persistence.EntityManagerFactory;
 import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -27,9 +35,11 @@ import org.springframework.boot.test.context.SpringBootTest;
 import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
 
 @SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
 @ActiveProfiles("test")
+@TestPropertySource(properties = "spring.jpa.properties.hibernate.generate_statistics=true")
 public class WalletServiceIT {
 
     @Autowired
@@ -38,14 +48,25 @@ public class WalletServiceIT {
     @Autowired
     private TransactionRepository transactionRepository;
 
+    @Autowired
+    private OutboxEventRepository outboxEventRepository;
+
+    @Autowired
+    private RefundRepository refundRepository;
+
     @Autowired
     private WalletService walletService;
 
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
     @MockBean
     private StripeService stripeService;
 
     @AfterEach
     public void tearDown() {
+        outboxEventRepository.deleteAll();
+        refundRepository.deleteAll();
         transactionRepository.deleteAll();
         walletRepository.deleteAll();
     }
@@ -59,14 +80,14 @@ public class WalletServiceIT {
         Wallet saved = walletRepository.findById(actual.getId()).orElseThrow();
         assertNotNull(actual.getId());
         assertEquals(userID, actual.getUserId());
-        assertEquals(0, BigDecimal.ZERO.compareTo(actual.getAmount()));
+        assertEquals(0L, actual.getAmount());
         assertEqualWallet(saved, actual);
     }
 
     @Test
     public void whenCreatingWallerOfAUserWithAWalletCreated_thenReturnsInvalidParameter() {
         UUID userID = UUID.randomUUID();
-        walletRepository.save(aNewWalletWithUserIdAndAmount(userID, new BigDecimal(0)));
+        walletRepository.save(aNewWalletWithUserIdAndAmount(userID, 0L));
 
         CreateWalletError exception = assertThrows(
             CreateWalletError.class,
@@ -79,49 +100,78 @@ public class WalletServiceIT {
 
     @Test
     public void whenTopUp_thenTheAmountIsAddedToTheWallet() {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
         Payment payment = new Payment("paymentId");
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenReturn(payment);
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenReturn(payment);
 
-        WalletResponse actual = walletService.topUp(wallet.getId(), "cardNumber",
-            new BigDecimal(10));
+        WalletResponse actual = walletService.topUp(wallet.getId(), "cardNumber", 1000L);
 
-        BigDecimal newAmount = wallet.getAmount().add(new BigDecimal(10));
+        long newAmount = wallet.getAmount() + 1000L;
         Wallet savedWallet = walletRepository.findById(actual.getId()).orElseThrow();
         assertEquals(wallet.getId(), savedWallet.getId());
         assertEquals(wallet.getUserId(), savedWallet.getUserId());
-        assertEquals(0, newAmount.compareTo(savedWallet.getAmount()));
+        assertEquals(newAmount, savedWallet.getAmount());
         assertEqualWallet(savedWallet, actual);
     }
 
     @Test
     public void whenTopUp_thenTheTransactionIsAndUpdatedToSUCCESS() {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
         Payment payment = new Payment("paymentId");
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenReturn(payment);
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenReturn(payment);
 
-        walletService.topUp(wallet.getId(), "cardNumber", new BigDecimal(10));
+        walletService.topUp(wallet.getId(), "cardNumber", 1000L);
 
         Transaction transaction = transactionRepository.findAll().get(0);
         assertNotNull(transaction.getId());
         assertEquals(wallet.getId(), transaction.getWallet().getId());
         assertEquals(TransactionStatus.SUCCESS, transaction.getStatus());
-        assertEquals(0, new BigDecimal(10).compareTo(transaction.getAmount()));
+        assertEquals(1000L, transaction.getAmount());
         assertEquals(payment.getId(), transaction.getPaymentId());
     }
 
+    @Test
+    public void whenTopUp_thenTheWalletIsReadAndTheTopUpIsWrittenWithSixStatements() {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenReturn(
+            new Payment("paymentId"));
+        startANewOutboxIdBlock();
+        Statistics statistics = anEmptyStatistics();
+
+        walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+
+        // select wallet, insert INITIATED transaction, update PROCESSED transaction with the
+        // payment, update wallet, update SUCCESS transaction, insert TOPPED_UP event
+        assertEquals(6, statistics.getPrepareStatementCount());
+        // read, intent, payment and confirmation
+        assertEquals(4, statistics.getTransactionCount());
+    }
+
+    @Test
+    public void whenTopUpAndChargeFails_thenTheFailureIsWrittenWithFourStatements() {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenThrow(
+            new ProcessingChargeError("Service is down"));
+        startANewOutboxIdBlock();
+        Statistics statistics = anEmptyStatistics();
+
+        assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(wallet.getId(), "cardNumber", 1000L));
+
+        // select wallet, insert INITIATED transaction, update transaction, insert TOP_UP_FAILED
+        // event
+        assertEquals(4, statistics.getPrepareStatementCount());
+    }
+
     @Test
     public void whenTopUpAndChargeFails_thenTheTransactionIsAndUpdatedToFAILED() {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenThrow(
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenThrow(
             new ProcessingChargeError("Service is down"));
 
         ProcessingChargeError exception = assertThrows(
             ProcessingChargeError.class,
-            () -> walletService.topUp(wallet.getId(), "cardNumber", new BigDecimal(10))
+            () -> walletService.topUp(wallet.getId(), "cardNumber", 1000L)
         );
 
         assertEquals("Failed to charge card", exception.getMessage());
@@ -131,14 +181,13 @@ public class WalletServiceIT {
 
     @Test
     public void whenTopUpAndAmountIsTooSmall_thenTheTransactionIsAndUpdatedToFAILED() {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenThrow(
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenThrow(
             new StripeAmountTooSmallException());
 
         ProcessingChargeError exception = assertThrows(
             ProcessingChargeError.class,
-            () -> walletService.topUp(wallet.getId(), "cardNumber", new BigDecimal(10))
+            () -> walletService.topUp(wallet.getId(), "cardNumber", 1000L)
         );
 
         assertEquals("Amount too small", exception.getMessage());
@@ -146,18 +195,42 @@ public class WalletServiceIT {
         assertEquals(TransactionStatus.FAILED, savedTransaction.getStatus());
     }
 
+    @Test
+    public void whenTheTransactionIsFailedWhileCharging_thenItIsRefundedAndNotCredited() {
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenAnswer(invocation -> {
+            // The reconciler fails the transaction stuck in INITIATED while Stripe is slow
+            for (Transaction stuck : transactionRepository.findAllByStatus(
+                TransactionStatus.INITIATED)) {
+                transactionRepository.updateStatusIf(stuck.getId(), TransactionStatus.INITIATED,
+                    TransactionStatus.FAILED);
+            }
+            return new Payment("paymentId");
+        });
+
+        assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(wallet.getId(), "cardNumber", 1000L));
+
+        assertEquals(0L, walletRepository.findById(wallet.getId()).orElseThrow().getAmount());
+        Transaction transaction = transactionRepository.findAll().get(0);
+        assertEquals(TransactionStatus.FAILED, transaction.getStatus());
+        List<Refund> refunds = refundRepository.findAll();
+        assertEquals(1, refunds.size());
+        assertEquals(transaction.getId(), refunds.get(0).getTransactionId());
+        assertEquals("paymentId", refunds.get(0).getPaymentId());
+    }
+
     @Test
     public void whenTwoConcurrentTopUp_thenTheWalletAmountIsUpdatedCorrectly()
         throws InterruptedException {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
         Payment payment = new Payment("paymentId");
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenAnswer(invocation -> {
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenAnswer(invocation -> {
             Thread.sleep(50);
             return payment;
         });
         Runnable topUpOperation = () -> {
-            walletService.topUp(wallet.getId(), "cardNumber", new BigDecimal(10));
+            walletService.topUp(wallet.getId(), "cardNumber", 1000L);
         };
 
         int numberOfThreads = 10;
@@ -174,12 +247,37 @@ public class WalletServiceIT {
         Wallet updatedWallet = walletRepository.findById(wallet.getId()).orElseThrow();
         List<Transaction> transactions = transactionRepository.findAllByStatus(
             TransactionStatus.SUCCESS);
-        BigDecimal expectedWalletAmount = new BigDecimal(10).multiply(
-            BigDecimal.valueOf(transactions.size()));
-        assertEquals(0, expectedWalletAmount.compareTo(updatedWallet.getAmount()));
+        assertEquals(1000L * transactions.size(), updatedWallet.getAmount());
+    }
+
+    /**
+     * The ids of the events are read from the sequence 50 at a time, one more statement every 50
+     * events. Saves events until one reads it, so the next events don't. The first read of the
+     * sequence only gives a block of one id, so the events are saved until one doesn't read it.
+     */
+    private void startANewOutboxIdBlock() {
+        while (!saveAnOutboxEventReadingTheSequence()) {
+            // Until a block starts
+        }
+        while (saveAnOutboxEventReadingTheSequence()) {
+            // Until the block has more ids
+        }
+    }
+
+    private boolean saveAnOutboxEventReadingTheSequence() {
+        Statistics statistics = anEmptyStatistics();
+        outboxEventRepository.save(
+            new OutboxEvent(WalletEventType.CREATED, UUID.randomUUID(), null, 0));
+        return statistics.getPrepareStatementCount() >= 2;
+    }
+
+    private Statistics anEmptyStatistics() {
+        Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+        return statistics;
     }
 
-    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, BigDecimal amount) {
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
         Wallet wallet = new Wallet();
         wallet.setUserId(userId);
         wallet.setAmount(amount);
@@ -188,6 +286,6 @@ public class WalletServiceIT {
 
     private void assertEqualWallet(Wallet expected, WalletResponse actual) {
         assertEquals(expected.getId(), actual.getId());
-        assertEquals(0, expected.getAmount().compareTo(actual.getAmount()));
+        assertEquals(expected.getAmount(), actual.getAmount());
     }
 }
@@ -3,25 +3,48 @@ package com.playtomic.tests.wallet.wallet.service;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.ArgumentMatchers.isNull;
+import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.inOrder;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import com.playtomic.tests.wallet.stripeclient.dto.Payment;
+import com.playtomic.tests.wallet.stripeclient.exception.StripeUnavailableException;
+import com.playtomic.tests.wallet.stripeclient.service.StripeCircuitBreaker;
 import com.playtomic.tests.wallet.stripeclient.service.StripeService;
+import com.playtomic.tests.wallet.wallet.dto.TransactionCursor;
+import com.playtomic.tests.wallet.wallet.dto.TransactionPageResponse;
+import com.playtomic.tests.wallet.wallet.dto.TransactionResponse;
 import com.playtomic.tests.wallet.wallet.dto.WalletResponse;
+import com.playtomic.tests.wallet.wallet.exception.InvalidCursorError;
+import com.playtomic.tests.wallet.wallet.exception.PaymentProviderUnavailableError;
 import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import com.playtomic.tests.wallet.wallet.exception.TopUpRejectedError;
 import com.playtomic.tests.wallet.wallet.model.Transaction;
 import com.playtomic.tests.wallet.wallet.model.TransactionStatus;
 import com.playtomic.tests.wallet.wallet.model.Wallet;
 import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
 import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
 import java.util.Optional;
 import java.util.UUID;
+import java.util.concurrent.RejectedExecutionException;
 import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentCaptor;
-import org.springframework.dao.OptimisticLockingFailureException;
+import org.mockito.InOrder;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.rest.webmvc.ResourceNotFoundException;
 import org.springframework.transaction.PlatformTransactionManager;
 
 public class WalletServiceTest {
@@ -31,16 +54,16 @@ public class WalletServiceTest {
         UUID userID = UUID.randomUUID();
         WalletRepository walletRepository = mock(WalletRepository.class);
         ArgumentCaptor<Wallet> walletCaptor = ArgumentCaptor.forClass(Wallet.class);
-        Wallet savedWalled = new Wallet(UUID.randomUUID(), 0L, userID, new BigDecimal(0));
+        Wallet savedWalled = new Wallet(UUID.randomUUID(), 0L, userID, 0L);
         when(walletRepository.save(walletCaptor.capture())).thenReturn(savedWalled);
-        WalletService walletService = new WalletService(walletRepository,
-            aTransactionRepositoryMock(), aStripeServiceMock(), aPlatformTransactionManager());
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
 
         WalletResponse actual = walletService.create(userID);
 
         Wallet toSaveWallet = walletCaptor.getValue();
         assertEquals(userID, toSaveWallet.getUserId());
-        assertEquals(new BigDecimal(0), toSaveWallet.getAmount());
+        assertEquals(0L, toSaveWallet.getAmount());
         assertEqualWallet(savedWalled, actual);
     }
 
@@ -49,52 +72,89 @@ public class WalletServiceTest {
         UUID userID = UUID.randomUUID();
         WalletRepository walletRepository = mock(WalletRepository.class);
         UUID walletId = UUID.randomUUID();
-        Wallet initialWallet = new Wallet(walletId, 0L, userID, new BigDecimal(5));
+        Wallet initialWallet = new Wallet(walletId, 0L, userID, 500L);
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(initialWallet));
-        ArgumentCaptor<Wallet> walletCaptor = ArgumentCaptor.forClass(Wallet.class);
-        Wallet wallet = new Wallet(walletId, 0L, userID, new BigDecimal(15));
-        when(walletRepository.save(walletCaptor.capture())).thenReturn(wallet);
-        WalletService walletService = new WalletService(walletRepository,
-            aTransactionRepositoryMock(), aStripeServiceMock(), aPlatformTransactionManager());
+        when(walletRepository.updateAmount(walletId, 1500L, 0L)).thenReturn(1);
+        Wallet wallet = new Wallet(walletId, 1L, userID, 1500L);
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
 
-        WalletResponse actual = walletService.topUp(wallet.getId(), "cardNumber",
-            new BigDecimal(10));
+        WalletResponse actual = walletService.topUp(wallet.getId(), "cardNumber", 1000L);
 
-        Wallet toSaveWallet = walletCaptor.getValue();
-        assertEquals(wallet, toSaveWallet);
+        verify(walletRepository).updateAmount(walletId, 1500L, 0L);
+        assertEquals(wallet, initialWallet);
+        assertEquals(1L, initialWallet.getVersion());
+        assertEqualWallet(wallet, actual);
+    }
+
+    @Test
+    public void whenTopUpWithAtomicStrategy_thenTheAmountIsAddedInTheDatabase() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 1L, userID, 1500L);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, userID, 500L)), Optional.of(wallet));
+        when(walletRepository.addAmount(walletId, 1000L)).thenReturn(1);
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock(), WalletUpdateStrategy.ATOMIC);
+
+        WalletResponse actual = walletService.topUp(walletId, "cardNumber", 1000L);
+
+        verify(walletRepository).addAmount(walletId, 1000L);
+        verify(walletRepository, times(0)).updateAmount(any(), anyLong(), any());
         assertEqualWallet(wallet, actual);
     }
 
+    @Test
+    public void whenTopUpWithPessimisticStrategy_thenTheWalletIsLockedAndUpdated() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, userID, 500L)));
+        // Updated by another top-up after the first read
+        Wallet locked = new Wallet(walletId, 1L, userID, 1500L);
+        when(walletRepository.findByIdForUpdate(walletId)).thenReturn(Optional.of(locked));
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock(), WalletUpdateStrategy.PESSIMISTIC);
+
+        WalletResponse actual = walletService.topUp(walletId, "cardNumber", 1000L);
+
+        // Written by Hibernate on flush, not with the version checking update
+        verify(walletRepository, times(0)).updateAmount(any(), anyLong(), any());
+        assertEquals(2500L, locked.getAmount());
+        assertEqualWallet(locked, actual);
+    }
+
     @Test
     public void whenTopUp_thenTheTransactionIsAndUpdatedToSUCCESS() {
         String paymentId = "paymentId";
+        UUID transactionId = UUID.randomUUID();
         UUID userID = UUID.randomUUID();
         WalletRepository walletRepository = mock(WalletRepository.class);
         UUID walletId = UUID.randomUUID();
-        Wallet wallet = new Wallet(walletId, 0L, userID, new BigDecimal(5));
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
-        when(walletRepository.save(wallet)).thenReturn(wallet);
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(1);
         TransactionRepository transactionRepository = aTransactionRepositoryMock();
         ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
-        when(transactionRepository.save(transactionCaptor.capture())).thenReturn(new Transaction())
-            .thenReturn(new Transaction());
-        WalletService walletService = new WalletService(walletRepository, transactionRepository,
-            aStripeServiceMockWithPaymentId(paymentId), aPlatformTransactionManager());
+        when(transactionRepository.save(transactionCaptor.capture())).thenReturn(
+            aTransactionWithId(transactionId));
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMockWithPaymentId(paymentId));
 
-        walletService.topUp(walletId, "cardNumber", new BigDecimal(10));
+        walletService.topUp(walletId, "cardNumber", 1000L);
 
         //INITIATED
-        Transaction transactionInitiated = transactionCaptor.getAllValues().get(0);
+        Transaction transactionInitiated = transactionCaptor.getValue();
         assertEquals(walletId, transactionInitiated.getWallet().getId());
-        assertEquals(new BigDecimal(10), transactionInitiated.getAmount());
+        assertEquals(1000L, transactionInitiated.getAmount());
         assertEquals(TransactionStatus.INITIATED, transactionInitiated.getStatus());
-        //PROCESSED
-        Transaction transactionProcessed = transactionCaptor.getAllValues().get(1);
-        assertEquals(paymentId, transactionProcessed.getPaymentId());
-        assertEquals(TransactionStatus.PROCESSED, transactionProcessed.getStatus());
-        //SUCCESS
-        Transaction transactionSuccess = transactionCaptor.getAllValues().get(2);
-        assertEquals(TransactionStatus.SUCCESS, transactionSuccess.getStatus());
+        //PROCESSED with the payment, and SUCCESS in the same database transaction as the Wallet
+        verify(transactionRepository).markProcessed(transactionId, paymentId);
+        verify(transactionRepository).updateStatusIf(transactionId, TransactionStatus.PROCESSED,
+            TransactionStatus.SUCCESS);
     }
 
     @Test
@@ -102,22 +162,47 @@ public class WalletServiceTest {
         UUID userID = UUID.randomUUID();
         WalletRepository walletRepository = mock(WalletRepository.class);
         UUID walletId = UUID.randomUUID();
-        Wallet wallet = new Wallet(walletId, 0L, userID, new BigDecimal(5));
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
-        when(walletRepository.save(wallet)).thenReturn(wallet);
         TransactionRepository transactionRepository = aTransactionRepositoryMock();
-        ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
-        when(transactionRepository.save(transactionCaptor.capture())).thenReturn(new Transaction())
-            .thenReturn(new Transaction());
-        WalletService walletService = new WalletService(walletRepository, transactionRepository,
-            aStripeServiceReturningAnError(), aPlatformTransactionManager());
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceReturningAnError());
 
         ProcessingChargeError exception = assertThrows(ProcessingChargeError.class,
-            () -> walletService.topUp(walletId, "cardNumber", new BigDecimal(10)));
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
 
         assertEquals("Failed to charge card", exception.getMessage());
-        Transaction transactionProcessed = transactionCaptor.getAllValues().get(1);
-        assertEquals(TransactionStatus.FAILED, transactionProcessed.getStatus());
+        verify(transactionRepository).updateStatus(eq(transactionId),
+            eq(TransactionStatus.FAILED), isNull());
+        verify(walletRepository, times(0)).updateAmount(any(), anyLong(), any());
+    }
+
+    @Test
+    public void whenTopUpAndStripeIsNotAvailable_thenTheTransactionIsUpdatedToFAILEDAndItFailsFast() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 0L, UUID.randomUUID(), 500L);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        StripeCircuitBreaker stripeCircuitBreaker = mock(StripeCircuitBreaker.class);
+        when(stripeCircuitBreaker.execute(any())).thenThrow(new StripeUnavailableException());
+        WalletService walletService = new WalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), aPlatformTransactionManager(), new WalletWriteLanes(1),
+            WalletUpdateStrategy.OPTIMISTIC, mock(TopUpWorkers.class), aWalletCache(),
+            stripeCircuitBreaker, aTopUpMetrics(), aLedger(), aWalletShards(), aRefundQueue(),
+            aWalletEvents(), aWalletIdCache(), aReplicaReads());
+
+        PaymentProviderUnavailableError exception = assertThrows(
+            PaymentProviderUnavailableError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        assertEquals("Payment provider not available, try again later", exception.getMessage());
+        verify(transactionRepository).updateStatus(eq(transactionId),
+            eq(TransactionStatus.FAILED), isNull());
     }
 
     @Test
@@ -125,23 +210,153 @@ public class WalletServiceTest {
         UUID userID = UUID.randomUUID();
         WalletRepository walletRepository = mock(WalletRepository.class);
         UUID walletId = UUID.randomUUID();
-        Wallet wallet = new Wallet(walletId, 0L, userID, new BigDecimal(5));
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
-        when(walletRepository.save(wallet)).thenThrow(
-            new OptimisticLockingFailureException("Error updating the Wallet"));
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(0);
         TransactionRepository transactionRepository = aTransactionRepositoryMock();
-        ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
-        when(transactionRepository.save(transactionCaptor.capture())).thenReturn(new Transaction())
-            .thenReturn(new Transaction());
-        WalletService walletService = new WalletService(walletRepository, transactionRepository,
-            aStripeServiceMock(), aPlatformTransactionManager());
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        when(transactionRepository.failCharged(transactionId, "paymentId")).thenReturn(1);
+        RefundQueue refundQueue = aRefundQueue();
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), refundQueue);
 
         ProcessingChargeError exception = assertThrows(ProcessingChargeError.class,
-            () -> walletService.topUp(walletId, "cardNumber", new BigDecimal(10)));
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
 
         assertEquals("Error updating the Wallet", exception.getMessage());
-        Transaction transactionProcessed = transactionCaptor.getAllValues().get(2);
-        assertEquals(TransactionStatus.FAILED, transactionProcessed.getStatus());
+        verify(walletRepository, times(WalletService.MAX_WALLET_RETRIES)).updateAmount(any(),
+            anyLong(), anyLong());
+        verify(transactionRepository).failCharged(transactionId, "paymentId");
+        ArgumentCaptor<Transaction> refundedCaptor = ArgumentCaptor.forClass(Transaction.class);
+        verify(refundQueue).enqueue(refundedCaptor.capture());
+        assertEquals(transactionId, refundedCaptor.getValue().getId());
+        assertEquals(TransactionStatus.FAILED, refundedCaptor.getValue().getStatus());
+    }
+
+    @Test
+    public void whenTopUp_thenThePaymentIsWrittenBeforeCreditingTheWallet() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.updateAmount(walletId, 1500L, 0L)).thenReturn(1);
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock());
+
+        walletService.topUp(walletId, "cardNumber", 1000L);
+
+        InOrder inOrder = inOrder(transactionRepository, walletRepository);
+        inOrder.verify(transactionRepository).markProcessed(transactionId, "paymentId");
+        inOrder.verify(walletRepository).updateAmount(walletId, 1500L, 0L);
+        inOrder.verify(transactionRepository).updateStatusIf(transactionId,
+            TransactionStatus.PROCESSED, TransactionStatus.SUCCESS);
+    }
+
+    @Test
+    public void whenTheTransactionIsFailedWhileCharging_thenItIsRefundedWithoutCrediting() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        // Failed by the reconciler while Stripe was charging the card
+        when(transactionRepository.markProcessed(transactionId, "paymentId")).thenReturn(0);
+        RefundQueue refundQueue = aRefundQueue();
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), refundQueue);
+
+        ProcessingChargeError exception = assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        assertEquals("Transaction failed while charging the card", exception.getMessage());
+        verify(walletRepository, never()).updateAmount(any(), anyLong(), anyLong());
+        verify(transactionRepository, never()).updateStatusIf(any(), any(), any());
+        ArgumentCaptor<Transaction> refundedCaptor = ArgumentCaptor.forClass(Transaction.class);
+        verify(refundQueue).enqueue(refundedCaptor.capture());
+        assertEquals("paymentId", refundedCaptor.getValue().getPaymentId());
+    }
+
+    @Test
+    public void whenTheTransactionIsCompletedByTheReconciliation_thenItIsNotCreditedAgain() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        // Credited or refunded by the reconciler, so no longer PROCESSED
+        when(transactionRepository.updateStatusIf(transactionId, TransactionStatus.PROCESSED,
+            TransactionStatus.SUCCESS)).thenReturn(0);
+        when(transactionRepository.failCharged(transactionId, "paymentId")).thenReturn(0);
+        RefundQueue refundQueue = aRefundQueue();
+        WalletService walletService = new WalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), aPlatformTransactionManager(), new WalletWriteLanes(1),
+            WalletUpdateStrategy.ATOMIC, mock(TopUpWorkers.class), aWalletCache(),
+            aStripeCircuitBreaker(), aTopUpMetrics(), aLedger(), aWalletShards(), refundQueue,
+            aWalletEvents(), aWalletIdCache(), aReplicaReads());
+
+        ProcessingChargeError exception = assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        assertEquals("Transaction completed by the reconciliation", exception.getMessage());
+        verify(walletRepository, never()).addAmount(any(), anyLong());
+        verify(refundQueue, never()).enqueue(any());
+    }
+
+    @Test
+    public void whenTopUpAndThePaymentCantBeWritten_thenItIsRefundedWithoutCrediting() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        when(transactionRepository.markProcessed(transactionId, "paymentId")).thenThrow(
+            new RuntimeException("Database is down"));
+        when(transactionRepository.failCharged(transactionId, "paymentId")).thenReturn(1);
+        RefundQueue refundQueue = aRefundQueue();
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), refundQueue);
+
+        ProcessingChargeError exception = assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        assertEquals("Failed to update transaction", exception.getMessage());
+        verify(walletRepository, never()).updateAmount(any(), anyLong(), anyLong());
+        verify(refundQueue).enqueue(any());
+    }
+
+    @Test
+    public void whenTopUpAndUpdateWalletFailsAfterTheCreditWasCommitted_thenNothingIsRefunded() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, userID, 500L)), Optional.empty());
+        when(walletRepository.addAmount(walletId, 1000L)).thenReturn(1);
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        // The transaction is already SUCCESS
+        when(transactionRepository.failCharged(any(), any())).thenReturn(0);
+        RefundQueue refundQueue = aRefundQueue();
+        WalletService walletService = new WalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), aPlatformTransactionManager(), new WalletWriteLanes(1),
+            WalletUpdateStrategy.ATOMIC, mock(TopUpWorkers.class), aWalletCache(),
+            aStripeCircuitBreaker(), aTopUpMetrics(), aLedger(), aWalletShards(), refundQueue,
+            aWalletEvents(), aWalletIdCache(), aReplicaReads());
+
+        assertThrows(ResourceNotFoundException.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        verify(transactionRepository).failCharged(any(), eq("paymentId"));
+        verify(refundQueue, times(0)).enqueue(any());
     }
 
     @Test
@@ -149,23 +364,295 @@ public class WalletServiceTest {
         UUID userID = UUID.randomUUID();
         WalletRepository walletRepository = mock(WalletRepository.class);
         UUID walletId = UUID.randomUUID();
-        Wallet wallet = new Wallet(walletId, 0L, userID, new BigDecimal(5));
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
-        when(walletRepository.save(wallet))
-            .thenThrow(new OptimisticLockingFailureException("Error updating the Wallet"))
-            .thenThrow(new OptimisticLockingFailureException("Error updating the Wallet"))
-            .thenReturn(wallet);
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(0).thenReturn(0)
+            .thenReturn(1);
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        UUID transactionId = UUID.randomUUID();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(transactionId));
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock());
+
+        walletService.topUp(walletId, "cardNumber", 1000L);
+
+        verify(transactionRepository).updateStatusIf(transactionId, TransactionStatus.PROCESSED,
+            TransactionStatus.SUCCESS);
+    }
+
+    @Test
+    public void whenTopUpAndUpdateWalletFailsTwice_thenTheRetriesAndThePhasesAreMeasured() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(0).thenReturn(0)
+            .thenReturn(1);
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(UUID.randomUUID()));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), new TopUpMetrics(meterRegistry));
+
+        walletService.topUp(walletId, "cardNumber", 1000L);
+
+        assertEquals(2, meterRegistry.get("wallet.topup.retries").counter().count());
+        assertEquals(2,
+            meterRegistry.get("wallet.topup.optimistic.lock.failures").counter().count());
+        assertEquals(1, meterRegistry.get("wallet.topup.outcome").tag("status", "SUCCESS")
+            .counter().count());
+        assertEquals(3, meterRegistry.get("wallet.topup.phase").tag("phase", "commit").timer()
+            .count());
+        for (String phase : new String[]{"get_wallet", "create_transaction", "charge",
+            "update_wallet"}) {
+            assertEquals(1, meterRegistry.get("wallet.topup.phase").tag("phase", phase).timer()
+                .count(), phase);
+        }
+    }
+
+    @Test
+    public void whenTheCreditIsNotCommitted_thenTheOutcomeIsNotCountedAsSuccess() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.addAmount(walletId, 1000L)).thenThrow(
+            new RuntimeException("Commit failed"));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(UUID.randomUUID()));
+        when(transactionRepository.failCharged(any(), any())).thenThrow(
+            new RuntimeException("Database is down"));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), new TopUpMetrics(meterRegistry), WalletUpdateStrategy.ATOMIC);
+
+        assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        assertEquals(0, meterRegistry.get("wallet.topup.outcome").tag("status", "SUCCESS")
+            .counter().count());
+        // Charged, neither credited nor refunded: left to the reconciler
+        assertEquals(1, meterRegistry.get("wallet.topup.outcome").tag("status", "PROCESSED")
+            .counter().count());
+    }
+
+    @Test
+    public void whenTopUpAndChargeFails_thenTheFailedOutcomeIsCounted() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.findById(walletId)).thenReturn(
+            Optional.of(new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        when(transactionRepository.save(any())).thenReturn(aTransactionWithId(UUID.randomUUID()));
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            aStripeServiceReturningAnError(), new TopUpMetrics(meterRegistry));
+
+        assertThrows(ProcessingChargeError.class,
+            () -> walletService.topUp(walletId, "cardNumber", 1000L));
+
+        assertEquals(1, meterRegistry.get("wallet.topup.outcome").tag("status", "FAILED")
+            .counter().count());
+        assertEquals(0, meterRegistry.get("wallet.topup.phase").tag("phase", "update_wallet")
+            .timer().count());
+    }
+
+    @Test
+    public void whenTopUpWithSingleWriterStrategy_thenTheLastWalletIsUpdated() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet initialWallet = new Wallet(walletId, 0L, userID, 500L);
+        Wallet lastWallet = new Wallet(walletId, 1L, userID, 2000L);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(initialWallet))
+            .thenReturn(Optional.of(lastWallet));
+        when(walletRepository.updateAmount(walletId, 3000L, 1L)).thenReturn(1);
+        WalletService walletService = new WalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock(), aPlatformTransactionManager(),
+            new WalletWriteLanes(1), WalletUpdateStrategy.SINGLE_WRITER, mock(TopUpWorkers.class),
+            aWalletCache(), aStripeCircuitBreaker(), aTopUpMetrics(), aLedger(), aWalletShards(),
+            aRefundQueue(), aWalletEvents(), aWalletIdCache(), aReplicaReads());
+
+        WalletResponse actual = walletService.topUp(walletId, "cardNumber", 1000L);
+
+        verify(walletRepository).updateAmount(walletId, 3000L, 1L);
+        assertEquals(3000L, actual.getAmount());
+    }
+
+    @Test
+    public void whenTopUpAsync_thenTheInitiatedTransactionIsReturnedAndTheWorkersCompleteIt() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(1);
         TransactionRepository transactionRepository = aTransactionRepositoryMock();
         ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
-        when(transactionRepository.save(transactionCaptor.capture())).thenReturn(new Transaction())
-            .thenReturn(new Transaction());
+        when(transactionRepository.save(transactionCaptor.capture())).thenAnswer(
+            invocation -> invocation.getArgument(0));
+        TopUpWorkers topUpWorkers = mock(TopUpWorkers.class);
+        ArgumentCaptor<Runnable> topUpCaptor = ArgumentCaptor.forClass(Runnable.class);
+        doNothing().when(topUpWorkers).submit(topUpCaptor.capture());
         WalletService walletService = new WalletService(walletRepository, transactionRepository,
-            aStripeServiceMock(), aPlatformTransactionManager());
+            aStripeServiceMock(), aPlatformTransactionManager(), new WalletWriteLanes(1),
+            WalletUpdateStrategy.OPTIMISTIC, topUpWorkers, aWalletCache(), aStripeCircuitBreaker(),
+            aTopUpMetrics(), aLedger(), aWalletShards(), aRefundQueue(), aWalletEvents(),
+            aWalletIdCache(), aReplicaReads());
 
-        walletService.topUp(walletId, "cardNumber", new BigDecimal(10));
+        TransactionResponse actual = walletService.topUpAsync(walletId, "cardNumber", 1000L);
 
-        Transaction transactionProcessed = transactionCaptor.getAllValues().get(2);
-        assertEquals(TransactionStatus.SUCCESS, transactionProcessed.getStatus());
+        assertEquals(TransactionStatus.INITIATED, actual.getStatus());
+        assertEquals(walletId, actual.getWalletId());
+        assertEquals(1, transactionCaptor.getAllValues().size());
+        topUpCaptor.getValue().run();
+        verify(transactionRepository).updateStatusIf(actual.getId(), TransactionStatus.PROCESSED,
+            TransactionStatus.SUCCESS);
+        assertEquals(1500L, wallet.getAmount());
+    }
+
+    @Test
+    public void whenTopUpAsyncAndTheWorkersAreFull_thenTheTransactionIsUpdatedToFAILED() {
+        UUID userID = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 0L, userID, 500L);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        ArgumentCaptor<Transaction> transactionCaptor = ArgumentCaptor.forClass(Transaction.class);
+        when(transactionRepository.save(transactionCaptor.capture())).thenAnswer(
+            invocation -> invocation.getArgument(0));
+        TopUpWorkers topUpWorkers = mock(TopUpWorkers.class);
+        doThrow(new RejectedExecutionException()).when(topUpWorkers).submit(any());
+        WalletService walletService = new WalletService(walletRepository, transactionRepository,
+            aStripeServiceMock(), aPlatformTransactionManager(), new WalletWriteLanes(1),
+            WalletUpdateStrategy.OPTIMISTIC, topUpWorkers, aWalletCache(), aStripeCircuitBreaker(),
+            aTopUpMetrics(), aLedger(), aWalletShards(), aRefundQueue(), aWalletEvents(),
+            aWalletIdCache(), aReplicaReads());
+
+        assertThrows(TopUpRejectedError.class,
+            () -> walletService.topUpAsync(walletId, "cardNumber", 1000L));
+
+        assertEquals(TransactionStatus.FAILED, transactionCaptor.getValue().getStatus());
+        verify(transactionRepository).updateStatus(any(), eq(TransactionStatus.FAILED), isNull());
+    }
+
+    @Test
+    public void whenGettingAWalletTwice_thenItIsReadOnce() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        Wallet wallet = new Wallet(walletId, 0L, UUID.randomUUID(), 500L);
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
+
+        walletService.get(walletId);
+        WalletResponse actual = walletService.get(walletId);
+
+        verify(walletRepository, times(1)).findById(walletId);
+        assertEqualWallet(wallet, actual);
+    }
+
+    @Test
+    public void whenGettingTheWalletOfAUserTwice_thenItIsReadOnceByUserId() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        Wallet wallet = new Wallet(UUID.randomUUID(), 0L, UUID.randomUUID(), 500L);
+        when(walletRepository.findByUserId(wallet.getUserId())).thenReturn(Optional.of(wallet));
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
+
+        walletService.getByUserId(wallet.getUserId());
+        WalletResponse actual = walletService.getByUserId(wallet.getUserId());
+
+        verify(walletRepository, times(1)).findByUserId(wallet.getUserId());
+        verify(walletRepository, never()).findById(any());
+        assertEqualWallet(wallet, actual);
+    }
+
+    @Test
+    public void whenGettingTheWalletOfAUserWithoutWallet_thenItIsNotFoundAndNotCached() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID userId = UUID.randomUUID();
+        when(walletRepository.findByUserId(userId)).thenReturn(Optional.empty());
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
+
+        assertThrows(ResourceNotFoundException.class, () -> walletService.getByUserId(userId));
+        assertThrows(ResourceNotFoundException.class, () -> walletService.getByUserId(userId));
+
+        verify(walletRepository, times(2)).findByUserId(userId);
+    }
+
+    @Test
+    public void whenGettingAWalletAfterATopUp_thenTheToppedUpWalletIsReturnedWithoutReadingIt() {
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        UUID walletId = UUID.randomUUID();
+        when(walletRepository.findById(walletId)).thenReturn(Optional.of(
+            new Wallet(walletId, 0L, UUID.randomUUID(), 500L)));
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(1);
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
+        walletService.get(walletId);
+
+        walletService.topUp(walletId, "cardNumber", 1000L);
+        WalletResponse actual = walletService.get(walletId);
+
+        // One read for the first get and one for the top-up
+        verify(walletRepository, times(2)).findById(walletId);
+        assertEquals(1500L, actual.getAmount());
+    }
+
+    @Test
+    public void whenGettingTransactionsAndThereAreMoreThanThePage_thenTheCursorPointsToTheLast() {
+        UUID walletId = UUID.randomUUID();
+        Instant now = Instant.now();
+        TransactionResponse first = aTransactionResponse(walletId, now);
+        TransactionResponse second = aTransactionResponse(walletId, now.minusSeconds(1));
+        TransactionResponse third = aTransactionResponse(walletId, now.minusSeconds(2));
+        TransactionRepository transactionRepository = aTransactionRepositoryMock();
+        when(transactionRepository.findPageByWalletId(walletId, Limit.of(3))).thenReturn(
+            List.of(first, second, third));
+        when(transactionRepository.findPageByWalletIdBefore(walletId, second.getCreatedAt(),
+            second.getId(), Limit.of(3))).thenReturn(List.of(third));
+        WalletService walletService = aWalletService(mock(WalletRepository.class),
+            transactionRepository, aStripeServiceMock());
+
+        TransactionPageResponse firstPage = walletService.getTransactions(walletId, null, 2);
+        TransactionPageResponse lastPage = walletService.getTransactions(walletId,
+            firstPage.getNextCursor(), 2);
+
+        assertEquals(List.of(first, second), firstPage.getTransactions());
+        assertEquals(new TransactionCursor(second.getCreatedAt(), second.getId()),
+            TransactionCursor.decode(firstPage.getNextCursor()));
+        assertEquals(List.of(third), lastPage.getTransactions());
+        assertEquals(null, lastPage.getNextCursor());
+    }
+
+    @Test
+    public void whenGettingTransactionsOfAWalletThatDoesntExist_thenItIsNotFound() {
+        UUID walletId = UUID.randomUUID();
+        WalletRepository walletRepository = mock(WalletRepository.class);
+        when(walletRepository.existsById(walletId)).thenReturn(false);
+        WalletService walletService = aWalletService(walletRepository,
+            aTransactionRepositoryMock(), aStripeServiceMock());
+
+        assertThrows(ResourceNotFoundException.class,
+            () -> walletService.getTransactions(walletId, null, 10));
+    }
+
+    @Test
+    public void whenGettingTransactionsWithAnInvalidCursor_thenItIsRejected() {
+        WalletService walletService = aWalletService(mock(WalletRepository.class),
+            aTransactionRepositoryMock(), aStripeServiceMock());
+
+        assertThrows(InvalidCursorError.class,
+            () -> walletService.getTransactions(UUID.randomUUID(), "bm90LWEtY3Vyc29y", 10));
+    }
+
+    private static TransactionResponse aTransactionResponse(UUID walletId, Instant createdAt) {
+        return new TransactionResponse(UUID.randomUUID(), walletId, 1000L,
+            TransactionStatus.SUCCESS, createdAt);
     }
 
     @Test
@@ -174,19 +661,19 @@ public class WalletServiceTest {
         String cardNumber = "cardNumber";
         WalletRepository walletRepository = mock(WalletRepository.class);
         UUID walletId = UUID.randomUUID();
-        Wallet wallet = new Wallet(walletId, 0L, userId, new BigDecimal(5));
+        Wallet wallet = new Wallet(walletId, 0L, userId, 500L);
         when(walletRepository.findById(walletId)).thenReturn(Optional.of(wallet));
-        when(walletRepository.save(wallet)).thenReturn(wallet);
+        when(walletRepository.updateAmount(any(), anyLong(), anyLong())).thenReturn(1);
         TransactionRepository transactionRepository = aTransactionRepositoryMock();
         StripeService stripeService = mock(StripeService.class);
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenReturn(
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenReturn(
             new Payment("chargeId"));
-        WalletService walletService = new WalletService(walletRepository, transactionRepository,
-            stripeService, aPlatformTransactionManager());
+        WalletService walletService = aWalletService(walletRepository, transactionRepository,
+            stripeService);
 
-        walletService.topUp(walletId, "cardNumber", new BigDecimal(10));
+        walletService.topUp(walletId, "cardNumber", 1000L);
 
-        verify(stripeService).charge(cardNumber, new BigDecimal(10));
+        verify(stripeService).charge(cardNumber, new BigDecimal("10.00"));
     }
 
     public static StripeService aStripeServiceMock() {
@@ -209,9 +696,106 @@ public class WalletServiceTest {
     public static TransactionRepository aTransactionRepositoryMock() {
         TransactionRepository transactionRepository = mock(TransactionRepository.class);
         when(transactionRepository.save(any(Transaction.class))).thenReturn(new Transaction());
+        when(transactionRepository.markProcessed(any(), any())).thenReturn(1);
+        when(transactionRepository.updateStatusIf(any(), eq(TransactionStatus.PROCESSED),
+            eq(TransactionStatus.SUCCESS))).thenReturn(1);
         return transactionRepository;
     }
 
+    private static Transaction aTransactionWithId(UUID transactionId) {
+        Transaction transaction = new Transaction();
+        transaction.setId(transactionId);
+        return transaction;
+    }
+
+    public static WalletService aWalletService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService) {
+        return aWalletService(walletRepository, transactionRepository, stripeService,
+            aTopUpMetrics());
+    }
+
+    public static WalletService aWalletService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService,
+        TopUpMetrics topUpMetrics) {
+        return aWalletService(walletRepository, transactionRepository, stripeService,
+            topUpMetrics, WalletUpdateStrategy.OPTIMISTIC);
+    }
+
+    public static WalletService aWalletService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService,
+        WalletUpdateStrategy updateStrategy) {
+        return aWalletService(walletRepository, transactionRepository, stripeService,
+            aTopUpMetrics(), updateStrategy);
+    }
+
+    private static WalletService aWalletService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService,
+        TopUpMetrics topUpMetrics, WalletUpdateStrategy updateStrategy) {
+        return new WalletService(walletRepository, transactionRepository, stripeService,
+            aPlatformTransactionManager(), new WalletWriteLanes(1), updateStrategy,
+            mock(TopUpWorkers.class), aWalletCache(), aStripeCircuitBreaker(), topUpMetrics,
+            aLedger(), aWalletShards(), aRefundQueue(), aWalletEvents(), aWalletIdCache(),
+            aReplicaReads());
+    }
+
+    private static WalletService aWalletService(WalletRepository walletRepository,
+        TransactionRepository transactionRepository, StripeService stripeService,
+        RefundQueue refundQueue) {
+        return new WalletService(walletRepository, transactionRepository, stripeService,
+            aPlatformTransactionManager(), new WalletWriteLanes(1), WalletUpdateStrategy.OPTIMISTIC,
+            mock(TopUpWorkers.class), aWalletCache(), aStripeCircuitBreaker(), aTopUpMetrics(),
+            aLedger(), aWalletShards(), refundQueue, aWalletEvents(), aWalletIdCache(),
+            aReplicaReads());
+    }
+
+    /**
+     * Disabled, as with the OPTIMISTIC and SINGLE_WRITER strategies.
+     */
+    public static Ledger aLedger() {
+        return mock(Ledger.class);
+    }
+
+    /**
+     * Disabled, as with the strategies other than SHARDED.
+     */
+    public static WalletShards aWalletShards() {
+        return mock(WalletShards.class);
+    }
+
+    public static RefundQueue aRefundQueue() {
+        return mock(RefundQueue.class);
+    }
+
+    /**
+     * Without replica, so every read goes to the repositories as they are.
+     */
+    public static ReplicaReads aReplicaReads() {
+        return new ReplicaReads(aPlatformTransactionManager(), "", Duration.ofSeconds(5), 100,
+            new SimpleMeterRegistry());
+    }
+
+    public static WalletIdCache aWalletIdCache() {
+        return new WalletIdCache(100, new SimpleMeterRegistry());
+    }
+
+    public static WalletEvents aWalletEvents() {
+        return mock(WalletEvents.class);
+    }
+
+    public static TopUpMetrics aTopUpMetrics() {
+        return new TopUpMetrics(new SimpleMeterRegistry());
+    }
+
+    public static StripeCircuitBreaker aStripeCircuitBreaker() {
+        return new StripeCircuitBreaker(50, 50, Duration.ofSeconds(2), 20, Duration.ofSeconds(10),
+            3, 32, new SimpleMeterRegistry());
+    }
+
+    public static WalletCache aWalletCache() {
+        return new WalletCache(100, Duration.ofMinutes(1), new SimpleMeterRegistry(),
+            aReplicaReads());
+    }
+
     public static PlatformTransactionManager aPlatformTransactionManager() {
         PlatformTransactionManager mock = mock(PlatformTransactionManager.class);
         return mock;
@@ -219,6 +803,6 @@ public class WalletServiceTest {
 
     private void assertEqualWallet(Wallet expected, WalletResponse actual) {
         assertEquals(expected.getId(), actual.getId());
-        assertEquals(0, expected.getAmount().compareTo(actual.getAmount()));
+        assertEquals(expected.getAmount(), actual.getAmount());
     }
 }
@@ -47,22 +47,23 @@ public class WalletServiceTransactionabilityIT {
 
     @Test
     public void whenErrorUpdatingTransaction_thenTheWalletIsNotUpdated() {
-        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(),
-            new BigDecimal(0)));
+        Wallet wallet = walletRepository.save(aNewWalletWithUserIdAndAmount(UUID.randomUUID(), 0L));
         Payment payment = new Payment("paymentId");
-        when(stripeService.charge("cardNumber", new BigDecimal(10))).thenReturn(payment);
-        when(transactionRepository.save(any())).thenReturn(new Transaction())
-            .thenReturn(new Transaction()).thenThrow(OptimisticLockingFailureException.class);
+        when(stripeService.charge("cardNumber", new BigDecimal("10.00"))).thenReturn(payment);
+        when(transactionRepository.save(any())).thenReturn(new Transaction());
+        when(transactionRepository.markProcessed(any(), any())).thenReturn(1);
+        when(transactionRepository.updateStatusIf(any(), any(), any())).thenThrow(
+            OptimisticLockingFailureException.class);
 
         assertThrows(ProcessingChargeError.class, () -> walletService
-            .topUp(wallet.getId(), "cardNumber", new BigDecimal(10))
+            .topUp(wallet.getId(), "cardNumber", 1000L)
         );
 
         Wallet updatedWallet = walletRepository.findById(wallet.getId()).orElseThrow();
-        assertEquals(0, new BigDecimal(0).compareTo(updatedWallet.getAmount()));
+        assertEquals(0L, updatedWallet.getAmount());
     }
 
-    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, BigDecimal amount) {
+    private static Wallet aNewWalletWithUserIdAndAmount(UUID userId, long amount) {
         Wallet wallet = new Wallet();
         wallet.setUserId(userId);
         wallet.setAmount(amount);
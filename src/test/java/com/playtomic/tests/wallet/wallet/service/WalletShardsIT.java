@@ -0,0 +1,239 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import com.playtomic.tests.wallet.wallet.dto.TopUpBatchItem;
+import com.playtomic.tests.wallet.wallet.model.Wallet;
+import com.playtomic.tests.wallet.wallet.model.WalletShard;
+import com.playtomic.tests.wallet.wallet.repository.TransactionRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletRepository;
+import com.playtomic.tests.wallet.wallet.repository.WalletShardRepository;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.context.SpringBootTest.WebEnvironment;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.TestPropertySource;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+@SpringBootTest(webEnvironment = WebEnvironment.RANDOM_PORT)
+@ActiveProfiles("test")
+@TestPropertySource(properties = {"wallet.update-strategy=SHARDED", "wallet.shards.page-size=2"})
+public class WalletShardsIT {
+
+    @Autowired
+    private WalletRepository walletRepository;
+
+    @Autowired
+    private TransactionRepository transactionRepository;
+
+    @Autowired
+    private WalletShardRepository walletShardRepository;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Autowired
+    private WalletService walletService;
+
+    @Autowired
+    private BatchTopUpService batchTopUpService;
+
+    @Autowired
+    private WalletShards walletShards;
+
+    @Autowired
+    private ChargeService chargeService;
+
+    @AfterEach
+    public void tearDown() {
+        walletShardRepository.deleteAll();
+        transactionRepository.deleteAll();
+        walletRepository.deleteAll();
+    }
+
+    @Test
+    public void whenTopUp_thenTheBalanceIsTheWalletPlusItsShards() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        walletShardRepository.save(new WalletShard(wallet.getId(), 1));
+
+        walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+        walletService.topUp(wallet.getId(), "cardNumber", 2000L);
+        long actual = walletService.topUp(wallet.getId(), "cardNumber", 3000L).getAmount();
+
+        assertEquals(6500L, actual);
+        assertEquals(6500L, walletService.get(wallet.getId()).getAmount());
+        Wallet balance = walletShards.findById(wallet.getId()).orElseThrow();
+        assertEquals(3L, balance.getVersion());
+    }
+
+    @Test
+    public void whenTheWalletIsContended_thenAShardIsAdded() throws Exception {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CountDownLatch locked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        // Holds the lock of the only shard, the Wallet row, so the next top-ups wait for it
+        Future<?> holder = executor.submit(() -> transactionTemplate.executeWithoutResult(status -> {
+            walletShards.add(wallet.getId(), 100L);
+            locked.countDown();
+            await(release);
+        }));
+        locked.await();
+        List<Future<?>> waiting = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            waiting.add(executor.submit(() -> transactionTemplate.executeWithoutResult(
+                status -> walletShards.add(wallet.getId(), 100L))));
+        }
+
+        for (int i = 0; i < 50 && walletShardRepository.countByWalletId(wallet.getId()) == 0;
+            i++) {
+            Thread.sleep(10);
+        }
+        release.countDown();
+        holder.get();
+        for (Future<?> topUp : waiting) {
+            topUp.get();
+        }
+        executor.shutdown();
+
+        assertTrue(walletShardRepository.countByWalletId(wallet.getId()) > 0);
+        assertEquals(400L, walletShards.findById(wallet.getId()).orElseThrow().getAmount());
+    }
+
+    @Test
+    public void whenMerging_thenTheShardsAreMovedToTheWalletWithTheSameBalance() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        walletShardRepository.save(new WalletShard(wallet.getId(), 1));
+        walletShardRepository.save(new WalletShard(wallet.getId(), 2));
+        for (int i = 0; i < 6; i++) {
+            walletService.topUp(wallet.getId(), "cardNumber", 1000L);
+        }
+        Wallet before = walletShards.findById(wallet.getId()).orElseThrow();
+
+        int merged = walletShards.merge(Instant.now().plusSeconds(1));
+
+        assertEquals(1, merged);
+        assertEquals(0, walletShardRepository.countByWalletId(wallet.getId()));
+        Wallet row = walletRepository.findById(wallet.getId()).orElseThrow();
+        assertEquals(6500L, row.getAmount());
+        assertEquals(before.getVersion(), row.getVersion());
+        assertEquals(0, walletShards.merge(Instant.now().plusSeconds(1)));
+        assertEquals(7500L, walletService.topUp(wallet.getId(), "cardNumber", 1000L).getAmount());
+    }
+
+    @Test
+    public void whenThereAreMoreShardedWalletsThanThePageSize_thenAllOfThemAreMerged() {
+        Wallet contended = walletRepository.save(aNewWalletWithAmount(0L));
+        walletShardRepository.save(new WalletShard(contended.getId(), 1));
+        List<Wallet> wallets = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+            walletShardRepository.save(new WalletShard(wallet.getId(), 1));
+            wallets.add(wallet);
+        }
+        Instant quietSince = Instant.now();
+        simulateContention(contended.getId());
+
+        assertEquals(5, walletShards.merge(quietSince));
+        for (Wallet wallet : wallets) {
+            assertEquals(0, walletShardRepository.countByWalletId(wallet.getId()));
+        }
+        assertEquals(1, walletShardRepository.countByWalletId(contended.getId()));
+    }
+
+    @Test
+    public void whenMergingAWalletContendedAfterwards_thenItIsNotMerged() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(0L));
+        walletShardRepository.save(new WalletShard(wallet.getId(), 1));
+        Instant quietSince = Instant.now();
+        simulateContention(wallet.getId());
+
+        assertEquals(0, walletShards.merge(quietSince));
+        assertEquals(1, walletShardRepository.countByWalletId(wallet.getId()));
+    }
+
+    @Test
+    public void whenTopUpBatch_thenTheAmountsAreAddedToTheShards() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        walletShardRepository.save(new WalletShard(wallet.getId(), 1));
+
+        batchTopUpService.topUp(List.of(
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 1000L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 300L),
+            new TopUpBatchItem(wallet.getId(), "cardNumber", 2000L)));
+
+        assertEquals(3500L, walletService.get(wallet.getId()).getAmount());
+    }
+
+    @Test
+    public void whenChargeMoreThanTheWalletRow_thenTheShardsAreMergedToBeCharged() {
+        Wallet wallet = walletRepository.save(aNewWalletWithAmount(500L));
+        WalletShard shard = new WalletShard(wallet.getId(), 1);
+        shard.setAmount(2000L);
+        shard.setVersion(1L);
+        walletShardRepository.save(shard);
+
+        long actual = chargeService.charge(wallet.getId(), 2200L).getAmount();
+
+        assertEquals(300L, actual);
+        assertEquals(0, walletShardRepository.countByWalletId(wallet.getId()));
+        assertEquals(300L, walletService.get(wallet.getId()).getAmount());
+    }
+
+    /**
+     * Two top-ups of the Wallet in progress at the same time, the second one waiting for the
+     * first.
+     */
+    private void simulateContention(UUID walletId) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        CountDownLatch locked = new CountDownLatch(1);
+        Thread second = new Thread(() -> {
+            await(locked);
+            transactionTemplate.executeWithoutResult(
+                status -> walletShards.add(walletId, 100L));
+        });
+        second.start();
+        transactionTemplate.executeWithoutResult(status -> {
+            walletShards.add(walletId, 100L);
+            locked.countDown();
+            try {
+                Thread.sleep(100);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        try {
+            second.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static Wallet aNewWalletWithAmount(long amount) {
+        Wallet wallet = new Wallet();
+        wallet.setUserId(UUID.randomUUID());
+        wallet.setAmount(amount);
+        return wallet;
+    }
+}
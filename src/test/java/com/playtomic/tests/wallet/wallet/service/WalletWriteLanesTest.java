@@ -0,0 +1,82 @@
+package com.playtomic.tests.wallet.wallet.service;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import com.playtomic.tests.wallet.wallet.exception.ProcessingChargeError;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class WalletWriteLanesTest {
+
+    private final WalletWriteLanes walletWriteLanes = new WalletWriteLanes(4);
+
+    @AfterEach
+    public void tearDown() throws InterruptedException {
+        walletWriteLanes.shutdown();
+    }
+
+    @Test
+    public void whenExecutingATask_thenTheResultIsReturned() {
+        String actual = walletWriteLanes.execute(UUID.randomUUID(), () -> "result");
+
+        assertEquals("result", actual);
+    }
+
+    @Test
+    public void whenTheTaskFails_thenTheExceptionIsPropagated() {
+        ProcessingChargeError exception = assertThrows(ProcessingChargeError.class,
+            () -> walletWriteLanes.execute(UUID.randomUUID(), () -> {
+                throw new ProcessingChargeError("Error updating the Wallet");
+            }));
+
+        assertEquals("Error updating the Wallet", exception.getMessage());
+    }
+
+    @Test
+    public void whenConcurrentTasksOfTheSameWallet_thenTheyAreNeverExecutedAtTheSameTime()
+        throws Exception {
+        UUID walletId = UUID.randomUUID();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService callers = Executors.newFixedThreadPool(8);
+
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            futures.add(callers.submit(() -> walletWriteLanes.execute(walletId, () -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                sleep(1);
+                return running.decrementAndGet();
+            })));
+        }
+        for (Future<Integer> future : futures) {
+            future.get();
+        }
+        callers.shutdown();
+
+        assertEquals(1, maxRunning.get());
+    }
+
+    @Test
+    public void whenTheSameWallet_thenTheSameLaneIsUsed() {
+        UUID walletId = UUID.randomUUID();
+
+        assertEquals(walletWriteLanes.laneOf(walletId),
+            walletWriteLanes.laneOf(UUID.fromString(walletId.toString())));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}